@@ -1,10 +1,11 @@
-import java.util.HashSet;
 import java.util.Set;
 
 /**
  * This class shows the different attributes and functionalities that an account has.
  * Thie class is inherited by Checking, Credit, and Saving, since they are all 
  * different types of accounts that each user has.
+ * The number, type and balances of the account are kept in a slot of the AccountStore,
+ * an Account object only remembers which slot it is and who owns it.
  * 
  * @author Daniela Castro Enriquez
  * @author Carlos Gonzalez
@@ -13,26 +14,21 @@ import java.util.Set;
  */
 public abstract class Account {
 
-    /** The account number for each account. */
-    private int accountNumber;
+    /** The store that holds the number, type and balances of the account. */
+    private final AccountStore store;
 
-    /** The current balance of each account type. */
-    private double currentBalance;
-
-    /** The starting balance when the account was first intitialized. */
-    private double startingBalance;
+    /** The slot of the account in the store. */
+    private final int slot;
 
     /** The owner of the account. */
     private Person accountHolder;
 
-    /** The type of the account, either a Checking, Savings, or Credit account. */
-    private String accountType;
-
      /**
      * A set that stores unique account numbers for all accounts.
      * This helps to ensure that each account number is distinct across all accounts.
+     * The numbers are kept as primitive ints, so checking a number never allocates.
      */
-    private static Set<Integer> accountNumbers = new HashSet<>();
+    private static final ConcurrentIntSet accountNumbers = new ConcurrentIntSet();
 
     /**
      * Adds the provided account numbers to the set of unique account numbers.
@@ -60,6 +56,43 @@ public abstract class Account {
         accountNumbers.add(idNumber);
     }
 
+    /**
+     * Checks if an account number is already used by an account.
+     *
+     * @param accountNumber the account number to check
+     * @return true if the account number is in use, false otherwise
+     */
+    public static boolean containsAccountNumber(int accountNumber){
+        return accountNumbers.contains(accountNumber);
+    }
+
+    /**
+     * Claims an account number for a new account. Only one caller can claim a given number,
+     * even when several threads try at the same time.
+     *
+     * @param accountNumber the account number to claim
+     * @return true if the number was free and is now taken, false if it was already in use
+     */
+    public static boolean reserveAccountNumber(int accountNumber){
+        return accountNumbers.add(accountNumber);
+    }
+
+    /**
+     * Estimates how much heap the set of account numbers uses.
+     *
+     * @return the approximate size of the account number set, in bytes
+     */
+    public static long getAccountNumbersFootprint(){
+        return accountNumbers.memoryFootprint();
+    }
+
+    /**
+     * Removes every account number from the set, used before the customer base is loaded again.
+     */
+    public static void clearAccountNumbers(){
+        accountNumbers.clear();
+    }
+
     /**
      * Retrieves the set of unique account numbers.
      * This set contains all account numbers for savings, checking, and credit accounts, 
@@ -82,11 +115,9 @@ public abstract class Account {
      */
     
     public Account(int accountNumber, double startingBalance, Person accountHolder, String accountType) {
-        this.accountNumber = accountNumber;
-        this.startingBalance = startingBalance;
-        this.currentBalance = startingBalance;
+        this.store = AccountStore.getShared();
+        this.slot = store.allocate(accountNumber, AccountStore.typeCode(accountType), startingBalance, 0);
         this.accountHolder = accountHolder;
-        this.accountType = accountType;
     }
 
     /**
@@ -106,6 +137,101 @@ public abstract class Account {
      */
     public abstract boolean allowedToWithdraw(double amount);
 
+    /**
+     * This method adds money to the account in a single atomic step, without a lock, so deposits
+     * from several threads are never lost.
+     *
+     * @param amount the amount to deposit
+     * @return the new balance
+     */
+    public double deposit(double amount) {
+        return Money.toDollars(depositCents(Money.toCents(amount)));
+    }
+
+    /**
+     * This method adds an amount in cents to the account in a single atomic step, like deposit.
+     *
+     * @param amountCents the amount to deposit, in cents
+     * @return the new balance in cents
+     */
+    public long depositCents(long amountCents) {
+        long cents = store.addCents(slot, amountCents);
+        DeltaCheckpoint.markAccountDirty(getAccountNum());
+        return cents;
+    }
+
+    /**
+     * This method takes money out of the account only if the balance covers it. The check and the
+     * change are a single compare-and-set, so no lock is needed.
+     *
+     * @param amount the amount to take out
+     * @return true if the money was taken out, false if the balance was too low
+     */
+    public boolean tryDebit(double amount) {
+        return tryDebit(amount, 0L);
+    }
+
+    /**
+     * This method takes money out of the account only if the balance stays at or above a floor.
+     * The check and the change are a single compare-and-set, so no lock is needed.
+     *
+     * @param amount     the amount to take out
+     * @param floorCents the lowest balance allowed after the debit in cents, 0 or minus a credit limit
+     * @return true if the money was taken out, false if the balance would go below the floor
+     */
+    protected boolean tryDebit(double amount, long floorCents) {
+        return debit(amount, floorCents) != AccountStore.NO_BALANCE;
+    }
+
+    /**
+     * This method takes money out of the account like tryDebit, and returns the balance the
+     * debit left, for the BalanceJournal.
+     *
+     * @param amount the amount to take out
+     * @return the new balance in cents, or AccountStore.NO_BALANCE if the balance was too low
+     */
+    public long debit(double amount) {
+        return debitCents(Money.toCents(amount), 0L);
+    }
+
+    /**
+     * This method takes an amount in cents out of the account like debit.
+     *
+     * @param amountCents the amount to take out, in cents
+     * @return the new balance in cents, or AccountStore.NO_BALANCE if the balance was too low
+     */
+    public long debitCents(long amountCents) {
+        return debitCents(amountCents, 0L);
+    }
+
+    /**
+     * This method takes money out of the account only if the balance stays at or above a floor,
+     * and returns the balance the debit left.
+     *
+     * @param amount     the amount to take out
+     * @param floorCents the lowest balance allowed after the debit in cents, 0 or minus a credit limit
+     * @return the new balance in cents, or AccountStore.NO_BALANCE if the balance would go below the floor
+     */
+    protected long debit(double amount, long floorCents) {
+        return debitCents(Money.toCents(amount), floorCents);
+    }
+
+    /**
+     * This method takes an amount in cents out of the account only if the balance stays at or
+     * above a floor, and returns the balance the debit left.
+     *
+     * @param amountCents the amount to take out, in cents
+     * @param floorCents  the lowest balance allowed after the debit in cents, 0 or minus a credit limit
+     * @return the new balance in cents, or AccountStore.NO_BALANCE if the balance would go below the floor
+     */
+    protected long debitCents(long amountCents, long floorCents) {
+        long cents = store.debitCents(slot, amountCents, floorCents);
+        if (cents != AccountStore.NO_BALANCE) {
+            DeltaCheckpoint.markAccountDirty(getAccountNum());
+        }
+        return cents;
+    }
+
     // Setters
 
     /**
@@ -114,7 +240,7 @@ public abstract class Account {
      * @param accountNumber the number associated with the account.
      */
     public void setAccountNum(int accountNumber) {
-        this.accountNumber = accountNumber;
+        store.setNumber(slot, accountNumber);
     }
 
     /**
@@ -123,7 +249,8 @@ public abstract class Account {
      * @param currentBalance the current balance that an account has.
      */
     public void setBalance(double currentBalance) {
-        this.currentBalance = currentBalance;
+        store.setBalance(slot, currentBalance);
+        DeltaCheckpoint.markAccountDirty(getAccountNum());
     }
 
     /**
@@ -141,7 +268,7 @@ public abstract class Account {
      * @param startingBalance the starting balance of the account.
      */
     public void setStartingBalance(double startingBalance) {
-        this.startingBalance = startingBalance;
+        store.setStartingBalance(slot, startingBalance);
     }
 
     /**
@@ -150,7 +277,7 @@ public abstract class Account {
      * @param accountType the type of the accoount, which is either checking, savings or credit)
      */
     public void setAccountType(String accountType) {
-        this.accountType = accountType;
+        store.setType(slot, AccountStore.typeCode(accountType));
     }
 
     /**
@@ -159,7 +286,7 @@ public abstract class Account {
      * @return the account number
      */
     public int getAccountNum() {
-        return this.accountNumber;
+        return store.getNumber(slot);
     }
 
     /**
@@ -168,7 +295,16 @@ public abstract class Account {
      * @return the current balance
      */
     public double getBalance() {
-        return this.currentBalance;
+        return store.getBalance(slot);
+    }
+
+    /**
+     * This method retrieves the current balance of the account in cents, without rounding.
+     *
+     * @return the current balance in cents
+     */
+    public long getBalanceCents() {
+        return store.getBalanceCents(slot);
     }
 
     /**
@@ -186,7 +322,7 @@ public abstract class Account {
      * @return the starting balance
      */
     public double getStartingBalance() {
-        return this.startingBalance;
+        return store.getStartingBalance(slot);
     }
 
     /**
@@ -195,7 +331,25 @@ public abstract class Account {
      * @return the type of the account, which is either checking, savings, or credit)
      */
     public String getAccountType() {
-        return this.accountType;
+        return AccountStore.typeName(store.getType(slot));
+    }
+
+    /**
+     * This method retrieves the store that holds the data of the account.
+     *
+     * @return the account store
+     */
+    protected AccountStore getStore() {
+        return this.store;
+    }
+
+    /**
+     * This method retrieves the slot of the account in its store.
+     *
+     * @return the slot of the account
+     */
+    protected int getSlot() {
+        return this.slot;
     }
 
     
@@ -0,0 +1,134 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The AccountIndex class finds an account, and the customer who owns it, from its account
+ * number in constant time. It is rebuilt every time the customer base is loaded and new
+ * customers are added to it as they are created, so it never has to scan all the customers.
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class AccountIndex {
+
+    /** The accounts of every customer keyed by account number. */
+    private static final Map<Integer, Entry> accountsByNumber = new ConcurrentHashMap<>();
+
+    /** This class only has static members. */
+    private AccountIndex() {
+    }
+
+    /**
+     * This method replaces the content of the index with the accounts of the given customers.
+     *
+     * @param customerMap the customers to index, usually the map keyed by identification number
+     */
+    public static void rebuild(Map<String, Customer> customerMap) {
+        accountsByNumber.clear();
+        for (Customer customer : customerMap.values()) {
+            add(customer);
+        }
+    }
+
+    /**
+     * This method adds every account of a customer to the index.
+     *
+     * @param customer the customer whose accounts are added
+     */
+    public static void add(Customer customer) {
+        for (Account account : customer.getAccounts()) {
+            if (account != null) {
+                accountsByNumber.put(account.getAccountNum(), new Entry(customer, account));
+            }
+        }
+    }
+
+    /**
+     * This method finds the account with the given number and its owner.
+     *
+     * @param accountNumber the account number to look for
+     * @return the account and its owner, or null if no account has that number
+     */
+    public static Entry lookup(int accountNumber) {
+        return accountsByNumber.get(accountNumber);
+    }
+
+    /**
+     * This method finds the account with the given number.
+     *
+     * @param accountNumber the account number to look for
+     * @return the account, or null if no account has that number
+     */
+    public static Account find(int accountNumber) {
+        Entry entry = accountsByNumber.get(accountNumber);
+        return entry == null ? null : entry.getAccount();
+    }
+
+    /**
+     * This method finds the account with the given number, only if it is of the given type.
+     * The type is compared without caring about upper or lower case.
+     *
+     * @param accountNumber the account number to look for
+     * @param accountType   the expected type ("Checking", "Savings" or "Credit"), or null to accept any type
+     * @return the account, or null if there is no account with that number and type
+     */
+    public static Account find(int accountNumber, String accountType) {
+        Account account = find(accountNumber);
+        if (account == null || accountType == null || account.getAccountType().equalsIgnoreCase(accountType)) {
+            return account;
+        }
+        return null;
+    }
+
+    /**
+     * This method returns how many accounts are in the index.
+     *
+     * @return the number of indexed accounts
+     */
+    public static int size() {
+        return accountsByNumber.size();
+    }
+
+    /**
+     * The Entry class pairs an account with the customer who owns it.
+     */
+    public static class Entry {
+
+        /** The owner of the account. */
+        private final Customer customer;
+
+        /** The indexed account. */
+        private final Account account;
+
+        /**
+         * This constructor pairs an account with its owner.
+         *
+         * @param customer the owner of the account
+         * @param account  the account
+         */
+        public Entry(Customer customer, Account account) {
+            this.customer = customer;
+            this.account = account;
+        }
+
+        /**
+         * This method retrieves the owner of the account.
+         *
+         * @return the customer who owns the account
+         */
+        public Customer getCustomer() {
+            return customer;
+        }
+
+        /**
+         * This method retrieves the account.
+         *
+         * @return the indexed account
+         */
+        public Account getAccount() {
+            return account;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The AccountLockBenchmark class measures transfers between a small set of hot accounts while
+ * many threads run at once, comparing the striped AccountLocks with a single lock for the whole
+ * bank. A quarter of the operations are balance inquiries, which take no lock with AccountLocks.
+ * After each run it checks that the money in the accounts still adds up, so a lost update shows
+ * up as a failure instead of a fast number.
+ *
+ * <p>Usage: {@code java AccountLockBenchmark [threads] [accounts] [seconds]}, 64 threads, 32 hot
+ * accounts and 3 seconds per run by default.</p>
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class AccountLockBenchmark {
+
+    /** The starting balance of every account, in whole dollars so the total is exact. */
+    private static final double STARTING_BALANCE = 1_000_000;
+
+    /** The lock used by the whole bank run. */
+    private static final ReentrantLock globalLock = new ReentrantLock();
+
+    /** Keeps the inquiries alive so the JIT cannot drop them. */
+    private static volatile double sink;
+
+    /**
+     * The main method runs the whole bank lock and the striped locks with the same load.
+     *
+     * @param args the number of threads, the number of accounts and the seconds of each run
+     * @throws InterruptedException if the benchmark is interrupted
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int accounts = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        System.out.println(threads + " threads, " + accounts + " hot accounts, " + seconds + " s per run");
+        run("whole bank lock", threads, accounts, seconds, false);
+        run("striped locks", threads, accounts, seconds, true);
+    }
+
+    /**
+     * This method starts the threads on fresh accounts, lets them run and reports the operations
+     * per second and whether the total balance is unchanged.
+     *
+     * @param name     the name of the run
+     * @param threads  the number of threads
+     * @param accounts the number of hot accounts
+     * @param seconds  how long the threads run
+     * @param striped  true to use AccountLocks, false to use one lock for every account
+     * @throws InterruptedException if the run is interrupted
+     */
+    private static void run(String name, int threads, int accounts, int seconds, boolean striped)
+            throws InterruptedException {
+        Account[] hot = new Account[accounts];
+        for (int i = 0; i < accounts; i++) {
+            hot[i] = new Checking(5_000_000 + i, STARTING_BALANCE, null);
+        }
+
+        LongAdder operations = new LongAdder();
+        LongAdder refused = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long done = 0;
+                while ((done & 0xFF) != 0 || System.nanoTime() < deadline) {
+                    Account from = hot[random.nextInt(accounts)];
+                    if (random.nextInt(4) == 0) {
+                        sink = striped ? from.getBalance() : inquireGlobal(from);
+                    } else {
+                        Account to = hot[random.nextInt(accounts)];
+                        double amount = 1 + random.nextInt(100);
+                        boolean moved = striped ? AccountLocks.transfer(from, to, amount) : transferGlobal(from, to, amount);
+                        if (!moved) {
+                            refused.increment();
+                        }
+                    }
+                    done++;
+                }
+                operations.add(done);
+            });
+            workers[t].start();
+        }
+
+        long started = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double elapsed = (System.nanoTime() - started) / 1_000_000_000.0;
+
+        double total = 0;
+        for (Account account : hot) {
+            total += account.getBalance();
+        }
+        boolean conserved = total == STARTING_BALANCE * accounts;
+        System.out.printf("%-20s %,14.0f ops/s  refused %,d  total %s%n", name, operations.sum() / elapsed,
+                refused.sum(), conserved ? "conserved" : "CHANGED (" + total + ")");
+    }
+
+    /**
+     * This method moves money while holding the lock of the whole bank.
+     *
+     * @param from   the account the money comes from
+     * @param to     the account the money goes to
+     * @param amount the amount to move
+     * @return true if the money was moved, false if the source balance was too low
+     */
+    private static boolean transferGlobal(Account from, Account to, double amount) {
+        globalLock.lock();
+        try {
+            if (amount > from.getBalance()) {
+                return false;
+            }
+            from.setBalance(from.getBalance() - amount);
+            to.setBalance(to.getBalance() + amount);
+            return true;
+        } finally {
+            globalLock.unlock();
+        }
+    }
+
+    /**
+     * This method reads a balance while holding the lock of the whole bank.
+     *
+     * @param account the account to read
+     * @return the balance
+     */
+    private static double inquireGlobal(Account account) {
+        globalLock.lock();
+        try {
+            return account.getBalance();
+        } finally {
+            globalLock.unlock();
+        }
+    }
+}
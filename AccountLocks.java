@@ -0,0 +1,234 @@
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * The AccountLocks class makes operations on two accounts safe when several sessions or worker
+ * threads move money at the same time. Instead of one lock per account (or one lock for the whole
+ * bank) it keeps a fixed array of locks and picks one from the account number, so memory stays
+ * the same however many accounts there are and unrelated accounts almost never wait for each other.
+ *
+ * <p>Operations on two accounts take both locks in the order of their index in the array, so two
+ * opposite transfers between the same accounts can never deadlock. Operations on a single account
+ * (deposits, withdrawals and inquiries) need no lock to be correct: Account.deposit,
+ * Account.tryDebit and Account.getBalance change the balance with a compare-and-set. While the
+ * BalanceJournal or the EventLog records the changes, depositCents and withdrawCents still take
+ * the lock of the account, so the records of an account are appended in the order its balance
+ * changed.</p>
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class AccountLocks {
+
+    /** The number of locks, a power of two so a lock is picked with a mask. */
+    private static final int STRIPES = 1024;
+
+    /** The locks shared by all accounts. */
+    private static final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /** This class only has static members. */
+    private AccountLocks() {
+    }
+
+    /**
+     * This method runs an action while holding the lock of an account.
+     *
+     * @param account the account the action changes
+     * @param action  the action to run
+     * @param <T>     the type of the result of the action
+     * @return the result of the action
+     */
+    public static <T> T withLock(Account account, Supplier<T> action) {
+        return withLock(account.getAccountNum(), action);
+    }
+
+    /**
+     * This method runs an action while holding the lock of an account known by its number, for
+     * code such as the AccountStore scans that has no Account object.
+     *
+     * @param accountNumber the number of the account the action changes
+     * @param action        the action to run
+     * @param <T>           the type of the result of the action
+     * @return the result of the action
+     */
+    public static <T> T withLock(int accountNumber, Supplier<T> action) {
+        ReentrantLock lock = locks[stripe(accountNumber)];
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method runs an action while holding the locks of two accounts. The locks are always
+     * taken in the same order, whatever the order of the arguments.
+     *
+     * @param first  one of the accounts the action changes
+     * @param second the other account
+     * @param action the action to run
+     * @param <T>    the type of the result of the action
+     * @return the result of the action
+     */
+    public static <T> T withLocks(Account first, Account second, Supplier<T> action) {
+        int firstStripe = stripe(first.getAccountNum());
+        int secondStripe = stripe(second.getAccountNum());
+        if (firstStripe == secondStripe) {
+            return withLock(first, action);
+        }
+
+        ReentrantLock outer = locks[Math.min(firstStripe, secondStripe)];
+        ReentrantLock inner = locks[Math.max(firstStripe, secondStripe)];
+        outer.lock();
+        try {
+            inner.lock();
+            try {
+                return action.get();
+            } finally {
+                inner.unlock();
+            }
+        } finally {
+            outer.unlock();
+        }
+    }
+
+    /**
+     * This method deposits money into an account and appends the change to the BalanceJournal.
+     * While changes are recorded, the deposit and its record are made holding the lock of the
+     * account, so no other change of the account can be recorded between them; otherwise the
+     * deposit takes no lock.
+     *
+     * @param account     the account the money goes to
+     * @param amountCents the amount to deposit, in cents
+     * @return the new balance in cents
+     */
+    public static long depositCents(Account account, long amountCents) {
+        if (!BalanceJournal.isRecording()) {
+            return account.depositCents(amountCents);
+        }
+        return withLock(account, () -> {
+            long balance = account.depositCents(amountCents);
+            BalanceJournal.append(BalanceJournal.Op.DEPOSIT, null, account, amountCents, 0, balance);
+            return balance;
+        });
+    }
+
+    /**
+     * This method takes money out of an account, only if the balance covers it, and appends the
+     * change to the BalanceJournal, holding the lock of the account like depositCents.
+     *
+     * @param account     the account the money comes from
+     * @param amountCents the amount to take out, in cents
+     * @return the new balance in cents, or AccountStore.NO_BALANCE if the balance was too low
+     */
+    public static long withdrawCents(Account account, long amountCents) {
+        if (!BalanceJournal.isRecording()) {
+            return account.debitCents(amountCents);
+        }
+        return withLock(account, () -> {
+            long balance = account.debitCents(amountCents);
+            if (balance != AccountStore.NO_BALANCE) {
+                BalanceJournal.append(BalanceJournal.Op.WITHDRAW, account, null, amountCents, balance, 0);
+            }
+            return balance;
+        });
+    }
+
+    /**
+     * This method sets the balance of an account back to an earlier one, as resuming from an
+     * IngestCheckpoint does. The balance is changed by the difference and the difference is
+     * appended to the BalanceJournal as an ADJUST record, both holding the lock of the account like
+     * depositCents, so the records of the account still add up to its balance when the journal is
+     * replayed.
+     *
+     * @param account      the account to change
+     * @param balanceCents the balance the account gets, in cents
+     * @return the difference added to the balance, in cents
+     */
+    public static long restoreCents(Account account, long balanceCents) {
+        if (!BalanceJournal.isRecording()) {
+            long difference = balanceCents - account.getBalanceCents();
+            account.depositCents(difference);
+            return difference;
+        }
+        return withLock(account, () -> {
+            long difference = balanceCents - account.getBalanceCents();
+            if (difference != 0) {
+                long balance = account.depositCents(difference);
+                BalanceJournal.append(BalanceJournal.Op.ADJUST, null, account, difference, 0, balance);
+            }
+            return difference;
+        });
+    }
+
+    /**
+     * This method moves money between two accounts as a single step, only if the source account
+     * still has at least the amount.
+     *
+     * @param from   the account the money comes from
+     * @param to     the account the money goes to
+     * @param amount the amount to move
+     * @return true if the money was moved, false if the source balance was too low
+     */
+    public static boolean transfer(Account from, Account to, double amount) {
+        return transfer(from, to, amount, BalanceJournal.Op.TRANSFER);
+    }
+
+    /**
+     * This method moves money between two accounts as a single step, only if the source account
+     * still has at least the amount, and appends the change to the BalanceJournal while both
+     * locks are held.
+     *
+     * @param from   the account the money comes from
+     * @param to     the account the money goes to
+     * @param amount the amount to move
+     * @param op     how the change is journaled, TRANSFER or PAY
+     * @return true if the money was moved, false if the source balance was too low
+     */
+    public static boolean transfer(Account from, Account to, double amount, BalanceJournal.Op op) {
+        return transferCents(from, to, Money.toCents(amount), op);
+    }
+
+    /**
+     * This method moves an amount in cents between two accounts like transfer, and appends the
+     * change to the BalanceJournal while both locks are held.
+     *
+     * @param from        the account the money comes from
+     * @param to          the account the money goes to
+     * @param amountCents the amount to move, in cents
+     * @param op          how the change is journaled, TRANSFER or PAY
+     * @return true if the money was moved, false if the source balance was too low
+     */
+    public static boolean transferCents(Account from, Account to, long amountCents, BalanceJournal.Op op) {
+        return withLocks(from, to, () -> {
+            // the balances are changed atomically too, since deposits and withdrawals do not lock
+            long fromBalance = from.debitCents(amountCents);
+            if (fromBalance == AccountStore.NO_BALANCE) {
+                return false;
+            }
+            long toBalance = to.depositCents(amountCents);
+            BalanceJournal.append(op, from, to, amountCents, fromBalance, toBalance);
+            return true;
+        });
+    }
+
+    /**
+     * This method picks the lock of an account from its number.
+     *
+     * @param accountNumber the account number
+     * @return the index of its lock
+     */
+    private static int stripe(int accountNumber) {
+        int h = accountNumber * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+}
@@ -0,0 +1,649 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * The AccountStore class keeps the data of every account in columns of primitive arrays instead
+ * of one object per account: account numbers, types, balances, starting balances and credit
+ * limits each live in their own array, and an account is just a slot number in those arrays.
+ * Account objects are thin views over a slot, so the rest of the bank keeps working with them,
+ * while bank wide scans (totals, negative credit balances, interest) walk the arrays directly
+ * without following a pointer per account.
+ *
+ * <p>The columns are split in pages of 65536 slots, so the store grows without copying what it
+ * already holds and each page can be scanned on its own thread. Slots are handed out by an
+ * atomic counter, so accounts can be created from several loader threads at once.</p>
+ *
+ * <p>Amounts are kept as a whole number of cents in a long (see Money), so adding and comparing
+ * amounts is exact and a balance can be changed with a single compare-and-set instead of a lock.
+ * Deposits add to the cents atomically and debits retry a compare-and-set until the new balance
+ * is not below the floor the account allows, so the limit check and the change are one step.
+ * Single balances are read with acquire semantics, so a thread reading a balance without a lock
+ * always sees a whole, recent value.</p>
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class AccountStore {
+
+    /** Type code of a checking account. */
+    public static final byte CHECKING = 0;
+
+    /** Type code of a savings account. */
+    public static final byte SAVINGS = 1;
+
+    /** Type code of a credit account. */
+    public static final byte CREDIT = 2;
+
+    /** Passed instead of a type code to include every account in a scan. */
+    public static final int ANY_TYPE = -1;
+
+    /** Returned by debitCents when the balance does not cover the debit. */
+    public static final long NO_BALANCE = Long.MIN_VALUE;
+
+    /** The names of the account types, indexed by type code. */
+    private static final String[] TYPE_NAMES = {"Checking", "Savings", "Credit"};
+
+    /** Every page holds 2^PAGE_SHIFT slots. */
+    private static final int PAGE_SHIFT = 16;
+
+    /** The number of slots of a page. */
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+    /** Masks a slot number down to its index inside its page. */
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    /** Gives atomic access to the cents of the balance column. */
+    private static final VarHandle BALANCES = MethodHandles.arrayElementVarHandle(long[].class);
+
+    /** The store the accounts of the bank are created in. */
+    private static volatile AccountStore shared = new AccountStore();
+
+    /** The pages of the store, a page is only created once a slot in it is handed out. */
+    private volatile Page[] pages = new Page[16];
+
+    /** The number of slots handed out. */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * This method returns the store that new accounts are created in.
+     *
+     * @return the shared account store
+     */
+    public static AccountStore getShared() {
+        return shared;
+    }
+
+    /**
+     * This method starts a new empty shared store, used before the customer base is loaded again.
+     * Accounts created before keep their slots in the old store, so they never see the new accounts.
+     */
+    public static void resetShared() {
+        shared = new AccountStore();
+    }
+
+    /**
+     * This method returns the type code of an account type name.
+     *
+     * @param typeName "Checking", "Savings" or "Credit", in any case
+     * @return the matching type code
+     * @throws IllegalArgumentException if the name is not an account type
+     */
+    public static byte typeCode(String typeName) {
+        for (byte code = 0; code < TYPE_NAMES.length; code++) {
+            if (TYPE_NAMES[code].equalsIgnoreCase(typeName)) {
+                return code;
+            }
+        }
+        throw new IllegalArgumentException("Unknown account type: " + typeName);
+    }
+
+    /**
+     * This method returns the name of an account type.
+     *
+     * @param typeCode the type code
+     * @return "Checking", "Savings" or "Credit"
+     */
+    public static String typeName(byte typeCode) {
+        return TYPE_NAMES[typeCode];
+    }
+
+    /**
+     * This method hands out a new slot and fills in its columns. It is safe to call from several
+     * threads at once.
+     *
+     * @param accountNumber   the account number
+     * @param typeCode        the type of the account
+     * @param startingBalance the balance the account starts with, also its current balance
+     * @param creditMax       the credit limit, 0 for accounts that are not credit accounts
+     * @return the slot of the new account
+     */
+    public int allocate(int accountNumber, byte typeCode, double startingBalance, double creditMax) {
+        int slot = size.getAndIncrement();
+        if (slot < 0) {
+            size.decrementAndGet();
+            throw new IllegalStateException("Account store is full");
+        }
+        Page page = pageFor(slot);
+        int index = slot & PAGE_MASK;
+        page.numbers[index] = accountNumber;
+        page.types[index] = typeCode;
+        page.balances[index] = Money.toCents(startingBalance);
+        page.startingBalances[index] = Money.toCents(startingBalance);
+        page.creditMax[index] = Money.toCents(creditMax);
+        return slot;
+    }
+
+    /**
+     * This method returns how many slots have been handed out.
+     *
+     * @return the number of accounts in the store
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * This method estimates how many bytes of heap the columns use.
+     *
+     * @return the approximate memory used by the pages, in bytes
+     */
+    public long memoryFootprint() {
+        long bytesPerSlot = Integer.BYTES + Byte.BYTES + 3L * Double.BYTES;
+        return (long) pageCount() * PAGE_SIZE * bytesPerSlot;
+    }
+
+    // Column access for the Account views
+
+    /**
+     * This method reads the account number of a slot.
+     *
+     * @param slot the slot of the account
+     * @return the account number
+     */
+    public int getNumber(int slot) {
+        return pages[slot >>> PAGE_SHIFT].numbers[slot & PAGE_MASK];
+    }
+
+    /**
+     * This method changes the account number of a slot.
+     *
+     * @param slot          the slot of the account
+     * @param accountNumber the new account number
+     */
+    public void setNumber(int slot, int accountNumber) {
+        pages[slot >>> PAGE_SHIFT].numbers[slot & PAGE_MASK] = accountNumber;
+    }
+
+    /**
+     * This method reads the type code of a slot.
+     *
+     * @param slot the slot of the account
+     * @return the type code
+     */
+    public byte getType(int slot) {
+        return pages[slot >>> PAGE_SHIFT].types[slot & PAGE_MASK];
+    }
+
+    /**
+     * This method changes the type code of a slot.
+     *
+     * @param slot     the slot of the account
+     * @param typeCode the new type code
+     */
+    public void setType(int slot, byte typeCode) {
+        pages[slot >>> PAGE_SHIFT].types[slot & PAGE_MASK] = typeCode;
+    }
+
+    /**
+     * This method reads the current balance of a slot.
+     *
+     * @param slot the slot of the account
+     * @return the current balance
+     */
+    public double getBalance(int slot) {
+        return Money.toDollars(getBalanceCents(slot));
+    }
+
+    /**
+     * This method reads the current balance of a slot in cents.
+     *
+     * @param slot the slot of the account
+     * @return the current balance in cents
+     */
+    public long getBalanceCents(int slot) {
+        return (long) BALANCES.getAcquire(pages[slot >>> PAGE_SHIFT].balances, slot & PAGE_MASK);
+    }
+
+    /**
+     * This method changes the current balance of a slot, rounded to the cent. It overwrites the
+     * balance, so changes made at the same time by addCents or tryDebit can be lost; use those to
+     * change a balance that other threads may be changing.
+     *
+     * @param slot    the slot of the account
+     * @param balance the new balance
+     */
+    public void setBalance(int slot, double balance) {
+        BALANCES.setRelease(pages[slot >>> PAGE_SHIFT].balances, slot & PAGE_MASK, Money.toCents(balance));
+    }
+
+    /**
+     * This method adds cents to the balance of a slot as a single atomic step.
+     *
+     * @param slot  the slot of the account
+     * @param cents the cents to add, negative to take money out without a limit
+     * @return the new balance in cents
+     */
+    public long addCents(int slot, long cents) {
+        return (long) BALANCES.getAndAdd(pages[slot >>> PAGE_SHIFT].balances, slot & PAGE_MASK, cents) + cents;
+    }
+
+    /**
+     * This method takes cents out of the balance of a slot only if the balance stays at or above
+     * a floor, 0 for an account that cannot be overdrawn or minus the credit limit for a credit
+     * account. The check and the change are one compare-and-set, retried if another thread
+     * changed the balance in between, so no lock is needed.
+     *
+     * @param slot       the slot of the account
+     * @param cents      the cents to take out
+     * @param floorCents the lowest balance allowed after the debit, in cents
+     * @return true if the cents were taken out, false if the balance would go below the floor
+     */
+    public boolean tryDebit(int slot, long cents, long floorCents) {
+        return debitCents(slot, cents, floorCents) != NO_BALANCE;
+    }
+
+    /**
+     * This method takes cents out of the balance of a slot like tryDebit, but returns the balance
+     * the compare-and-set left, which a later read could already see changed by another thread.
+     *
+     * @param slot       the slot of the account
+     * @param cents      the cents to take out
+     * @param floorCents the lowest balance allowed after the debit, in cents
+     * @return the new balance in cents, or NO_BALANCE if the balance would go below the floor
+     */
+    public long debitCents(int slot, long cents, long floorCents) {
+        long[] balances = pages[slot >>> PAGE_SHIFT].balances;
+        int index = slot & PAGE_MASK;
+        long current = (long) BALANCES.getVolatile(balances, index);
+        while (true) {
+            long updated = current - cents;
+            if (updated < floorCents) {
+                return NO_BALANCE;
+            }
+            long witness = (long) BALANCES.compareAndExchange(balances, index, current, updated);
+            if (witness == current) {
+                return updated;
+            }
+            current = witness;
+        }
+    }
+
+    /**
+     * This method reads the starting balance of a slot.
+     *
+     * @param slot the slot of the account
+     * @return the starting balance
+     */
+    public double getStartingBalance(int slot) {
+        return Money.toDollars(pages[slot >>> PAGE_SHIFT].startingBalances[slot & PAGE_MASK]);
+    }
+
+    /**
+     * This method changes the starting balance of a slot.
+     *
+     * @param slot            the slot of the account
+     * @param startingBalance the new starting balance
+     */
+    public void setStartingBalance(int slot, double startingBalance) {
+        pages[slot >>> PAGE_SHIFT].startingBalances[slot & PAGE_MASK] = Money.toCents(startingBalance);
+    }
+
+    /**
+     * This method reads the credit limit of a slot.
+     *
+     * @param slot the slot of the account
+     * @return the credit limit, 0 for accounts that are not credit accounts
+     */
+    public double getCreditMax(int slot) {
+        return Money.toDollars(getCreditMaxCents(slot));
+    }
+
+    /**
+     * This method reads the credit limit of a slot in cents.
+     *
+     * @param slot the slot of the account
+     * @return the credit limit in cents, 0 for accounts that are not credit accounts
+     */
+    public long getCreditMaxCents(int slot) {
+        return pages[slot >>> PAGE_SHIFT].creditMax[slot & PAGE_MASK];
+    }
+
+    /**
+     * This method changes the credit limit of a slot.
+     *
+     * @param slot      the slot of the account
+     * @param creditMax the new credit limit
+     */
+    public void setCreditMax(int slot, double creditMax) {
+        pages[slot >>> PAGE_SHIFT].creditMax[slot & PAGE_MASK] = Money.toCents(creditMax);
+    }
+
+    // Bank wide scans
+
+    /**
+     * This method adds up the balances of every account of a type.
+     *
+     * @param typeCode the type to include, or ANY_TYPE for every account
+     * @param parallel true to scan the pages on the common ForkJoinPool
+     * @return the sum of the balances
+     */
+    public double sumBalances(int typeCode, boolean parallel) {
+        return Money.toDollars(sumBalanceCents(typeCode, parallel));
+    }
+
+    /**
+     * This method adds up the balances of every account of a type in cents. The sum is exact,
+     * whatever the number of accounts and the order the pages are added in.
+     *
+     * @param typeCode the type to include, or ANY_TYPE for every account
+     * @param parallel true to scan the pages on the common ForkJoinPool
+     * @return the sum of the balances in cents
+     */
+    public long sumBalanceCents(int typeCode, boolean parallel) {
+        return pageStream(parallel).mapToLong(p -> sumBalances(p, typeCode)).sum();
+    }
+
+    /**
+     * This method counts the accounts of a type whose balance is below a limit, for example the
+     * credit accounts with a negative balance.
+     *
+     * @param typeCode the type to include, or ANY_TYPE for every account
+     * @param limit    the balance accounts must be below to be counted
+     * @param parallel true to scan the pages on the common ForkJoinPool
+     * @return the number of accounts below the limit
+     */
+    public long countBelow(int typeCode, double limit, boolean parallel) {
+        long limitCents = Money.toCents(limit);
+        return pageStream(parallel).mapToLong(p -> countBelow(p, typeCode, limitCents)).sum();
+    }
+
+    /**
+     * This method adds up the balances below a limit, for example the total owed on credit accounts.
+     *
+     * @param typeCode the type to include, or ANY_TYPE for every account
+     * @param limit    the balance accounts must be below to be included
+     * @param parallel true to scan the pages on the common ForkJoinPool
+     * @return the sum of the balances below the limit
+     */
+    public double sumBelow(int typeCode, double limit, boolean parallel) {
+        long limitCents = Money.toCents(limit);
+        return Money.toDollars(pageStream(parallel).mapToLong(p -> sumBelow(p, typeCode, limitCents)).sum());
+    }
+
+    /**
+     * This method adds interest to every positive balance of a type. Each balance is changed with
+     * a compare-and-set, like a deposit, so transactions running at the same time are never lost;
+     * every account paid is marked dirty for the DeltaCheckpoint and its interest is appended to
+     * the BalanceJournal (under the lock of the account while changes are recorded, see
+     * AccountLocks). The interest of each account is rounded to the cent.
+     *
+     * @param typeCode the type to pay interest on, or ANY_TYPE for every account
+     * @param rate     the interest rate, 0.01 for 1%
+     * @param parallel true to update the pages on the common ForkJoinPool
+     * @return the total interest paid
+     */
+    public double applyInterest(int typeCode, double rate, boolean parallel) {
+        return Money.toDollars(pageStream(parallel).mapToLong(p -> applyInterest(p, typeCode, rate)).sum());
+    }
+
+    /**
+     * This method copies the account number and balance in cents of the first slots, page by
+     * page. It does not stop balances from changing while it copies, so callers that need a
+     * consistent copy must make sure no transaction is being applied.
+     *
+     * @param numbers the array to fill with account numbers, one per slot
+     * @param cents   the array to fill with balances in cents, one per slot
+     * @return the number of slots copied, the smaller of the array lengths and the store size
+     */
+    public int copyBalances(int[] numbers, long[] cents) {
+        int count = Math.min(Math.min(numbers.length, cents.length), size.get());
+        for (int from = 0; from < count; from += PAGE_SIZE) {
+            Page page = pages[from >>> PAGE_SHIFT];
+            if (page == null) {
+                return from; // its first account is still being created
+            }
+            int length = Math.min(PAGE_SIZE, count - from);
+            System.arraycopy(page.numbers, 0, numbers, from, length);
+            System.arraycopy(page.balances, 0, cents, from, length);
+        }
+        return count;
+    }
+
+    /**
+     * This method streams the numbers of the pages that hold accounts.
+     *
+     * @param parallel true for a parallel stream
+     * @return the page numbers
+     */
+    private IntStream pageStream(boolean parallel) {
+        IntStream stream = IntStream.range(0, pageCount());
+        return parallel ? stream.parallel() : stream;
+    }
+
+    /**
+     * This method returns how many pages hold at least one account.
+     *
+     * @return the number of used pages
+     */
+    private int pageCount() {
+        return (size.get() + PAGE_SIZE - 1) >>> PAGE_SHIFT;
+    }
+
+    /**
+     * This method returns how many slots of a page hold accounts.
+     *
+     * @param pageNumber the page
+     * @return the number of used slots in the page
+     */
+    private int usedSlots(int pageNumber) {
+        return Math.min(PAGE_SIZE, size.get() - (pageNumber << PAGE_SHIFT));
+    }
+
+    /**
+     * This method adds up the balances of one page.
+     *
+     * @param pageNumber the page to scan
+     * @param typeCode   the type to include, or ANY_TYPE for every account
+     * @return the sum of the balances in the page, in cents
+     */
+    private long sumBalances(int pageNumber, int typeCode) {
+        Page page = pages[pageNumber];
+        if (page == null) {
+            return 0; // its first account is still being created
+        }
+        int used = usedSlots(pageNumber);
+        long[] balances = page.balances;
+        long sum = 0;
+        if (typeCode == ANY_TYPE) {
+            for (int i = 0; i < used; i++) {
+                sum += balances[i];
+            }
+            return sum;
+        }
+        byte[] types = page.types;
+        for (int i = 0; i < used; i++) {
+            sum += types[i] == typeCode ? balances[i] : 0;
+        }
+        return sum;
+    }
+
+    /**
+     * This method counts the balances below a limit in one page.
+     *
+     * @param pageNumber the page to scan
+     * @param typeCode   the type to include, or ANY_TYPE for every account
+     * @param limit      the balance accounts must be below to be counted, in cents
+     * @return the number of accounts below the limit in the page
+     */
+    private long countBelow(int pageNumber, int typeCode, long limit) {
+        Page page = pages[pageNumber];
+        if (page == null) {
+            return 0; // its first account is still being created
+        }
+        int used = usedSlots(pageNumber);
+        long[] balances = page.balances;
+        byte[] types = page.types;
+        long count = 0;
+        for (int i = 0; i < used; i++) {
+            if (balances[i] < limit && (typeCode == ANY_TYPE || types[i] == typeCode)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * This method adds up the balances below a limit in one page.
+     *
+     * @param pageNumber the page to scan
+     * @param typeCode   the type to include, or ANY_TYPE for every account
+     * @param limit      the balance accounts must be below to be included, in cents
+     * @return the sum of the balances below the limit in the page, in cents
+     */
+    private long sumBelow(int pageNumber, int typeCode, long limit) {
+        Page page = pages[pageNumber];
+        if (page == null) {
+            return 0; // its first account is still being created
+        }
+        int used = usedSlots(pageNumber);
+        long[] balances = page.balances;
+        byte[] types = page.types;
+        long sum = 0;
+        for (int i = 0; i < used; i++) {
+            long balance = balances[i];
+            sum += balance < limit && (typeCode == ANY_TYPE || types[i] == typeCode) ? balance : 0;
+        }
+        return sum;
+    }
+
+    /**
+     * This method adds interest to the positive balances of one page.
+     *
+     * @param pageNumber the page to update
+     * @param typeCode   the type to pay interest on, or ANY_TYPE for every account
+     * @param rate       the interest rate
+     * @return the interest paid in the page, in cents
+     */
+    private long applyInterest(int pageNumber, int typeCode, double rate) {
+        Page page = pages[pageNumber];
+        if (page == null) {
+            return 0; // its first account is still being created
+        }
+        int used = usedSlots(pageNumber);
+        long[] balances = page.balances;
+        byte[] types = page.types;
+        int[] numbers = page.numbers;
+        boolean recording = BalanceJournal.isRecording();
+        long paid = 0;
+        for (int i = 0; i < used; i++) {
+            if (typeCode != ANY_TYPE && types[i] != typeCode) {
+                continue;
+            }
+            long interest;
+            if (recording) {
+                int index = i;
+                int number = numbers[i];
+                interest = AccountLocks.withLock(number, () -> {
+                    long added = payInterest(balances, index, rate);
+                    if (added != 0) {
+                        BalanceJournal.append(BalanceJournal.Op.INTEREST, 0, number, added, 0,
+                                (long) BALANCES.getVolatile(balances, index));
+                    }
+                    return added;
+                });
+            } else {
+                interest = payInterest(balances, i, rate);
+            }
+            if (interest != 0) {
+                DeltaCheckpoint.markAccountDirty(numbers[i]);
+                paid += interest;
+            }
+        }
+        return paid;
+    }
+
+    /**
+     * This method adds interest to one balance if it is positive, retrying the compare-and-set if
+     * another thread changed the balance in between.
+     *
+     * @param balances the balance column of a page
+     * @param index    the index of the slot in the page
+     * @param rate     the interest rate
+     * @return the interest added, in cents
+     */
+    private static long payInterest(long[] balances, int index, double rate) {
+        long current = (long) BALANCES.getVolatile(balances, index);
+        while (true) {
+            long interest = current > 0 ? Math.round(current * rate) : 0;
+            if (interest == 0) {
+                return 0;
+            }
+            long witness = (long) BALANCES.compareAndExchange(balances, index, current, current + interest);
+            if (witness == current) {
+                return interest;
+            }
+            current = witness;
+        }
+    }
+
+    /**
+     * This method returns the page that holds a slot, creating it (and a longer page table) if needed.
+     *
+     * @param slot the slot
+     * @return the page of the slot
+     */
+    private Page pageFor(int slot) {
+        int pageNumber = slot >>> PAGE_SHIFT;
+        Page[] current = pages;
+        if (pageNumber < current.length && current[pageNumber] != null) {
+            return current[pageNumber];
+        }
+        synchronized (this) {
+            current = pages;
+            if (pageNumber >= current.length) {
+                current = Arrays.copyOf(current, Math.max(current.length * 2, pageNumber + 1));
+            }
+            if (current[pageNumber] == null) {
+                current[pageNumber] = new Page();
+            }
+            pages = current;
+            return current[pageNumber];
+        }
+    }
+
+    /**
+     * The Page class holds the columns of PAGE_SIZE consecutive slots.
+     */
+    private static final class Page {
+
+        /** The account number of every slot. */
+        final int[] numbers = new int[PAGE_SIZE];
+
+        /** The type code of every slot. */
+        final byte[] types = new byte[PAGE_SIZE];
+
+        /** The current balance of every slot, in cents. */
+        final long[] balances = new long[PAGE_SIZE];
+
+        /** The starting balance of every slot, in cents. */
+        final long[] startingBalances = new long[PAGE_SIZE];
+
+        /** The credit limit of every slot, in cents. */
+        final long[] creditMax = new long[PAGE_SIZE];
+    }
+}
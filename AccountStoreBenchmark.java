@@ -0,0 +1,220 @@
+import java.util.Random;
+
+/**
+ * The AccountStoreBenchmark class compares bank wide scans over the columns of an AccountStore
+ * with the same scans over an object graph of customers holding account objects, the layout the
+ * bank used before the store existed. Both are filled with the same random accounts.
+ *
+ * <p>Usage: {@code java -Xmx4g AccountStoreBenchmark [accounts] [rounds]}, 10,000,000 accounts
+ * and 10 rounds by default. Each scan reports the best time of its rounds.</p>
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class AccountStoreBenchmark {
+
+    /** Rounds run before timing, so the JIT has compiled the loops. */
+    private static final int WARMUP_ROUNDS = 3;
+
+    /** Keeps the results alive so the JIT cannot drop a scan. */
+    private static double sink;
+
+    /**
+     * The main method builds both layouts and times every scan on them.
+     *
+     * @param args the number of accounts and the number of timed rounds
+     */
+    public static void main(String[] args) {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int customers = accounts / 3;
+
+        System.out.println("Building " + customers * 3 + " accounts...");
+        Random random = new Random(42);
+        AccountStore store = new AccountStore();
+        LegacyCustomer[] graph = new LegacyCustomer[customers];
+        for (int i = 0; i < customers; i++) {
+            double checking = random.nextInt(1_000_000) / 100.0;
+            double savings = random.nextInt(1_000_000) / 100.0;
+            double creditMax = 500 + random.nextInt(9_500);
+            double credit = -random.nextInt((int) creditMax * 100) / 100.0 + (random.nextInt(4) == 0 ? 100 : 0);
+
+            store.allocate(1_000_000 + i, AccountStore.CHECKING, checking, 0);
+            store.allocate(2_000_000 + i, AccountStore.SAVINGS, savings, 0);
+            store.allocate(3_000_000 + i, AccountStore.CREDIT, credit, creditMax);
+            graph[i] = new LegacyCustomer(new LegacyAccount[]{
+                    new LegacyChecking(1_000_000 + i, checking),
+                    new LegacySaving(2_000_000 + i, savings),
+                    new LegacyCredit(3_000_000 + i, credit, creditMax)});
+        }
+        System.out.printf("Store columns: %,d bytes%n", store.memoryFootprint());
+
+        time("sum of all balances, object graph", rounds, () -> sumGraph(graph));
+        time("sum of all balances, store", rounds, () -> store.sumBalances(AccountStore.ANY_TYPE, false));
+        time("sum of all balances, store parallel", rounds, () -> store.sumBalances(AccountStore.ANY_TYPE, true));
+
+        time("negative credit balances, object graph", rounds, () -> countNegativeCreditGraph(graph));
+        time("negative credit balances, store", rounds, () -> store.countBelow(AccountStore.CREDIT, 0, false));
+        time("negative credit balances, store parallel", rounds, () -> store.countBelow(AccountStore.CREDIT, 0, true));
+
+        time("savings interest, object graph", rounds, () -> interestGraph(graph, 0.0001));
+        time("savings interest, store", rounds, () -> store.applyInterest(AccountStore.SAVINGS, 0.0001, false));
+        time("savings interest, store parallel", rounds, () -> store.applyInterest(AccountStore.SAVINGS, 0.0001, true));
+
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    /**
+     * This method runs a scan a few times untimed and then reports the best of the timed rounds.
+     *
+     * @param name   the name of the scan
+     * @param rounds the number of timed rounds
+     * @param scan   the scan to run
+     */
+    private static void time(String name, int rounds, Scan scan) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink += scan.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            sink += scan.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-45s %10.2f ms%n", name, best / 1_000_000.0);
+    }
+
+    /**
+     * This method adds up every balance by walking customers and their accounts.
+     *
+     * @param graph the customers
+     * @return the sum of the balances
+     */
+    private static double sumGraph(LegacyCustomer[] graph) {
+        double sum = 0;
+        for (LegacyCustomer customer : graph) {
+            for (LegacyAccount account : customer.accounts) {
+                sum += account.getBalance();
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * This method counts the credit accounts with a negative balance by walking the customers.
+     *
+     * @param graph the customers
+     * @return the number of negative credit balances
+     */
+    private static double countNegativeCreditGraph(LegacyCustomer[] graph) {
+        long count = 0;
+        for (LegacyCustomer customer : graph) {
+            for (LegacyAccount account : customer.accounts) {
+                if (account instanceof LegacyCredit && account.getBalance() < 0) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * This method pays interest on positive savings balances by walking the customers.
+     *
+     * @param graph the customers
+     * @param rate  the interest rate
+     * @return the interest paid
+     */
+    private static double interestGraph(LegacyCustomer[] graph, double rate) {
+        double paid = 0;
+        for (LegacyCustomer customer : graph) {
+            for (LegacyAccount account : customer.accounts) {
+                double balance = account.getBalance();
+                if (account instanceof LegacySaving && balance > 0) {
+                    account.setBalance(balance + balance * rate);
+                    paid += balance * rate;
+                }
+            }
+        }
+        return paid;
+    }
+
+    /**
+     * The Scan interface is one timed scan that returns a value to keep.
+     */
+    private interface Scan {
+
+        /**
+         * This method runs the scan once.
+         *
+         * @return a value computed by the scan
+         */
+        double run();
+    }
+
+    /**
+     * The LegacyCustomer class is a customer holding its account objects, like Customer.
+     */
+    private static final class LegacyCustomer {
+
+        /** The accounts of the customer. */
+        final LegacyAccount[] accounts;
+
+        LegacyCustomer(LegacyAccount[] accounts) {
+            this.accounts = accounts;
+        }
+    }
+
+    /**
+     * The LegacyAccount class is an account that keeps its own fields, like Account did.
+     */
+    private abstract static class LegacyAccount {
+
+        /** The account number. */
+        private final int accountNumber;
+
+        /** The current balance. */
+        private double balance;
+
+        LegacyAccount(int accountNumber, double balance) {
+            this.accountNumber = accountNumber;
+            this.balance = balance;
+        }
+
+        double getBalance() {
+            return balance;
+        }
+
+        void setBalance(double balance) {
+            this.balance = balance;
+        }
+    }
+
+    /** A checking account of the object graph. */
+    private static final class LegacyChecking extends LegacyAccount {
+        LegacyChecking(int accountNumber, double balance) {
+            super(accountNumber, balance);
+        }
+    }
+
+    /** A savings account of the object graph. */
+    private static final class LegacySaving extends LegacyAccount {
+        LegacySaving(int accountNumber, double balance) {
+            super(accountNumber, balance);
+        }
+    }
+
+    /** A credit account of the object graph. */
+    private static final class LegacyCredit extends LegacyAccount {
+
+        /** The credit limit. */
+        private final double creditMax;
+
+        LegacyCredit(int accountNumber, double balance, double creditMax) {
+            super(accountNumber, balance);
+            this.creditMax = creditMax;
+        }
+    }
+}
@@ -0,0 +1,395 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The AsyncLogWriter class writes the messages of the Log to the log file on a thread of its own,
+ * so logging a message no longer opens, writes and closes the file on the thread doing the
+ * transaction.
+ *
+ * <p>Messages are published into a bounded ring buffer and numbered in the order they are
+ * published. A single writer thread takes every message waiting in the buffer, writes them to
+ * the file in one call on a channel that stays open, and then forces the file to disk according to
+ * the FlushPolicy. When the buffer is full, publishing waits for the writer, so a burst of messages
+ * never takes more memory than the buffer. A caller that must know its messages are on disk (before
+ * a checkpoint, or before the program ends) calls sync, which waits until every message published
+ * so far is written and forced.</p>
+ *
+ * <p>When LogSegments are given, the writer also rotates the file: after a write that brings the
+ * live segment to its size or age limit, it forces and closes the file, has LogSegments rename it,
+ * and opens a new one, all on the writer thread, so publishing never waits for a rotation.</p>
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class AsyncLogWriter {
+
+    /**
+     * The FlushPolicy enum lists when the writer forces the log file to disk. In every policy the
+     * messages are written to the file as soon as the writer takes them, so other programs reading
+     * the file see them; the policy only decides when they survive a crash of the machine.
+     */
+    public enum FlushPolicy {
+        /** Force the file after every group of messages the writer takes. */
+        BATCH,
+        /** Force the file at most once per flush interval, and once the buffer is idle. */
+        TIMED,
+        /** Force the file only when sync is called. */
+        ON_DEMAND
+    }
+
+    /** The number of messages the ring buffer holds. */
+    private static final int CAPACITY = 8 * 1024;
+
+    /** The log file the messages are written to. */
+    private final Path path;
+
+    /** The open log file, replaced when the file is rotated. */
+    private volatile FileChannel channel;
+
+    /** Rotates the log file, or null if it is never rotated. */
+    private final LogSegments segments;
+
+    /** When the file is forced to disk. */
+    private final FlushPolicy policy;
+
+    /** The longest time between two forces with the TIMED policy, in nanoseconds. */
+    private final long flushIntervalNanos;
+
+    /** The ring buffer of the messages published but not yet taken by the writer. */
+    private final String[] ring = new String[CAPACITY];
+
+    /** Guards the ring buffer and the sequence numbers. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Signaled when messages are published or a sync is requested. */
+    private final Condition published = lock.newCondition();
+
+    /** Signaled when the writer took messages, wrote them, forced them or failed. */
+    private final Condition progressed = lock.newCondition();
+
+    /** The sequence number of the last message published; the message n is in ring[n % CAPACITY]. */
+    private long lastPublished;
+
+    /** The sequence number of the last message taken from the ring buffer by the writer. */
+    private long lastTaken;
+
+    /** The sequence number of the last message written to the file. */
+    private long lastWritten;
+
+    /** The sequence number of the last message forced to disk. */
+    private long lastDurable;
+
+    /** The sequence number up to which a sync waits for the file to be forced. */
+    private long syncRequested;
+
+    /** The number of times the writer wrote a group of messages. */
+    private long writes;
+
+    /** The number of times the writer forced the file to disk. */
+    private long syncs;
+
+    /** The error that stopped the writer, or null. */
+    private IOException failure;
+
+    /** Whether close was called. */
+    private boolean closed;
+
+    /**
+     * This constructor opens the log file for appending and starts the writer.
+     *
+     * @param path          the log file
+     * @param policy        when the file is forced to disk
+     * @param flushInterval the longest time between two forces with the TIMED policy, in milliseconds
+     * @throws IOException if the file cannot be opened
+     */
+    public AsyncLogWriter(Path path, FlushPolicy policy, long flushInterval) throws IOException {
+        this(path, policy, flushInterval, null);
+    }
+
+    /**
+     * This constructor opens the log file for appending and starts the writer, which rotates the
+     * file with the given segments.
+     *
+     * @param path          the log file
+     * @param policy        when the file is forced to disk
+     * @param flushInterval the longest time between two forces with the TIMED policy, in milliseconds
+     * @param segments      rotates the log file, or null to never rotate it
+     * @throws IOException if the file cannot be opened
+     */
+    public AsyncLogWriter(Path path, FlushPolicy policy, long flushInterval, LogSegments segments) throws IOException {
+        this.path = path;
+        this.channel = open(path);
+        this.segments = segments;
+        this.policy = policy;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushInterval));
+
+        Thread writer = new Thread(this::writeLoop, "async-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * This method publishes a message, waiting for the writer if the ring buffer is full. The
+     * message is written to the file later, after every message published before it.
+     *
+     * @param message the message, without a line separator
+     * @throws IOException if the writer failed or was closed
+     */
+    public void publish(String message) throws IOException {
+        lock.lock();
+        try {
+            put(message);
+            published.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method publishes several messages in order, taking the lock once for all of them
+     * unless the ring buffer fills up on the way.
+     *
+     * @param messages the messages, without line separators; null and empty ones are skipped
+     * @throws IOException if the writer failed or was closed
+     */
+    public void publishAll(List<String> messages) throws IOException {
+        lock.lock();
+        try {
+            for (String message : messages) {
+                if (message != null && !message.isEmpty()) {
+                    put(message);
+                }
+            }
+            published.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method waits until every message published so far is written to the file and forced
+     * to disk, whatever the FlushPolicy.
+     *
+     * @throws IOException if the writer failed
+     */
+    public void sync() throws IOException {
+        lock.lock();
+        try {
+            long target = lastPublished;
+            if (target > syncRequested) {
+                syncRequested = target;
+                published.signal();
+            }
+            while (lastDurable < target && failure == null) {
+                progressed.awaitUninterruptibly();
+            }
+            if (lastDurable < target) {
+                throw new IOException("Could not write the log: " + failure.getMessage(), failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method returns how many groups of messages the writer wrote, which divided into the
+     * number of messages gives the size of the groups.
+     *
+     * @return the number of writes
+     */
+    public long getWriteCount() {
+        lock.lock();
+        try {
+            return writes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method returns how many times the writer forced the file to disk.
+     *
+     * @return the number of fsyncs
+     */
+    public long getSyncCount() {
+        lock.lock();
+        try {
+            return syncs;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method writes and forces the messages still in the ring buffer, stops the writer and
+     * closes the file. Publishing afterwards fails.
+     *
+     * @throws IOException if the messages could not be written or the file cannot be closed
+     */
+    public void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            lock.lock();
+            try {
+                closed = true;
+                published.signalAll();
+                while (lastTaken > lastWritten && failure == null) {
+                    progressed.awaitUninterruptibly(); // let a write in progress finish before closing
+                }
+                progressed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            channel.close();
+        }
+    }
+
+    /**
+     * This method closes the live segment on the writer thread and opens a new one. A segment
+     * that cannot be renamed is reported and written to again.
+     *
+     * @throws IOException if no log file can be opened any more
+     */
+    private void rotate() throws IOException {
+        channel.close();
+        try {
+            segments.rotate();
+        } catch (IOException e) {
+            System.out.println("Could not rotate the log file: " + e.getMessage());
+        }
+        channel = open(path);
+    }
+
+    /**
+     * This method opens the log file for appending.
+     *
+     * @param path the log file
+     * @return the open file
+     * @throws IOException if the file cannot be opened
+     */
+    private static FileChannel open(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * This method puts a message in the ring buffer while the lock is held, waiting for the
+     * writer if the buffer is full.
+     *
+     * @param message the message
+     * @throws IOException if the writer failed or was closed
+     */
+    private void put(String message) throws IOException {
+        while (lastPublished - lastTaken == CAPACITY && failure == null && !closed) {
+            published.signal();
+            progressed.awaitUninterruptibly();
+        }
+        if (failure != null) {
+            throw new IOException("Could not write the log: " + failure.getMessage(), failure);
+        }
+        if (closed) {
+            throw new IOException("The log writer is closed");
+        }
+        ring[(int) (++lastPublished % CAPACITY)] = message;
+    }
+
+    /**
+     * The writer thread: takes every message in the ring buffer, writes them in one call, forces
+     * the file when the FlushPolicy or a sync asks for it, then wakes up the threads waiting on it.
+     */
+    private void writeLoop() {
+        StringBuilder text = new StringBuilder(64 * 1024);
+        long lastForce = System.nanoTime();
+        while (true) {
+            long upTo;
+            boolean force;
+            lock.lock();
+            try {
+                while (!closed && lastTaken == lastPublished && syncRequested <= lastDurable) {
+                    if (policy == FlushPolicy.TIMED && lastDurable < lastWritten) {
+                        long wait = flushIntervalNanos - (System.nanoTime() - lastForce);
+                        if (wait > 0) {
+                            published.awaitNanos(wait);
+                        }
+                        break; // idle with unforced messages: force them now
+                    }
+                    published.awaitUninterruptibly();
+                }
+                if (closed && lastTaken == lastPublished && lastDurable >= syncRequested) {
+                    return;
+                }
+                for (long sequence = lastTaken + 1; sequence <= lastPublished; sequence++) {
+                    int slot = (int) (sequence % CAPACITY);
+                    text.append(ring[slot]).append(System.lineSeparator());
+                    ring[slot] = null;
+                }
+                upTo = lastPublished;
+                lastTaken = upTo;
+                force = policy == FlushPolicy.BATCH
+                        || syncRequested > lastDurable
+                        || (policy == FlushPolicy.TIMED && System.nanoTime() - lastForce >= flushIntervalNanos)
+                        || (policy == FlushPolicy.TIMED && upTo == lastWritten);
+                progressed.signalAll(); // publishers waiting on a full buffer can go on
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            boolean wrote = text.length() > 0;
+            try {
+                boolean rotate = false;
+                if (wrote) {
+                    ByteBuffer bytes = StandardCharsets.UTF_8.encode(text.toString());
+                    rotate = segments != null && segments.written(bytes.remaining());
+                    while (bytes.hasRemaining()) {
+                        channel.write(bytes);
+                    }
+                }
+                if (force || rotate) {
+                    channel.force(false);
+                    lastForce = System.nanoTime();
+                    force = true;
+                }
+                if (rotate) {
+                    rotate();
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+            text.setLength(0);
+
+            lock.lock();
+            try {
+                if (error != null) {
+                    failure = error;
+                    progressed.signalAll();
+                    return;
+                }
+                lastWritten = upTo;
+                if (wrote) {
+                    writes++;
+                }
+                if (force) {
+                    lastDurable = upTo;
+                    syncs++;
+                }
+                progressed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
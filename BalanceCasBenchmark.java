@@ -0,0 +1,220 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The BalanceCasBenchmark class measures deposits, withdrawals and inquiries on a few hot accounts
+ * while many threads run at once. It compares the balances of the AccountStore, kept in cents and
+ * changed with compare-and-set, with a baseline where every account guards a double balance with
+ * synchronized methods, the usual way to make an account thread safe.
+ *
+ * <p>Each run adds up the money deposited and withdrawn, and checks at the end that the balances
+ * match, so an update lost to a race shows up as a failure instead of a fast number.</p>
+ *
+ * <p>Usage: {@code java BalanceCasBenchmark [threads] [accounts] [seconds]}, 64 threads, 8 hot
+ * accounts and 3 seconds per run by default.</p>
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class BalanceCasBenchmark {
+
+    /** The starting balance of every account. */
+    private static final double STARTING_BALANCE = 10_000;
+
+    /** Keeps the inquiries alive so the JIT cannot drop them. */
+    private static volatile double sink;
+
+    /**
+     * The main method runs the synchronized baseline and the compare-and-set balances with the same load.
+     *
+     * @param args the number of threads, the number of accounts and the seconds of each run
+     * @throws InterruptedException if the benchmark is interrupted
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int accounts = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        System.out.println(threads + " threads, " + accounts + " hot accounts, " + seconds + " s per run");
+
+        SynchronizedBalance[] locked = new SynchronizedBalance[accounts];
+        for (int i = 0; i < accounts; i++) {
+            locked[i] = new SynchronizedBalance(STARTING_BALANCE);
+        }
+        run("synchronized", threads, seconds, new Target() {
+            public void deposit(int account, double amount) {
+                locked[account].deposit(amount);
+            }
+
+            public boolean withdraw(int account, double amount) {
+                return locked[account].withdraw(amount);
+            }
+
+            public double balance(int account) {
+                return locked[account].getBalance();
+            }
+
+            public int size() {
+                return accounts;
+            }
+        });
+
+        Account[] hot = new Account[accounts];
+        for (int i = 0; i < accounts; i++) {
+            hot[i] = new Checking(6_000_000 + i, STARTING_BALANCE, null);
+        }
+        run("compare-and-set", threads, seconds, new Target() {
+            public void deposit(int account, double amount) {
+                hot[account].deposit(amount);
+            }
+
+            public boolean withdraw(int account, double amount) {
+                return hot[account].tryDebit(amount);
+            }
+
+            public double balance(int account) {
+                return hot[account].getBalance();
+            }
+
+            public int size() {
+                return accounts;
+            }
+        });
+    }
+
+    /**
+     * This method starts the threads, lets them run and reports the operations per second and
+     * whether the balances match the money moved.
+     *
+     * @param name    the name of the run
+     * @param threads the number of threads
+     * @param seconds how long the threads run
+     * @param target  the accounts to change
+     * @throws InterruptedException if the run is interrupted
+     */
+    private static void run(String name, int threads, int seconds, Target target) throws InterruptedException {
+        int accounts = target.size();
+        LongAdder operations = new LongAdder();
+        LongAdder movedCents = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long done = 0;
+                long cents = 0;
+                while ((done & 0xFF) != 0 || System.nanoTime() < deadline) {
+                    int account = random.nextInt(accounts);
+                    int kind = random.nextInt(10);
+                    long amount = 1 + random.nextInt(10_000);
+                    if (kind < 5) {
+                        target.deposit(account, amount / 100.0);
+                        cents += amount;
+                    } else if (kind < 8) {
+                        if (target.withdraw(account, amount / 100.0)) {
+                            cents -= amount;
+                        }
+                    } else {
+                        sink = target.balance(account);
+                    }
+                    done++;
+                }
+                operations.add(done);
+                movedCents.add(cents);
+            });
+            workers[t].start();
+        }
+
+        long started = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double elapsed = (System.nanoTime() - started) / 1_000_000_000.0;
+
+        long totalCents = 0;
+        for (int i = 0; i < accounts; i++) {
+            totalCents += Math.round(target.balance(i) * 100);
+        }
+        long expectedCents = Math.round(STARTING_BALANCE * 100) * accounts + movedCents.sum();
+        System.out.printf("%-16s %,14.0f ops/s  balances %s%n", name, operations.sum() / elapsed,
+                totalCents == expectedCents ? "match" : "DIFFER by " + (totalCents - expectedCents) + " cents");
+    }
+
+    /**
+     * The Target interface is the set of accounts a run changes.
+     */
+    private interface Target {
+
+        /**
+         * This method adds money to an account.
+         *
+         * @param account the index of the account
+         * @param amount  the amount to add
+         */
+        void deposit(int account, double amount);
+
+        /**
+         * This method takes money out of an account if the balance covers it.
+         *
+         * @param account the index of the account
+         * @param amount  the amount to take out
+         * @return true if the money was taken out
+         */
+        boolean withdraw(int account, double amount);
+
+        /**
+         * This method reads the balance of an account.
+         *
+         * @param account the index of the account
+         * @return the balance
+         */
+        double balance(int account);
+
+        /**
+         * This method returns the number of accounts.
+         *
+         * @return the number of accounts
+         */
+        int size();
+    }
+
+    /**
+     * The SynchronizedBalance class is the baseline: a double balance guarded by the monitor of
+     * the account, so every operation, inquiries included, takes the lock.
+     */
+    private static final class SynchronizedBalance {
+
+        /** The current balance. */
+        private double balance;
+
+        SynchronizedBalance(double balance) {
+            this.balance = balance;
+        }
+
+        synchronized void deposit(double amount) {
+            balance += amount;
+        }
+
+        synchronized boolean withdraw(double amount) {
+            if (amount > balance) {
+                return false;
+            }
+            balance -= amount;
+            return true;
+        }
+
+        synchronized double getBalance() {
+            return balance;
+        }
+    }
+}
@@ -0,0 +1,520 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * The BalanceJournal class is a write-ahead journal of every change to a balance made by a
+ * transaction: deposits, withdrawals, transfers and payments, whether they come from the menu or
+ * from the transactions file, and the balances set back by a resumed run of the transactions file.
+ * Every change is appended as a fixed size binary record:
+ * <ul>
+ *   <li>the sequence number of the record, starting at 1 and never reused,</li>
+ *   <li>the operation, with three bytes of padding,</li>
+ *   <li>the numbers of the account the money comes from and goes to, 0 when there is none,</li>
+ *   <li>the amount and the balances of both accounts right after the change, in cents,</li>
+ *   <li>a CRC32 of the fields above, so a record cut short by a crash is recognized.</li>
+ * </ul>
+ *
+ * <p>Records are appended in memory right after the change and written to disk by a single
+ * writer thread. The writer takes every record appended since its last write, writes them
+ * in one call and forces them to disk once (group commit), so with many sessions or a whole batch
+ * of transactions one fsync covers hundreds of changes. A change is acknowledged (its message
+ * shown or logged) only after flush has returned, that is once its record is on disk.</p>
+ *
+ * <p>The journal is turned on by starting the JVM with {@code -Dbank.journal=true}; without it
+ * append and flush do nothing.</p>
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class BalanceJournal {
+
+    /**
+     * The Op enum lists the changes the journal records, with the code stored in a record.
+     */
+    public enum Op {
+        /** Money added to an account. */
+        DEPOSIT(1),
+        /** Money taken out of an account. */
+        WITHDRAW(2),
+        /** Money moved between two accounts of the same user. */
+        TRANSFER(3),
+        /** Money sent from one user to another. */
+        PAY(4),
+        /** Interest paid into an account. */
+        INTEREST(5),
+        /** A balance set back to the one of an IngestCheckpoint, the amount being the difference. */
+        ADJUST(6);
+
+        /** The code of the operation in a record. */
+        private final byte code;
+
+        Op(int code) {
+            this.code = (byte) code;
+        }
+
+        /**
+         * This method retrieves the code of the operation in a record.
+         *
+         * @return the code
+         */
+        public byte getCode() {
+            return code;
+        }
+
+        /**
+         * This method finds the operation with the given code.
+         *
+         * @param code the code stored in a record
+         * @return the operation, or null if the code is not an operation
+         */
+        public static Op fromCode(byte code) {
+            for (Op op : values()) {
+                if (op.code == code) {
+                    return op;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Whether changes are journaled. It is turned on by starting the JVM with
+     * {@code -Dbank.journal=true}.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("bank.journal");
+
+    /** The journal file, BankUsers.journal unless the JVM is started with {@code -Dbank.journalFile=name}. */
+    public static final String JOURNAL_FILE = System.getProperty("bank.journalFile", "BankUsers.journal");
+
+    /** Size of a record: sequence, operation and padding, two accounts, three amounts and the CRC. */
+    public static final int RECORD_SIZE = 8 + 4 + 4 + 4 + 8 + 8 + 8 + 4;
+
+    /** Size of the records appended but not yet written after which append waits for the writer. */
+    private static final int MAX_PENDING = 4 * 1024 * 1024;
+
+    /** The journal everyone appends to, opened on the first append. */
+    private static BalanceJournal shared;
+
+    /** The journal file. */
+    private final FileChannel channel;
+
+    /** Guards the buffers and the sequence numbers. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Signaled when records are appended. */
+    private final Condition appended = lock.newCondition();
+
+    /** Signaled when the writer put records on disk or failed. */
+    private final Condition written = lock.newCondition();
+
+    /** The records appended since the writer last took them. */
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+
+    /** The records being written, swapped with pending by the writer. */
+    private ByteBuffer writing = ByteBuffer.allocate(64 * 1024);
+
+    /** The checksum of the records, only used while the lock is held. */
+    private final CRC32 crc = new CRC32();
+
+    /** The sequence number of the last record appended. */
+    private long lastSequence;
+
+    /** The sequence number of the last record on disk. */
+    private long durableSequence;
+
+    /** The number of times the writer forced the journal to disk. */
+    private long syncs;
+
+    /** The error that stopped the writer, or null. */
+    private IOException failure;
+
+    /** Whether close was called. */
+    private boolean closed;
+
+    /**
+     * This constructor opens the journal file and starts its writer. The sequence numbers go on
+     * from the last complete record of the file, and a record cut short by a crash is dropped.
+     *
+     * @param path the journal file
+     * @throws IOException if the file cannot be opened
+     */
+    private BalanceJournal(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        long end = size - size % RECORD_SIZE;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        while (end > 0) {
+            record.clear();
+            while (record.hasRemaining()) {
+                if (channel.read(record, end - RECORD_SIZE + record.position()) < 0) {
+                    break;
+                }
+            }
+            if (!record.hasRemaining() && checksum(record.array()) == record.getInt(RECORD_SIZE - 4)) {
+                lastSequence = record.getLong(0);
+                break;
+            }
+            end -= RECORD_SIZE;
+        }
+        if (end < size) {
+            channel.truncate(end);
+            channel.force(true);
+        }
+        channel.position(end);
+        durableSequence = lastSequence;
+
+        Thread writer = new Thread(this::writeLoop, "balance-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * This method returns the shared journal, opening it on first use.
+     *
+     * @return the journal
+     * @throws IOException if the journal file cannot be opened
+     */
+    private static synchronized BalanceJournal shared() throws IOException {
+        if (shared == null) {
+            shared = new BalanceJournal(Paths.get(JOURNAL_FILE));
+        }
+        return shared;
+    }
+
+    /**
+     * This method checks if appended changes are recorded anywhere, by the journal or by the
+     * EventLog. AccountLocks only locks a deposit or a withdrawal when they are.
+     *
+     * @return true if append records the changes
+     */
+    public static boolean isRecording() {
+        return ENABLED || EventLog.ENABLED;
+    }
+
+    /**
+     * This method appends the record of a change, right after the change. It must be called while
+     * holding the AccountLocks of every account the change touched, as AccountLocks.transferCents,
+     * depositCents and withdrawCents do, so the records of an account are in the order its balance
+     * changed and the balance of its last record is its balance. The record is not on disk yet when
+     * the method returns, call flush before acknowledging it. The change is also recorded to the
+     * EventLog, which is turned on separately.
+     *
+     * @param op               what the change did
+     * @param from             the account the money came from, or null
+     * @param to               the account the money went to, or null
+     * @param amountCents      the amount of the change, in cents
+     * @param fromBalanceCents the balance of from right after the change, in cents
+     * @param toBalanceCents   the balance of to right after the change, in cents
+     */
+    public static void append(Op op, Account from, Account to, long amountCents, long fromBalanceCents, long toBalanceCents) {
+        if (EventLog.ENABLED) {
+            EventLog.record(EventLog.Type.of(op), from, to, amountCents, fromBalanceCents, toBalanceCents);
+        }
+        if (!ENABLED) {
+            return;
+        }
+        BalanceJournal journal;
+        try {
+            journal = shared();
+        } catch (IOException e) {
+            System.out.println("Could not open " + JOURNAL_FILE + ": " + e.getMessage());
+            return;
+        }
+        journal.add(op, from == null ? 0 : from.getAccountNum(), to == null ? 0 : to.getAccountNum(),
+                amountCents, fromBalanceCents, toBalanceCents);
+    }
+
+    /**
+     * This method appends the record of a change made on accounts known by their number, such as
+     * the interest paid by an AccountStore scan. It must be called while holding their
+     * AccountLocks, like the other append.
+     *
+     * @param op               what the change did
+     * @param fromAccount      the number of the account the money came from, or 0
+     * @param toAccount        the number of the account the money went to, or 0
+     * @param amountCents      the amount of the change, in cents
+     * @param fromBalanceCents the balance of the source account right after the change, in cents
+     * @param toBalanceCents   the balance of the target account right after the change, in cents
+     */
+    public static void append(Op op, int fromAccount, int toAccount, long amountCents, long fromBalanceCents, long toBalanceCents) {
+        if (EventLog.ENABLED) {
+            EventLog.record(EventLog.Type.of(op), fromAccount, toAccount, amountCents, fromBalanceCents, toBalanceCents);
+        }
+        if (!ENABLED) {
+            return;
+        }
+        try {
+            shared().add(op, fromAccount, toAccount, amountCents, fromBalanceCents, toBalanceCents);
+        } catch (IOException e) {
+            System.out.println("Could not open " + JOURNAL_FILE + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * This method waits until every record appended so far is on disk. Records appended by other
+     * threads in the meantime are written by the same fsync.
+     *
+     * @throws IOException if the journal could not be written
+     */
+    public static void flush() throws IOException {
+        if (!ENABLED) {
+            return;
+        }
+        BalanceJournal journal;
+        synchronized (BalanceJournal.class) {
+            journal = shared;
+        }
+        if (journal != null) {
+            journal.awaitDurable();
+        }
+    }
+
+    /**
+     * This method flushes the journal like flush, but reports a failure on the console instead of
+     * throwing it, for the menu and the single transactions, where the change was made already.
+     *
+     * @return true if every record is on disk, false if the journal could not be written
+     */
+    public static boolean flushOrReport() {
+        try {
+            flush();
+            return true;
+        } catch (IOException e) {
+            System.out.println("The change could not be saved to " + JOURNAL_FILE + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * This method returns the sequence number of the last record appended, opening the journal
+     * to find it if needed. A snapshot stores it to know which records it already includes.
+     *
+     * @return the last sequence number, 0 if nothing was journaled or the journal is off
+     */
+    public static long getLastSequence() {
+        if (!ENABLED) {
+            return 0;
+        }
+        BalanceJournal journal;
+        try {
+            journal = shared();
+        } catch (IOException e) {
+            System.out.println("Could not open " + JOURNAL_FILE + ": " + e.getMessage());
+            return 0;
+        }
+        journal.lock.lock();
+        try {
+            return journal.lastSequence;
+        } finally {
+            journal.lock.unlock();
+        }
+    }
+
+    /**
+     * This method checks if the journal file is open in this process, after which it must not be
+     * truncated by a recovery.
+     *
+     * @return true if the journal is open
+     */
+    public static boolean isOpen() {
+        return current() != null;
+    }
+
+    /**
+     * This method returns how many times the journal was forced to disk, which divided into the
+     * number of records gives the size of the group commits.
+     *
+     * @return the number of fsyncs
+     */
+    public static long getSyncCount() {
+        BalanceJournal journal = current();
+        if (journal == null) {
+            return 0;
+        }
+        journal.lock.lock();
+        try {
+            return journal.syncs;
+        } finally {
+            journal.lock.unlock();
+        }
+    }
+
+    /**
+     * This method writes the records still pending and closes the journal. A later append opens
+     * it again.
+     *
+     * @throws IOException if the journal could not be written
+     */
+    public static void close() throws IOException {
+        BalanceJournal journal;
+        synchronized (BalanceJournal.class) {
+            journal = shared;
+            shared = null;
+        }
+        if (journal != null) {
+            try {
+                journal.awaitDurable();
+            } finally {
+                journal.shutdown();
+            }
+        }
+    }
+
+    /**
+     * This method returns the shared journal without opening it.
+     *
+     * @return the journal, or null if it is not open
+     */
+    private static synchronized BalanceJournal current() {
+        return shared;
+    }
+
+    /**
+     * This method appends a record to the pending buffer, waiting for the writer if too many
+     * records are pending already.
+     *
+     * @param op               what the change did
+     * @param fromAccount      the number of the account the money came from, or 0
+     * @param toAccount        the number of the account the money went to, or 0
+     * @param amountCents      the amount, in cents
+     * @param fromBalanceCents the balance of the source account after the change, in cents
+     * @param toBalanceCents   the balance of the target account after the change, in cents
+     */
+    private void add(Op op, int fromAccount, int toAccount, long amountCents, long fromBalanceCents, long toBalanceCents) {
+        lock.lock();
+        try {
+            while (pending.position() >= MAX_PENDING && failure == null && !closed) {
+                written.awaitUninterruptibly();
+            }
+            if (pending.remaining() < RECORD_SIZE) {
+                ByteBuffer larger = ByteBuffer.allocate(pending.capacity() * 2);
+                pending.flip();
+                pending = larger.put(pending);
+            }
+            int start = pending.position();
+            pending.putLong(++lastSequence)
+                    .put(op.getCode()).put((byte) 0).put((byte) 0).put((byte) 0)
+                    .putInt(fromAccount)
+                    .putInt(toAccount)
+                    .putLong(amountCents)
+                    .putLong(fromBalanceCents)
+                    .putLong(toBalanceCents);
+            crc.reset();
+            crc.update(pending.array(), start, RECORD_SIZE - 4);
+            pending.putInt((int) crc.getValue());
+            appended.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method waits until the last record appended so far is on disk.
+     *
+     * @throws IOException if the writer failed
+     */
+    private void awaitDurable() throws IOException {
+        lock.lock();
+        try {
+            long target = lastSequence;
+            while (durableSequence < target && failure == null) {
+                written.awaitUninterruptibly();
+            }
+            if (durableSequence < target) {
+                throw new IOException("Could not write " + JOURNAL_FILE + ": " + failure.getMessage(), failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The writer thread: takes every pending record, writes them at once and forces them to disk,
+     * then wakes up the threads waiting for them.
+     */
+    private void writeLoop() {
+        while (true) {
+            long upTo;
+            lock.lock();
+            try {
+                while (pending.position() == 0 && !closed) {
+                    appended.awaitUninterruptibly();
+                }
+                if (pending.position() == 0) {
+                    return; // closed with nothing left to write
+                }
+                ByteBuffer full = pending;
+                pending = writing;
+                writing = full;
+                upTo = lastSequence;
+                written.signalAll(); // appenders waiting on a full buffer can go on
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            try {
+                writing.flip();
+                while (writing.hasRemaining()) {
+                    channel.write(writing);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                error = e;
+            }
+            writing.clear();
+
+            lock.lock();
+            try {
+                if (error != null) {
+                    failure = error;
+                    written.signalAll();
+                    return;
+                }
+                durableSequence = upTo;
+                syncs++;
+                written.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * This method stops the writer once the pending records are written and closes the file.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    private void shutdown() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            appended.signalAll();
+            written.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        channel.close();
+    }
+
+    /**
+     * This method computes the checksum stored at the end of a record.
+     *
+     * @param record the bytes of a record
+     * @return the CRC32 of every field but the checksum itself
+     */
+    static int checksum(byte[] record) {
+        CRC32 checksum = new CRC32();
+        checksum.update(record, 0, RECORD_SIZE - 4);
+        return (int) checksum.getValue();
+    }
+}
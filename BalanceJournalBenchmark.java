@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The BalanceJournalBenchmark class measures how many deposits per second can be made durable
+ * when many threads deposit at once. It compares the BalanceJournal, where one fsync covers every
+ * record appended while the previous one was running (group commit), with a baseline that writes
+ * and forces every record on its own, the simple way to make each change durable.
+ *
+ * <p>Each deposit is only counted once its record is on disk, so both runs give the same
+ * guarantee. The journals are written to temporary files that are deleted at the end.</p>
+ *
+ * <p>Usage: {@code java BalanceJournalBenchmark [threads] [seconds]}, 32 threads and 3 seconds
+ * per run by default.</p>
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class BalanceJournalBenchmark {
+
+    /** The number of accounts deposited into. */
+    private static final int ACCOUNTS = 64;
+
+    /**
+     * The main method runs the fsync-per-record baseline and the group commit journal with the
+     * same load.
+     *
+     * @param args the number of threads and the seconds of each run
+     * @throws Exception if a journal cannot be written or the benchmark is interrupted
+     */
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        Path baselineFile = Files.createTempFile("journal-baseline", ".bin");
+        Path journalFile = Files.createTempFile("journal-group", ".bin");
+        // read by BalanceJournal when it is first used, below
+        System.setProperty("bank.journal", "true");
+        System.setProperty("bank.journalFile", journalFile.toString());
+
+        Account[] accounts = new Account[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts[i] = new Checking(7_000_000 + i, 0, null);
+        }
+        System.out.println(threads + " threads, " + seconds + " s per run");
+
+        try (FileChannel channel = FileChannel.open(baselineFile, StandardOpenOption.WRITE)) {
+            run("fsync per record", threads, seconds, accounts, (account, amount) -> {
+                double balance = account.deposit(amount);
+                ByteBuffer record = ByteBuffer.allocate(BalanceJournal.RECORD_SIZE);
+                record.putInt(16, account.getAccountNum()).putLong(20, Money.toCents(amount))
+                        .putLong(36, Money.toCents(balance));
+                synchronized (channel) {
+                    while (record.hasRemaining()) {
+                        channel.write(record);
+                    }
+                    channel.force(false);
+                }
+            });
+        }
+
+        run("group commit", threads, seconds, accounts, (account, amount) -> {
+            AccountLocks.depositCents(account, Money.toCents(amount));
+            BalanceJournal.flush();
+        });
+        System.out.println("group commit: " + BalanceJournal.getLastSequence() + " records in "
+                + BalanceJournal.getSyncCount() + " fsyncs");
+
+        BalanceJournal.close();
+        Files.deleteIfExists(baselineFile);
+        Files.deleteIfExists(journalFile);
+    }
+
+    /**
+     * This method runs durable deposits on every thread for a number of seconds and prints how
+     * many were made.
+     *
+     * @param name     the name of the run
+     * @param threads  the number of threads
+     * @param seconds  the length of the run
+     * @param accounts the accounts to deposit into
+     * @param deposit  makes one deposit and returns once it is durable
+     * @throws InterruptedException if the benchmark is interrupted
+     */
+    private static void run(String name, int threads, int seconds, Account[] accounts, Deposit deposit)
+            throws InterruptedException {
+        LongAdder done = new LongAdder();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        CountDownLatch finished = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    while (System.nanoTime() < deadline) {
+                        deposit.apply(accounts[random.nextInt(accounts.length)], 1 + random.nextInt(100));
+                        done.increment();
+                    }
+                } catch (IOException e) {
+                    System.out.println(name + " failed: " + e.getMessage());
+                } finally {
+                    finished.countDown();
+                }
+            }).start();
+        }
+        finished.await();
+        System.out.printf("%-17s %,12d deposits/s%n", name, done.sum() / seconds);
+    }
+
+    /**
+     * The Deposit interface makes one deposit durable.
+     */
+    private interface Deposit {
+
+        /**
+         * This method deposits an amount and returns once the change is on disk.
+         *
+         * @param account the account to deposit into
+         * @param amount  the amount to deposit
+         * @throws IOException if the change cannot be written
+         */
+        void apply(Account account, double amount) throws IOException;
+    }
+}
@@ -0,0 +1,68 @@
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The BalanceOverlay class is a copy-on-write view of the balances for a dry run. Reading an
+ * account the overlay has not changed reads its real balance; the first change copies that
+ * balance into the overlay and every later read and change of the account uses the copy, so the
+ * real balances are never modified however many transactions are simulated.
+ *
+ * <p>The overlay can be used by several threads as long as the changes of one account are made
+ * one after another, which is what TransactionPipeline.runByAccount guarantees.</p>
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class BalanceOverlay {
+
+    /** The simulated balances of the accounts changed so far, in cents. */
+    private final ConcurrentHashMap<Account, Long> changed = new ConcurrentHashMap<>();
+
+    /**
+     * This method reads the balance of an account as the simulation sees it.
+     *
+     * @param account the account
+     * @return the simulated balance in cents
+     */
+    public long getBalanceCents(Account account) {
+        Long cents = changed.get(account);
+        return cents != null ? cents : account.getBalanceCents();
+    }
+
+    /**
+     * This method adds money to the simulated balance of an account.
+     *
+     * @param account the account
+     * @param cents   the cents to add
+     */
+    public void add(Account account, long cents) {
+        changed.put(account, getBalanceCents(account) + cents);
+    }
+
+    /**
+     * This method takes money out of the simulated balance of an account only if it stays at or
+     * above 0, like Account.tryDebit.
+     *
+     * @param account the account
+     * @param cents   the cents to take out
+     * @return true if the money was taken out, false if the simulated balance was too low
+     */
+    public boolean tryDebit(Account account, long cents) {
+        long balance = getBalanceCents(account);
+        if (balance - cents < 0) {
+            return false;
+        }
+        changed.put(account, balance - cents);
+        return true;
+    }
+
+    /**
+     * This method returns how many accounts the simulation changed.
+     *
+     * @return the number of accounts with a copied balance
+     */
+    public int size() {
+        return changed.size();
+    }
+}
@@ -141,8 +141,48 @@ public class BankTest {
                 "Expected to display updated Savings balance.");
     }
 
+    @Test
+    public void testWithdrawTransactionTakesMoneyOut() {
+        // A "withdraws" row of the transactions file used to add the amount to the balance
+        PreparedTransaction transaction = PreparedTransaction.prepare(PreparedTransaction.Action.WITHDRAWS,
+                "Daniela Castro", "Checking", null, null, 20000, nameMap);
+        String message = transaction.apply();
+
+        assertTrue(transaction.isSuccessful(), "Expected the withdrawal to go through.");
+        assertEquals(800.0, customerTest.getCheckingAccount().getBalance(),
+                "Expected Checking account balance to be 800.0 after withdrawing 200.0.");
+        assertTrue(message.contains("has been withdrawn from Daniela Castro"),
+                "Expected the message to describe a withdrawal.");
+    }
+
+    @Test
+    public void testWithdrawTransactionOverBalanceFails() {
+        PreparedTransaction transaction = PreparedTransaction.prepare(PreparedTransaction.Action.WITHDRAWS,
+                "Daniela Castro", "Checking", null, null, 150000, nameMap);
+        transaction.apply();
+
+        assertFalse(transaction.isSuccessful(), "Expected a withdrawal over the balance to fail.");
+        assertEquals(PreparedTransaction.Failure.INSUFFICIENT_FUNDS, transaction.getFailure());
+        assertEquals(1000.0, customerTest.getCheckingAccount().getBalance(),
+                "Expected Checking account balance to stay 1000.0.");
+    }
+
+    @Test
+    public void testTransferTransactionCreditsTheAmount() {
+        // A "transfers" row used to set the payee's balance to the payer's new balance plus the amount
+        PreparedTransaction transaction = PreparedTransaction.prepare(PreparedTransaction.Action.TRANSFERS,
+                "Daniela Castro", "Checking", "Daniela Castro", "Savings", 50000, nameMap);
+        transaction.apply();
+
+        assertTrue(transaction.isSuccessful(), "Expected the transfer to go through.");
+        assertEquals(500.0, customerTest.getCheckingAccount().getBalance(),
+                "Expected Checking account balance to be 500.0 after transferring 500.0.");
+        assertEquals(2500.0, customerTest.getSavingAccount().getBalance(),
+                "Expected Saving account balance to be 2500.0 after receiving 500.0.");
+    }
+
     @AfterEach
     public void tearDown() {
         System.setOut(originalSystemOut);  // Restore original System.out
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
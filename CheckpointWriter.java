@@ -0,0 +1,258 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ConcurrentModificationException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The CheckpointWriter class writes the customer file so that a crash can never leave it half
+ * written. The rows are streamed through a large buffer into a temporary file, the temporary file
+ * is flushed to disk once, and only then renamed over the customer file in a single step.
+ *
+ * <p>Every file it writes is framed by two comment rows that readers skip:</p>
+ * <pre>
+ * #generation=7
+ * Identification Number,First Name,...
+ * ...one row per customer...
+ * #end,generation=7,rows=103
+ * </pre>
+ * The generation grows by one with every checkpoint. A file that starts with a generation but
+ * does not end with the matching trailer was cut short, and {@link #isComplete(String)} reports
+ * it so the loader can use the snapshot instead. Files without a generation (written by hand or
+ * by an older version of the bank) are accepted as they are.
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class CheckpointWriter {
+
+    /** The first row of a checkpoint starts with this marker, followed by the generation. */
+    public static final String GENERATION_PREFIX = "#generation=";
+
+    /** The last row of a checkpoint starts with this marker. */
+    public static final String TRAILER_PREFIX = "#end,generation=";
+
+    /** Size of the buffer the rows are encoded into before they are written to the channel. */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    /** The trailer is always found in this many bytes at the end of the file. */
+    private static final int TRAILER_SEARCH_SIZE = 128;
+
+    /** Whether a checkpoint was requested and has not started yet. */
+    private static final AtomicBoolean pending = new AtomicBoolean();
+
+    /** The checkpoint that the next requests will share. */
+    private static Future<?> nextCheckpoint = CompletableFuture.completedFuture(null);
+
+    /** The thread checkpoints run on, so two of them never write at the same time. */
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "checkpoint-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** This class only has static members. */
+    private CheckpointWriter() {
+    }
+
+    /**
+     * This method writes the given customers to a file, replacing it only once every row is on disk.
+     *
+     * @param fileName    the file to write
+     * @param customerMap the customers to write
+     * @return the generation of the new file
+     * @throws IOException if the file cannot be written, in which case the old file is left as it was
+     */
+    public static long write(String fileName, Map<String, Customer> customerMap) throws IOException {
+        Path target = Paths.get(fileName);
+        Path temp = Paths.get(fileName + ".tmp");
+        long generation = readGeneration(target) + 1;
+        long rows = 0;
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            StringBuilder text = new StringBuilder(8 * 1024);
+
+            text.append(GENERATION_PREFIX).append(generation).append('\n');
+            text.append(PopulationHashmap.CSV_HEADER).append('\n');
+            for (Customer customer : customerMap.values()) {
+                PopulationHashmap.appendRow(text, customer).append('\n');
+                rows++;
+                if (text.length() >= 8 * 1024) {
+                    encode(text, encoder, buffer, channel);
+                }
+            }
+            text.append(TRAILER_PREFIX).append(generation).append(",rows=").append(rows).append('\n');
+            encode(text, encoder, buffer, channel);
+            writeFully(buffer, channel);
+
+            // one flush to disk for the whole file, right before it becomes visible
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return generation;
+    }
+
+    /**
+     * This method asks for the shared customer base to be written to the customer file on the
+     * background thread. Requests made while a checkpoint is waiting to start are merged into it,
+     * so a burst of changes costs a single write.
+     *
+     * @return the checkpoint that will include every change made before this call
+     */
+    public static Future<?> requestCheckpoint() {
+        synchronized (pending) {
+            if (pending.compareAndSet(false, true)) {
+                nextCheckpoint = writer.submit(CheckpointWriter::runCheckpoint);
+            }
+            return nextCheckpoint;
+        }
+    }
+
+    /**
+     * This method writes the customer file for requestCheckpoint.
+     */
+    private static void runCheckpoint() {
+        // requests from now on need a new checkpoint, this one may already be past their changes
+        pending.set(false);
+        try {
+            write(PopulationHashmap.CUSTOMER_FILE, CustomerRegistry.getIdMap());
+        } catch (ConcurrentModificationException e) {
+            // a customer was added while writing, the old file is untouched so simply try again
+            requestCheckpoint();
+        } catch (IOException e) {
+            System.out.println("Checkpoint of " + PopulationHashmap.CUSTOMER_FILE + " failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * This method checks that a customer file is not a checkpoint that was cut short.
+     *
+     * @param fileName the customer file
+     * @return false if the file starts with a generation but lacks its trailer, true otherwise
+     */
+    public static boolean isComplete(String fileName) {
+        Path path = Paths.get(fileName);
+        try {
+            if (!Files.exists(path)) {
+                return true;
+            }
+            long generation = readGeneration(path);
+            if (generation == 0) {
+                return true;
+            }
+            String trailer = readLastLine(path);
+            if (trailer.startsWith(TRAILER_PREFIX + generation + ",")) {
+                return true;
+            }
+            System.out.println(fileName + " generation " + generation + " is incomplete, its trailer is missing.");
+            return false;
+        } catch (IOException e) {
+            System.out.println("Could not check " + fileName + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * This method reads the generation written in the first row of a checkpoint.
+     *
+     * @param path the customer file
+     * @return the generation, or 0 if the file does not exist or has no generation
+     * @throws IOException if the file cannot be read
+     */
+    public static long readGeneration(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer start = ByteBuffer.allocate(GENERATION_PREFIX.length() + 20);
+            channel.read(start, 0);
+            String firstLine = new String(start.array(), 0, start.position(), StandardCharsets.UTF_8);
+            if (!firstLine.startsWith(GENERATION_PREFIX)) {
+                return 0;
+            }
+            int end = GENERATION_PREFIX.length();
+            while (end < firstLine.length() && Character.isDigit(firstLine.charAt(end))) {
+                end++;
+            }
+            try {
+                return Long.parseLong(firstLine.substring(GENERATION_PREFIX.length(), end));
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * This method reads the last row of a file without reading the rest of it.
+     *
+     * @param path the file
+     * @return the last row, without its line break
+     * @throws IOException if the file cannot be read
+     */
+    private static String readLastLine(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int length = (int) Math.min(size, TRAILER_SEARCH_SIZE);
+            ByteBuffer tail = ByteBuffer.allocate(length);
+            channel.read(tail, size - length);
+            String text = new String(tail.array(), 0, tail.position(), StandardCharsets.UTF_8).stripTrailing();
+            return text.substring(text.lastIndexOf('\n') + 1);
+        }
+    }
+
+    /**
+     * This method encodes the pending text into the byte buffer, writing the buffer to the
+     * channel every time it fills up. The text only holds whole rows, so no character is split.
+     *
+     * @param text    the rows waiting to be written, emptied by this method
+     * @param encoder the UTF-8 encoder
+     * @param buffer  the byte buffer in front of the channel
+     * @param channel the temporary file
+     * @throws IOException if the channel fails
+     */
+    private static void encode(StringBuilder text, CharsetEncoder encoder, ByteBuffer buffer, FileChannel channel) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(text);
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, false);
+            if (!result.isOverflow()) {
+                break;
+            }
+            writeFully(buffer, channel);
+        }
+        text.setLength(0);
+    }
+
+    /**
+     * This method writes everything in the byte buffer to the channel and empties the buffer.
+     *
+     * @param buffer  the byte buffer to write
+     * @param channel the temporary file
+     * @throws IOException if the channel fails
+     */
+    private static void writeFully(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,280 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The ConcurrentIntSet class is a set of ints stored in a plain int array with open addressing,
+ * so no Integer object is created per element. Membership checks read the array without locks
+ * or allocation, inserts claim an empty slot with a compare-and-set, and only growing the array
+ * blocks other inserts for a moment.
+ *
+ * <p>It also implements Set&lt;Integer&gt; so it can be handed to code that expects a regular set;
+ * those methods box the values and are meant for printing and tests, not for hot paths.</p>
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class ConcurrentIntSet extends AbstractSet<Integer> {
+
+    /** Marks an empty slot. The value itself is tracked apart in containsEmptyMarker. */
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    /** The array grows when it gets more than half full. */
+    private static final int MAX_LOAD_PERCENT = 50;
+
+    /** Gives volatile and compare-and-set access to the slots of the table. */
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    /** The slots of the set, its length is always a power of two. */
+    private volatile int[] table;
+
+    /** The number of values stored in the table. */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /** Whether the value used as the empty marker is in the set. */
+    private final AtomicBoolean containsEmptyMarker = new AtomicBoolean();
+
+    /** Inserts share the read lock, growing the table takes the write lock. */
+    private final ReentrantReadWriteLock resizeLock = new ReentrantReadWriteLock();
+
+    /**
+     * This constructor creates an empty set.
+     */
+    public ConcurrentIntSet() {
+        this(16);
+    }
+
+    /**
+     * This constructor creates an empty set with room for the expected number of values.
+     *
+     * @param expectedSize the number of values expected in the set
+     */
+    public ConcurrentIntSet(int expectedSize) {
+        table = newTable(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * This method checks if a value is in the set, without locking or allocating.
+     *
+     * @param value the value to look for
+     * @return true if the value is in the set, false otherwise
+     */
+    public boolean contains(int value) {
+        if (value == EMPTY) {
+            return containsEmptyMarker.get();
+        }
+        int[] slots = table;
+        int mask = slots.length - 1;
+        int index = hash(value) & mask;
+        while (true) {
+            int current = (int) SLOTS.getVolatile(slots, index);
+            if (current == value) {
+                return true;
+            }
+            if (current == EMPTY) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * This method adds a value to the set. It is safe to call from several threads at once.
+     *
+     * @param value the value to add
+     * @return true if the value was added, false if it was already in the set
+     */
+    public boolean add(int value) {
+        if (value == EMPTY) {
+            if (containsEmptyMarker.compareAndSet(false, true)) {
+                size.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        resizeLock.readLock().lock();
+        try {
+            int[] slots = table;
+            int mask = slots.length - 1;
+            int index = hash(value) & mask;
+            while (true) {
+                int current = (int) SLOTS.getVolatile(slots, index);
+                if (current == value) {
+                    return false;
+                }
+                if (current == EMPTY) {
+                    int witness = (int) SLOTS.compareAndExchange(slots, index, EMPTY, value);
+                    if (witness == EMPTY) {
+                        break;
+                    }
+                    if (witness == value) {
+                        return false; // another thread added the same value first
+                    }
+                }
+                index = (index + 1) & mask;
+            }
+        } finally {
+            resizeLock.readLock().unlock();
+        }
+
+        if ((long) size.incrementAndGet() * 100 > (long) table.length * MAX_LOAD_PERCENT) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * This method removes every value from the set.
+     */
+    @Override
+    public void clear() {
+        resizeLock.writeLock().lock();
+        try {
+            table = newTable(16);
+            size.set(0);
+            containsEmptyMarker.set(false);
+        } finally {
+            resizeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This method returns the number of values in the set.
+     *
+     * @return the number of values
+     */
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * This method estimates how many bytes of heap the set uses, mostly its slot array.
+     *
+     * @return the approximate memory used by the set, in bytes
+     */
+    public long memoryFootprint() {
+        // object headers and fields of the set, its lock and counters, plus the array header
+        return 160L + 16L + (long) table.length * Integer.BYTES;
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        return value instanceof Integer && contains(((Integer) value).intValue());
+    }
+
+    @Override
+    public boolean add(Integer value) {
+        return add(value.intValue());
+    }
+
+    /**
+     * This method iterates over the values present when it was created. Every value is boxed.
+     *
+     * @return an iterator over the values of the set
+     */
+    @Override
+    public Iterator<Integer> iterator() {
+        final int[] slots = table;
+        final boolean withMarker = containsEmptyMarker.get();
+        return new Iterator<Integer>() {
+            private int index = withMarker ? -1 : nextIndex(0);
+
+            @Override
+            public boolean hasNext() {
+                return index < slots.length;
+            }
+
+            @Override
+            public Integer next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int value = index < 0 ? EMPTY : (int) SLOTS.getVolatile(slots, index);
+                index = nextIndex(index + 1);
+                return value;
+            }
+
+            private int nextIndex(int from) {
+                int i = from;
+                while (i < slots.length && (int) SLOTS.getVolatile(slots, i) == EMPTY) {
+                    i++;
+                }
+                return i;
+            }
+        };
+    }
+
+    /**
+     * This method doubles the table once it is more than half full. Inserts wait while the
+     * values are copied, but membership checks keep reading the old table, which does not
+     * change during the copy.
+     */
+    private void grow() {
+        resizeLock.writeLock().lock();
+        try {
+            int[] oldSlots = table;
+            if ((long) size.get() * 100 <= (long) oldSlots.length * MAX_LOAD_PERCENT) {
+                return; // another thread already grew the table
+            }
+            int[] newSlots = newTable(oldSlots.length * 2);
+            int mask = newSlots.length - 1;
+            for (int value : oldSlots) {
+                if (value == EMPTY) {
+                    continue;
+                }
+                int index = hash(value) & mask;
+                while (newSlots[index] != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                newSlots[index] = value;
+            }
+            table = newSlots;
+        } finally {
+            resizeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This method creates a table with every slot empty.
+     *
+     * @param length the number of slots, a power of two
+     * @return the new table
+     */
+    private static int[] newTable(int length) {
+        int[] slots = new int[length];
+        Arrays.fill(slots, EMPTY);
+        return slots;
+    }
+
+    /**
+     * This method returns the smallest power of two table that keeps the set half empty.
+     *
+     * @param expectedSize the number of values expected in the set
+     * @return the number of slots to allocate
+     */
+    private static int tableSizeFor(int expectedSize) {
+        long needed = Math.max(16L, (long) expectedSize * 100 / MAX_LOAD_PERCENT + 1);
+        return (int) Math.min(1 << 30, Long.highestOneBit(needed - 1) << 1);
+    }
+
+    /**
+     * This method spreads the bits of a value so nearby account numbers land in different slots.
+     *
+     * @param value the value to hash
+     * @return the mixed hash
+     */
+    private static int hash(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
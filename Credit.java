@@ -10,9 +10,6 @@
  */
 public class Credit extends Account implements Withdrawable {
 
-    /** The credit limit for this account. */
-    private double creditMax;
-
     /**
      * This constructor intitializes a credit account with the specified account number, starting balance,
      * maximum credit limit, and account owner's information.
@@ -24,7 +21,7 @@ public class Credit extends Account implements Withdrawable {
      */
     public Credit(int accountNumber, double startingBalance, double creditMax, Person accountHolder) {
         super(accountNumber, startingBalance, accountHolder, "Credit");
-        this.creditMax = creditMax;
+        getStore().setCreditMax(getSlot(), creditMax);
     }
 
     /**
@@ -33,7 +30,7 @@ public class Credit extends Account implements Withdrawable {
      * @param creditMax the new maximum credit limit
      */
     public void setCreditMax(double creditMax) {
-        this.creditMax = creditMax;
+        getStore().setCreditMax(getSlot(), creditMax);
     }
 
     /**
@@ -42,7 +39,16 @@ public class Credit extends Account implements Withdrawable {
      * @return the maximum credit limit
      */
     public double getCreditMax() {
-        return this.creditMax;
+        return getStore().getCreditMax(getSlot());
+    }
+
+    /**
+     * This method returns the maximum credit limit for this account in cents.
+     *
+     * @return the maximum credit limit in cents
+     */
+    public long getCreditMaxCents() {
+        return getStore().getCreditMaxCents(getSlot());
     }
 
     /**
@@ -55,15 +61,14 @@ public class Credit extends Account implements Withdrawable {
      */
     @Override
     public boolean withdraw(double amount) {
-        double newBalance = getBalance() - amount;
-        if (allowedToWithdraw(amount)) {
-            setBalance(newBalance);
+        // the credit limit is checked inside the compare-and-set, so the debit cannot overshoot it
+        if (tryDebit(amount, -getCreditMaxCents())) {
             return true;
         }
         System.out.println("Withdrawal denied. Exceeds credit limit.");
         System.out.println("Current balance: $" + getBalance() + "\n" +
                 "Credit limit: $" + getCreditMax() + "\n" +
-                "Available credit: $" + (creditMax + getBalance()));
+                "Available credit: $" + (getCreditMax() + getBalance()));
         return false;
     }
 
@@ -75,7 +80,7 @@ public class Credit extends Account implements Withdrawable {
      */
     @Override
     public boolean allowedToWithdraw(double amount) {
-        return (getBalance() - amount) >= -creditMax;
+        return (getBalance() - amount) >= -getCreditMax();
     }
 
     /**
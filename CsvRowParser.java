@@ -0,0 +1,305 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * The CsvRowParser class reads comma separated rows from a Reader in a single pass.
+ * It is a small state machine that walks the input one character at a time, so quoted
+ * fields (like the address column of BankUsers.csv) can contain commas, escaped quotes
+ * ("") and even line breaks. The character and offset buffers are reused across rows,
+ * and the numeric columns can be read straight from the buffer without creating a String.
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class CsvRowParser implements CsvRowSource {
+
+    /** Size of the block read from the underlying Reader at a time. */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /** The source the rows are read from. */
+    private final Reader reader;
+
+    /** Block of characters read from the Reader but not consumed yet. */
+    private final char[] readBuffer = new char[READ_BUFFER_SIZE];
+
+    /** Position of the next unread character in readBuffer. */
+    private int readPosition;
+
+    /** Number of valid characters in readBuffer. */
+    private int readLimit;
+
+    /** The unquoted characters of the current row, one field after another. */
+    private char[] rowBuffer = new char[256];
+
+    /** Start offset of every field of the current row inside rowBuffer. */
+    private int[] fieldStarts = new int[16];
+
+    /** End offset (exclusive) of every field of the current row inside rowBuffer. */
+    private int[] fieldEnds = new int[16];
+
+    /** Number of fields in the current row. */
+    private int fieldCount;
+
+    /** Number of rows read so far, including the header. */
+    private long rowNumber;
+
+    /**
+     * This constructor creates a parser over the given Reader. The Reader is read in large
+     * blocks, so it does not need to be buffered.
+     *
+     * @param reader the source of the comma separated rows
+     */
+    public CsvRowParser(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * This method reads the next row into the reused buffers. Blank lines are skipped.
+     *
+     * @return true if a row was read, false if the end of the input was reached
+     * @throws IOException if the underlying Reader fails
+     */
+    @Override
+    public boolean nextRow() throws IOException {
+        int length = 0;
+        fieldCount = 0;
+        int fieldStart = 0;
+        boolean inQuotes = false;
+        boolean sawInput = false;
+
+        while (true) {
+            if (readPosition == readLimit && !fill()) {
+                if (!sawInput) {
+                    return false;
+                }
+                break;
+            }
+            char c = readBuffer[readPosition++];
+
+            if (inQuotes) {
+                if (c == '"') {
+                    if (peek() == '"') {
+                        readPosition++;
+                        length = append(length, '"');
+                    } else {
+                        inQuotes = false;
+                    }
+                } else {
+                    length = append(length, c);
+                }
+                continue;
+            }
+
+            if (c == '\r') {
+                continue;
+            }
+            if (c == '\n') {
+                if (!sawInput) {
+                    continue; // blank line
+                }
+                break;
+            }
+
+            sawInput = true;
+            if (c == '"') {
+                inQuotes = true;
+            } else if (c == ',') {
+                endField(fieldStart, length);
+                fieldStart = length;
+            } else {
+                length = append(length, c);
+            }
+        }
+
+        endField(fieldStart, length);
+        rowNumber++;
+        return true;
+    }
+
+    /**
+     * This method returns the number of fields of the current row.
+     *
+     * @return the number of fields
+     */
+    @Override
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * This method returns how many rows have been read so far, the header included.
+     *
+     * @return the number of rows read
+     */
+    @Override
+    public long getRowNumber() {
+        return rowNumber;
+    }
+
+    /**
+     * This method checks if the current row is a comment, a row whose first character is '#'.
+     *
+     * @return true if the row is a comment, false otherwise
+     */
+    @Override
+    public boolean isComment() {
+        return fieldCount > 0 && fieldEnds[0] > fieldStarts[0] && rowBuffer[fieldStarts[0]] == '#';
+    }
+
+    /**
+     * This method checks if a field of the current row is missing or only has spaces.
+     *
+     * @param index the index of the field
+     * @return true if the field is missing or blank, false otherwise
+     */
+    @Override
+    public boolean isBlank(int index) {
+        if (index < 0 || index >= fieldCount) {
+            return true;
+        }
+        for (int i = fieldStarts[index]; i < fieldEnds[index]; i++) {
+            if (!Character.isWhitespace(rowBuffer[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This method returns a field of the current row as a String.
+     *
+     * @param index the index of the field
+     * @return the value of the field, or an empty String if the row is shorter
+     */
+    @Override
+    public String getString(int index) {
+        if (index < 0 || index >= fieldCount) {
+            return "";
+        }
+        return new String(rowBuffer, fieldStarts[index], fieldEnds[index] - fieldStarts[index]);
+    }
+
+    /**
+     * This method parses a field of the current row as an int directly from the buffer.
+     *
+     * @param index the index of the field
+     * @return the int value of the field
+     * @throws NumberFormatException if the field is not a valid int
+     */
+    @Override
+    public int getInt(int index) {
+        checkIndex(index);
+        return NumberParser.parseInt(rowBuffer, fieldStarts[index], fieldEnds[index]);
+    }
+
+    /**
+     * This method parses a field of the current row as a double directly from the buffer.
+     *
+     * @param index the index of the field
+     * @return the double value of the field
+     * @throws NumberFormatException if the field is not a valid number
+     */
+    @Override
+    public double getDouble(int index) {
+        checkIndex(index);
+        return NumberParser.parseDouble(rowBuffer, fieldStarts[index], fieldEnds[index]);
+    }
+
+    /**
+     * This method parses a field of the current row as an amount in cents directly from the buffer.
+     *
+     * @param index the index of the field
+     * @return the amount of the field in cents
+     * @throws NumberFormatException if the field is not a valid number
+     */
+    @Override
+    public long getCents(int index) {
+        checkIndex(index);
+        return Money.parseCents(rowBuffer, fieldStarts[index], fieldEnds[index]);
+    }
+
+    /**
+     * This method closes the underlying Reader.
+     *
+     * @throws IOException if the Reader cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * This method makes sure a field exists in the current row.
+     *
+     * @param index the index of the field
+     * @throws NumberFormatException if the row does not have that field
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= fieldCount) {
+            throw new NumberFormatException("Missing column " + index + " in row " + rowNumber);
+        }
+    }
+
+    /**
+     * This method records the end of a field of the current row.
+     *
+     * @param start the start offset of the field in rowBuffer
+     * @param end   the end offset of the field in rowBuffer
+     */
+    private void endField(int start, int end) {
+        if (fieldCount == fieldStarts.length) {
+            fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+            fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+        }
+        fieldStarts[fieldCount] = start;
+        fieldEnds[fieldCount] = end;
+        fieldCount++;
+    }
+
+    /**
+     * This method adds a character to the row buffer, growing it when needed.
+     *
+     * @param length the current length of the row
+     * @param c      the character to add
+     * @return the new length of the row
+     */
+    private int append(int length, char c) {
+        if (length == rowBuffer.length) {
+            rowBuffer = Arrays.copyOf(rowBuffer, length * 2);
+        }
+        rowBuffer[length] = c;
+        return length + 1;
+    }
+
+    /**
+     * This method looks at the next character without consuming it.
+     *
+     * @return the next character, or -1 at the end of the input
+     * @throws IOException if the underlying Reader fails
+     */
+    private int peek() throws IOException {
+        if (readPosition == readLimit && !fill()) {
+            return -1;
+        }
+        return readBuffer[readPosition];
+    }
+
+    /**
+     * This method reads the next block of characters from the Reader.
+     *
+     * @return true if more characters were read, false at the end of the input
+     * @throws IOException if the underlying Reader fails
+     */
+    private boolean fill() throws IOException {
+        int read = reader.read(readBuffer, 0, readBuffer.length);
+        while (read == 0) {
+            read = reader.read(readBuffer, 0, readBuffer.length);
+        }
+        readPosition = 0;
+        readLimit = Math.max(read, 0);
+        return read > 0;
+    }
+}
@@ -0,0 +1,108 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+public class CsvRowParserTest {
+
+    // Two customers, the first with a quoted address that has a comma, an escaped quote and a line break
+    private static final String CSV = "Id,Name,Address,Balance\r\n"
+            + "198,Daniela,\"500 W \"\"University\"\" Ave,\nEl Paso\",1000.50\r\n"
+            + "\n"
+            + "# a comment row\n"
+            + "199,Aylin,Another Address,1500";
+
+    @Test
+    public void testQuotedFields() throws IOException {
+        try (CsvRowParser parser = new CsvRowParser(new StringReader(CSV))) {
+            assertRows(parser);
+        }
+    }
+
+    @Test
+    public void testQuotedFieldsReadOneCharacterAtATime() throws IOException {
+        // Every quote, escaped quote and line break falls on the edge of a block read from the Reader
+        try (CsvRowParser parser = new CsvRowParser(new TrickleReader(CSV))) {
+            assertRows(parser);
+        }
+    }
+
+    @Test
+    public void testMissingAndBlankColumns() throws IOException {
+        try (CsvRowParser parser = new CsvRowParser(new StringReader("1,  ,\n"))) {
+            assertTrue(parser.nextRow());
+            assertEquals(3, parser.getFieldCount());
+            assertFalse(parser.isBlank(0));
+            assertTrue(parser.isBlank(1));
+            assertTrue(parser.isBlank(2));
+            assertTrue(parser.isBlank(3));
+            assertEquals("", parser.getString(3));
+            assertThrows(NumberFormatException.class, () -> parser.getInt(3));
+            assertFalse(parser.nextRow());
+        }
+    }
+
+    @Test
+    public void testUnterminatedQuoteEndsWithTheInput() throws IOException {
+        try (CsvRowParser parser = new CsvRowParser(new StringReader("1,\"no end\n2,3"))) {
+            assertTrue(parser.nextRow());
+            assertEquals(2, parser.getFieldCount());
+            assertEquals("no end\n2,3", parser.getString(1));
+            assertFalse(parser.nextRow());
+        }
+    }
+
+    // Checks the rows of CSV, whatever the source they were read from
+    static void assertRows(CsvRowSource rows) throws IOException {
+        assertTrue(rows.nextRow());
+        assertEquals(4, rows.getFieldCount());
+        assertEquals("Address", rows.getString(2));
+
+        assertTrue(rows.nextRow());
+        assertEquals(4, rows.getFieldCount());
+        assertEquals(198, rows.getInt(0));
+        assertEquals("Daniela", rows.getString(1));
+        assertEquals("500 W \"University\" Ave,\nEl Paso", rows.getString(2));
+        assertEquals(1000.50, rows.getDouble(3));
+        assertEquals(100050, rows.getCents(3));
+
+        // The blank line is skipped
+        assertTrue(rows.nextRow());
+        assertTrue(rows.isComment());
+
+        assertTrue(rows.nextRow());
+        assertFalse(rows.isComment());
+        assertEquals(199, rows.getInt(0));
+        assertEquals("Another Address", rows.getString(2));
+        assertEquals(150000, rows.getCents(3));
+
+        assertFalse(rows.nextRow());
+        assertEquals(4, rows.getRowNumber());
+    }
+
+    // A Reader that hands out a single character per read
+    private static class TrickleReader extends Reader {
+        private final String text;
+        private int position;
+
+        TrickleReader(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (position == text.length()) {
+                return -1;
+            }
+            buffer[offset] = text.charAt(position++);
+            return 1;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,107 @@
+import java.io.IOException;
+
+/**
+ * CsvRowSource interface defines how the bank reads a CSV file one row at a time.
+ * Implementations keep the current row in reused buffers, so Strings are only built
+ * for the fields that are asked for and numbers can be parsed straight from the buffer.
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ */
+public interface CsvRowSource extends AutoCloseable {
+
+    /**
+     * Reads the next row. Blank lines are skipped.
+     *
+     * @return true if a row was read, false at the end of the input
+     * @throws IOException if the input cannot be read
+     */
+    boolean nextRow() throws IOException;
+
+    /**
+     * Returns the number of fields of the current row.
+     *
+     * @return the number of fields
+     */
+    int getFieldCount();
+
+    /**
+     * Returns how many rows have been read so far, the header included.
+     *
+     * @return the number of rows read
+     */
+    long getRowNumber();
+
+    /**
+     * Checks if a field of the current row is missing or only has spaces.
+     *
+     * @param index the index of the field
+     * @return true if the field is missing or blank, false otherwise
+     */
+    boolean isBlank(int index);
+
+    /**
+     * Checks if the current row is a comment, a row whose first character is '#'. Checkpoint
+     * files use comment rows for their generation marker and trailer.
+     *
+     * @return true if the row is a comment, false otherwise
+     */
+    boolean isComment();
+
+    /**
+     * Returns a field of the current row as a String.
+     *
+     * @param index the index of the field
+     * @return the value of the field, or an empty String if the row is shorter
+     */
+    String getString(int index);
+
+    /**
+     * Parses a field of the current row as an int.
+     *
+     * @param index the index of the field
+     * @return the int value of the field
+     * @throws NumberFormatException if the field is not a valid int
+     */
+    int getInt(int index);
+
+    /**
+     * Parses a field of the current row as a double.
+     *
+     * @param index the index of the field
+     * @return the double value of the field
+     * @throws NumberFormatException if the field is not a valid number
+     */
+    double getDouble(int index);
+
+    /**
+     * Parses a field of the current row as an amount of money in cents, see Money.
+     *
+     * @param index the index of the field
+     * @return the amount of the field in cents
+     * @throws NumberFormatException if the field is not a valid number
+     */
+    long getCents(int index);
+
+    /**
+     * Returns all the fields of the current row as Strings.
+     *
+     * @return an array with one String per field
+     */
+    default String[] getStrings() {
+        String[] fields = new String[getFieldCount()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = getString(i);
+        }
+        return fields;
+    }
+
+    /**
+     * Closes the underlying input.
+     *
+     * @throws IOException if the input cannot be closed
+     */
+    @Override
+    void close() throws IOException;
+}
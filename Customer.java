@@ -26,18 +26,6 @@ public class Customer extends Person {
     /** An array of all accounts associated with this customer (credit, checking, savings). */
     private Account[] accounts;
 
-     /**
-     * An array of HashMaps that stores customer information, where each HashMap
-     * holds customer data organized by different keys. Populated by reading from a file.
-     */
-    public static HashMap<String, Customer> [] userMaps = PopulationHashmap.readFile();
-
-      /**
-     * A HashMap that maps customer names to Customer objects for quick access by name.
-     * This map is the second entry in the userMaps array, which stores customers by their names.
-     */
-    public static HashMap<String, Customer> nameMap = userMaps[1];
-
     /**
      * This constructor constructs a Customer object with the specified personal information and associated accounts.
      *
@@ -110,6 +98,7 @@ public class Customer extends Person {
      */
     public void setAccounts(Account[] accounts) {
         this.accounts = accounts;
+        DeltaCheckpoint.markCustomerDirty(getIdNumber());
     }
 
     /**
@@ -136,9 +125,10 @@ public class Customer extends Person {
 
         String name = customer.getFirstName() + " " + customer.getLastName();
         String message = name + " made a balance inquiry on their accounts."; 
-        Log.logEntries(message);
-        Log.transactions.add(message);
-        Log.logUserTransaction(name, message);
+        Log.logEvent(name, message, true);
+        EventLog.recordInquiry(customer.getCheckingAccount());
+        EventLog.recordInquiry(customer.getSavingAccount());
+        EventLog.recordInquiry(customer.getCreditAccount());
     }
     /**
      * This method deposits a specified amount into the given account.
@@ -174,14 +164,14 @@ public class Customer extends Person {
             }
         }
 
-        account.setBalance(account.getBalance() + amount);
+        AccountLocks.depositCents(account, Money.toCents(amount));
+        BalanceJournal.flushOrReport();
         System.out.println("New " + account.getAccountType() + " account balance: $" + account.getBalance());
 
         String name = customer.getFirstName() + " " + customer.getLastName();
         String accountTitle = account.getAccountType() + "-" + account.getAccountNum();
         String message = name + " made a deposit on " + accountTitle + ". " + name + "'s new balance for " + accountTitle + " is " + account.getBalance();
-        Log.logEntries(message);
-        Log.logUserTransaction(name, message);
+        Log.logEvent(name, message, false);
     }
 
     /**
@@ -210,14 +200,16 @@ public class Customer extends Person {
    
         
         double amount = withdrawMoney(account, scanner); 
-        account.setBalance(account.getBalance() - amount);
+        if (AccountLocks.withdrawCents(account, Money.toCents(amount)) == AccountStore.NO_BALANCE) {
+            System.out.println("Withdrawal failed: the balance changed to $" + account.getBalance() + ".");
+            return;
+        }
+        BalanceJournal.flushOrReport();
         // Display updated balance without further subtraction
         System.out.println("New " + account.getAccountType() + " account balance: $" + account.getBalance());
         
         String message = "Withdrawal of $" + amount + " from " + account.getAccountType() + " account. New balance: $" + account.getBalance();
-        Log.logEntries(message);
-        Log.transactions.add(message);
-        Log.logUserTransaction(customer.getFirstName() + " " + customer.getLastName(), message);
+        Log.logEvent(customer.getFirstName() + " " + customer.getLastName(), message, true);
     }
     /**
      * This method allows a customer to transfer money between two of their accounts.
@@ -274,15 +266,17 @@ public class Customer extends Person {
         }
         
       
-        accountFrom.setBalance(accountFrom.getBalance() - amount);
-        accountTo.setBalance(accountTo.getBalance() + amount);
+        // checks the balance again while holding both locks, another session may have spent it
+        if (!AccountLocks.transfer(accountFrom, accountTo, amount)) {
+            System.out.println("Transfer failed: the balance changed to $" + accountFrom.getBalance() + ".");
+            return;
+        }
+        BalanceJournal.flushOrReport();
    
         System.out.println("Transfer successful!");
         String name = customer.getFirstName() + " " + customer.getLastName();
         String message = name + " transferred $" + amount + " from " + accountFrom.getAccountType() + " to " + accountTo.getAccountType();
-        Log.logEntries(message);
-        Log.transactions.add(message);
-        Log.logUserTransaction(name, message);
+        Log.logEvent(name, message, true);
         
         System.out.println("New balance for " + accountFrom.getAccountType() + " account: $" + accountFrom.getBalance());
     }
@@ -346,16 +340,17 @@ public class Customer extends Person {
             }
         }
 
-        accountFrom.setBalance(accountFrom.getBalance() - amount);
-        accountTo.setBalance(accountTo.getBalance() + amount);
+        if (!AccountLocks.transfer(accountFrom, accountTo, amount, BalanceJournal.Op.PAY)) {
+            System.out.println("Payment failed: the balance changed to $" + accountFrom.getBalance() + ".");
+            return;
+        }
+        BalanceJournal.flushOrReport();
 
         System.out.println("Payment successful!");
         String name = customer.getFirstName() + " " + customer.getLastName();
         
         String message = name + " paid $" + amount + " to " + recipientName + " from " + accountFrom.getAccountType() + " account to " + accountTo.getAccountType() + " account.";
-        Log.logEntries(message);
-        Log.transactions.add(message);
-        Log.logUserTransaction(name, message);
+        Log.logEvent(name, message, true);
     }
     /**
     * This method prompts the user to enter an amount to withdraw from the specified account. 
@@ -430,58 +425,23 @@ public class Customer extends Person {
     * @param amount the amount of money to be transferred from the payer's account to the payee's account
     */
     public static void paySomeoneTransaction(String fromUser, String toUser, String fromAccount, String toAccount, double amount){
-        Customer payer;
-        Customer payee;
-
-        if (!nameMap.containsKey(fromUser)){
-            System.out.println("Failed transaction: user " + fromUser + " does not exist.");
-            return;
-        }else{
-            payer = nameMap.get(fromUser);
-        }
-
-        if (!nameMap.containsKey(toUser)){
-            System.out.println("Failed transaction: user " + toUser + " does not exist.");
-            return;
-        }else{
-            payee = nameMap.get(toUser);
-        }
-
-        Account payerAccount = accountTypeTransaction(payer, fromAccount);
-        Account payeeAccount = accountTypeTransaction(payee, toAccount);
-
-        if(amount <= 0 || amount > payerAccount.getBalance()){
-            System.out.println("Failed transaction: amount is less than 0 or more than the payer's account balance (" + payerAccount.getBalance() + ") ");
-        }else{
-            payerAccount.setBalance(payerAccount.getBalance() - amount);
-            payeeAccount.setBalance(payeeAccount.getBalance() + amount);
-            
-            String message = "Successful transaction! " + fromUser + " paid $" + amount + " to " + toUser + " from " + payerAccount.getAccountType() + " account to " + payeeAccount.getAccountType() + " account.";
-            Log.logEntries(message);
-            Log.transactions.add(message);
-        }
-
+        runTransaction(PreparedTransaction.prepare(PreparedTransaction.Action.PAYS, fromUser, fromAccount,
+                toUser, toAccount, Money.toCents(amount), CustomerRegistry.getNameMap()));
     }
 
-        /**
-    * This method returns the account of the specified type for a given user (Customer).
-    * It retrieves the appropriate account (Credit, Checking, or Savings) based on the input account type.
-    * 
-    * @param user the customer whose account is being retrieved
-    * @param accountType the type of account to retrieve ("Credit", "Checking", or "Savings")
-     * @return the account of the specified type
-     * @throws AssertionError if an invalid account type is provided (not "Credit", "Checking", or "Savings")
+    /**
+    * This method applies a prepared transaction and logs the result, whether it went through or
+    * failed. Successful transactions are also added to the list of transactions of the log, once
+    * their change is saved in the BalanceJournal.
+    *
+    * @param transaction the transaction to apply
     */
-    private static Account accountTypeTransaction(Customer user, String accountType){
-        switch (accountType) {
-            case "Credit":
-                return user.getCreditAccount();
-            case "Checking":
-                return user.getCheckingAccount();
-            case "Savings":
-                return user.getSavingAccount();
-            default:
-                throw new AssertionError();
+    private static void runTransaction(PreparedTransaction transaction) {
+        String message = transaction.apply();
+        BalanceJournal.flushOrReport();
+        Log.logEntries(message);
+        if (transaction.isSuccessful()) {
+            Log.addTransaction(message);
         }
     }
 
@@ -500,45 +460,8 @@ public class Customer extends Person {
     * @param amount The amount to transfer.
     */
     public static void makeTransferTransaction(String fromUser, String toUser, String fromAccount, String toAccount, double amount){
-        //Check if the username is the same o
-        if(fromAccount.equals(toAccount)){
-            System.out.println("Transaction failed: user cannot transfer within the same account type.");
-            return;
-        }
-
-        Customer payer;
-        Customer payee;
-
-        if (!nameMap.containsKey(fromUser)){
-            Log.logEntries("Failed transaction: user " + fromUser + " does not exist.");
-            return;
-        }else{
-            payer = nameMap.get(fromUser);
-        }
-
-        if (!nameMap.containsKey(toUser)){
-            Log.logEntries("Failed transaction: user " + toUser + " does not exist.");
-            return;
-        }else{
-            payee = nameMap.get(toUser);
-        }
-
-        Account payerAccount = accountTypeTransaction(payer, fromAccount);
-        Account payeeAccount = accountTypeTransaction(payee, toAccount);
-
-        if(amount <= 0 || amount > payerAccount.getBalance()){
-            Log.logEntries("Failed transaction: amount is less than 0 or more than the payer's account balance (" + payerAccount.getBalance() + ") ");
-            return;
-        }else{
-            payerAccount.setBalance(payerAccount.getBalance() - amount);
-            payeeAccount.setBalance(payerAccount.getBalance() + amount);
-            
-            String message = "Successful Transaction! " + fromUser + " transferred: $" + amount + " from " + payerAccount.getAccountType() + " account to " + payeeAccount.getAccountType() + " account";
-            Log.logEntries(message);
-            Log.transactions.add(message);
-
-            
-        }
+        runTransaction(PreparedTransaction.prepare(PreparedTransaction.Action.TRANSFERS, fromUser, fromAccount,
+                toUser, toAccount, Money.toCents(amount), CustomerRegistry.getNameMap()));
     }
 
     /**
@@ -554,18 +477,8 @@ public class Customer extends Person {
     * @param amount The amount to deposit into the account.
     */
     public static void depositsTransaction(String toUser, String toAccount, double amount){
-        if(!nameMap.containsKey(toUser)){
-            Log.logEntries("Transaction failed: no user with that name.");
-        }
-
-        Customer user = nameMap.get(toUser);
-        Account userAccount = accountTypeTransaction(user, toAccount);
-        userAccount.setBalance(userAccount.getBalance() + amount);
-
-        String message = "Successful Transaction! $" + amount + " has been deposited into " + toUser + " 's " + toAccount;
-        Log.logEntries(message);
-        Log.transactions.add(message);
-
+        runTransaction(PreparedTransaction.prepare(PreparedTransaction.Action.DEPOSITS, null, null,
+                toUser, toAccount, Money.toCents(amount), CustomerRegistry.getNameMap()));
     }
 
     /**
@@ -582,24 +495,8 @@ public class Customer extends Person {
     * @param amount The amount to withdraw from the account.
     */
     public static void withdrawTransaction(String fromUser, String fromAccount, double amount){
-        if(!nameMap.containsKey(fromUser)){
-            Log.logEntries("Transaction failed: no user with that name.");
-        }
-
-        Customer user = nameMap.get(fromUser);
-        Account userAccount = accountTypeTransaction(user, fromAccount);
-
-        if(amount <= 0 || amount > userAccount.getBalance()){
-            Log.logEntries("Failed transaction: amount is less than 0 or more than the payer's account balance (" + userAccount.getBalance() + ") ");
-            return;
-        }
-
-        userAccount.setBalance(userAccount.getBalance() + amount);
-        
-        String message = "Successful Transaction! $" + amount + " has been deposited into " + fromUser + " 's " + fromAccount;
-        Log.logEntries(message);
-        Log.transactions.add(message);
-
+        runTransaction(PreparedTransaction.prepare(PreparedTransaction.Action.WITHDRAWS, fromUser, fromAccount,
+                null, null, Money.toCents(amount), CustomerRegistry.getNameMap()));
     }
 
     /**
@@ -613,15 +510,7 @@ public class Customer extends Person {
     * @param fromAccount The account type to inquire about (e.g., "Credit", "Checking", or "Savings").
     */
     public static void inquireBalancaTransaction(String fromUser, String fromAccount){
-        if(!nameMap.containsKey(fromUser)){
-            Log.logEntries("Transaction failed: no user with that name.");
-        }
-
-        Customer user = nameMap.get(fromUser);
-        Account userAccount = accountTypeTransaction(user, fromAccount);
-
-        String message = "Successful transaction! " + fromUser + " has inquired about" + fromAccount +" 's balance: " + userAccount.getBalance();
-        Log.logEntries(message);
-        Log.transactions.add(message);
+        runTransaction(PreparedTransaction.prepare(PreparedTransaction.Action.INQUIRES, fromUser, fromAccount,
+                null, null, 0, CustomerRegistry.getNameMap()));
     }
 }
@@ -0,0 +1,98 @@
+import java.util.HashMap;
+
+/**
+ * The CustomerRegistry class holds the one customer base shared by the whole bank.
+ * The customers are loaded the first time someone asks for them (not when a class happens
+ * to be initialized), exactly once even if several threads ask at the same time, so Customer,
+ * RunBank and the transaction methods all work on the same objects and see the same balances.
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class CustomerRegistry {
+
+    /**
+     * The loaded customer maps: index 0 is keyed by identification number and index 1 by full name.
+     * It stays null until the first lookup.
+     */
+    private static volatile HashMap<String, Customer>[] maps;
+
+    /** This class only has static members. */
+    private CustomerRegistry() {
+    }
+
+    /**
+     * This method returns the customer maps, loading them on the first call.
+     *
+     * @return an array of HashMaps, the first keyed by identification number and the second by full name
+     */
+    public static HashMap<String, Customer>[] getMaps() {
+        HashMap<String, Customer>[] current = maps;
+        if (current == null) {
+            synchronized (CustomerRegistry.class) {
+                current = maps;
+                if (current == null) {
+                    current = PopulationHashmap.readFile();
+                    maps = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * This method returns the customers keyed by identification number.
+     *
+     * @return the map of customers by identification number
+     */
+    public static HashMap<String, Customer> getIdMap() {
+        return getMaps()[0];
+    }
+
+    /**
+     * This method returns the customers keyed by full name ("First Last").
+     *
+     * @return the map of customers by full name
+     */
+    public static HashMap<String, Customer> getNameMap() {
+        return getMaps()[1];
+    }
+
+    /**
+     * This method checks if the customers have been loaded already.
+     *
+     * @return true if the customer maps are loaded, false otherwise
+     */
+    public static boolean isLoaded() {
+        return maps != null;
+    }
+
+    /**
+     * This method throws away the loaded customers and loads them again from disk.
+     * Code that kept a reference to the old maps keeps seeing the old objects, so callers
+     * should look the maps up again through this class after a reload.
+     *
+     * @return the newly loaded customer maps
+     */
+    public static synchronized HashMap<String, Customer>[] reload() {
+        Account.clearAccountNumbers();
+        AccountStore.resetShared();
+        HashMap<String, Customer>[] loaded = PopulationHashmap.readFile();
+        maps = loaded;
+        return loaded;
+    }
+
+    /**
+     * This method replaces the customer base with maps built somewhere else, for example
+     * restored from a snapshot.
+     *
+     * @param idMap   the customers keyed by identification number
+     * @param nameMap the customers keyed by full name
+     */
+    public static synchronized void replace(HashMap<String, Customer> idMap, HashMap<String, Customer> nameMap) {
+        AccountIndex.rebuild(idMap);
+        maps = new HashMap[]{idMap, nameMap};
+    }
+}
@@ -0,0 +1,298 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The CustomerSnapshot class saves the whole customer base (every Customer with its Checking,
+ * Saving and Credit accounts) in a compact binary file, so the bank can start without parsing
+ * the CSV file again.
+ *
+ * <p>The file starts with a header (magic number, format version, creation time, sequence number
+ * of the last BalanceJournal record it includes and number of records), then has one record per
+ * customer, and ends with a CRC32 checksum of everything
+ * before it. Each record holds the personal details as UTF strings followed by the account
+ * numbers, balances, starting balances and the credit limit. The file is written to a temporary
+ * file and renamed, so a crash while saving never leaves a half written snapshot behind.</p>
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class CustomerSnapshot {
+
+    /**
+     * The binary snapshot of the customer file.
+     */
+    public static final String SNAPSHOT_FILE = "BankUsers.snapshot";
+
+    /** Identifies a snapshot file ("EPMB", El Paso Miners Bank). */
+    private static final int MAGIC = 0x45504D42;
+
+    /** Version of the record layout written by this class, 2 added the journal sequence. */
+    private static final short VERSION = 2;
+
+    /** Size of the buffers used to read and write snapshots. */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * This method writes a snapshot of the given customers.
+     *
+     * @param fileName    the snapshot file to write
+     * @param customerMap the customers to save, usually the map keyed by identification number
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static void write(String fileName, HashMap<String, Customer> customerMap) throws IOException {
+        Path target = Paths.get(fileName);
+        Path temp = Paths.get(fileName + ".tmp");
+
+        CRC32 checksum = new CRC32();
+        try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE)) {
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(file, checksum));
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            // taken before the balances are read, a change made meanwhile is replayed again on recovery
+            out.writeLong(BalanceJournal.getLastSequence());
+            out.writeInt(customerMap.size());
+
+            for (Customer customer : customerMap.values()) {
+                writeCustomer(out, customer);
+            }
+            out.flush();
+
+            // the checksum covers everything above and is not part of itself
+            new DataOutputStream(file).writeLong(checksum.getValue());
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * This method reads a snapshot and rebuilds the customer maps. The account numbers found are
+     * added to the shared account number set.
+     *
+     * @param fileName the snapshot file to read
+     * @return an array of HashMaps, the first keyed by identification number and the second by full name
+     * @throws IOException if the file cannot be read, is not a snapshot, or fails its checksum
+     */
+    public static HashMap<String, Customer>[] read(String fileName) throws IOException {
+        CRC32 checksum = new CRC32();
+        try (InputStream file = new BufferedInputStream(Files.newInputStream(Paths.get(fileName)), BUFFER_SIZE)) {
+            DataInputStream in = new DataInputStream(new CheckedInputStream(file, checksum));
+            if (in.readInt() != MAGIC) {
+                throw new IOException(fileName + " is not a customer snapshot");
+            }
+            short version = in.readShort();
+            if (version != 1 && version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            in.readLong(); // creation time, only informative
+            if (version >= 2) {
+                in.readLong(); // journal sequence, read by readJournalSequence
+            }
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IOException("Corrupted snapshot header");
+            }
+
+            // size the maps up front so they never rehash while loading
+            int capacity = (int) Math.min(Integer.MAX_VALUE, count * 4L / 3 + 1);
+            HashMap<String, Customer> idMap = new HashMap<>(capacity);
+            HashMap<String, Customer> nameMap = new HashMap<>(capacity);
+            int[] accountNumbers = new int[count * 3];
+
+            for (int i = 0; i < count; i++) {
+                Customer customer = readCustomer(in);
+                idMap.put(customer.getIdNumber(), customer);
+                nameMap.put(customer.getFirstName() + " " + customer.getLastName(), customer);
+                accountNumbers[i * 3] = customer.getSavingAccount().getAccountNum();
+                accountNumbers[i * 3 + 1] = customer.getCheckingAccount().getAccountNum();
+                accountNumbers[i * 3 + 2] = customer.getCreditAccount().getAccountNum();
+            }
+
+            long expected = checksum.getValue();
+            long stored;
+            try {
+                stored = new DataInputStream(file).readLong();
+            } catch (EOFException e) {
+                throw new IOException("Snapshot " + fileName + " is truncated", e);
+            }
+            if (stored != expected) {
+                throw new IOException("Snapshot " + fileName + " failed its checksum");
+            }
+
+            // only publish the account numbers once the whole snapshot is known to be valid
+            for (int accountNumber : accountNumbers) {
+                Account.addIdToAccountSet(accountNumber);
+            }
+            return new HashMap[]{idMap, nameMap};
+        }
+    }
+
+    /**
+     * This method reads the sequence number of the last BalanceJournal record a snapshot includes,
+     * without reading the customers.
+     *
+     * @param fileName the snapshot file
+     * @return the sequence number, 0 for a version 1 snapshot taken before the journal existed
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public static long readJournalSequence(String fileName) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(fileName)), 64))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(fileName + " is not a customer snapshot");
+            }
+            short version = in.readShort();
+            in.readLong(); // creation time
+            return version >= 2 ? in.readLong() : 0;
+        }
+    }
+
+    /**
+     * This method loads the snapshot if it exists and is at least as new as the CSV file.
+     * Any problem with the snapshot is reported and null is returned, so the caller can fall back
+     * to the CSV file.
+     *
+     * @param snapshotFile the snapshot file
+     * @param csvFile      the CSV file the snapshot was taken from
+     * @return the customer maps, or null if the CSV file should be read instead
+     */
+    public static HashMap<String, Customer>[] readIfFresh(String snapshotFile, String csvFile) {
+        Path snapshot = Paths.get(snapshotFile);
+        Path csv = Paths.get(csvFile);
+        try {
+            if (!Files.exists(snapshot)) {
+                return null;
+            }
+            if (Files.exists(csv) && Files.getLastModifiedTime(snapshot).compareTo(Files.getLastModifiedTime(csv)) < 0) {
+                return null; // the CSV file was edited after the snapshot was taken
+            }
+            return read(snapshotFile);
+        } catch (IOException e) {
+            System.out.println("Ignoring customer snapshot, loading " + csvFile + " instead: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * This method writes the personal details and the three accounts of a customer.
+     *
+     * @param out      the stream to write to
+     * @param customer the customer to write
+     * @throws IOException if the stream fails
+     */
+    private static void writeCustomer(DataOutputStream out, Customer customer) throws IOException {
+        out.writeUTF(nullToEmpty(customer.getIdNumber()));
+        out.writeUTF(nullToEmpty(customer.getFirstName()));
+        out.writeUTF(nullToEmpty(customer.getLastName()));
+        out.writeUTF(nullToEmpty(customer.getDateOfBirth()));
+        out.writeUTF(nullToEmpty(customer.getAddress()));
+        out.writeUTF(nullToEmpty(customer.getPhoneNumber()));
+
+        Checking checking = customer.getCheckingAccount();
+        out.writeInt(checking.getAccountNum());
+        out.writeDouble(checking.getBalance());
+        out.writeDouble(checking.getStartingBalance());
+
+        Saving savings = customer.getSavingAccount();
+        out.writeInt(savings.getAccountNum());
+        out.writeDouble(savings.getBalance());
+        out.writeDouble(savings.getStartingBalance());
+
+        Credit credit = customer.getCreditAccount();
+        out.writeInt(credit.getAccountNum());
+        out.writeDouble(credit.getBalance());
+        out.writeDouble(credit.getStartingBalance());
+        out.writeDouble(credit.getCreditMax());
+    }
+
+    /**
+     * This method reads a customer record and rebuilds the customer with its accounts.
+     *
+     * @param in the stream to read from
+     * @return the customer of the record
+     * @throws IOException if the stream fails or ends early
+     */
+    private static Customer readCustomer(DataInputStream in) throws IOException {
+        String idNumber = in.readUTF();
+        String firstName = in.readUTF();
+        String lastName = in.readUTF();
+        String dateOfBirth = in.readUTF();
+        String address = in.readUTF();
+        String phoneNumber = in.readUTF();
+
+        Person holder = new Person(idNumber, firstName, lastName, dateOfBirth, address, phoneNumber);
+
+        Checking checking = new Checking(in.readInt(), in.readDouble(), holder);
+        checking.setStartingBalance(in.readDouble());
+
+        Saving savings = new Saving(in.readInt(), in.readDouble(), holder);
+        savings.setStartingBalance(in.readDouble());
+
+        int creditNumber = in.readInt();
+        double creditBalance = in.readDouble();
+        double creditStarting = in.readDouble();
+        Credit credit = new Credit(creditNumber, creditBalance, in.readDouble(), holder);
+        credit.setStartingBalance(creditStarting);
+
+        Account[] accounts = {checking, savings, credit};
+        return new Customer(idNumber, firstName, lastName, dateOfBirth, address, phoneNumber, accounts);
+    }
+
+    /**
+     * This method replaces a missing value with an empty String, since writeUTF cannot store null.
+     *
+     * @param value the value to write
+     * @return the value, or an empty String if it is null
+     */
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    /**
+     * The main method converts between the CSV file and the binary snapshot.
+     * <ul>
+     *   <li>{@code java CustomerSnapshot to-binary [csvFile] [snapshotFile]}</li>
+     *   <li>{@code java CustomerSnapshot to-csv [snapshotFile] [csvFile]}</li>
+     * </ul>
+     *
+     * @param args the direction of the conversion followed by the source and target files
+     */
+    public static void main(String[] args) {
+        if (args.length == 0 || !(args[0].equals("to-binary") || args[0].equals("to-csv"))) {
+            System.out.println("Usage: java CustomerSnapshot to-binary [csvFile] [snapshotFile]");
+            System.out.println("       java CustomerSnapshot to-csv [snapshotFile] [csvFile]");
+            return;
+        }
+
+        try {
+            if (args[0].equals("to-binary")) {
+                String csvFile = args.length > 1 ? args[1] : PopulationHashmap.CUSTOMER_FILE;
+                String snapshotFile = args.length > 2 ? args[2] : SNAPSHOT_FILE;
+                HashMap<String, Customer>[] maps = PopulationHashmap.readCsv(csvFile, PopulationHashmap.PARALLEL_LOAD);
+                write(snapshotFile, maps[0]);
+                System.out.println("Snapshot of " + maps[0].size() + " customers saved to " + snapshotFile);
+            } else {
+                String snapshotFile = args.length > 1 ? args[1] : SNAPSHOT_FILE;
+                String csvFile = args.length > 2 ? args[2] : PopulationHashmap.CUSTOMER_FILE;
+                HashMap<String, Customer>[] maps = read(snapshotFile);
+                PopulationHashmap.writeToCSV(csvFile, maps[0]);
+            }
+        } catch (IOException e) {
+            System.out.println("Conversion failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,809 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The DedupIndex class remembers every transaction that was already applied, so submitting the
+ * same transactions file twice does not pay, transfer or deposit the same money twice. Every row
+ * gets a 64 bit key: the hash of its identifier when the file has an identifier column, or else
+ * the hash of its columns together with its row number, so two identical rows of one file are
+ * still two transactions while the same file submitted again gives the same keys.
+ *
+ * <p>The keys live in two places. Recent keys are kept in memory in an open addressing hash set
+ * and appended to a journal file as runs go; older keys are merged into a segment file of sorted
+ * keys once the recent set grows past a limit, so memory stays bounded however long the history
+ * is. The segment ends with a fence table (the first key of every block of 512 keys) and a bloom
+ * filter, both loaded in memory: most new keys are rejected by the bloom filter without touching
+ * the disk, and the others read a single block.</p>
+ *
+ * <p>Keys are only written to the journal together with an IngestCheckpoint, and every journal
+ * record names the run (the transactions file, its size and modification time) and the last row
+ * it covers. When a run dies and is resumed, the records of that run after the row it resumes
+ * from are dropped, so the rows applied again are not taken for duplicates. A run that finished
+ * writes a commit record, after which its keys are never dropped.</p>
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class DedupIndex implements Closeable {
+
+    /** The default segment file, its journal has the same name followed by ".journal". */
+    public static final String INDEX_FILE = "Transactions.dedup";
+
+    /** The number of recent keys kept in memory before they are merged into the segment. */
+    public static final int DEFAULT_RECENT_LIMIT = 1 << 21;
+
+    /** A journal record holding the keys of a run up to a row. */
+    private static final byte KEYS_RECORD = 1;
+
+    /** A journal record saying that a run went through the whole file. */
+    private static final byte COMMIT_RECORD = 2;
+
+    /** Size of the header of a journal record: type, run, last row and number of keys. */
+    private static final int RECORD_HEADER = 1 + 8 + 8 + 4;
+
+    /** Seed of the keys of rows with an identifier. */
+    private static final long ID_SEED = 0x49445F4B45595F31L;
+
+    /** Seed of the keys of rows without an identifier. */
+    private static final long ROW_SEED = 0x524F575F4B45595FL;
+
+    /** Multiplier of the FNV-1a hash. */
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    /** The segment file. */
+    private final Path segmentPath;
+
+    /** The journal file. */
+    private final Path journalPath;
+
+    /** The number of recent keys that triggers a merge into the segment. */
+    private final int recentLimit;
+
+    /** The journal, positioned at its end. */
+    private FileChannel journal;
+
+    /** The sorted keys of older runs. */
+    private Segment segment;
+
+    /** The keys of the journal and the keys claimed but not yet written. */
+    private LongHashSet recent = new LongHashSet(1024);
+
+    /** What the journal holds for every run that has records in it. */
+    private final Map<Long, RunState> runs = new HashMap<>();
+
+    /** The keys claimed by the current run that are not in the journal yet, in row order. */
+    private final ArrayDeque<PendingBatch> pending = new ArrayDeque<>();
+
+    /** The run keys are being claimed for. */
+    private long currentRun;
+
+    /** The last row of the current run whose keys are in the journal. */
+    private long lastPersistedRow;
+
+    /**
+     * This constructor opens the index, replaying its journal and dropping a torn last record.
+     *
+     * @param segmentPath the segment file
+     * @param recentLimit the number of recent keys that triggers a merge into the segment
+     * @throws IOException if the files cannot be opened
+     */
+    private DedupIndex(Path segmentPath, int recentLimit) throws IOException {
+        this.segmentPath = segmentPath;
+        this.journalPath = Paths.get(segmentPath + ".journal");
+        this.recentLimit = Math.max(1024, recentLimit);
+        this.segment = Segment.open(segmentPath);
+        this.journal = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long valid = replayJournal();
+        if (valid < journal.size()) {
+            journal.truncate(valid); // a record torn by a crash, its checkpoint was never written
+            journal.force(true);
+        }
+        journal.position(valid);
+    }
+
+    /**
+     * This method opens an index, creating its files if they do not exist.
+     *
+     * @param fileName the segment file, usually INDEX_FILE
+     * @return the index
+     * @throws IOException if the files cannot be opened
+     */
+    public static DedupIndex open(String fileName) throws IOException {
+        return new DedupIndex(Paths.get(fileName), DEFAULT_RECENT_LIMIT);
+    }
+
+    /**
+     * This method computes the key of a transaction row: the hash of its identifier if it has
+     * one, or else the hash of its columns and its row number.
+     *
+     * @param record the row
+     * @return the key of the row, never 0
+     */
+    public static long rowKey(TransactionRecord record) {
+        long hash;
+        String id = record.getTransactionId();
+        if (id != null) {
+            hash = hash(ID_SEED, id);
+        } else {
+            hash = hash(ROW_SEED, record.getFromFirstName());
+            hash = hash(hash, record.getFromLastName());
+            hash = hash(hash, record.getFromWhere());
+            hash = hash(hash, record.getAction());
+            hash = hash(hash, record.getToFirstName());
+            hash = hash(hash, record.getToLastName());
+            hash = hash(hash, record.getToWhere());
+            hash = mix(hash ^ record.getAmountCents());
+            hash = mix(hash ^ record.getRowNumber());
+        }
+        long key = mix(hash);
+        return key == 0 ? 1 : key;
+    }
+
+    /**
+     * This method computes the key of a run of a transactions file, which changes whenever the
+     * file does.
+     *
+     * @param path     the absolute path of the transactions file
+     * @param size     the size of the file
+     * @param modified the modification time of the file, in milliseconds
+     * @return the key of the run
+     */
+    public static long runKey(String path, long size, long modified) {
+        return mix(mix(hash(ROW_SEED, path) ^ size) ^ modified);
+    }
+
+    /**
+     * This method checks if a run went through its whole file.
+     *
+     * @param runId the key of the run
+     * @return true if the run wrote its commit record
+     */
+    public synchronized boolean isCommitted(long runId) {
+        RunState run = runs.get(runId);
+        return run != null && run.committed;
+    }
+
+    /**
+     * This method starts claiming keys for a run. If an earlier attempt of the same run wrote keys
+     * past the row this attempt starts from, those keys are dropped, since the balances they
+     * stand for were not kept.
+     *
+     * @param runId     the key of the run
+     * @param resumeRow the number of rows already applied, 0 for a run from the start
+     * @throws IOException if the journal cannot be rewritten
+     */
+    public synchronized void beginRun(long runId, long resumeRow) throws IOException {
+        currentRun = runId;
+        lastPersistedRow = resumeRow;
+        pending.clear();
+        RunState run = runs.get(runId);
+        if (run != null && !run.committed && run.lastRow > resumeRow) {
+            rewriteJournal(runId, resumeRow, false);
+        }
+    }
+
+    /**
+     * This method looks up the keys of a batch of rows and claims the ones not seen before for the
+     * current run. Keys repeated inside the batch are duplicates after their first row.
+     *
+     * @param keys   the keys of the rows, in row order
+     * @param endRow the last row of the batch
+     * @return for every key, true if it was seen before and its row must be skipped
+     * @throws IOException if the segment cannot be read
+     */
+    public synchronized boolean[] claim(long[] keys, long endRow) throws IOException {
+        boolean[] duplicate = new boolean[keys.length];
+        long[] fresh = new long[keys.length];
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            long key = keys[i];
+            if (recent.contains(key) || segment.contains(key)) {
+                duplicate[i] = true;
+            } else {
+                recent.add(key);
+                fresh[count++] = key;
+            }
+        }
+        pending.add(new PendingBatch(endRow, fresh, count));
+        return duplicate;
+    }
+
+    /**
+     * This method writes the keys claimed up to a row to the journal and forces them to disk.
+     * It must be called right before the IngestCheckpoint of that row is written. When the recent
+     * keys pass the limit, the keys that can no longer be dropped are merged into the segment.
+     *
+     * @param row the row of the checkpoint about to be written
+     * @throws IOException if the journal cannot be written
+     */
+    public synchronized void persistUpTo(long row) throws IOException {
+        long safeRow = lastPersistedRow; // its checkpoint is on disk, so its keys are never dropped
+        writeKeys(row);
+        if (recent.size() > recentLimit) {
+            rewriteJournal(currentRun, safeRow, true);
+        }
+    }
+
+    /**
+     * This method writes every key the current run claimed and marks the run as committed. It is
+     * called once the run went through its whole file and its balances are on disk.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    public synchronized void commitRun() throws IOException {
+        writeKeys(Long.MAX_VALUE);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER);
+        record.put(COMMIT_RECORD).putLong(currentRun).putLong(lastPersistedRow).putInt(0).flip();
+        while (record.hasRemaining()) {
+            journal.write(record);
+        }
+        journal.force(false);
+        runs.computeIfAbsent(currentRun, id -> new RunState()).committed = true;
+        if (recent.size() > recentLimit) {
+            rewriteJournal(currentRun, Long.MAX_VALUE, true);
+        }
+    }
+
+    /**
+     * This method returns how many keys the index holds, recent and merged.
+     *
+     * @return the number of keys
+     */
+    public synchronized long size() {
+        return recent.size() + segment.count;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        journal.close();
+        segment.close();
+    }
+
+    /**
+     * This method appends the pending keys up to a row to the journal as one record.
+     *
+     * @param row the last row to write the keys of
+     * @throws IOException if the journal cannot be written
+     */
+    private void writeKeys(long row) throws IOException {
+        int count = 0;
+        long lastRow = lastPersistedRow;
+        for (PendingBatch batch : pending) {
+            if (batch.endRow > row) {
+                break;
+            }
+            count += batch.count;
+            lastRow = batch.endRow;
+        }
+        if (lastRow == lastPersistedRow) {
+            return;
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + count * 8);
+        record.put(KEYS_RECORD).putLong(currentRun).putLong(lastRow).putInt(count);
+        while (!pending.isEmpty() && pending.peekFirst().endRow <= lastRow) {
+            PendingBatch batch = pending.pollFirst();
+            for (int i = 0; i < batch.count; i++) {
+                record.putLong(batch.keys[i]);
+            }
+        }
+        record.flip();
+        while (record.hasRemaining()) {
+            journal.write(record);
+        }
+        journal.force(false);
+
+        RunState run = runs.computeIfAbsent(currentRun, id -> new RunState());
+        run.lastRow = Math.max(run.lastRow, lastRow);
+        lastPersistedRow = lastRow;
+    }
+
+    /**
+     * This method reads the journal from its start, adding its keys to the recent set.
+     *
+     * @return the length of the journal up to its last complete record
+     * @throws IOException if the journal cannot be read
+     */
+    private long replayJournal() throws IOException {
+        long size = journal.size();
+        long valid = 0;
+        journal.position(0);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(journal), 64 * 1024));
+        while (size - valid >= RECORD_HEADER) {
+            byte type = in.readByte();
+            long runId = in.readLong();
+            long endRow = in.readLong();
+            int count = in.readInt();
+            if ((type != KEYS_RECORD && type != COMMIT_RECORD) || count < 0 || size - valid - RECORD_HEADER < count * 8L) {
+                break;
+            }
+            RunState run = runs.computeIfAbsent(runId, id -> new RunState());
+            if (type == COMMIT_RECORD) {
+                run.committed = true;
+            } else {
+                for (int i = 0; i < count; i++) {
+                    recent.add(in.readLong());
+                }
+                run.lastRow = Math.max(run.lastRow, endRow);
+            }
+            valid += RECORD_HEADER + count * 8L;
+        }
+        return valid;
+    }
+
+    /**
+     * This method rewrites the journal. With merge off it drops the records of a run past a row,
+     * undoing keys whose balances were lost. With merge on it moves every record except those of
+     * a run past a row into the segment, keeping only those and the commit records in the
+     * journal. The recent set is rebuilt from what is left in the journal and the pending keys.
+     *
+     * @param runId    the run whose late records are treated apart
+     * @param afterRow the row after which the records of the run are dropped or kept
+     * @param merge    true to merge the other records into the segment, false to drop the late ones
+     * @throws IOException if the files cannot be rewritten
+     */
+    private void rewriteJournal(long runId, long afterRow, boolean merge) throws IOException {
+        Path temp = Paths.get(journalPath + ".tmp");
+        long[] merged = new long[merge ? recent.size() : 0];
+        int mergedCount = 0;
+        long size = journal.size();
+
+        journal.position(0);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(journal), 64 * 1024));
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            DataOutputStream kept = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(out), 64 * 1024));
+            long read = 0;
+            while (size - read >= RECORD_HEADER) {
+                byte type = in.readByte();
+                long recordRun = in.readLong();
+                long endRow = in.readLong();
+                int count = in.readInt();
+                read += RECORD_HEADER + count * 8L;
+                boolean late = recordRun == runId && endRow > afterRow;
+                if (type == COMMIT_RECORD || (merge && late)) {
+                    kept.writeByte(type);
+                    kept.writeLong(recordRun);
+                    kept.writeLong(endRow);
+                    kept.writeInt(count);
+                    for (int i = 0; i < count; i++) {
+                        kept.writeLong(in.readLong());
+                    }
+                } else if (merge) {
+                    if (mergedCount + count > merged.length) {
+                        merged = Arrays.copyOf(merged, Math.max(merged.length * 2, mergedCount + count));
+                    }
+                    for (int i = 0; i < count; i++) {
+                        merged[mergedCount++] = in.readLong();
+                    }
+                } else if (late) {
+                    in.skipNBytes(count * 8L);
+                } else {
+                    kept.writeByte(type);
+                    kept.writeLong(recordRun);
+                    kept.writeLong(endRow);
+                    kept.writeInt(count);
+                    for (int i = 0; i < count; i++) {
+                        kept.writeLong(in.readLong());
+                    }
+                }
+            }
+            kept.flush();
+            out.force(true);
+        }
+
+        if (merge) {
+            // the segment is replaced first: if the journal rewrite is lost, its keys are just in both files
+            Arrays.sort(merged, 0, mergedCount);
+            segment = Segment.merge(segmentPath, segment, merged, mergedCount);
+        }
+        journal.close();
+        Files.move(temp, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal = FileChannel.open(journalPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        recent = new LongHashSet(1024);
+        runs.clear();
+        journal.position(replayJournal());
+        for (PendingBatch batch : pending) {
+            for (int i = 0; i < batch.count; i++) {
+                recent.add(batch.keys[i]);
+            }
+        }
+    }
+
+    /**
+     * This method adds a String to an FNV-1a hash, with a marker between fields so that moving
+     * characters from one field to the next changes the hash.
+     *
+     * @param hash  the hash so far
+     * @param value the field, or null
+     * @return the new hash
+     */
+    private static long hash(long hash, String value) {
+        if (value == null) {
+            return (hash ^ 0xFF) * FNV_PRIME;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return (hash ^ 0x1F) * FNV_PRIME;
+    }
+
+    /**
+     * This method scrambles the bits of a hash (the MurmurHash3 finalizer).
+     *
+     * @param hash the hash
+     * @return the scrambled hash
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    /**
+     * The RunState class is what the journal holds for one run.
+     */
+    private static final class RunState {
+
+        /** The last row whose keys the run wrote. */
+        long lastRow;
+
+        /** Whether the run wrote its commit record. */
+        boolean committed;
+    }
+
+    /**
+     * The PendingBatch class holds the keys a batch claimed until they are written to the journal.
+     */
+    private static final class PendingBatch {
+
+        /** The last row of the batch. */
+        final long endRow;
+
+        /** The claimed keys, the first count of them are used. */
+        final long[] keys;
+
+        /** The number of claimed keys. */
+        final int count;
+
+        PendingBatch(long endRow, long[] keys, int count) {
+            this.endRow = endRow;
+            this.keys = keys;
+            this.count = count;
+        }
+    }
+
+    /**
+     * The LongHashSet class is a set of non-zero longs in a single open addressing array, so a key
+     * costs 16 bytes at most and a lookup follows no pointer.
+     */
+    private static final class LongHashSet {
+
+        /** The slots, 0 marks an empty slot. */
+        private long[] table;
+
+        /** The number of keys in the set. */
+        private int size;
+
+        LongHashSet(int expected) {
+            table = new long[Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1];
+        }
+
+        boolean contains(long key) {
+            int mask = table.length - 1;
+            for (int i = (int) (key ^ (key >>> 32)) & mask; ; i = (i + 1) & mask) {
+                long slot = table[i];
+                if (slot == key) {
+                    return true;
+                }
+                if (slot == 0) {
+                    return false;
+                }
+            }
+        }
+
+        boolean add(long key) {
+            if ((size + 1) * 2L > table.length) {
+                grow();
+            }
+            int mask = table.length - 1;
+            for (int i = (int) (key ^ (key >>> 32)) & mask; ; i = (i + 1) & mask) {
+                long slot = table[i];
+                if (slot == key) {
+                    return false;
+                }
+                if (slot == 0) {
+                    table[i] = key;
+                    size++;
+                    return true;
+                }
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        private void grow() {
+            long[] old = table;
+            table = new long[old.length * 2];
+            size = 0;
+            for (long key : old) {
+                if (key != 0) {
+                    add(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * The Segment class is a file of sorted keys in blocks of BLOCK_KEYS, followed by the first
+     * key of every block, a bloom filter and a trailer with their sizes. The fences and the bloom
+     * filter are held in memory.
+     */
+    private static final class Segment {
+
+        /** The number of keys of a block. */
+        static final int BLOCK_KEYS = 512;
+
+        /** Identifies a segment file ("EPMD", El Paso Miners Dedup), the last int of the file. */
+        static final int MAGIC = 0x45504D44;
+
+        /** Size of the trailer: key count, fence count, bloom words, block size and magic number. */
+        static final int TRAILER = 8 + 4 + 4 + 4 + 4;
+
+        /** The largest bloom filter, 64 MB, so the index stays bounded in memory. */
+        static final long MAX_BLOOM_BITS = 1L << 29;
+
+        /** The number of bits set per key in the bloom filter. */
+        static final int BLOOM_HASHES = 7;
+
+        /** The open segment file, or null for an empty segment. */
+        final FileChannel channel;
+
+        /** The number of keys. */
+        final long count;
+
+        /** The first key of every block. */
+        final long[] fences;
+
+        /** The bits of the bloom filter. */
+        final long[] bloom;
+
+        /** The buffer a block is read into. */
+        final ByteBuffer block = ByteBuffer.allocate(BLOCK_KEYS * 8);
+
+        Segment(FileChannel channel, long count, long[] fences, long[] bloom) {
+            this.channel = channel;
+            this.count = count;
+            this.fences = fences;
+            this.bloom = bloom;
+        }
+
+        /**
+         * This method opens a segment file, or returns an empty segment if there is none.
+         *
+         * @param path the segment file
+         * @return the segment
+         * @throws IOException if the file cannot be read or is not a segment
+         */
+        static Segment open(Path path) throws IOException {
+            if (!Files.exists(path)) {
+                return new Segment(null, 0, new long[0], new long[1]);
+            }
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+            try {
+                long size = channel.size();
+                ByteBuffer trailer = ByteBuffer.allocate(TRAILER);
+                readFully(channel, trailer, size - TRAILER);
+                trailer.flip();
+                long count = trailer.getLong();
+                int fenceCount = trailer.getInt();
+                int bloomWords = trailer.getInt();
+                int blockKeys = trailer.getInt();
+                if (size < TRAILER || trailer.getInt() != MAGIC || blockKeys != BLOCK_KEYS
+                        || size != count * 8 + (fenceCount + (long) bloomWords) * 8 + TRAILER) {
+                    throw new IOException(path + " is not a dedup segment");
+                }
+                ByteBuffer tables = ByteBuffer.allocate((fenceCount + bloomWords) * 8);
+                readFully(channel, tables, count * 8);
+                tables.flip();
+                long[] fences = new long[fenceCount];
+                tables.asLongBuffer().get(fences);
+                tables.position(fenceCount * 8);
+                long[] bloom = new long[bloomWords];
+                tables.asLongBuffer().get(bloom);
+                return new Segment(channel, count, fences, bloom);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * This method checks if the segment holds a key.
+         *
+         * @param key the key
+         * @return true if the key is in the segment
+         * @throws IOException if the block cannot be read
+         */
+        boolean contains(long key) throws IOException {
+            if (count == 0 || !mightContain(bloom, key)) {
+                return false;
+            }
+            int blockIndex = Arrays.binarySearch(fences, key);
+            if (blockIndex >= 0) {
+                return true;
+            }
+            blockIndex = -blockIndex - 2; // the last block starting below the key
+            if (blockIndex < 0) {
+                return false;
+            }
+            long first = (long) blockIndex * BLOCK_KEYS;
+            int keys = (int) Math.min(BLOCK_KEYS, count - first);
+            block.clear().limit(keys * 8);
+            readFully(channel, block, first * 8);
+            int low = 0;
+            int high = keys - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long value = block.getLong(middle * 8);
+                if (value < key) {
+                    low = middle + 1;
+                } else if (value > key) {
+                    high = middle - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * This method writes a new segment with the keys of an old one and new sorted keys, and
+         * replaces the old file with it once it is on disk.
+         *
+         * @param path  the segment file
+         * @param old   the current segment, closed once the new one is in place
+         * @param keys  the new keys, sorted
+         * @param count the number of new keys
+         * @return the new segment
+         * @throws IOException if the segment cannot be written
+         */
+        static Segment merge(Path path, Segment old, long[] keys, int count) throws IOException {
+            long total = old.count + count;
+            long bloomBits = Math.min(MAX_BLOOM_BITS, Math.max(64, Long.highestOneBit(Math.max(1, total * 10)) << 1));
+            long[] bloom = new long[(int) (bloomBits / 64)];
+            long[] fences = new long[(int) ((total + BLOCK_KEYS - 1) / BLOCK_KEYS)];
+            int fenceCount = 0;
+            long written = 0;
+
+            Path temp = Paths.get(path + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 20));
+                DataInputStream oldKeys = old.channel == null ? null : new DataInputStream(new BufferedInputStream(
+                        Channels.newInputStream(old.channel.position(0)), 1 << 20));
+                long oldLeft = old.count;
+                long oldKey = oldLeft > 0 ? oldKeys.readLong() : 0;
+                int next = 0;
+                long previous = 0;
+                while (oldLeft > 0 || next < count) {
+                    long key;
+                    if (next >= count || (oldLeft > 0 && oldKey <= keys[next])) {
+                        key = oldKey;
+                        oldKey = --oldLeft > 0 ? oldKeys.readLong() : 0;
+                    } else {
+                        key = keys[next++];
+                    }
+                    if (written > 0 && key == previous) {
+                        continue;
+                    }
+                    if (written % BLOCK_KEYS == 0) {
+                        fences[fenceCount++] = key;
+                    }
+                    out.writeLong(key);
+                    setBloom(bloom, key);
+                    previous = key;
+                    written++;
+                }
+                for (int i = 0; i < fenceCount; i++) {
+                    out.writeLong(fences[i]);
+                }
+                for (long word : bloom) {
+                    out.writeLong(word);
+                }
+                out.writeLong(written);
+                out.writeInt(fenceCount);
+                out.writeInt(bloom.length);
+                out.writeInt(BLOCK_KEYS);
+                out.writeInt(MAGIC);
+                out.flush();
+                channel.force(true);
+            }
+            old.close();
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return open(path);
+        }
+
+        void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+
+        /**
+         * This method sets the bloom filter bits of a key.
+         *
+         * @param bloom the bits of the filter
+         * @param key   the key
+         */
+        static void setBloom(long[] bloom, long key) {
+            long mask = bloom.length * 64L - 1;
+            long step = mix(key) | 1;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                long bit = (key + i * step) & mask;
+                bloom[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+
+        /**
+         * This method checks the bloom filter bits of a key.
+         *
+         * @param bloom the bits of the filter
+         * @param key   the key
+         * @return false if the key is surely not in the segment
+         */
+        static boolean mightContain(long[] bloom, long key) {
+            long mask = bloom.length * 64L - 1;
+            long step = mix(key) | 1;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                long bit = (key + i * step) & mask;
+                if ((bloom[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * This method fills a buffer from a position of a file.
+         *
+         * @param channel  the file
+         * @param buffer   the buffer to fill up to its limit
+         * @param position the position to read from
+         * @throws IOException if the file ends before the buffer is full
+         */
+        static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of dedup segment");
+                }
+                position += read;
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public class DedupIndexTest {
+
+    private static final long FIRST_RUN = DedupIndex.runKey("/data/Transactions.csv", 1000, 1);
+    private static final long SECOND_RUN = DedupIndex.runKey("/data/Transactions.csv", 1000, 2);
+
+    private String indexFile;
+    private long[] keys;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    public void setUp() {
+        indexFile = directory.resolve("Transactions.dedup").toString();
+        // The keys of rows 1 to 4 of a transactions file
+        keys = new long[4];
+        for (int row = 1; row <= keys.length; row++) {
+            keys[row - 1] = DedupIndex.rowKey(deposit(row, null));
+        }
+    }
+
+    @Test
+    public void testRowKey() {
+        // The same row of a file submitted again has the same key, an identical row further down does not
+        assertEquals(DedupIndex.rowKey(deposit(1, null)), DedupIndex.rowKey(deposit(1, null)));
+        assertNotEquals(DedupIndex.rowKey(deposit(1, null)), DedupIndex.rowKey(deposit(2, null)));
+
+        // With an identifier only the identifier counts
+        assertEquals(DedupIndex.rowKey(deposit(1, "T-1")), DedupIndex.rowKey(deposit(7, "T-1")));
+        assertNotEquals(DedupIndex.rowKey(deposit(1, "T-1")), DedupIndex.rowKey(deposit(1, "T-2")));
+    }
+
+    @Test
+    public void testRerunSkipsAppliedRows() throws IOException {
+        try (DedupIndex index = DedupIndex.open(indexFile)) {
+            index.beginRun(FIRST_RUN, 0);
+            assertArrayEquals(new boolean[]{false, false, false, false}, index.claim(keys, 4));
+            index.commitRun();
+        }
+
+        // The same file submitted again, after the program was restarted
+        try (DedupIndex index = DedupIndex.open(indexFile)) {
+            assertTrue(index.isCommitted(FIRST_RUN));
+            assertFalse(index.isCommitted(SECOND_RUN));
+            assertEquals(4, index.size());
+
+            index.beginRun(SECOND_RUN, 0);
+            long newRow = DedupIndex.rowKey(deposit(5, null));
+            assertArrayEquals(new boolean[]{true, true, false, true},
+                    index.claim(new long[]{keys[0], keys[3], newRow, newRow}, 5));
+        }
+    }
+
+    @Test
+    public void testResumedRunDropsKeysAfterItsCheckpoint() throws IOException {
+        // A run persists the keys of rows 1 and 2 with its checkpoint, then those of rows 3 and 4, and dies
+        try (DedupIndex index = DedupIndex.open(indexFile)) {
+            index.beginRun(FIRST_RUN, 0);
+            index.claim(new long[]{keys[0], keys[1]}, 2);
+            index.persistUpTo(2);
+            index.claim(new long[]{keys[2], keys[3]}, 4);
+            index.persistUpTo(4);
+        }
+
+        // The run resumes from the checkpoint of row 2, so rows 3 and 4 are applied again
+        try (DedupIndex index = DedupIndex.open(indexFile)) {
+            assertFalse(index.isCommitted(FIRST_RUN));
+            index.beginRun(FIRST_RUN, 2);
+            assertEquals(2, index.size());
+            assertArrayEquals(new boolean[]{true, false, false}, index.claim(new long[]{keys[1], keys[2], keys[3]}, 4));
+            index.commitRun();
+        }
+
+        try (DedupIndex index = DedupIndex.open(indexFile)) {
+            assertTrue(index.isCommitted(FIRST_RUN));
+            assertEquals(4, index.size());
+        }
+    }
+
+    @Test
+    public void testUnpersistedKeysAreForgotten() throws IOException {
+        // Claimed keys reach the disk only with a checkpoint or the commit of the run
+        try (DedupIndex index = DedupIndex.open(indexFile)) {
+            index.beginRun(FIRST_RUN, 0);
+            index.claim(keys, 4);
+        }
+        try (DedupIndex index = DedupIndex.open(indexFile)) {
+            assertEquals(0, index.size());
+        }
+    }
+
+    private static TransactionRecord deposit(long rowNumber, String transactionId) {
+        return new TransactionRecord("Mickey", "Mouse", "Checking", "deposits", null, null, null, 10000, rowNumber,
+                transactionId);
+    }
+}
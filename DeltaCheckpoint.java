@@ -0,0 +1,286 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The DeltaCheckpoint class saves only what changed since the last checkpoint, instead of
+ * rewriting the whole customer file. Accounts and customers are marked dirty as they are
+ * modified, and a checkpoint appends one line per dirty record to BankUsers.delta:
+ * <ul>
+ *   <li>{@code B,accountNumber,balance} for a new account balance</li>
+ *   <li>{@code C,<customer row>} for a new or edited customer, in the BankUsers.csv layout</li>
+ * </ul>
+ * Every checkpoint ends with a {@code #commit,count} line, so a checkpoint cut short by a crash
+ * is ignored when the delta is replayed. Once the delta grows past a limit it is compacted on a
+ * background thread: the full customer file is written once and the delta starts over.
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class DeltaCheckpoint {
+
+    /**
+     * The file the changes are appended to.
+     */
+    public static final String DELTA_FILE = "BankUsers.delta";
+
+    /** Size of the delta after which it is folded back into the customer file. */
+    private static final long COMPACT_THRESHOLD = 16L * 1024 * 1024;
+
+    /** Account numbers whose balance changed since the last checkpoint. */
+    private static final Set<Integer> dirtyAccounts = ConcurrentHashMap.newKeySet();
+
+    /** Identification numbers of customers added or edited since the last checkpoint. */
+    private static final Set<String> dirtyCustomers = ConcurrentHashMap.newKeySet();
+
+    /** Checkpoints, replays and compactions never run at the same time. */
+    private static final Object fileLock = new Object();
+
+    /** The thread compactions run on. */
+    private static final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "delta-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** This class only has static members. */
+    private DeltaCheckpoint() {
+    }
+
+    /**
+     * This method records that the balance of an account changed.
+     *
+     * @param accountNumber the number of the modified account
+     */
+    public static void markAccountDirty(int accountNumber) {
+        dirtyAccounts.add(accountNumber);
+    }
+
+    /**
+     * This method records that a customer was added or that its details changed.
+     *
+     * @param idNumber the identification number of the customer
+     */
+    public static void markCustomerDirty(String idNumber) {
+        if (idNumber != null) {
+            dirtyCustomers.add(idNumber);
+        }
+    }
+
+    /**
+     * This method returns how many records are waiting for the next checkpoint.
+     *
+     * @return the number of dirty accounts and customers
+     */
+    public static int getDirtyCount() {
+        return dirtyAccounts.size() + dirtyCustomers.size();
+    }
+
+    /**
+     * This method forgets every pending change, used right after the customers are loaded.
+     */
+    public static void clearDirty() {
+        dirtyAccounts.clear();
+        dirtyCustomers.clear();
+    }
+
+    /**
+     * This method appends the dirty records of the shared customer base to the delta file.
+     * The cost depends on the number of changes, not on the size of the bank.
+     *
+     * @return the number of records written
+     * @throws IOException if the delta file cannot be written
+     */
+    public static int checkpoint() throws IOException {
+        synchronized (fileLock) {
+            HashMap<String, Customer> idMap = CustomerRegistry.getIdMap();
+            StringBuilder batch = new StringBuilder();
+            int count = 0;
+
+            // a key is removed before its value is read, so a change made meanwhile marks it again
+            for (Iterator<String> it = dirtyCustomers.iterator(); it.hasNext(); ) {
+                String idNumber = it.next();
+                it.remove();
+                Customer customer = idMap.get(idNumber);
+                if (customer != null) {
+                    PopulationHashmap.appendRow(batch.append("C,"), customer).append('\n');
+                    count++;
+                }
+            }
+            for (Iterator<Integer> it = dirtyAccounts.iterator(); it.hasNext(); ) {
+                int accountNumber = it.next();
+                it.remove();
+                Account account = AccountIndex.find(accountNumber);
+                if (account != null) {
+                    Money.appendTo(batch.append("B,").append(accountNumber).append(','), account.getBalanceCents()).append('\n');
+                    count++;
+                }
+            }
+            if (count == 0) {
+                return 0;
+            }
+            batch.append("#commit,").append(count).append('\n');
+
+            long size;
+            try (FileChannel channel = FileChannel.open(Paths.get(DELTA_FILE), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer bytes = ByteBuffer.wrap(batch.toString().getBytes(StandardCharsets.UTF_8));
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                channel.force(false);
+                size = channel.size();
+            }
+
+            if (size > COMPACT_THRESHOLD) {
+                compactAsync();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * This method replays the committed checkpoints of the delta file on top of freshly loaded maps.
+     * Checkpoints without their commit line (cut short by a crash) are skipped.
+     *
+     * @param idMap   the loaded customers keyed by identification number
+     * @param nameMap the loaded customers keyed by full name
+     * @return the number of records applied
+     */
+    public static int replay(HashMap<String, Customer> idMap, HashMap<String, Customer> nameMap) {
+        Path path = Paths.get(DELTA_FILE);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+
+        synchronized (fileLock) {
+            int applied = 0;
+            PopulationHashmap.CustomerColumns columns =
+                    new PopulationHashmap.CustomerColumns(PopulationHashmap.CSV_HEADER.split(","));
+            try {
+                java.util.List<String> pending = new java.util.ArrayList<>();
+                for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                    if (line.startsWith("#commit")) {
+                        for (String record : pending) {
+                            applied += applyRecord(record, columns, idMap, nameMap);
+                        }
+                        pending.clear();
+                    } else if (!line.isEmpty()) {
+                        pending.add(line);
+                    }
+                }
+                if (!pending.isEmpty()) {
+                    System.out.println("Ignoring " + pending.size() + " uncommitted records at the end of " + DELTA_FILE);
+                }
+            } catch (IOException e) {
+                System.out.println("Error reading " + DELTA_FILE + ": " + e.getMessage());
+            }
+            clearDirty();
+            return applied;
+        }
+    }
+
+    /**
+     * This method applies one record of the delta file.
+     *
+     * @param record  the line of the record
+     * @param columns the columns of a customer row
+     * @param idMap   the customers keyed by identification number
+     * @param nameMap the customers keyed by full name
+     * @return 1 if the record was applied, 0 if it was skipped
+     */
+    private static int applyRecord(String record, PopulationHashmap.CustomerColumns columns,
+                                   HashMap<String, Customer> idMap, HashMap<String, Customer> nameMap) {
+        try {
+            if (record.startsWith("B,")) {
+                int comma = record.indexOf(',', 2);
+                Account account = AccountIndex.find(Integer.parseInt(record.substring(2, comma)));
+                if (account == null) {
+                    return 0;
+                }
+                account.setBalance(Money.toDollars(Money.parseCents(record.substring(comma + 1))));
+                return 1;
+            }
+            if (record.startsWith("C,")) {
+                try (CsvRowParser row = new CsvRowParser(new java.io.StringReader(record.substring(2)))) {
+                    if (!row.nextRow()) {
+                        return 0;
+                    }
+                    // a customer already loaded is updated in place, so its accounts keep their slots
+                    Customer customer = idMap.get(columns.getIdNumber(row));
+                    String previousName = customer == null ? null : customer.getFirstName() + " " + customer.getLastName();
+                    if (customer == null || !columns.updateCustomer(row, customer)) {
+                        customer = columns.toCustomer(row);
+                        idMap.put(customer.getIdNumber(), customer);
+                    }
+                    if (previousName != null) {
+                        nameMap.remove(previousName);
+                    }
+                    nameMap.put(customer.getFirstName() + " " + customer.getLastName(), customer);
+                    for (Account account : customer.getAccounts()) {
+                        Account.addIdToAccountSet(account.getAccountNum());
+                    }
+                    AccountIndex.add(customer);
+                    return 1;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Skipping bad delta record: " + record);
+        }
+        return 0;
+    }
+
+    /**
+     * This method folds the delta into the customer file on the background thread.
+     *
+     * @return the pending compaction
+     */
+    public static Future<?> compactAsync() {
+        return compactor.submit(() -> {
+            try {
+                compact();
+            } catch (IOException e) {
+                System.out.println("Delta compaction failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * This method writes the whole customer base to the customer file and empties the delta.
+     * Pending dirty records stay dirty and go to the next delta.
+     *
+     * @throws IOException if the customer file cannot be written or the delta file cannot be removed
+     */
+    public static void compact() throws IOException {
+        synchronized (fileLock) {
+            CheckpointWriter.write(PopulationHashmap.CUSTOMER_FILE, CustomerRegistry.getIdMap());
+            Files.deleteIfExists(Paths.get(DELTA_FILE));
+        }
+    }
+
+    /**
+     * This method empties the delta once a full copy of the customers (like the snapshot) has been
+     * saved, since that copy already has every change in it.
+     *
+     * @throws IOException if the delta file cannot be removed
+     */
+    public static void discard() throws IOException {
+        synchronized (fileLock) {
+            Files.deleteIfExists(Paths.get(DELTA_FILE));
+        }
+    }
+}
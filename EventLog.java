@@ -0,0 +1,993 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * The EventLog class is a structured log of what happens to the accounts, kept next to the text
+ * of log.txt. Every event is a fixed size binary record:
+ * <ul>
+ *   <li>the time of the event, in milliseconds since the epoch,</li>
+ *   <li>its type and, for a failed transaction, the PreparedTransaction.Failure, with two bytes of padding,</li>
+ *   <li>the identification number of the customer it belongs to, 0 when unknown,</li>
+ *   <li>the numbers of the account the money comes from and goes to, 0 when there is none,</li>
+ *   <li>the amount and the balances of both accounts right after the event, in cents.</li>
+ * </ul>
+ * No text is stored: Event.render writes the line of an event only when it is read.
+ *
+ * <p>The records are grouped in blocks of BLOCK_RECORDS. For every full block, an entry is added
+ * to the index file (the event file followed by ".idx") with the first and last time of the block
+ * and a bloom filter of the accounts and customers of its events. A query reads the index, which
+ * is about 4% of the size of the events, and only reads the blocks whose time range overlaps the
+ * one asked for and whose bloom filter may hold one of the accounts or customers asked for. The
+ * events after the last full block have no entry yet and are always read.</p>
+ *
+ * <p>The log is turned on by starting the JVM with {@code -Dbank.eventLog=true}; without it record
+ * does nothing. Events are buffered and written a block at a time, when flush is called, and when
+ * the JVM exits. EventLogQuery reads the log from the command line.</p>
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class EventLog {
+
+    /**
+     * The Type enum lists the events the log records, with the code stored in a record.
+     */
+    public enum Type {
+        /** A balance was looked at. */
+        INQUIRY(1),
+        /** Money added to an account. */
+        DEPOSIT(2),
+        /** Money taken out of an account. */
+        WITHDRAW(3),
+        /** Money moved between two accounts of the same user. */
+        TRANSFER(4),
+        /** Money sent from one user to another. */
+        PAY(5),
+        /** A transaction that did not go through. */
+        FAILED(6),
+        /** Interest paid into an account. */
+        INTEREST(7),
+        /** A balance set back to the one of an IngestCheckpoint. */
+        ADJUST(8);
+
+        /** The code of the type in a record. */
+        private final byte code;
+
+        Type(int code) {
+            this.code = (byte) code;
+        }
+
+        /**
+         * This method retrieves the code of the type in a record.
+         *
+         * @return the code
+         */
+        public byte getCode() {
+            return code;
+        }
+
+        /**
+         * This method finds the type with the given code.
+         *
+         * @param code the code stored in a record
+         * @return the type, or null if the code is not a type
+         */
+        public static Type fromCode(byte code) {
+            for (Type type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * This method finds the type of a change recorded by the BalanceJournal.
+         *
+         * @param op the change
+         * @return the type of the event
+         */
+        public static Type of(BalanceJournal.Op op) {
+            return switch (op) {
+                case DEPOSIT -> DEPOSIT;
+                case WITHDRAW -> WITHDRAW;
+                case TRANSFER -> TRANSFER;
+                case PAY -> PAY;
+                case INTEREST -> INTEREST;
+                case ADJUST -> ADJUST;
+            };
+        }
+    }
+
+    /**
+     * Whether events are recorded. It is turned on by starting the JVM with
+     * {@code -Dbank.eventLog=true}.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("bank.eventLog");
+
+    /** The event file, BankEvents.log unless the JVM is started with {@code -Dbank.eventLogFile=name}. */
+    public static final String EVENT_FILE = System.getProperty("bank.eventLogFile", "BankEvents.log");
+
+    /** Added to the name of the event file to name its index. */
+    public static final String INDEX_SUFFIX = ".idx";
+
+    /** Size of a record: time, type, failure and padding, customer, two accounts and three amounts. */
+    public static final int RECORD_SIZE = 8 + 4 + 4 + 4 + 4 + 8 + 8 + 8;
+
+    /** The number of records in a block, the unit of the index. */
+    public static final int BLOCK_RECORDS = 1024;
+
+    /** Size of the bloom filter of a block. */
+    static final int BLOOM_BYTES = 2048;
+
+    /** Size of an index entry: first and last time, then the bloom filter. */
+    static final int INDEX_ENTRY_SIZE = 8 + 8 + BLOOM_BYTES;
+
+    /** The log everyone records to, opened on the first event. */
+    private static EventLog shared;
+
+    /** The event file. */
+    private final FileChannel data;
+
+    /** The index file. */
+    private final FileChannel index;
+
+    /** The records of the current block not yet written. */
+    private final ByteBuffer pending = ByteBuffer.allocate(RECORD_SIZE * BLOCK_RECORDS);
+
+    /** The summary of the current block, written to the index once the block is full. */
+    private final BlockSummary block = new BlockSummary();
+
+    /** The number of records in the current block, written or not. */
+    private int blockRecords;
+
+    /**
+     * This constructor opens the event file and its index. A record cut short by a crash is
+     * dropped, the index entries of full blocks that are missing are rebuilt, and the summary of
+     * the last block is read back so recording goes on where it stopped.
+     *
+     * @param path the event file
+     * @throws IOException if the files cannot be opened or read
+     */
+    private EventLog(Path path) throws IOException {
+        data = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = FileChannel.open(indexPath(path), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long records = data.size() / RECORD_SIZE;
+        if (data.size() != records * RECORD_SIZE) {
+            data.truncate(records * RECORD_SIZE);
+        }
+        long fullBlocks = records / BLOCK_RECORDS;
+        long entries = Math.min(index.size() / INDEX_ENTRY_SIZE, fullBlocks);
+        index.truncate(entries * INDEX_ENTRY_SIZE);
+
+        ByteBuffer blockBuffer = ByteBuffer.allocate(RECORD_SIZE * BLOCK_RECORDS);
+        for (long b = entries; b < fullBlocks; b++) {
+            BlockSummary summary = new BlockSummary();
+            readRecords(data, b * BLOCK_RECORDS, BLOCK_RECORDS, blockBuffer);
+            summary.addAll(blockBuffer);
+            writeFully(index, summary.toEntry(), b * INDEX_ENTRY_SIZE);
+        }
+        blockRecords = (int) (records - fullBlocks * BLOCK_RECORDS);
+        readRecords(data, fullBlocks * BLOCK_RECORDS, blockRecords, blockBuffer);
+        block.addAll(blockBuffer);
+        data.position(records * RECORD_SIZE);
+    }
+
+    /**
+     * This method returns the shared log, opening it on first use. It is flushed when the JVM
+     * exits, so the events still buffered reach the file.
+     *
+     * @return the log
+     * @throws IOException if the files cannot be opened
+     */
+    private static synchronized EventLog shared() throws IOException {
+        if (shared == null) {
+            shared = new EventLog(Paths.get(EVENT_FILE));
+            Runtime.getRuntime().addShutdownHook(new Thread(EventLog::flushOrReport, "event-log-flush"));
+        }
+        return shared;
+    }
+
+    /**
+     * This method records a change of balance. The BalanceJournal calls it for every change it
+     * is given, so every deposit, withdrawal, transfer and payment has its event.
+     *
+     * @param type             what the event did
+     * @param from             the account the money came from, or null
+     * @param to               the account the money went to, or null
+     * @param amountCents      the amount of the event, in cents
+     * @param fromBalanceCents the balance of from right after the event, in cents
+     * @param toBalanceCents   the balance of to right after the event, in cents
+     */
+    public static void record(Type type, Account from, Account to, long amountCents, long fromBalanceCents, long toBalanceCents) {
+        record(type, 0, from, to, amountCents, fromBalanceCents, toBalanceCents);
+    }
+
+    /**
+     * This method records a change of balance on accounts known by their number, such as the
+     * interest paid by an AccountStore scan. The customer is found through the AccountIndex.
+     *
+     * @param type             what the event did
+     * @param fromAccount      the number of the account the money came from, or 0
+     * @param toAccount        the number of the account the money went to, or 0
+     * @param amountCents      the amount of the event, in cents
+     * @param fromBalanceCents the balance of the source account right after the event, in cents
+     * @param toBalanceCents   the balance of the target account right after the event, in cents
+     */
+    public static void record(Type type, int fromAccount, int toAccount, long amountCents, long fromBalanceCents,
+                              long toBalanceCents) {
+        if (ENABLED) {
+            record(type, 0, customerOf(AccountIndex.find(fromAccount != 0 ? fromAccount : toAccount)),
+                    fromAccount, toAccount, amountCents, fromBalanceCents, toBalanceCents);
+        }
+    }
+
+    /**
+     * This method records a balance inquiry on one account.
+     *
+     * @param account the account inquired about
+     */
+    public static void recordInquiry(Account account) {
+        if (ENABLED) {
+            record(Type.INQUIRY, 0, account, null, 0, account.getBalanceCents(), 0);
+        }
+    }
+
+    /**
+     * This method records a transaction that did not go through, with the accounts it found.
+     *
+     * @param failure     why it did not go through
+     * @param from        the account the money would have come from, or null
+     * @param to          the account the money would have gone to, or null
+     * @param amountCents the amount of the transaction, in cents
+     */
+    public static void recordFailure(PreparedTransaction.Failure failure, Account from, Account to, long amountCents) {
+        if (ENABLED) {
+            record(Type.FAILED, failure == null ? 0 : failure.ordinal() + 1, from, to, amountCents,
+                    from == null ? 0 : from.getBalanceCents(), to == null ? 0 : to.getBalanceCents());
+        }
+    }
+
+    /**
+     * This method writes the events recorded so far to the event file. The index entry of the
+     * last block is written once the block is full.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public static void flush() throws IOException {
+        EventLog log;
+        synchronized (EventLog.class) {
+            log = shared;
+        }
+        if (log != null) {
+            synchronized (log) {
+                log.writePending();
+            }
+        }
+    }
+
+    /**
+     * This method flushes the log like flush, but reports a failure on the console instead of
+     * throwing it.
+     *
+     * @return true if every event is written, false if the event file could not be written
+     */
+    public static boolean flushOrReport() {
+        try {
+            flush();
+            return true;
+        } catch (IOException e) {
+            System.out.println("Could not write " + EVENT_FILE + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * This method writes the events still buffered and closes the log. A later event opens it again.
+     *
+     * @throws IOException if the files cannot be written or closed
+     */
+    public static void close() throws IOException {
+        EventLog log;
+        synchronized (EventLog.class) {
+            log = shared;
+            shared = null;
+        }
+        if (log != null) {
+            synchronized (log) {
+                try {
+                    log.writePending();
+                } finally {
+                    log.data.close();
+                    log.index.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * This method reads the events of an event file that match a query, in the order they were
+     * recorded, reading only the blocks its index does not rule out.
+     *
+     * @param fileName the event file
+     * @param query    the events to find
+     * @param action   what to do with every event found
+     * @return how many blocks and records were read
+     * @throws IOException if the files cannot be read
+     */
+    public static Scan query(String fileName, Query query, Consumer<Event> action) throws IOException {
+        Path path = Paths.get(fileName);
+        if (Paths.get(EVENT_FILE).toAbsolutePath().equals(path.toAbsolutePath())) {
+            flush(); // events of this process still buffered
+        }
+        Scan scan = new Scan();
+        Path indexPath = indexPath(path);
+        try (FileChannel data = FileChannel.open(path, StandardOpenOption.READ)) {
+            long records = data.size() / RECORD_SIZE;
+            long fullBlocks = records / BLOCK_RECORDS;
+            long entries = 0;
+            ByteBuffer entryBuffer = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+            ByteBuffer blockBuffer = ByteBuffer.allocate(RECORD_SIZE * BLOCK_RECORDS);
+            BlockSummary summary = new BlockSummary();
+
+            if (Files.exists(indexPath)) {
+                try (FileChannel index = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+                    entries = Math.min(index.size() / INDEX_ENTRY_SIZE, fullBlocks);
+                    for (long b = 0; b < entries; b++) {
+                        entryBuffer.clear();
+                        readFully(index, entryBuffer, b * INDEX_ENTRY_SIZE);
+                        summary.fromEntry(entryBuffer);
+                        scan.blocks++;
+                        if (!summary.mayMatch(query)) {
+                            continue;
+                        }
+                        scan.blocksRead++;
+                        scan.recordsRead += readRecords(data, b * BLOCK_RECORDS, BLOCK_RECORDS, blockBuffer);
+                        scan.found += filter(blockBuffer, query, action);
+                    }
+                }
+            }
+
+            // the events without an index entry, at least the last partial block
+            for (long first = entries * BLOCK_RECORDS; first < records; first += BLOCK_RECORDS) {
+                scan.blocks++;
+                scan.blocksRead++;
+                scan.recordsRead += readRecords(data, first, (int) Math.min(BLOCK_RECORDS, records - first), blockBuffer);
+                scan.found += filter(blockBuffer, query, action);
+            }
+        }
+        return scan;
+    }
+
+    /**
+     * This method returns the index file of an event file.
+     *
+     * @param path the event file
+     * @return the index file
+     */
+    private static Path indexPath(Path path) {
+        return path.resolveSibling(path.getFileName() + INDEX_SUFFIX);
+    }
+
+    /**
+     * This method records an event to the shared log.
+     *
+     * @param type             what the event did
+     * @param detail           the failure code of a FAILED event, otherwise 0
+     * @param from             the account the money came from, or null
+     * @param to               the account the money went to, or null
+     * @param amountCents      the amount of the event, in cents
+     * @param fromBalanceCents the balance of from right after the event, in cents
+     * @param toBalanceCents   the balance of to right after the event, in cents
+     */
+    private static void record(Type type, int detail, Account from, Account to, long amountCents,
+                               long fromBalanceCents, long toBalanceCents) {
+        if (ENABLED) {
+            record(type, detail, customerOf(from != null ? from : to), from == null ? 0 : from.getAccountNum(),
+                    to == null ? 0 : to.getAccountNum(), amountCents, fromBalanceCents, toBalanceCents);
+        }
+    }
+
+    /**
+     * This method records an event to the shared log, with its accounts and customer as numbers.
+     *
+     * @param type             what the event did
+     * @param detail           the failure code of a FAILED event, otherwise 0
+     * @param customer         the identification number of the customer, or 0
+     * @param from             the number of the account the money came from, or 0
+     * @param to               the number of the account the money went to, or 0
+     * @param amountCents      the amount of the event, in cents
+     * @param fromBalanceCents the balance of from right after the event, in cents
+     * @param toBalanceCents   the balance of to right after the event, in cents
+     */
+    private static void record(Type type, int detail, int customer, int from, int to, long amountCents,
+                               long fromBalanceCents, long toBalanceCents) {
+        EventLog log;
+        try {
+            log = shared();
+        } catch (IOException e) {
+            System.out.println("Could not open " + EVENT_FILE + ": " + e.getMessage());
+            return;
+        }
+        try {
+            synchronized (log) {
+                log.add(System.currentTimeMillis(), type, detail, customer, from, to,
+                        amountCents, fromBalanceCents, toBalanceCents);
+            }
+        } catch (IOException e) {
+            System.out.println("Could not write " + EVENT_FILE + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * This method finds the identification number of the holder of an account.
+     *
+     * @param account the account, or null
+     * @return the identification number, or 0 if there is no account, holder or number
+     */
+    private static int customerOf(Account account) {
+        if (account == null || account.getAccountHolder() == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(account.getAccountHolder().getIdNumber().trim());
+        } catch (NumberFormatException | NullPointerException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * This method adds a record to the current block, while the log is locked. A full block is
+     * written to the event file and its summary to the index.
+     *
+     * @throws IOException if the files cannot be written
+     */
+    private void add(long time, Type type, int detail, int customer, int from, int to,
+                     long amountCents, long fromBalanceCents, long toBalanceCents) throws IOException {
+        pending.putLong(time)
+                .put(type.getCode()).put((byte) detail).put((byte) 0).put((byte) 0)
+                .putInt(customer)
+                .putInt(from)
+                .putInt(to)
+                .putLong(amountCents)
+                .putLong(fromBalanceCents)
+                .putLong(toBalanceCents);
+        block.add(time, customer, from, to);
+        blockRecords++;
+        if (blockRecords == BLOCK_RECORDS) {
+            writePending();
+            long entry = data.position() / RECORD_SIZE / BLOCK_RECORDS - 1;
+            writeFully(index, block.toEntry(), entry * INDEX_ENTRY_SIZE);
+            block.clear();
+            blockRecords = 0;
+        }
+    }
+
+    /**
+     * This method writes the buffered records to the end of the event file, while the log is locked.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    private void writePending() throws IOException {
+        pending.flip();
+        while (pending.hasRemaining()) {
+            data.write(pending);
+        }
+        pending.clear();
+    }
+
+    /**
+     * This method reads consecutive records into a buffer, ready to be read.
+     *
+     * @param channel the event file
+     * @param first   the number of the first record
+     * @param count   the number of records
+     * @param buffer  the buffer, large enough for the records
+     * @return the number of records read
+     * @throws IOException if the file cannot be read
+     */
+    private static int readRecords(FileChannel channel, long first, int count, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        buffer.limit(count * RECORD_SIZE);
+        readFully(channel, buffer, first * RECORD_SIZE);
+        return count;
+    }
+
+    /**
+     * This method fills a buffer from a position of a file and flips it.
+     *
+     * @throws IOException if the file ends before the buffer is full
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of the event log");
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * This method writes a whole buffer at a position of a file.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * This method passes the records of a buffer that match a query to an action.
+     *
+     * @param records the records, ready to be read
+     * @param query   the events to find
+     * @param action  what to do with every event found
+     * @return the number of events found
+     */
+    private static long filter(ByteBuffer records, Query query, Consumer<Event> action) {
+        long found = 0;
+        for (int offset = 0; offset + RECORD_SIZE <= records.limit(); offset += RECORD_SIZE) {
+            long time = records.getLong(offset);
+            int customer = records.getInt(offset + 12);
+            int from = records.getInt(offset + 16);
+            int to = records.getInt(offset + 20);
+            if (query.matches(time, customer, from, to)) {
+                action.accept(new Event(time, Type.fromCode(records.get(offset + 8)), records.get(offset + 9),
+                        customer, from, to, records.getLong(offset + 24), records.getLong(offset + 32),
+                        records.getLong(offset + 40)));
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * The Query class describes the events to find: those in a time range and, if any accounts or
+     * customers are given, those touching one of the accounts or belonging to one of the customers.
+     */
+    public static final class Query {
+
+        /** The first time of the range, in milliseconds since the epoch. */
+        private long since = Long.MIN_VALUE;
+
+        /** The time after the range, in milliseconds since the epoch. */
+        private long until = Long.MAX_VALUE;
+
+        /** The accounts asked for; a query names a few, so they are kept in a plain array. */
+        private int[] accounts = new int[0];
+
+        /** The customers asked for. */
+        private int[] customers = new int[0];
+
+        /**
+         * This method limits the query to a time range.
+         *
+         * @param since the first time, in milliseconds since the epoch
+         * @param until the time after the range, in milliseconds since the epoch
+         * @return this query
+         */
+        public Query between(long since, long until) {
+            this.since = since;
+            this.until = until;
+            return this;
+        }
+
+        /**
+         * This method adds an account to the query.
+         *
+         * @param accountNumber the account number
+         * @return this query
+         */
+        public Query account(int accountNumber) {
+            if (!contains(accounts, accountNumber)) {
+                accounts = Arrays.copyOf(accounts, accounts.length + 1);
+                accounts[accounts.length - 1] = accountNumber;
+            }
+            return this;
+        }
+
+        /**
+         * This method adds a customer to the query.
+         *
+         * @param idNumber the identification number of the customer
+         * @return this query
+         */
+        public Query customer(int idNumber) {
+            if (!contains(customers, idNumber)) {
+                customers = Arrays.copyOf(customers, customers.length + 1);
+                customers[customers.length - 1] = idNumber;
+            }
+            return this;
+        }
+
+        /**
+         * This method checks if the query asks for some accounts or customers.
+         *
+         * @return true if the events must touch one of the accounts or customers
+         */
+        boolean hasKeys() {
+            return accounts.length > 0 || customers.length > 0;
+        }
+
+        /**
+         * This method returns the accounts asked for.
+         */
+        int[] getAccounts() {
+            return accounts;
+        }
+
+        /**
+         * This method returns the customers asked for.
+         */
+        int[] getCustomers() {
+            return customers;
+        }
+
+        /**
+         * This method checks if a time range overlaps the range of the query.
+         *
+         * @param first the first time of the range
+         * @param last  the last time of the range
+         * @return true if the ranges overlap
+         */
+        boolean overlaps(long first, long last) {
+            return last >= since && first < until;
+        }
+
+        /**
+         * This method checks if an event matches the query.
+         */
+        boolean matches(long time, int customer, int from, int to) {
+            if (time < since || time >= until) {
+                return false;
+            }
+            return !hasKeys()
+                    || (from != 0 && contains(accounts, from))
+                    || (to != 0 && contains(accounts, to))
+                    || (customer != 0 && contains(customers, customer));
+        }
+
+        /**
+         * This method checks if an array holds a value.
+         */
+        private static boolean contains(int[] values, int value) {
+            for (int v : values) {
+                if (v == value) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The Scan class counts what a query read.
+     */
+    public static final class Scan {
+
+        /** The number of blocks of the file. */
+        long blocks;
+
+        /** The number of blocks read. */
+        long blocksRead;
+
+        /** The number of records read. */
+        long recordsRead;
+
+        /** The number of events found. */
+        long found;
+
+        /**
+         * This method returns the number of blocks of the file.
+         *
+         * @return the number of blocks
+         */
+        public long getBlocks() {
+            return blocks;
+        }
+
+        /**
+         * This method returns the number of blocks read.
+         *
+         * @return the number of blocks read
+         */
+        public long getBlocksRead() {
+            return blocksRead;
+        }
+
+        /**
+         * This method returns the number of records read.
+         *
+         * @return the number of records read
+         */
+        public long getRecordsRead() {
+            return recordsRead;
+        }
+
+        /**
+         * This method returns the number of events found.
+         *
+         * @return the number of events found
+         */
+        public long getFound() {
+            return found;
+        }
+    }
+
+    /**
+     * The Event class is one record of the log, read back.
+     */
+    public static final class Event {
+
+        /** Formats the time of an event. */
+        private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS")
+                .withZone(ZoneId.systemDefault());
+
+        private final long time;
+        private final Type type;
+        private final int detail;
+        private final int customer;
+        private final int from;
+        private final int to;
+        private final long amountCents;
+        private final long fromBalanceCents;
+        private final long toBalanceCents;
+
+        /**
+         * This constructor keeps the fields of a record.
+         */
+        Event(long time, Type type, int detail, int customer, int from, int to,
+              long amountCents, long fromBalanceCents, long toBalanceCents) {
+            this.time = time;
+            this.type = type;
+            this.detail = detail;
+            this.customer = customer;
+            this.from = from;
+            this.to = to;
+            this.amountCents = amountCents;
+            this.fromBalanceCents = fromBalanceCents;
+            this.toBalanceCents = toBalanceCents;
+        }
+
+        /**
+         * This method returns the time of the event.
+         *
+         * @return the time, in milliseconds since the epoch
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * This method returns the type of the event.
+         *
+         * @return the type, or null if the record holds an unknown code
+         */
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * This method returns why a FAILED event did not go through.
+         *
+         * @return the failure, or null if the event is not a failure
+         */
+        public PreparedTransaction.Failure getFailure() {
+            PreparedTransaction.Failure[] failures = PreparedTransaction.Failure.values();
+            return type == Type.FAILED && detail > 0 && detail <= failures.length ? failures[detail - 1] : null;
+        }
+
+        /**
+         * This method returns the customer of the event.
+         *
+         * @return the identification number, or 0 if unknown
+         */
+        public int getCustomer() {
+            return customer;
+        }
+
+        /**
+         * This method returns the account the money came from.
+         *
+         * @return the account number, or 0
+         */
+        public int getFrom() {
+            return from;
+        }
+
+        /**
+         * This method returns the account the money went to.
+         *
+         * @return the account number, or 0
+         */
+        public int getTo() {
+            return to;
+        }
+
+        /**
+         * This method returns the amount of the event.
+         *
+         * @return the amount in cents
+         */
+        public long getAmountCents() {
+            return amountCents;
+        }
+
+        /**
+         * This method writes the event as a line of text, naming the accounts by type if the
+         * customers are loaded.
+         *
+         * @return the line of the event
+         */
+        public String render() {
+            StringBuilder line = new StringBuilder(96);
+            line.append(TIME.format(Instant.ofEpochMilli(time))).append(' ').append(type == null ? "UNKNOWN" : type.name());
+            PreparedTransaction.Failure failure = getFailure();
+            if (failure != null) {
+                line.append(" (").append(failure.name()).append(')');
+            }
+            line.append(" customer ").append(customer).append(": ");
+            if (type == Type.INQUIRY) {
+                appendAccount(line, from).append(" balance $");
+                return Money.appendTo(line, fromBalanceCents).toString();
+            }
+            if (from != 0) {
+                appendAccount(line, from);
+            }
+            if (from != 0 && to != 0) {
+                line.append(" -> ");
+            }
+            if (to != 0) {
+                appendAccount(line, to);
+            }
+            Money.appendTo(line.append(" $"), amountCents);
+            if (type != Type.FAILED) {
+                line.append(", new balance");
+                if (from != 0) {
+                    Money.appendTo(line.append(' ').append(from).append(": $"), fromBalanceCents);
+                }
+                if (to != 0) {
+                    Money.appendTo(line.append(' ').append(to).append(": $"), toBalanceCents);
+                }
+            }
+            return line.toString();
+        }
+
+        /**
+         * This method appends an account as its type and number, or only its number if the
+         * account is not loaded.
+         */
+        private static StringBuilder appendAccount(StringBuilder line, int accountNumber) {
+            Account account = AccountIndex.size() > 0 ? AccountIndex.find(accountNumber) : null;
+            if (account != null) {
+                line.append(account.getAccountType()).append('-');
+            }
+            return line.append(accountNumber);
+        }
+
+        @Override
+        public String toString() {
+            return render();
+        }
+    }
+
+    /**
+     * The BlockSummary class is the index entry of a block: its first and last time and a bloom
+     * filter of its accounts and customers.
+     */
+    static final class BlockSummary {
+
+        /** The number of bits of the bloom filter set for each key. */
+        private static final int HASHES = 3;
+
+        /** Marks customer keys, so customer 1078 and account 1078 are different keys. */
+        private static final long CUSTOMER_KEY = 1L << 40;
+
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        final byte[] bloom = new byte[BLOOM_BYTES];
+
+        void add(long time, int customer, int from, int to) {
+            first = Math.min(first, time);
+            last = Math.max(last, time);
+            if (customer != 0) {
+                set(customer | CUSTOMER_KEY);
+            }
+            if (from != 0) {
+                set(from);
+            }
+            if (to != 0) {
+                set(to);
+            }
+        }
+
+        void addAll(ByteBuffer records) {
+            for (int offset = 0; offset + RECORD_SIZE <= records.limit(); offset += RECORD_SIZE) {
+                add(records.getLong(offset), records.getInt(offset + 12), records.getInt(offset + 16), records.getInt(offset + 20));
+            }
+        }
+
+        void clear() {
+            first = Long.MAX_VALUE;
+            last = Long.MIN_VALUE;
+            Arrays.fill(bloom, (byte) 0);
+        }
+
+        boolean mayMatch(Query query) {
+            if (!query.overlaps(first, last)) {
+                return false;
+            }
+            if (!query.hasKeys()) {
+                return true;
+            }
+            for (int account : query.getAccounts()) {
+                if (mayContain(account)) {
+                    return true;
+                }
+            }
+            for (int customer : query.getCustomers()) {
+                if (mayContain(customer | CUSTOMER_KEY)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        ByteBuffer toEntry() {
+            ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+            entry.putLong(first).putLong(last).put(bloom).flip();
+            return entry;
+        }
+
+        void fromEntry(ByteBuffer entry) {
+            first = entry.getLong();
+            last = entry.getLong();
+            entry.get(bloom);
+        }
+
+        private void set(long key) {
+            long h = mix(key);
+            int h1 = (int) h;
+            int h2 = (int) (h >>> 32) | 1;
+            for (int i = 0; i < HASHES; i++) {
+                int bit = ((h1 + i * h2) & 0x7FFFFFFF) % (BLOOM_BYTES * 8);
+                bloom[bit >>> 3] |= (byte) (1 << (bit & 7));
+            }
+        }
+
+        private boolean mayContain(long key) {
+            long h = mix(key);
+            int h1 = (int) h;
+            int h2 = (int) (h >>> 32) | 1;
+            for (int i = 0; i < HASHES; i++) {
+                int bit = ((h1 + i * h2) & 0x7FFFFFFF) % (BLOOM_BYTES * 8);
+                if ((bloom[bit >>> 3] & (1 << (bit & 7))) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static long mix(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            h ^= h >>> 32;
+            h *= 0xBF58476D1CE4E5B9L;
+            return h ^ (h >>> 29);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+
+/**
+ * The EventLogQuery class prints the events of the EventLog that touch some accounts or customers
+ * within a time range, such as everything that happened to account 1037 yesterday:
+ * <pre>
+ * java EventLogQuery --account 1037 --since 2026-10-16 --until 2026-10-16
+ * </pre>
+ * The index of the log is used to skip the blocks that cannot hold a matching event, so the query
+ * does not read the whole file. The events are rendered as text only here, when they are printed.
+ *
+ * <p>Options, all optional and combined with "and" except accounts and customers, which match any
+ * of those given:</p>
+ * <ul>
+ *   <li>{@code --account N}, repeatable: events from or to account N,</li>
+ *   <li>{@code --customer ID}, repeatable: events made by the customer with that identification number,</li>
+ *   <li>{@code --customer "First Last"}, repeatable: events made by the customer or on any of its
+ *       accounts, such as payments it received; the customers are loaded to find them,</li>
+ *   <li>{@code --since T} and {@code --until T}: a date ({@code 2026-10-16}, the whole day for
+ *       until), a local date and time ({@code 2026-10-16T09:30}) or milliseconds since the epoch,</li>
+ *   <li>{@code --file F}: the event file, EventLog.EVENT_FILE by default,</li>
+ *   <li>{@code --count}: only print how many events match.</li>
+ * </ul>
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class EventLogQuery {
+
+    /** This class only has static members. */
+    private EventLogQuery() {
+    }
+
+    /**
+     * The main method reads the options, runs the query and prints the events found, followed by
+     * how much of the log was read.
+     *
+     * @param args the options
+     */
+    public static void main(String[] args) {
+        EventLog.Query query = new EventLog.Query();
+        String fileName = EventLog.EVENT_FILE;
+        long since = Long.MIN_VALUE;
+        long until = Long.MAX_VALUE;
+        boolean countOnly = false;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--account" -> query.account(Integer.parseInt(value(args, ++i)));
+                    case "--customer" -> addCustomer(query, value(args, ++i));
+                    case "--since" -> since = parseTime(value(args, ++i), false);
+                    case "--until" -> until = parseTime(value(args, ++i), true);
+                    case "--file" -> fileName = value(args, ++i);
+                    case "--count" -> countOnly = true;
+                    default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            System.out.println(e.getMessage());
+            System.out.println("Usage: java EventLogQuery [--account N]... [--customer ID|\"First Last\"]... "
+                    + "[--since T] [--until T] [--file F] [--count]");
+            return;
+        }
+        query.between(since, until);
+
+        long start = System.nanoTime();
+        StringBuilder out = new StringBuilder(64 * 1024);
+        boolean print = !countOnly;
+        try {
+            EventLog.Scan scan = EventLog.query(fileName, query, event -> {
+                if (print) {
+                    out.append(event.render()).append(System.lineSeparator());
+                    if (out.length() >= 60 * 1024) {
+                        System.out.print(out);
+                        out.setLength(0);
+                    }
+                }
+            });
+            System.out.print(out);
+            System.out.println(String.format("%,d events found, %,d of %,d blocks read (%,d records) in %d ms.",
+                    scan.getFound(), scan.getBlocksRead(), scan.getBlocks(), scan.getRecordsRead(),
+                    (System.nanoTime() - start) / 1_000_000));
+        } catch (IOException e) {
+            System.out.println("Could not read " + fileName + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * This method returns the value of an option.
+     *
+     * @param args  the options
+     * @param index the position of the value
+     * @return the value
+     */
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value after " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    /**
+     * This method adds a customer to a query, by identification number or by full name. An
+     * identification number finds the events the customer made without loading the customers. A
+     * name is looked up in the customers, and the customer's accounts are added too, so payments
+     * made to the customer are found as well.
+     *
+     * @param query    the query
+     * @param customer the identification number or the full name
+     */
+    private static void addCustomer(EventLog.Query query, String customer) {
+        if (customer.chars().allMatch(Character::isDigit)) {
+            query.customer(Integer.parseInt(customer));
+            return;
+        }
+        HashMap<String, Customer> nameMap = CustomerRegistry.getNameMap();
+        Customer found = nameMap.get(customer);
+        if (found == null) {
+            throw new IllegalArgumentException("Customer " + customer + " not found");
+        }
+        query.customer(Integer.parseInt(found.getIdNumber().trim()));
+        query.account(found.getCheckingAccount().getAccountNum());
+        query.account(found.getSavingAccount().getAccountNum());
+        query.account(found.getCreditAccount().getAccountNum());
+    }
+
+    /**
+     * This method reads a time of the command line.
+     *
+     * @param text  a date, a local date and time or milliseconds since the epoch
+     * @param until whether the time ends the range, so a date means the end of that day
+     * @return the time, in milliseconds since the epoch
+     */
+    private static long parseTime(String text, boolean until) {
+        if (text.chars().allMatch(Character::isDigit)) {
+            return Long.parseLong(text);
+        }
+        ZoneId zone = ZoneId.systemDefault();
+        if (text.indexOf('T') < 0) {
+            LocalDate date = LocalDate.parse(text);
+            return (until ? date.plusDays(1) : date).atStartOfDay(zone).toInstant().toEpochMilli();
+        }
+        return LocalDateTime.parse(text).atZone(zone).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,183 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class EventLogQueryTest {
+
+    // Three full blocks a minute apart, then ten events without an index entry
+    private static final long START = 1_700_000_000_000L;
+    private static final int BLOCKS = 3;
+    private static final int LAST_EVENTS = 10;
+
+    private String eventFile;
+    private ByteArrayOutputStream outputStream;  // Instance variable to capture System.out
+    private PrintStream originalSystemOut;       // To restore original System.out
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        Path events = directory.resolve("BankEvents.log");
+        eventFile = events.toString();
+
+        // In block b, customer 500 + b deposits to accounts 10000 * (b + 1) + 0 and 2
+        // and withdraws from accounts 10000 * (b + 1) + 1 and 3, one event a millisecond
+        try (OutputStream data = Files.newOutputStream(events);
+             OutputStream index = Files.newOutputStream(directory.resolve("BankEvents.log" + EventLog.INDEX_SUFFIX))) {
+            for (int b = 0; b <= BLOCKS; b++) {
+                int count = b < BLOCKS ? EventLog.BLOCK_RECORDS : LAST_EVENTS;
+                ByteBuffer block = ByteBuffer.allocate(count * EventLog.RECORD_SIZE);
+                for (int i = 0; i < count; i++) {
+                    int account = 10000 * (b + 1) + i % 4;
+                    boolean deposit = i % 2 == 0;
+                    block.putLong(START + b * 60_000L + i)
+                            .put(deposit ? EventLog.Type.DEPOSIT.getCode() : EventLog.Type.WITHDRAW.getCode())
+                            .put(new byte[3])
+                            .putInt(500 + b)
+                            .putInt(deposit ? 0 : account)
+                            .putInt(deposit ? account : 0)
+                            .putLong(100 + i)
+                            .putLong(deposit ? 0 : 5000)
+                            .putLong(deposit ? 5000 : 0);
+                }
+                block.flip();
+                data.write(block.array());
+                if (b < BLOCKS) {
+                    // The index entry of a full block, as the EventLog writes it
+                    EventLog.BlockSummary summary = new EventLog.BlockSummary();
+                    summary.addAll(block);
+                    index.write(summary.toEntry().array());
+                }
+            }
+        }
+
+        // Capture System.out output to verify printed messages
+        outputStream = new ByteArrayOutputStream();
+        originalSystemOut = System.out;
+        System.setOut(new PrintStream(outputStream));
+    }
+
+    @Test
+    public void testAccountFilter() throws IOException {
+        List<EventLog.Event> found = new ArrayList<>();
+        EventLog.Scan scan = EventLog.query(eventFile, new EventLog.Query().account(20001), found::add);
+
+        assertEquals(EventLog.BLOCK_RECORDS / 4, found.size());
+        for (EventLog.Event event : found) {
+            assertEquals(EventLog.Type.WITHDRAW, event.getType());
+            assertEquals(20001, event.getFrom());
+            assertEquals(501, event.getCustomer());
+        }
+        // The index rules out the other full blocks, the events without an entry are always read
+        assertEquals(BLOCKS + 1, scan.getBlocks());
+        assertEquals(2, scan.getBlocksRead());
+        assertEquals(EventLog.BLOCK_RECORDS + LAST_EVENTS, scan.getRecordsRead());
+    }
+
+    @Test
+    public void testAccountsAndCustomersAreEitherOr() throws IOException {
+        EventLog.Query query = new EventLog.Query().account(10000).account(40002).customer(502);
+        List<EventLog.Event> found = new ArrayList<>();
+        EventLog.Scan scan = EventLog.query(eventFile, query, found::add);
+
+        // 256 deposits to 10000, every event of customer 502 and events 2 and 6 of the last ones
+        assertEquals(EventLog.BLOCK_RECORDS / 4 + EventLog.BLOCK_RECORDS + 2, scan.getFound());
+        assertEquals(scan.getFound(), found.size());
+        assertEquals(3, scan.getBlocksRead());
+
+        // In the order they were recorded
+        for (int i = 1; i < found.size(); i++) {
+            assertTrue(found.get(i - 1).getTime() < found.get(i).getTime());
+        }
+        assertEquals(10000, found.get(0).getTo());
+        assertEquals(40002, found.get(found.size() - 1).getTo());
+    }
+
+    @Test
+    public void testTimeFilter() throws IOException {
+        // Ten events of the second block: the range includes its first time and excludes its last
+        long since = START + 60_000 + 10;
+        EventLog.Query query = new EventLog.Query().between(since, since + 10);
+        List<EventLog.Event> found = new ArrayList<>();
+        EventLog.Scan scan = EventLog.query(eventFile, query, found::add);
+
+        assertEquals(10, found.size());
+        assertEquals(since, found.get(0).getTime());
+        assertEquals(since + 9, found.get(9).getTime());
+        assertEquals(110, found.get(0).getAmountCents());
+        assertEquals(2, scan.getBlocksRead());
+
+        // With an account too, the events must match both: deposits 10, 14 and 18 to 20002
+        query.account(20002);
+        assertEquals(3, EventLog.query(eventFile, query, event -> { }).getFound());
+        query.account(30002);
+        assertEquals(3, EventLog.query(eventFile, query, event -> { }).getFound());
+    }
+
+    @Test
+    public void testWithoutIndex() throws IOException {
+        Files.delete(directory.resolve("BankEvents.log" + EventLog.INDEX_SUFFIX));
+        EventLog.Scan scan = EventLog.query(eventFile, new EventLog.Query().account(20001), event -> { });
+
+        // Every block is read, and the same events are found
+        assertEquals(EventLog.BLOCK_RECORDS / 4, scan.getFound());
+        assertEquals(BLOCKS + 1, scan.getBlocksRead());
+    }
+
+    @Test
+    public void testEverything() throws IOException {
+        EventLog.Scan scan = EventLog.query(eventFile, new EventLog.Query(), event -> { });
+        assertEquals(BLOCKS * EventLog.BLOCK_RECORDS + LAST_EVENTS, scan.getFound());
+        assertEquals(BLOCKS + 1, scan.getBlocksRead());
+    }
+
+    @Test
+    public void testCommandLine() {
+        EventLogQuery.main(new String[]{"--file", eventFile, "--customer", "503", "--account", "40001"});
+        String output = outputStream.toString();
+        assertEquals(LAST_EVENTS + 1, output.lines().count());
+        assertTrue(output.contains("10 events found, 1 of 4 blocks read (10 records)"));
+
+        outputStream.reset();
+        EventLogQuery.main(new String[]{"--file", eventFile, "--account", "30003", "--count",
+                "--since", String.valueOf(START + 120_000), "--until", String.valueOf(START + 120_008)});
+        output = outputStream.toString();
+        assertEquals(1, output.lines().count());
+        assertTrue(output.startsWith("2 events found"));
+    }
+
+    @Test
+    public void testCommandLineErrors() {
+        EventLogQuery.main(new String[]{"--file", eventFile, "--account"});
+        assertTrue(outputStream.toString().contains("Missing value after --account"));
+        assertTrue(outputStream.toString().contains("Usage: java EventLogQuery"));
+
+        outputStream.reset();
+        EventLogQuery.main(new String[]{"--file", eventFile, "--verbose"});
+        assertTrue(outputStream.toString().contains("Unknown option --verbose"));
+
+        outputStream.reset();
+        EventLogQuery.main(new String[]{"--file", directory.resolve("missing.log").toString()});
+        assertTrue(outputStream.toString().startsWith("Could not read"));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        // Restore original System.out
+        System.setOut(originalSystemOut);
+    }
+}
@@ -0,0 +1,284 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The IngestCheckpoint class records how far a run of the transactions file got, so a run that
+ * dies halfway can be resumed instead of restoring the balances and starting over. A checkpoint
+ * holds the byte offset and row number of the first row not yet applied, and the balance of
+ * every account right after the row before it, so restoring the balances and reading on from
+ * the offset gives exactly the state the run would have reached.
+ *
+ * <p>The file starts with a header (magic number, format version, creation time, the size and
+ * modification time of the transactions file, the offset, the row number and the number of
+ * accounts), then has the number and balance in cents of every account, and ends with a CRC32
+ * checksum of everything before it, like CustomerSnapshot. It is written to a temporary file,
+ * forced to disk and renamed, so the previous checkpoint stays valid until the new one is
+ * complete. A checkpoint taken from another version of the transactions file (a different size
+ * or modification time) is ignored.</p>
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class IngestCheckpoint {
+
+    /** Identifies a checkpoint file ("EPMI", El Paso Miners Ingest). */
+    private static final int MAGIC = 0x45504D49;
+
+    /** Version of the layout written by this class. */
+    private static final short VERSION = 1;
+
+    /** Size of the buffers used to read and write checkpoints. */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    /** The size of the transactions file the checkpoint belongs to. */
+    private final long sourceSize;
+
+    /** The modification time of the transactions file, in milliseconds. */
+    private final long sourceModified;
+
+    /** The byte offset of the first row not yet applied. */
+    private final long offset;
+
+    /** The number of rows read before the offset, the header included. */
+    private final long rowNumber;
+
+    /** The account numbers, in the same order as their balances. */
+    private final int[] accountNumbers;
+
+    /** The balance of every account in cents. */
+    private final long[] balanceCents;
+
+    /**
+     * This constructor keeps the parts of a checkpoint.
+     *
+     * @param sourceSize     the size of the transactions file
+     * @param sourceModified the modification time of the transactions file
+     * @param offset         the byte offset of the first row not yet applied
+     * @param rowNumber      the number of rows read before the offset
+     * @param accountNumbers the account numbers
+     * @param balanceCents   the balance of every account in cents
+     */
+    private IngestCheckpoint(long sourceSize, long sourceModified, long offset, long rowNumber,
+                             int[] accountNumbers, long[] balanceCents) {
+        this.sourceSize = sourceSize;
+        this.sourceModified = sourceModified;
+        this.offset = offset;
+        this.rowNumber = rowNumber;
+        this.accountNumbers = accountNumbers;
+        this.balanceCents = balanceCents;
+    }
+
+    /**
+     * This method returns the name of the checkpoint file of a transactions file.
+     *
+     * @param fileName the transactions file
+     * @return the name of its checkpoint file
+     */
+    public static String fileFor(String fileName) {
+        return fileName + ".ckpt";
+    }
+
+    /**
+     * This method copies the balances of every account of a store. No transaction may be applied
+     * while it runs, or the copy would mix balances from before and after it.
+     *
+     * @param sourceSize     the size of the transactions file
+     * @param sourceModified the modification time of the transactions file, in milliseconds
+     * @param offset         the byte offset of the first row not yet applied
+     * @param rowNumber      the number of rows read before the offset
+     * @param store          the store holding the accounts
+     * @return the checkpoint
+     */
+    public static IngestCheckpoint capture(long sourceSize, long sourceModified, long offset, long rowNumber,
+                                           AccountStore store) {
+        int count = store.size();
+        int[] accountNumbers = new int[count];
+        long[] balanceCents = new long[count];
+        store.copyBalances(accountNumbers, balanceCents);
+        return new IngestCheckpoint(sourceSize, sourceModified, offset, rowNumber, accountNumbers, balanceCents);
+    }
+
+    /**
+     * This method writes the checkpoint and makes sure it is on disk before it replaces the
+     * previous one.
+     *
+     * @param fileName the checkpoint file
+     * @throws IOException if the checkpoint cannot be written
+     */
+    public void write(String fileName) throws IOException {
+        Path target = Paths.get(fileName);
+        Path temp = Paths.get(fileName + ".tmp");
+
+        CRC32 checksum = new CRC32();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            OutputStream file = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(file, checksum));
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeLong(sourceSize);
+            out.writeLong(sourceModified);
+            out.writeLong(offset);
+            out.writeLong(rowNumber);
+            out.writeInt(accountNumbers.length);
+            for (int i = 0; i < accountNumbers.length; i++) {
+                out.writeInt(accountNumbers[i]);
+                out.writeLong(balanceCents[i]);
+            }
+            out.flush();
+
+            // the checksum covers everything above and is not part of itself
+            DataOutputStream trailer = new DataOutputStream(file);
+            trailer.writeLong(checksum.getValue());
+            trailer.flush();
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * This method reads a checkpoint.
+     *
+     * @param fileName the checkpoint file
+     * @return the checkpoint
+     * @throws IOException if the file cannot be read, is not a checkpoint, or fails its checksum
+     */
+    public static IngestCheckpoint read(String fileName) throws IOException {
+        CRC32 checksum = new CRC32();
+        try (InputStream file = new BufferedInputStream(Files.newInputStream(Paths.get(fileName)), BUFFER_SIZE)) {
+            DataInputStream in = new DataInputStream(new CheckedInputStream(file, checksum));
+            if (in.readInt() != MAGIC) {
+                throw new IOException(fileName + " is not an ingest checkpoint");
+            }
+            short version = in.readShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported checkpoint version " + version);
+            }
+            in.readLong(); // creation time, only informative
+            long sourceSize = in.readLong();
+            long sourceModified = in.readLong();
+            long offset = in.readLong();
+            long rowNumber = in.readLong();
+            int count = in.readInt();
+            if (count < 0 || offset < 0 || offset > sourceSize) {
+                throw new IOException("Corrupted checkpoint header");
+            }
+
+            int[] accountNumbers = new int[count];
+            long[] balanceCents = new long[count];
+            for (int i = 0; i < count; i++) {
+                accountNumbers[i] = in.readInt();
+                balanceCents[i] = in.readLong();
+            }
+
+            long expected = checksum.getValue();
+            long stored;
+            try {
+                stored = new DataInputStream(file).readLong();
+            } catch (EOFException e) {
+                throw new IOException("Checkpoint " + fileName + " is truncated", e);
+            }
+            if (stored != expected) {
+                throw new IOException("Checkpoint " + fileName + " failed its checksum");
+            }
+            return new IngestCheckpoint(sourceSize, sourceModified, offset, rowNumber, accountNumbers, balanceCents);
+        }
+    }
+
+    /**
+     * This method reads the checkpoint of a transactions file if there is one and it was taken
+     * from the same version of the file. Any problem is reported and null is returned, so the
+     * caller can process the file from the start.
+     *
+     * @param fileName       the checkpoint file
+     * @param sourceSize     the current size of the transactions file
+     * @param sourceModified the current modification time of the transactions file, in milliseconds
+     * @return the checkpoint, or null if the file should be processed from the start
+     */
+    public static IngestCheckpoint readIfMatching(String fileName, long sourceSize, long sourceModified) {
+        if (!Files.exists(Paths.get(fileName))) {
+            return null;
+        }
+        try {
+            IngestCheckpoint checkpoint = read(fileName);
+            if (checkpoint.sourceSize != sourceSize || checkpoint.sourceModified != sourceModified) {
+                System.out.println("Ignoring checkpoint " + fileName + ": the transactions file changed since it was taken.");
+                return null;
+            }
+            return checkpoint;
+        } catch (IOException e) {
+            System.out.println("Ignoring checkpoint " + fileName + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * This method puts the balances of the checkpoint back into the accounts of the bank.
+     * Accounts that no longer exist are skipped. Every balance is changed by its difference with
+     * the checkpoint through AccountLocks.restoreCents, so with the BalanceJournal on the change
+     * is journaled like any other and the journal still adds up when it is replayed. The records
+     * are on disk when the method returns.
+     *
+     * @return the number of balances restored
+     * @throws IOException if the changes could not be saved to the BalanceJournal
+     */
+    public int restoreBalances() throws IOException {
+        int restored = 0;
+        for (int i = 0; i < accountNumbers.length; i++) {
+            Account account = AccountIndex.find(accountNumbers[i]);
+            if (account != null) {
+                AccountLocks.restoreCents(account, balanceCents[i]);
+                restored++;
+            }
+        }
+        BalanceJournal.flush();
+        return restored;
+    }
+
+    /**
+     * This method deletes the checkpoint of a transactions file, once the whole file was processed.
+     *
+     * @param fileName the checkpoint file
+     * @throws IOException if the file exists and cannot be deleted
+     */
+    public static void delete(String fileName) throws IOException {
+        Files.deleteIfExists(Paths.get(fileName));
+    }
+
+    /**
+     * This method retrieves the byte offset of the first row not yet applied.
+     *
+     * @return the offset to resume reading from
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * This method retrieves the number of rows read before the offset, the header included.
+     *
+     * @return the row number to resume counting from
+     */
+    public long getRowNumber() {
+        return rowNumber;
+    }
+}
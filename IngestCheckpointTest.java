@@ -0,0 +1,171 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+public class IngestCheckpointTest {
+
+    private Checking checkingAccount;
+    private Saving savingsAccount;
+    private AccountStore runStore;
+    private String checkpointFile;
+    private ByteArrayOutputStream outputStream;  // Instance variable to capture System.out
+    private PrintStream originalSystemOut;       // To restore original System.out
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    public void setUp() {
+        // The accounts of the loaded customers
+        Person person = new Person("882", "Aylin", "Rodriguez", "2003-Oct-10", "Another Address", "915668000");
+        checkingAccount = new Checking(882001, 500.0, person);
+        savingsAccount = new Saving(882002, 1500.0, person);
+        Account[] accounts = {checkingAccount, savingsAccount};
+        AccountIndex.add(new Customer("882", "Aylin", "Rodriguez", "2003-Oct-10", "Another Address", "915668000", accounts));
+
+        // The balances a run had reached when its checkpoint was taken
+        runStore = new AccountStore();
+        runStore.allocate(882001, AccountStore.CHECKING, 612.34, 0);
+        runStore.allocate(882002, AccountStore.SAVINGS, 1400.01, 0);
+        runStore.allocate(882999, AccountStore.CREDIT, 10.0, 100.0); // closed since, not in the index
+
+        checkpointFile = IngestCheckpoint.fileFor(directory.resolve("Transactions.csv").toString());
+
+        // Capture System.out output to verify printed messages
+        outputStream = new ByteArrayOutputStream();
+        originalSystemOut = System.out;
+        System.setOut(new PrintStream(outputStream));
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        IngestCheckpoint.capture(5000, 77, 1234, 40, runStore).write(checkpointFile);
+        assertFalse(Files.exists(Paths.get(checkpointFile + ".tmp")));
+
+        IngestCheckpoint resume = IngestCheckpoint.readIfMatching(checkpointFile, 5000, 77);
+        assertNotNull(resume);
+        assertEquals(1234, resume.getOffset());
+        assertEquals(40, resume.getRowNumber());
+
+        // Only the accounts still in the index are restored
+        assertEquals(2, resume.restoreBalances());
+        assertEquals(61234, checkingAccount.getBalanceCents());
+        assertEquals(140001, savingsAccount.getBalanceCents());
+    }
+
+    @Test
+    public void testNewerCheckpointReplacesTheOlder() throws IOException {
+        IngestCheckpoint.capture(5000, 77, 1234, 40, runStore).write(checkpointFile);
+        runStore.addCents(0, 100);
+        IngestCheckpoint.capture(5000, 77, 2345, 80, runStore).write(checkpointFile);
+
+        IngestCheckpoint resume = IngestCheckpoint.read(checkpointFile);
+        assertEquals(80, resume.getRowNumber());
+        resume.restoreBalances();
+        assertEquals(61334, checkingAccount.getBalanceCents());
+    }
+
+    @Test
+    public void testChangedFileIsNotResumed() throws IOException {
+        IngestCheckpoint.capture(5000, 77, 1234, 40, runStore).write(checkpointFile);
+
+        assertNull(IngestCheckpoint.readIfMatching(checkpointFile, 5001, 77));
+        assertNull(IngestCheckpoint.readIfMatching(checkpointFile, 5000, 78));
+        assertTrue(outputStream.toString().contains("the transactions file changed"));
+        assertEquals(50000, checkingAccount.getBalanceCents());
+    }
+
+    @Test
+    public void testDamagedCheckpointIsIgnored() throws IOException {
+        IngestCheckpoint.capture(5000, 77, 1234, 40, runStore).write(checkpointFile);
+        Path file = Paths.get(checkpointFile);
+        byte[] bytes = Files.readAllBytes(file);
+
+        // A balance changed on disk
+        bytes[bytes.length - 12]++;
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> IngestCheckpoint.read(checkpointFile));
+        assertNull(IngestCheckpoint.readIfMatching(checkpointFile, 5000, 77));
+        assertTrue(outputStream.toString().contains("failed its checksum"));
+
+        // The end of the file missing
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 4));
+        assertNull(IngestCheckpoint.readIfMatching(checkpointFile, 5000, 77));
+        assertTrue(outputStream.toString().contains("truncated"));
+    }
+
+    @Test
+    public void testResumeIsJournaled() throws Exception {
+        // The journal is only turned on when a JVM starts, so the run and the recovery get a JVM of their own
+        Path journal = directory.resolve("BankUsers.journal");
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        String classPath = location(IngestCheckpointTest.class) + File.pathSeparator + location(IngestCheckpoint.class);
+        Process process = new ProcessBuilder(java, "-Dbank.journal=true", "-Dbank.journalFile=" + journal,
+                "-cp", classPath, JournaledResume.class.getName())
+                .redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes());
+
+        // The journal adds up, and gives back the balance the resumed run reached
+        assertEquals(0, process.waitFor(), output);
+        assertTrue(output.contains("run 65000, recovered 65000"), output);
+    }
+
+    @Test
+    public void testMissingCheckpoint() throws IOException {
+        assertNull(IngestCheckpoint.readIfMatching(checkpointFile, 5000, 77));
+        IngestCheckpoint.delete(checkpointFile);
+        assertEquals("", outputStream.toString());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        // Restore original System.out
+        System.setOut(originalSystemOut);
+    }
+
+    private static String location(Class<?> type) throws Exception {
+        return Paths.get(type.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+    }
+
+    /**
+     * A run with the journal on: it deposits, takes a checkpoint, deposits again and stops, then is
+     * resumed from the checkpoint and makes the second deposit again. The journal is then replayed
+     * from the balance the account had before the run.
+     */
+    public static class JournaledResume {
+
+        public static void main(String[] args) throws IOException {
+            Person person = new Person("883", "Daniela", "Castro", "2003-Feb-02", "Some Address", "915667000");
+            Checking checking = new Checking(883001, 500.0, person);
+            Saving savings = new Saving(883002, 0.0, person);
+            Account[] accounts = {checking, savings};
+            AccountIndex.add(new Customer("883", "Daniela", "Castro", "2003-Feb-02", "Some Address", "915667000", accounts));
+
+            AccountLocks.depositCents(checking, 10000);
+            IngestCheckpoint checkpoint = IngestCheckpoint.capture(5000, 77, 1234, 40, AccountStore.getShared());
+            AccountLocks.depositCents(checking, 5000);
+
+            checkpoint.restoreBalances();
+            AccountLocks.depositCents(checking, 5000);
+            BalanceJournal.flush();
+            long balance = checking.getBalanceCents();
+
+            // Back to the balance saved before the run, then the journal on top of it
+            checking.setBalance(500.0);
+            new JournalRecovery(BalanceJournal.JOURNAL_FILE, 0, 1).run();
+            System.out.println("run " + balance + ", recovered " + checking.getBalanceCents());
+        }
+    }
+}
@@ -0,0 +1,467 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * The JournalRecovery class brings the balances back after a crash from the last customer
+ * snapshot and the BalanceJournal, instead of running the day's transactions file again. The
+ * snapshot remembers the sequence number of the last journal record it includes, so only the
+ * records after it (the tail of the journal) are read.
+ *
+ * <p>Every record carries the amount of its change and the balance it left, so the balance an
+ * account had before its first record of the tail is known from the journal alone. Replaying the
+ * tail sets every account it touches to that opening balance plus the amounts of all its records.
+ * Setting a balance can be done twice without harm, which matters because the delta file and the
+ * customer file do not know the journal sequence: a change they already hold is simply set again.
+ * The records are split by account and every part is replayed on its own thread, since records of
+ * different accounts never depend on each other.</p>
+ *
+ * <p>The records of an account are appended in the order its balance changed, so the opening
+ * balance is the one before the first record. A journal written without that guarantee can have
+ * records of an account out of order (the old balance plus the amount of a record does not give
+ * its new balance); they are counted in the report, and the opening balance is then the one
+ * balance before a change that no other record of the account left. If there is no such single
+ * balance, because a record is missing or a change was not journaled, the balance cannot be
+ * rebuilt and the recovery fails without setting any balance.</p>
+ *
+ * <p>Every record is checked against its CRC32. A bad or incomplete record at the end of the file
+ * was cut short by the crash: it was never acknowledged, so it is dropped and the file truncated
+ * after the last good record. A bad record followed by good ones is skipped and reported.</p>
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class JournalRecovery {
+
+    /** The number of records read from the file at once. */
+    private static final int READ_RECORDS = 16 * 1024;
+
+    /** The journal file. */
+    private final Path path;
+
+    /** The sequence number of the last record the loaded customers already include. */
+    private final long afterSequence;
+
+    /** The number of threads that replay the records. */
+    private final int parallelism;
+
+    /** The number of records read after afterSequence. */
+    private long recordsReplayed;
+
+    /** The number of accounts whose balance was set. */
+    private final AtomicLong accountsUpdated = new AtomicLong();
+
+    /** The number of accounts in the journal that the loaded customers do not have. */
+    private final AtomicLong unknownAccounts = new AtomicLong();
+
+    /** The number of records that do not follow the record before them on the same account. */
+    private final AtomicLong outOfOrder = new AtomicLong();
+
+    /** The number of records with a bad checksum followed by good records. */
+    private long badRecords;
+
+    /** The number of bytes dropped from the end of the file. */
+    private long truncatedBytes;
+
+    /** The sequence number of the last good record of the journal. */
+    private long lastSequence;
+
+    /** The time the recovery took, in nanoseconds. */
+    private long elapsedNanos;
+
+    /**
+     * This constructor prepares the recovery of a journal file.
+     *
+     * @param fileName      the journal file
+     * @param afterSequence the sequence number of the last record the loaded customers include
+     * @param parallelism   the number of threads that replay the records
+     */
+    public JournalRecovery(String fileName, long afterSequence, int parallelism) {
+        this.path = Paths.get(fileName);
+        this.afterSequence = afterSequence;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * This method recovers the balances of the shared customer base from the BalanceJournal,
+     * after the sequence number of the customer snapshot, and prints what it did. It is called
+     * once the customers are loaded and before any transaction runs.
+     *
+     * @return the recovery, or null if the journal is off, missing or already open
+     */
+    public static JournalRecovery recoverAfterSnapshot() {
+        if (!BalanceJournal.ENABLED || BalanceJournal.isOpen() || !Files.exists(Paths.get(BalanceJournal.JOURNAL_FILE))) {
+            return null;
+        }
+        long afterSequence = 0;
+        if (Files.exists(Paths.get(CustomerSnapshot.SNAPSHOT_FILE))) {
+            try {
+                afterSequence = CustomerSnapshot.readJournalSequence(CustomerSnapshot.SNAPSHOT_FILE);
+            } catch (IOException e) {
+                System.out.println("Replaying the whole journal, the snapshot sequence is unreadable: " + e.getMessage());
+            }
+        }
+
+        JournalRecovery recovery = new JournalRecovery(BalanceJournal.JOURNAL_FILE, afterSequence,
+                Runtime.getRuntime().availableProcessors());
+        try {
+            recovery.run();
+        } catch (IOException e) {
+            System.out.println("Could not recover from " + BalanceJournal.JOURNAL_FILE + ": " + e.getMessage());
+            return null;
+        }
+        if (recovery.getRecordsReplayed() > 0 || recovery.getTruncatedBytes() > 0 || recovery.getBadRecords() > 0) {
+            System.out.println(recovery);
+        }
+        return recovery;
+    }
+
+    /**
+     * This method reads the journal, truncates a torn tail and sets the balances of every account
+     * found in the records after afterSequence. No balance is set unless every one can be rebuilt.
+     *
+     * @throws IOException if the journal cannot be read or truncated, or a balance cannot be rebuilt
+     */
+    public void run() throws IOException {
+        long start = System.nanoTime();
+        Partition[] partitions = new Partition[parallelism];
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = new Partition();
+        }
+        read(partitions);
+        List<Map<Integer, Long>> balances = IntStream.range(0, partitions.length).parallel()
+                .mapToObj(i -> replay(partitions[i])).toList();
+
+        List<Integer> broken = new ArrayList<>();
+        for (Partition partition : partitions) {
+            broken.addAll(partition.broken);
+        }
+        if (!broken.isEmpty()) {
+            broken.sort(null);
+            throw new IOException("the journal records of " + broken.size() + " accounts do not add up to a balance "
+                    + "(a record is missing or a change was not journaled), first account " + broken.get(0)
+                    + "; no balance was recovered");
+        }
+        balances.parallelStream().forEach(this::setBalances);
+        elapsedNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * This method reads every record of the journal, checks its checksum and adds the records
+     * after afterSequence to the partition of each of their accounts. The file is truncated after
+     * its last good record.
+     *
+     * @param partitions the partitions of the records, by account
+     * @throws IOException if the journal cannot be read or truncated
+     */
+    private void read(Partition[] partitions) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate(READ_RECORDS * BalanceJournal.RECORD_SIZE);
+            byte[] record = new byte[BalanceJournal.RECORD_SIZE];
+            long position = 0;
+            long goodEnd = 0;
+            long badSinceGood = 0;
+
+            while (position + BalanceJournal.RECORD_SIZE <= size) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), (size - position) / BalanceJournal.RECORD_SIZE * BalanceJournal.RECORD_SIZE));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        throw new IOException("Unexpected end of " + path);
+                    }
+                }
+                buffer.flip();
+                while (buffer.remaining() >= BalanceJournal.RECORD_SIZE) {
+                    buffer.get(record);
+                    position += BalanceJournal.RECORD_SIZE;
+                    ByteBuffer fields = ByteBuffer.wrap(record);
+                    if (BalanceJournal.checksum(record) != fields.getInt(BalanceJournal.RECORD_SIZE - 4)) {
+                        badSinceGood++;
+                        continue;
+                    }
+                    badRecords += badSinceGood; // bad records followed by a good one are not a torn tail
+                    badSinceGood = 0;
+                    goodEnd = position;
+                    lastSequence = fields.getLong(0);
+                    if (lastSequence > afterSequence) {
+                        add(partitions, fields);
+                    }
+                }
+            }
+
+            if (goodEnd < size) {
+                truncatedBytes = size - goodEnd;
+                channel.truncate(goodEnd);
+                channel.force(true);
+            }
+        }
+    }
+
+    /**
+     * This method adds the accounts of a record to their partitions.
+     *
+     * @param partitions the partitions of the records, by account
+     * @param record     a record with a good checksum
+     */
+    private void add(Partition[] partitions, ByteBuffer record) {
+        BalanceJournal.Op op = BalanceJournal.Op.fromCode(record.get(8));
+        if (op == null) {
+            badRecords++;
+            return;
+        }
+        recordsReplayed++;
+        int from = record.getInt(12);
+        int to = record.getInt(16);
+        long amount = record.getLong(20);
+        if (from != 0) {
+            partitionOf(partitions, from).add(from, -amount, record.getLong(28));
+        }
+        if (to != 0) {
+            partitionOf(partitions, to).add(to, amount, record.getLong(36));
+        }
+    }
+
+    /**
+     * This method picks the partition of an account, so all the records of an account are
+     * replayed by the same thread in the order of the journal.
+     *
+     * @param partitions the partitions
+     * @param account    the account number
+     * @return the partition of the account
+     */
+    private static Partition partitionOf(Partition[] partitions, int account) {
+        int h = account * 0x9E3779B9;
+        return partitions[((h ^ (h >>> 16)) & 0x7FFFFFFF) % partitions.length];
+    }
+
+    /**
+     * This method replays a partition: it rebuilds the balance of every account as its opening
+     * balance plus the amounts of all its records. The opening balance is the one before the first
+     * record of the account; when the records of the account are out of order, it is found by
+     * openingBalances instead. Accounts without a single opening balance are added to the broken
+     * accounts of the partition.
+     *
+     * @param partition the records of some accounts, in the order of the journal
+     * @return the rebuilt balance of every account of the partition, in cents
+     */
+    private Map<Integer, Long> replay(Partition partition) {
+        // opening balance, sum of the amounts and balance of the last record, per account
+        Map<Integer, long[]> totals = new HashMap<>();
+        Set<Integer> unordered = new HashSet<>();
+        for (int i = 0; i < partition.size; i++) {
+            long[] total = totals.get(partition.accounts[i]);
+            if (total == null) {
+                totals.put(partition.accounts[i], new long[]{partition.balances[i] - partition.amounts[i],
+                        partition.amounts[i], partition.balances[i]});
+                continue;
+            }
+            if (total[2] + partition.amounts[i] != partition.balances[i]) {
+                outOfOrder.incrementAndGet();
+                unordered.add(partition.accounts[i]);
+            }
+            total[1] += partition.amounts[i];
+            total[2] = partition.balances[i];
+        }
+
+        Map<Integer, Long> openings = unordered.isEmpty() ? Map.of() : openingBalances(partition, unordered);
+        Map<Integer, Long> balances = new HashMap<>();
+        for (Map.Entry<Integer, long[]> entry : totals.entrySet()) {
+            long opening = entry.getValue()[0];
+            if (unordered.contains(entry.getKey())) {
+                Long found = openings.get(entry.getKey());
+                if (found == null) {
+                    partition.broken.add(entry.getKey());
+                    continue;
+                }
+                opening = found;
+            }
+            balances.put(entry.getKey(), opening + entry.getValue()[1]);
+        }
+        return balances;
+    }
+
+    /**
+     * This method finds the opening balance of an account whose records are out of order. Every
+     * change starts from the balance the change before it left, so once every balance left by a
+     * record is taken away from the balances before the records, the opening balance is the only
+     * one remaining, whatever the order of the records.
+     *
+     * @param partition the records of the accounts, among others
+     * @param accounts  the accounts whose records are out of order
+     * @return the opening balance in cents of every account that has a single one
+     */
+    private static Map<Integer, Long> openingBalances(Partition partition, Set<Integer> accounts) {
+        Map<Integer, Map<Long, Integer>> counts = new HashMap<>();
+        for (int i = 0; i < partition.size; i++) {
+            if (accounts.contains(partition.accounts[i])) {
+                Map<Long, Integer> count = counts.computeIfAbsent(partition.accounts[i], account -> new HashMap<>());
+                count.merge(partition.balances[i] - partition.amounts[i], 1, Integer::sum);
+                count.merge(partition.balances[i], -1, Integer::sum);
+            }
+        }
+
+        Map<Integer, Long> openings = new HashMap<>();
+        for (Map.Entry<Integer, Map<Long, Integer>> account : counts.entrySet()) {
+            Long opening = null;
+            boolean single = true;
+            for (Map.Entry<Long, Integer> entry : account.getValue().entrySet()) {
+                if (entry.getValue() > 0) {
+                    single &= entry.getValue() == 1 && opening == null;
+                    opening = entry.getKey();
+                }
+            }
+            if (single && opening != null) {
+                openings.put(account.getKey(), opening);
+            }
+        }
+        return openings;
+    }
+
+    /**
+     * This method sets the accounts of a partition to their rebuilt balances.
+     *
+     * @param balances the rebuilt balance of every account, in cents
+     */
+    private void setBalances(Map<Integer, Long> balances) {
+        for (Map.Entry<Integer, Long> entry : balances.entrySet()) {
+            Account account = AccountIndex.find(entry.getKey());
+            if (account == null) {
+                unknownAccounts.incrementAndGet();
+                continue;
+            }
+            long cents = entry.getValue();
+            if (account.getBalanceCents() != cents) {
+                account.setBalance(Money.toDollars(cents));
+                accountsUpdated.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * This method returns how many records after the snapshot sequence were replayed.
+     *
+     * @return the number of records replayed
+     */
+    public long getRecordsReplayed() {
+        return recordsReplayed;
+    }
+
+    /**
+     * This method returns how many accounts got a new balance from the journal.
+     *
+     * @return the number of accounts updated
+     */
+    public long getAccountsUpdated() {
+        return accountsUpdated.get();
+    }
+
+    /**
+     * This method returns how many records did not follow the record before them on the same
+     * account, which happened in journals written while deposits and withdrawals were appended
+     * without the lock of their account.
+     *
+     * @return the number of records out of order
+     */
+    public long getOutOfOrder() {
+        return outOfOrder.get();
+    }
+
+    /**
+     * This method returns how many records were skipped because of a bad checksum.
+     *
+     * @return the number of bad records
+     */
+    public long getBadRecords() {
+        return badRecords;
+    }
+
+    /**
+     * This method returns how many bytes were dropped from the end of the journal.
+     *
+     * @return the size of the torn tail
+     */
+    public long getTruncatedBytes() {
+        return truncatedBytes;
+    }
+
+    /**
+     * This method returns the time the recovery took.
+     *
+     * @return the time in milliseconds
+     */
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        text.append("Recovered ").append(String.format("%,d", recordsReplayed)).append(" journal records after sequence ")
+                .append(afterSequence).append(" (last ").append(lastSequence).append(") in ")
+                .append(getElapsedMillis()).append(" ms on ").append(parallelism).append(" threads: ")
+                .append(accountsUpdated.get()).append(" balances updated");
+        if (unknownAccounts.get() > 0) {
+            text.append(", ").append(unknownAccounts.get()).append(" unknown accounts");
+        }
+        if (outOfOrder.get() > 0) {
+            text.append(", ").append(outOfOrder.get()).append(" records out of order");
+        }
+        if (badRecords > 0) {
+            text.append(", ").append(badRecords).append(" bad records skipped");
+        }
+        if (truncatedBytes > 0) {
+            text.append(", torn tail of ").append(truncatedBytes).append(" bytes truncated");
+        }
+        return text.append('.').toString();
+    }
+
+    /**
+     * The Partition class holds the account sides of the records of some accounts, in the order
+     * of the journal, in three growing arrays.
+     */
+    private static final class Partition {
+
+        /** The account of every entry. */
+        int[] accounts = new int[1024];
+
+        /** The change of the balance of every entry, in cents. */
+        long[] amounts = new long[1024];
+
+        /** The balance every entry left, in cents. */
+        long[] balances = new long[1024];
+
+        /** The number of entries. */
+        int size;
+
+        /** The accounts whose balance cannot be rebuilt from their records. */
+        final List<Integer> broken = new ArrayList<>();
+
+        void add(int account, long amount, long balance) {
+            if (size == accounts.length) {
+                accounts = Arrays.copyOf(accounts, size * 2);
+                amounts = Arrays.copyOf(amounts, size * 2);
+                balances = Arrays.copyOf(balances, size * 2);
+            }
+            accounts[size] = account;
+            amounts[size] = amount;
+            balances[size] = balance;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class JournalRecoveryTest {
+
+    private Checking checkingAccount;
+    private Saving savingsAccount;
+    private Path journal;
+    private ByteArrayOutputStream records;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    public void setUp() {
+        // Two accounts with the balances of the snapshot, findable by number like the loaded customers
+        Person person = new Person("881", "Carlos", "Gonzalez", "2003-Jan-01", "Random Address", "915660000");
+        checkingAccount = new Checking(881001, 1000.0, person);
+        savingsAccount = new Saving(881002, 2000.0, person);
+        Account[] accounts = {checkingAccount, savingsAccount};
+        AccountIndex.add(new Customer("881", "Carlos", "Gonzalez", "2003-Jan-01", "Random Address", "915660000", accounts));
+
+        journal = directory.resolve("BankUsers.journal");
+        records = new ByteArrayOutputStream();
+    }
+
+    @Test
+    public void testReplay() throws IOException {
+        // 1000 + 100 - 30, then 70 moved to savings: 2000 + 70
+        addRecord(1, BalanceJournal.Op.DEPOSIT, 0, 881001, 10000, 0, 110000);
+        addRecord(2, BalanceJournal.Op.WITHDRAW, 881001, 0, 3000, 107000, 0);
+        addRecord(3, BalanceJournal.Op.TRANSFER, 881001, 881002, 7000, 100000, 207000);
+        JournalRecovery recovery = recover(0);
+
+        assertEquals(100000, checkingAccount.getBalanceCents());
+        assertEquals(207000, savingsAccount.getBalanceCents());
+        assertEquals(3, recovery.getRecordsReplayed());
+        assertEquals(0, recovery.getOutOfOrder());
+        assertEquals(0, recovery.getTruncatedBytes());
+    }
+
+    @Test
+    public void testOnlyRecordsAfterTheSnapshotAreReplayed() throws IOException {
+        // The snapshot already has the first deposit: 1000 is the balance after it
+        addRecord(1, BalanceJournal.Op.DEPOSIT, 0, 881001, 10000, 0, 100000);
+        addRecord(2, BalanceJournal.Op.DEPOSIT, 0, 881001, 2500, 0, 102500);
+        JournalRecovery recovery = recover(1);
+
+        assertEquals(102500, checkingAccount.getBalanceCents());
+        assertEquals(1, recovery.getRecordsReplayed());
+    }
+
+    @Test
+    public void testTornTailIsTruncated() throws IOException {
+        addRecord(1, BalanceJournal.Op.DEPOSIT, 0, 881001, 10000, 0, 110000);
+        addRecord(2, BalanceJournal.Op.DEPOSIT, 0, 881001, 5000, 0, 115000);
+        // A whole record with a bad checksum and half of the next one, cut short by a crash
+        byte[] last = record(3, BalanceJournal.Op.DEPOSIT, 0, 881001, 5000, 0, 120000);
+        last[20]++;
+        records.write(last, 0, last.length);
+        records.write(last, 0, 20);
+        JournalRecovery recovery = recover(0);
+
+        // The torn records were never acknowledged, so only the first two count
+        assertEquals(115000, checkingAccount.getBalanceCents());
+        assertEquals(2, recovery.getRecordsReplayed());
+        assertEquals(0, recovery.getBadRecords());
+        assertEquals(BalanceJournal.RECORD_SIZE + 20, recovery.getTruncatedBytes());
+        assertEquals(2 * BalanceJournal.RECORD_SIZE, Files.size(journal));
+    }
+
+    @Test
+    public void testBadRecordFollowedByGoodOnesIsSkipped() throws IOException {
+        byte[] bad = record(1, BalanceJournal.Op.DEPOSIT, 0, 881002, 10000, 0, 210000);
+        bad[0] ^= 1;
+        records.write(bad, 0, bad.length);
+        addRecord(2, BalanceJournal.Op.DEPOSIT, 0, 881001, 10000, 0, 110000);
+        JournalRecovery recovery = recover(0);
+
+        assertEquals(110000, checkingAccount.getBalanceCents());
+        assertEquals(200000, savingsAccount.getBalanceCents());
+        assertEquals(1, recovery.getBadRecords());
+        assertEquals(0, recovery.getTruncatedBytes());
+    }
+
+    @Test
+    public void testRecordsOutOfOrder() throws IOException {
+        // 200 moved from savings: 1000 + 200 = 1200, then two deposits journaled in the opposite
+        // order of the changes: + 100 = 1300, then + 50 = 1350
+        addRecord(1, BalanceJournal.Op.TRANSFER, 881002, 881001, 20000, 180000, 120000);
+        addRecord(2, BalanceJournal.Op.DEPOSIT, 0, 881001, 5000, 0, 135000);
+        addRecord(3, BalanceJournal.Op.DEPOSIT, 0, 881001, 10000, 0, 130000);
+        JournalRecovery recovery = recover(0);
+
+        // The last record does not hold the balance, the amounts do
+        assertEquals(135000, checkingAccount.getBalanceCents());
+        assertEquals(180000, savingsAccount.getBalanceCents());
+        assertTrue(recovery.getOutOfOrder() > 0);
+    }
+
+    @Test
+    public void testMissingRecordSetsNoBalance() throws IOException {
+        addRecord(1, BalanceJournal.Op.DEPOSIT, 0, 881002, 10000, 0, 210000);
+        // The deposit that took the checking account from 1100 to 1150 was never journaled
+        addRecord(2, BalanceJournal.Op.DEPOSIT, 0, 881001, 10000, 0, 110000);
+        addRecord(3, BalanceJournal.Op.DEPOSIT, 0, 881001, 2000, 0, 117000);
+        Files.write(journal, records.toByteArray());
+        JournalRecovery recovery = new JournalRecovery(journal.toString(), 0, 2);
+
+        IOException error = assertThrows(IOException.class, recovery::run);
+        assertTrue(error.getMessage().contains("881001"));
+        assertEquals(100000, checkingAccount.getBalanceCents());
+        assertEquals(200000, savingsAccount.getBalanceCents());
+    }
+
+    private JournalRecovery recover(long afterSequence) throws IOException {
+        Files.write(journal, records.toByteArray());
+        JournalRecovery recovery = new JournalRecovery(journal.toString(), afterSequence, 2);
+        recovery.run();
+        return recovery;
+    }
+
+    private void addRecord(long sequence, BalanceJournal.Op op, int from, int to, long amount, long fromBalance, long toBalance) {
+        byte[] record = record(sequence, op, from, to, amount, fromBalance, toBalance);
+        records.write(record, 0, record.length);
+    }
+
+    // Builds a record the way BalanceJournal writes it
+    private static byte[] record(long sequence, BalanceJournal.Op op, int from, int to, long amount, long fromBalance, long toBalance) {
+        ByteBuffer record = ByteBuffer.allocate(BalanceJournal.RECORD_SIZE);
+        record.putLong(sequence).put(op.getCode()).put(new byte[3])
+                .putInt(from).putInt(to).putLong(amount).putLong(fromBalance).putLong(toBalance);
+        record.putInt(BalanceJournal.checksum(record.array()));
+        return record.array();
+    }
+}
@@ -1,15 +1,38 @@
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * The Log class provides the functionality to log messages to both the console and a log file when doing a customer performs bank transactions.
  * The log entries are written to a specified file, with each entry appended as a new line.
+ *
+ * <p>By default every entry opens the file, appends to it and closes it on the calling thread. With
+ * {@code -Dbank.asyncLog=true} the entries are handed to an AsyncLogWriter instead, which writes
+ * them on its own thread to a file that stays open; {@code -Dbank.logFlush=BATCH|TIMED|ON_DEMAND}
+ * picks when it forces the file to disk and {@code -Dbank.logFlushMillis} the interval of TIMED.
+ * The console output stays on the calling thread so it keeps its place among the other messages
+ * of the menu. Call sync to wait until every entry logged so far is on disk.</p>
+ *
+ * <p>When LogSegments rotation is turned on, the log file is split into numbered segments that are
+ * compressed in the background; the entries then always go through the AsyncLogWriter, which does
+ * the rotation on its own thread. Readers use lines, which streams every segment as one log.</p>
+ *
+ * <p>When the EventLog records the events, {@code -Dbank.textLog=false} stops writing the log file
+ * altogether; the text of an event is then rendered from the EventLog only when it is read.</p>
+ *
+ * <p>The transactions of every user, and the general ones, are kept by a TransactionHistory, which
+ * holds only the recent ones in memory and spills the others to the history directory. Its limits
+ * are set with {@code -Dbank.historyWindow=N} messages per user (256 by default),
+ * {@code -Dbank.historyMaxBytes=N} for all users together (32 MB by default) and
+ * {@code -Dbank.historyDir=name} (history by default). getTransactions and getUserTransactions
+ * stream them from both places.</p>
  * 
  * @author Daniela Castro Enriquez
  * @author Carlos Gonzalez
@@ -19,14 +42,48 @@ import java.util.Map;
 public class Log {
 
     /**
-     * The path to the log file where messages are recorded.
+     * The path to the log file where messages are recorded, log.txt unless the JVM is started with
+     * {@code -Dbank.logFile=name}.
      */
-    public static final String LOG_FILE = "log.txt";
+    public static final String LOG_FILE = System.getProperty("bank.logFile", "log.txt");
 
     /**
-     * A list of general transaction log entries.
+     * Whether the entries are written by an AsyncLogWriter. It is turned on by starting the JVM
+     * with {@code -Dbank.asyncLog=true}.
      */
-    public static List<String> transactions = new ArrayList<>();
+    public static final boolean ASYNC = Boolean.getBoolean("bank.asyncLog");
+
+    /**
+     * When the AsyncLogWriter forces the log file to disk, BATCH unless the JVM is started with
+     * {@code -Dbank.logFlush=TIMED} or {@code -Dbank.logFlush=ON_DEMAND}.
+     */
+    public static final AsyncLogWriter.FlushPolicy FLUSH_POLICY = flushPolicy(System.getProperty("bank.logFlush", "BATCH"));
+
+    /**
+     * Whether the entries are written to the log file. It is turned off by starting the JVM with
+     * {@code -Dbank.textLog=false}, when the EventLog is enough; the console still shows them.
+     */
+    public static final boolean TEXT_LOG = !"false".equalsIgnoreCase(System.getProperty("bank.textLog"));
+
+    /** The longest time between two forces with the TIMED policy, in milliseconds. */
+    public static final long FLUSH_MILLIS = Long.getLong("bank.logFlushMillis", 200);
+
+    /** Whether the entries go through the AsyncLogWriter, asked for or needed by the rotation. */
+    private static final boolean USE_WRITER = ASYNC || LogSegments.ENABLED;
+
+    /** The writer of the asynchronous log, opened on the first entry. */
+    private static AsyncLogWriter asyncWriter;
+
+    /** The key of the general transactions in the history, which no user name can be. */
+    private static final String GENERAL_TRANSACTIONS = "\0transactions";
+
+    /**
+     * The general and user-specific transactions, the recent ones in memory and the others on disk.
+     */
+    private static final TransactionHistory history = new TransactionHistory(
+            System.getProperty("bank.historyDir", "history"),
+            Integer.getInteger("bank.historyWindow", 256),
+            Long.getLong("bank.historyMaxBytes", 32L * 1024 * 1024));
 
     /**
      * A list of accounts used for transaction tracking.
@@ -34,46 +91,87 @@ public class Log {
     public static List<Account> accounts = new ArrayList<>();
 
     /**
-     * A map storing user-specific transactions, where the key is the user's name and
-     * the value is a list of transactions associated with that user.
+     * Streams the general transactions, oldest first, from disk and memory. The stream must be
+     * closed.
+     *
+     * @return the general transactions
      */
-    public static Map<String, List<String>> userTransactions = new HashMap<>(); // Store user-specific transactions
+    public static Stream<String> getTransactions(){
+        return history.stream(GENERAL_TRANSACTIONS);
+    }
 
     /**
-     * Retrieves the list of general transactions.
+     * Adds a message to the general transactions, without logging it.
      *
-     * @return a list of general transactions
+     * @param message the message
      */
-    public static List<String> getTransactions(){
-        return transactions;
+    public static void addTransaction(String message) {
+        history.add(GENERAL_TRANSACTIONS, message);
     }
 
     /**
-     * Logs a user-specific transaction message. If no transactions have been logged
-     * for the user, initializes a new transaction list for that user.
+     * Adds a message to the transactions of a user, without logging it.
      *
-     * @param userName   the name of the user whose transaction is being logged
-     * @param logMessage the transaction message to be logged
+     * @param userName the name of the user
+     * @param message  the message
      */
-    public static void logUserTransaction(String userName, String logMessage) {
+    public static void addUserTransaction(String userName, String message) {
+        history.add(userName, message);
+    }
+
+    /**
+     * Forgets every general and user-specific transaction and deletes their spilled files.
+     */
+    public static void clearHistory() {
+        history.clear();
+    }
+
+    /**
+     * Returns the history keeping the transactions, for its statistics.
+     *
+     * @return the transaction history
+     */
+    public static TransactionHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Logs one event made by a user to every place it belongs, each exactly once: the user's
+     * list of transactions, the list of general transactions if it is one, and the console and
+     * the log file through logEntries. Callers log an event with this method alone; calling
+     * logEntries as well would write it twice.
+     *
+     * @param userName    the name of the user who made the event, or null if it belongs to no user
+     * @param logMessage  the message to be logged
+     * @param transaction whether the event also goes to the list of general transactions
+     */
+    public static void logEvent(String userName, String logMessage, boolean transaction) {
         if (logMessage == null || logMessage.isEmpty()) {
             System.out.println("Empty log message for user " + userName + ". Nothing to log.");
             return;
         }
 
-        // Initialize the transaction list for the user if not already done
-        userTransactions.putIfAbsent(userName, new ArrayList<>());
-
-        // Add the log message to the user's transaction list
-        userTransactions.get(userName).add(logMessage);
-
-        // Print the log message to the console (optional)
-        System.out.println("Transaction logged for " + userName + ": " + logMessage);
-
-        // Optionally, write to the general log file
+        if (userName != null) {
+            addUserTransaction(userName, logMessage);
+        }
+        if (transaction) {
+            addTransaction(logMessage);
+        }
         logEntries(logMessage);
     }
 
+    /**
+     * Logs a user-specific transaction message to the user's list of transactions, the console
+     * and the log file. If no transactions have been logged for the user, initializes a new
+     * transaction list for that user.
+     *
+     * @param userName   the name of the user whose transaction is being logged
+     * @param logMessage the transaction message to be logged
+     */
+    public static void logUserTransaction(String userName, String logMessage) {
+        logEvent(userName, logMessage, false);
+    }
+
     /**
      * Logs a specified message to the console and appends it to the log file.
      * If the log message is null or empty, it outputs a message to the console indicating
@@ -89,6 +187,18 @@ public class Log {
 
        
         System.out.println(logMessage);
+        if (!TEXT_LOG) {
+            return;
+        }
+
+        if (USE_WRITER) {
+            try {
+                asyncWriter().publish(logMessage);
+            } catch (IOException e) {
+                System.out.println("Failed to write to log file: " + e.getMessage());
+            }
+            return;
+        }
 
         try (BufferedWriter textWriter = new BufferedWriter(new FileWriter(LOG_FILE, true))) {
             textWriter.write(logMessage);
@@ -98,21 +208,128 @@ public class Log {
         }
     }
 
+    /**
+     * Logs a batch of messages to the console and appends them to the log file, opening the
+     * file once for the whole batch. Empty messages are skipped.
+     *
+     * @param logMessages the messages to be logged, in order
+     */
+    public static void logEntries(List<String> logMessages) {
+        if (USE_WRITER || !TEXT_LOG) {
+            StringBuilder console = new StringBuilder();
+            for (String logMessage : logMessages) {
+                if (logMessage != null && !logMessage.isEmpty()) {
+                    console.append(logMessage).append(System.lineSeparator());
+                }
+            }
+            try {
+                if (TEXT_LOG) {
+                    asyncWriter().publishAll(logMessages);
+                }
+            } catch (IOException e) {
+                System.out.println("Failed to write to log file: " + e.getMessage());
+            }
+            System.out.print(console);
+            return;
+        }
+
+        StringBuilder console = new StringBuilder();
+        try (BufferedWriter textWriter = new BufferedWriter(new FileWriter(LOG_FILE, true), 64 * 1024)) {
+            for (String logMessage : logMessages) {
+                if (logMessage == null || logMessage.isEmpty()) {
+                    continue;
+                }
+                console.append(logMessage).append(System.lineSeparator());
+                textWriter.write(logMessage);
+                textWriter.newLine();
+            }
+        } catch (IOException e) {
+            System.out.println("Failed to write to log file: " + e.getMessage());
+        }
+        System.out.print(console);
+    }
+
+    /**
+     * Waits until every entry logged so far is written to the log file and forced to disk. Entries
+     * written without the AsyncLogWriter are in the file already, so this returns at once.
+     *
+     * @throws IOException if the log file could not be written
+     */
+    public static void sync() throws IOException {
+        AsyncLogWriter writer;
+        synchronized (Log.class) {
+            writer = asyncWriter;
+        }
+        if (writer != null) {
+            writer.sync();
+        }
+    }
+
+    /**
+     * Streams every line of the log, across the segments kept by the rotation, compressed or
+     * not, and the live log file, once the entries logged so far are written. The stream must be
+     * closed.
+     *
+     * @return the lines of the log, oldest first
+     * @throws IOException if the log cannot be read
+     */
+    public static Stream<String> lines() throws IOException {
+        sync();
+        return LogSegments.lines(Paths.get(LOG_FILE));
+    }
+
+    /**
+     * Returns the AsyncLogWriter, opening the log file on first use. The writer is closed when the
+     * JVM exits, so the entries still in its buffer reach the file.
+     *
+     * @return the writer
+     * @throws IOException if the log file cannot be opened
+     */
+    private static synchronized AsyncLogWriter asyncWriter() throws IOException {
+        if (asyncWriter == null) {
+            AsyncLogWriter writer = new AsyncLogWriter(Paths.get(LOG_FILE), FLUSH_POLICY, FLUSH_MILLIS,
+                    LogSegments.ENABLED ? new LogSegments(Paths.get(LOG_FILE)) : null);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    System.out.println("Failed to write to log file: " + e.getMessage());
+                }
+            }, "async-log-close"));
+            asyncWriter = writer;
+        }
+        return asyncWriter;
+    }
+
+    /**
+     * Reads the flush policy of the AsyncLogWriter from a property value.
+     *
+     * @param value the name of a FlushPolicy, in any case
+     * @return the policy, or BATCH if the value is not a policy
+     */
+    private static AsyncLogWriter.FlushPolicy flushPolicy(String value) {
+        try {
+            return AsyncLogWriter.FlushPolicy.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Unknown log flush policy " + value + ", using BATCH.");
+            return AsyncLogWriter.FlushPolicy.BATCH;
+        }
+    }
+
     /**
      * Creates a user-specific transaction file containing their transactions and account balances.
-     * The file is named according to the user's name.
+     * The file is named according to the user's name. The transactions are streamed from the
+     * history, so they are never all in memory.
      *
      * @param userName      the name of the user
      * @param userAccounts  the list of accounts for the user
-     * @param transactions  the list of transactions to write
      */
-    public static void createUserTransactionFile(String userName, List<Account> userAccounts, List<String> transactions) {
+    public static void createUserTransactionFile(String userName, List<Account> userAccounts) {
         // File name for the user-specific transaction log
-        List<String> transactionsList = userTransactions.getOrDefault(userName, new ArrayList<>());
-
         String fileName = userName + "_TransactionReport.txt";
 
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName))) {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName));
+             Stream<String> transactions = getUserTransactions(userName)) {
             // Write the date of the statement
             writer.write("Date: " + LocalDate.now());
             writer.newLine();
@@ -122,7 +339,7 @@ public class Log {
             writer.write("Final Account Balances:");
             writer.newLine();
             for (Account account : userAccounts) {
-                writer.write("Account " + account.getAccountType() + " (" + account.getAccountNum() + "): $" + String.format("%.2f", account.getBalance()));
+                writer.write("Account " + account.getAccountType() + " (" + account.getAccountNum() + "): $" + Money.format(account.getBalanceCents()));
                 writer.newLine();
             }
             writer.newLine();
@@ -130,13 +347,14 @@ public class Log {
             // Write all transactions
             writer.write("Transactions:");
             writer.newLine();
-            for (String transaction : transactionsList) {
-                writer.write(transaction);
+            Iterator<String> transaction = transactions.iterator();
+            while (transaction.hasNext()) {
+                writer.write(transaction.next());
                 writer.newLine();
             }
 
             System.out.println("User transaction file created successfully for " + userName);
-        } catch (IOException e) {
+        } catch (IOException | UncheckedIOException e) {
             System.out.println("Error writing user transaction file for " + userName + ": " + e.getMessage());
         }
 
@@ -144,13 +362,14 @@ public class Log {
     }
 
     /**
-     * Retrieves a list of transactions for the specified user.
+     * Streams the transactions of the specified user, oldest first, from disk and memory. The
+     * stream must be closed.
      *
      * @param userName the name of the user
-     * @return a list of transactions for the specified user, or an empty list if none are found
+     * @return the transactions of the specified user, or an empty stream if none are found
      */
-    public static List<String> getUserTransactions(String userName) {
-        return userTransactions.getOrDefault(userName, new ArrayList<>());
+    public static Stream<String> getUserTransactions(String userName) {
+        return history.stream(userName);
     }
 
     /**
@@ -0,0 +1,157 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * The LogBenchmark class measures the time one balance inquiry spends logging, before and after
+ * an event was logged once through Log.logEvent. Before, an inquiry called logEntries, added the
+ * message to the list of transactions and called logUserTransaction, which printed it again and
+ * called logEntries a second time: two writes of log.txt and three console lines for one event.
+ *
+ * <p>Both runs log the same messages for the same users. The console is replaced by a stream that
+ * only counts lines, so the time is the time of the log and not of the terminal, and the printing
+ * of the balances, the same in both runs, is left out. The log is written to a temporary file that
+ * is deleted at the end. Starting the JVM with {@code -Dbank.asyncLog=true} measures both runs with
+ * the AsyncLogWriter.</p>
+ *
+ * <p>Usage: {@code java LogBenchmark [inquiries]}, 1,000,000 inquiries by default.</p>
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class LogBenchmark {
+
+    /** The number of users making the inquiries. */
+    private static final int USERS = 1000;
+
+    /** The number of console lines printed, counted by the stream replacing the console. */
+    private static long consoleLines;
+
+    /**
+     * The LogStep interface is the logging of one inquiry by a user.
+     */
+    private interface LogStep {
+        void log(String name, String message);
+    }
+
+    /**
+     * The main method runs the inquiries with the old logging, then with Log.logEvent, and prints
+     * the latency per inquiry and what each run wrote.
+     *
+     * @param args the number of inquiries
+     * @throws IOException if the temporary log file cannot be created or read
+     */
+    public static void main(String[] args) throws IOException {
+        int inquiries = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        Path logFile = Files.createTempFile("log-benchmark", ".txt");
+        // read by Log when it is first used, below
+        System.setProperty("bank.logFile", logFile.toString());
+
+        String[] names = new String[USERS];
+        String[] messages = new String[USERS];
+        for (int i = 0; i < USERS; i++) {
+            names[i] = "User" + i + " Benchmark";
+            messages[i] = names[i] + " made a balance inquiry on their accounts.";
+        }
+
+        PrintStream console = System.out;
+        console.println(String.format("%,d inquiries by %d users, log file %s%s", inquiries, USERS, Log.LOG_FILE,
+                Log.ASYNC ? ", async " + Log.FLUSH_POLICY : ""));
+        try {
+            run("before: logEntries + logUserTransaction", inquiries, names, messages, logFile, console,
+                    LogBenchmark::logTwice);
+            run("after:  Log.logEvent", inquiries, names, messages, logFile, console,
+                    (name, message) -> Log.logEvent(name, message, true));
+        } finally {
+            System.setOut(console);
+            Log.clearHistory();
+            Files.deleteIfExists(logFile);
+        }
+    }
+
+    /**
+     * This method logs an inquiry the way Customer.inquireBalance did before Log.logEvent: the
+     * message goes to logEntries, to the list of transactions, then to the user's list, the
+     * console and logEntries once more, as logUserTransaction did.
+     *
+     * @param name    the name of the user
+     * @param message the message of the inquiry
+     */
+    private static void logTwice(String name, String message) {
+        Log.logEntries(message);
+        Log.addTransaction(message);
+        Log.addUserTransaction(name, message);
+        System.out.println("Transaction logged for " + name + ": " + message);
+        Log.logEntries(message);
+    }
+
+    /**
+     * This method times the logging of every inquiry one at a time and prints the latency
+     * percentiles, the console lines and the bytes of log file per inquiry.
+     *
+     * @param label     the name of the run
+     * @param inquiries the number of inquiries
+     * @param names     the users
+     * @param messages  the message of each user
+     * @param logFile   the log file
+     * @param console   the real console, to print the results
+     * @param step      the logging of one inquiry
+     * @throws IOException if the log file cannot be read or written
+     */
+    private static void run(String label, int inquiries, String[] names, String[] messages, Path logFile,
+                            PrintStream console, LogStep step) throws IOException {
+        Log.clearHistory();
+        Files.write(logFile, new byte[0]);
+        consoleLines = 0;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                if (b == '\n') {
+                    consoleLines++;
+                }
+            }
+        }, false));
+
+        long[] nanos = new long[inquiries];
+        long start = System.nanoTime();
+        for (int i = 0; i < inquiries; i++) {
+            int user = i % USERS;
+            long before = System.nanoTime();
+            step.log(names[user], messages[user]);
+            nanos[i] = System.nanoTime() - before;
+        }
+        Log.sync();
+        long elapsed = System.nanoTime() - start;
+        System.out.flush();
+        System.setOut(console);
+
+        Arrays.sort(nanos);
+        long bytes = Files.size(Paths.get(Log.LOG_FILE));
+        console.println(String.format("%-42s %,8.0f inquiries/s  mean %6.2f us  p50 %6.2f us  p99 %7.2f us  p99.9 %7.2f us",
+                label, inquiries / (elapsed / 1e9), elapsed / 1e3 / inquiries,
+                nanos[inquiries / 2] / 1e3, nanos[(int) (inquiries * 0.99)] / 1e3, nanos[(int) (inquiries * 0.999)] / 1e3));
+        console.println(String.format("%-42s %.1f log lines, %.0f log bytes, %.1f console lines per inquiry", "",
+                (double) countLines(logFile) / inquiries, (double) bytes / inquiries, (double) consoleLines / inquiries));
+    }
+
+    /**
+     * This method counts the lines of a file.
+     *
+     * @param file the file
+     * @return the number of lines
+     * @throws IOException if the file cannot be read
+     */
+    private static long countLines(Path file) throws IOException {
+        try (Stream<String> lines = Files.lines(file)) {
+            return lines.count();
+        }
+    }
+}
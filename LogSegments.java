@@ -0,0 +1,301 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The LogSegments class splits the log file into numbered segments so it does not grow forever.
+ * The live segment keeps the name of the log file; when it reaches the size or the age limit it is
+ * renamed to the log file followed by the next number (log.txt.1, log.txt.2, ...) and a new live
+ * segment is started. Closed segments are compressed with gzip on a background thread (log.txt.1.gz)
+ * and the oldest ones are deleted according to the retention policy.
+ *
+ * <p>Rotation is turned on by starting the JVM with {@code -Dbank.logMaxBytes=N} or
+ * {@code -Dbank.logMaxAgeMinutes=N}. {@code -Dbank.logRetainSegments=N} (20 by default) and
+ * {@code -Dbank.logRetainDays=N} (no limit by default) decide which closed segments are kept. The
+ * rotation is done by the AsyncLogWriter on its own thread between two writes, so the threads
+ * logging messages never wait for it, and the compression runs on yet another thread.</p>
+ *
+ * <p>Readers call lines, which streams every segment still kept, compressed or not, and then the
+ * live one, as if they were still one file.</p>
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class LogSegments {
+
+    /** The size after which the live segment is rotated, 0 for no limit. */
+    public static final long MAX_BYTES = Long.getLong("bank.logMaxBytes", 0);
+
+    /** The age after which the live segment is rotated, in minutes, 0 for no limit. */
+    public static final long MAX_AGE_MINUTES = Long.getLong("bank.logMaxAgeMinutes", 0);
+
+    /** The number of closed segments kept, the oldest beyond it are deleted. */
+    public static final int RETAIN_SEGMENTS = Integer.getInteger("bank.logRetainSegments", 20);
+
+    /** The age after which a closed segment is deleted, in days, 0 for no limit. */
+    public static final long RETAIN_DAYS = Long.getLong("bank.logRetainDays", 0);
+
+    /** Whether the log is rotated at all. */
+    public static final boolean ENABLED = MAX_BYTES > 0 || MAX_AGE_MINUTES > 0;
+
+    /** Added to the name of a closed segment once it is compressed. */
+    private static final String GZIP_SUFFIX = ".gz";
+
+    /** Added to the name of a compressed segment while it is being written. */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** The live segment, named like the log file. */
+    private final Path live;
+
+    /** Compresses the closed segments and applies the retention policy, one at a time. */
+    private final ExecutorService compressor = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "log-compress");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** The number of the next closed segment. */
+    private long nextNumber;
+
+    /** The size of the live segment. */
+    private long liveBytes;
+
+    /** When the live segment was started, from System.currentTimeMillis. */
+    private long liveStart;
+
+    /**
+     * This constructor finds the segments of a log file. Segments left uncompressed by an earlier
+     * run are compressed in the background.
+     *
+     * @param live the log file
+     * @throws IOException if the directory of the log cannot be read
+     */
+    public LogSegments(Path live) throws IOException {
+        this.live = live.toAbsolutePath();
+        TreeMap<Long, Path> closed = closedSegments(this.live);
+        nextNumber = closed.isEmpty() ? 1 : closed.lastKey() + 1;
+        liveBytes = Files.exists(this.live) ? Files.size(this.live) : 0;
+        liveStart = Files.exists(this.live) ? Files.getLastModifiedTime(this.live).toMillis() : System.currentTimeMillis();
+        for (Path segment : closed.values()) {
+            if (!segment.getFileName().toString().endsWith(GZIP_SUFFIX)) {
+                compressor.execute(() -> compress(segment));
+            }
+        }
+        compressor.execute(this::applyRetention);
+    }
+
+    /**
+     * This method counts bytes written to the live segment and tells if it must be rotated now.
+     *
+     * @param bytes the number of bytes just written
+     * @return true if the live segment reached the size or the age limit
+     */
+    public boolean written(long bytes) {
+        liveBytes += bytes;
+        return (MAX_BYTES > 0 && liveBytes >= MAX_BYTES)
+                || (MAX_AGE_MINUTES > 0 && System.currentTimeMillis() - liveStart >= TimeUnit.MINUTES.toMillis(MAX_AGE_MINUTES));
+    }
+
+    /**
+     * This method closes the live segment: it renames it to the next number, so the next write
+     * starts a new live segment, and hands it to the compressor. The caller must have closed the
+     * file first.
+     *
+     * @return the closed segment
+     * @throws IOException if the segment cannot be renamed
+     */
+    public Path rotate() throws IOException {
+        Path segment = live.resolveSibling(live.getFileName() + "." + nextNumber);
+        Files.move(live, segment, StandardCopyOption.ATOMIC_MOVE);
+        nextNumber++;
+        liveBytes = 0;
+        liveStart = System.currentTimeMillis();
+        compressor.execute(() -> {
+            compress(segment);
+            applyRetention();
+        });
+        return segment;
+    }
+
+    /**
+     * This method waits until the segments closed so far are compressed and the retention policy
+     * applied.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void awaitCompression() throws InterruptedException {
+        try {
+            compressor.submit(() -> { }).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * This method streams the lines of a log file across all of its segments still kept: the
+     * closed ones from oldest to newest, compressed or not, then the live one. A segment compressed
+     * or deleted while the stream is read is read in its other form or skipped. The stream must be
+     * closed.
+     *
+     * @param live the log file
+     * @return the lines of the log, in the order they were written
+     * @throws IOException if the directory of the log cannot be read
+     */
+    public static Stream<String> lines(Path live) throws IOException {
+        Path absolute = live.toAbsolutePath();
+        List<Path> segments = new ArrayList<>(closedSegments(absolute).values());
+        segments.add(absolute);
+        Iterator<Path> next = segments.iterator();
+
+        InputStream all = new SequenceInputStream(new Enumeration<InputStream>() {
+            @Override
+            public boolean hasMoreElements() {
+                return next.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                if (!next.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    return open(next.next());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+        BufferedReader reader = new BufferedReader(new InputStreamReader(all, StandardCharsets.UTF_8), 64 * 1024);
+        return reader.lines().onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * This method opens a segment, falling back to its compressed form if it was compressed since
+     * it was listed, and to an empty stream if it is gone.
+     *
+     * @param segment the segment, compressed or not
+     * @return the text of the segment
+     * @throws IOException if the segment cannot be read
+     */
+    private static InputStream open(Path segment) throws IOException {
+        String name = segment.getFileName().toString();
+        try {
+            if (name.endsWith(GZIP_SUFFIX)) {
+                return new GZIPInputStream(Files.newInputStream(segment), 64 * 1024);
+            }
+            return Files.newInputStream(segment);
+        } catch (NoSuchFileException e) {
+            Path compressed = segment.resolveSibling(name + GZIP_SUFFIX);
+            if (!name.endsWith(GZIP_SUFFIX) && Files.exists(compressed)) {
+                return open(compressed);
+            }
+            return InputStream.nullInputStream(); // deleted by the retention policy, or no live segment yet
+        }
+    }
+
+    /**
+     * This method finds the closed segments of a log file, by number. A segment found both
+     * compressed and not (while it is being compressed) is listed once, uncompressed.
+     *
+     * @param live the log file
+     * @return the closed segments, from oldest to newest
+     * @throws IOException if the directory cannot be read
+     */
+    private static TreeMap<Long, Path> closedSegments(Path live) throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        String prefix = live.getFileName() + ".";
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(live.getParent(), prefix + "*")) {
+            for (Path file : files) {
+                String rest = file.getFileName().toString().substring(prefix.length());
+                boolean compressed = rest.endsWith(GZIP_SUFFIX);
+                String number = compressed ? rest.substring(0, rest.length() - GZIP_SUFFIX.length()) : rest;
+                if (number.isEmpty() || !number.chars().allMatch(Character::isDigit)) {
+                    continue; // a temporary file, or another file starting like the log
+                }
+                long n = Long.parseLong(number);
+                if (!compressed || !segments.containsKey(n)) {
+                    segments.put(n, file);
+                }
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * This method compresses a closed segment: it writes the gzip file under a temporary name,
+     * renames it once complete and then deletes the segment, so either form is always whole.
+     *
+     * @param segment the closed segment
+     */
+    private void compress(Path segment) {
+        Path compressed = segment.resolveSibling(segment.getFileName() + GZIP_SUFFIX);
+        Path temp = segment.resolveSibling(compressed.getFileName() + TEMP_SUFFIX);
+        try {
+            try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024), 64 * 1024)) {
+                Files.copy(segment, out);
+            }
+            Files.move(temp, compressed, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(segment);
+        } catch (IOException e) {
+            System.out.println("Could not compress " + segment + ": " + e.getMessage());
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // the temporary file is replaced by the next attempt
+            }
+        }
+    }
+
+    /**
+     * This method deletes the closed segments beyond RETAIN_SEGMENTS, oldest first, and those
+     * older than RETAIN_DAYS.
+     */
+    private void applyRetention() {
+        try {
+            TreeMap<Long, Path> closed = closedSegments(live);
+            long oldest = RETAIN_DAYS > 0 ? System.currentTimeMillis() - TimeUnit.DAYS.toMillis(RETAIN_DAYS) : Long.MIN_VALUE;
+            int beyond = closed.size() - RETAIN_SEGMENTS;
+            for (Path segment : closed.values()) {
+                if (beyond > 0 || Files.getLastModifiedTime(segment).toMillis() < oldest) {
+                    Files.deleteIfExists(segment);
+                    Files.deleteIfExists(segment.resolveSibling(segment.getFileName() + GZIP_SUFFIX));
+                }
+                beyond--;
+            }
+        } catch (IOException e) {
+            System.out.println("Could not apply the log retention: " + e.getMessage());
+        }
+    }
+}
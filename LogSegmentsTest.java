@@ -0,0 +1,108 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+public class LogSegmentsTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testLinesAcrossCompressedSegments() throws Exception {
+        Path live = directory.resolve("log.txt");
+        LogSegments segments = new LogSegments(live);
+
+        append(live, "deposit 1\ndeposit 2\n");
+        assertEquals(directory.resolve("log.txt.1").toAbsolutePath(), segments.rotate());
+        append(live, "withdrawal 3\n");
+        assertEquals(directory.resolve("log.txt.2").toAbsolutePath(), segments.rotate());
+        append(live, "transfer 4\n");
+        segments.awaitCompression();
+
+        // The closed segments were compressed and the plain ones removed
+        assertTrue(Files.exists(directory.resolve("log.txt.1.gz")));
+        assertTrue(Files.exists(directory.resolve("log.txt.2.gz")));
+        assertFalse(Files.exists(directory.resolve("log.txt.1")));
+        assertFalse(Files.exists(directory.resolve("log.txt.2")));
+
+        assertEquals(List.of("deposit 1", "deposit 2", "withdrawal 3", "transfer 4"), lines(live));
+    }
+
+    @Test
+    public void testSegmentsLeftByAnEarlierRun() throws Exception {
+        // A segment compressed, one closed but not compressed yet, and a compression cut short
+        Path live = directory.resolve("log.txt");
+        writeCompressed(directory.resolve("log.txt.1.gz"), "first\n");
+        Files.writeString(directory.resolve("log.txt.2"), "second\n");
+        Files.writeString(directory.resolve("log.txt.2.gz.tmp"), "half written");
+        Files.writeString(directory.resolve("log.txt.old"), "not a segment\n");
+        append(live, "third\n");
+
+        LogSegments segments = new LogSegments(live);
+        assertEquals(List.of("first", "second", "third"), lines(live));
+
+        segments.awaitCompression();
+        assertTrue(Files.exists(directory.resolve("log.txt.2.gz")));
+        assertFalse(Files.exists(directory.resolve("log.txt.2")));
+        assertEquals(List.of("first", "second", "third"), lines(live));
+
+        // Numbering goes on after the segments found
+        assertEquals(directory.resolve("log.txt.3").toAbsolutePath(), segments.rotate());
+        segments.awaitCompression();
+        assertEquals(List.of("first", "second", "third"), lines(live));
+    }
+
+    @Test
+    public void testRetention() throws Exception {
+        Path live = directory.resolve("log.txt");
+        LogSegments segments = new LogSegments(live);
+        int rotations = LogSegments.RETAIN_SEGMENTS + 2;
+        for (int i = 1; i <= rotations; i++) {
+            append(live, "line " + i + "\n");
+            segments.rotate();
+        }
+        segments.awaitCompression();
+
+        // Only the newest segments are kept, and reading starts with the oldest of them
+        assertFalse(Files.exists(directory.resolve("log.txt.1.gz")));
+        assertFalse(Files.exists(directory.resolve("log.txt.2.gz")));
+        assertTrue(Files.exists(directory.resolve("log.txt.3.gz")));
+        List<String> lines = lines(live);
+        assertEquals(LogSegments.RETAIN_SEGMENTS, lines.size());
+        assertEquals("line 3", lines.get(0));
+        assertEquals("line " + rotations, lines.get(lines.size() - 1));
+    }
+
+    @Test
+    public void testNoLogYet() throws IOException {
+        assertEquals(List.of(), lines(directory.resolve("log.txt")));
+    }
+
+    private static List<String> lines(Path live) throws IOException {
+        try (Stream<String> lines = LogSegments.lines(live)) {
+            return lines.collect(Collectors.toList());
+        }
+    }
+
+    private static void append(Path file, String text) throws IOException {
+        Files.writeString(file, text, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static void writeCompressed(Path file, String text) throws IOException {
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,326 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The MappedCsvReader class reads comma separated rows straight from a memory mapped file.
+ * Instead of decoding the whole file into characters like a Scanner does, it walks the
+ * mapped bytes with the same quoting rules as CsvRowParser and only decodes a field into
+ * a String (as UTF-8) when it is asked for. Files larger than 2 GB are mapped in windows
+ * that move forward as the rows are read.
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class MappedCsvReader implements CsvRowSource {
+
+    /** Default size of the part of the file that is mapped at a time. */
+    public static final long DEFAULT_WINDOW_SIZE = 256L * 1024 * 1024;
+
+    /** The channel of the mapped file. */
+    private final FileChannel channel;
+
+    /** Offset where reading stops. */
+    private final long endOffset;
+
+    /** Size of the part of the file that is mapped at a time. */
+    private final long windowSize;
+
+    /** The currently mapped window. */
+    private MappedByteBuffer window;
+
+    /** File offset of the first byte of the window. */
+    private long windowStart;
+
+    /** The unquoted bytes of the current row, one field after another. */
+    private byte[] rowBuffer = new byte[256];
+
+    /** Start offset of every field of the current row inside rowBuffer. */
+    private int[] fieldStarts = new int[16];
+
+    /** End offset (exclusive) of every field of the current row inside rowBuffer. */
+    private int[] fieldEnds = new int[16];
+
+    /** Number of fields in the current row. */
+    private int fieldCount;
+
+    /** Number of rows read so far. */
+    private long rowNumber;
+
+    /** File offset where the current row starts. */
+    private long rowStartOffset;
+
+    /**
+     * This constructor maps a whole file.
+     *
+     * @param path the file to read
+     * @throws IOException if the file cannot be opened
+     */
+    public MappedCsvReader(Path path) throws IOException {
+        this(path, 0, -1, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * This constructor maps the part of a file between two offsets. The start offset must be
+     * the beginning of a row.
+     *
+     * @param path        the file to read
+     * @param startOffset the offset of the first byte to read
+     * @param endOffset   the offset where reading stops, or -1 for the end of the file
+     * @throws IOException if the file cannot be opened
+     */
+    public MappedCsvReader(Path path, long startOffset, long endOffset) throws IOException {
+        this(path, startOffset, endOffset, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * This constructor maps the part of a file between two offsets using windows of the given size.
+     *
+     * @param path        the file to read
+     * @param startOffset the offset of the first byte to read
+     * @param endOffset   the offset where reading stops, or -1 for the end of the file
+     * @param windowSize  the number of bytes mapped at a time
+     * @throws IOException if the file cannot be opened
+     */
+    public MappedCsvReader(Path path, long startOffset, long endOffset, long windowSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        long size = channel.size();
+        this.endOffset = endOffset < 0 ? size : Math.min(endOffset, size);
+        this.windowSize = Math.max(1, Math.min(windowSize, Integer.MAX_VALUE));
+        this.windowStart = Math.min(startOffset, this.endOffset);
+        this.rowStartOffset = this.windowStart;
+        mapWindow(this.windowStart);
+    }
+
+    /**
+     * This method reads the next row into the reused buffers. Blank lines are skipped.
+     *
+     * @return true if a row was read, false at the end of the mapped range
+     * @throws IOException if the next window cannot be mapped
+     */
+    @Override
+    public boolean nextRow() throws IOException {
+        int length = 0;
+        fieldCount = 0;
+        int fieldStart = 0;
+        boolean inQuotes = false;
+        boolean sawInput = false;
+        rowStartOffset = getPosition();
+
+        while (true) {
+            if (!window.hasRemaining() && !nextWindow()) {
+                if (!sawInput) {
+                    return false;
+                }
+                break;
+            }
+            byte b = window.get();
+
+            if (inQuotes) {
+                if (b == '"') {
+                    if (peek() == '"') {
+                        window.get();
+                        length = append(length, b);
+                    } else {
+                        inQuotes = false;
+                    }
+                } else {
+                    length = append(length, b);
+                }
+                continue;
+            }
+
+            if (b == '\r') {
+                continue;
+            }
+            if (b == '\n') {
+                if (!sawInput) {
+                    rowStartOffset = getPosition();
+                    continue; // blank line
+                }
+                break;
+            }
+
+            sawInput = true;
+            if (b == '"') {
+                inQuotes = true;
+            } else if (b == ',') {
+                endField(fieldStart, length);
+                fieldStart = length;
+            } else {
+                length = append(length, b);
+            }
+        }
+
+        endField(fieldStart, length);
+        rowNumber++;
+        return true;
+    }
+
+    /**
+     * This method returns the file offset where the current row starts.
+     *
+     * @return the offset of the first byte of the current row
+     */
+    public long getRowStartOffset() {
+        return rowStartOffset;
+    }
+
+    /**
+     * This method returns the file offset right after the last row read, which is where
+     * the next row starts.
+     *
+     * @return the current offset in the file
+     */
+    public long getPosition() {
+        return windowStart + window.position();
+    }
+
+    @Override
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    @Override
+    public long getRowNumber() {
+        return rowNumber;
+    }
+
+    @Override
+    public boolean isComment() {
+        return fieldCount > 0 && fieldEnds[0] > fieldStarts[0] && rowBuffer[fieldStarts[0]] == '#';
+    }
+
+    @Override
+    public boolean isBlank(int index) {
+        if (index < 0 || index >= fieldCount) {
+            return true;
+        }
+        for (int i = fieldStarts[index]; i < fieldEnds[index]; i++) {
+            if (rowBuffer[i] != ' ' && rowBuffer[i] != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String getString(int index) {
+        if (index < 0 || index >= fieldCount) {
+            return "";
+        }
+        return new String(rowBuffer, fieldStarts[index], fieldEnds[index] - fieldStarts[index], StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int getInt(int index) {
+        checkIndex(index);
+        return NumberParser.parseInt(rowBuffer, fieldStarts[index], fieldEnds[index]);
+    }
+
+    @Override
+    public double getDouble(int index) {
+        checkIndex(index);
+        return NumberParser.parseDouble(rowBuffer, fieldStarts[index], fieldEnds[index]);
+    }
+
+    @Override
+    public long getCents(int index) {
+        checkIndex(index);
+        return Money.parseCents(rowBuffer, fieldStarts[index], fieldEnds[index]);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * This method maps the window that starts at the given offset.
+     *
+     * @param offset the file offset of the window
+     * @throws IOException if the window cannot be mapped
+     */
+    private void mapWindow(long offset) throws IOException {
+        long length = Math.min(windowSize, endOffset - offset);
+        windowStart = offset;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+
+    /**
+     * This method moves the window forward once the current one has been read.
+     *
+     * @return true if a new window was mapped, false at the end of the range
+     * @throws IOException if the window cannot be mapped
+     */
+    private boolean nextWindow() throws IOException {
+        long next = windowStart + window.limit();
+        if (next >= endOffset) {
+            return false;
+        }
+        mapWindow(next);
+        return window.hasRemaining();
+    }
+
+    /**
+     * This method looks at the next byte without consuming it.
+     *
+     * @return the next byte, or -1 at the end of the range
+     * @throws IOException if the next window cannot be mapped
+     */
+    private int peek() throws IOException {
+        if (!window.hasRemaining() && !nextWindow()) {
+            return -1;
+        }
+        return window.get(window.position());
+    }
+
+    /**
+     * This method makes sure a field exists in the current row.
+     *
+     * @param index the index of the field
+     * @throws NumberFormatException if the row does not have that field
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= fieldCount) {
+            throw new NumberFormatException("Missing column " + index + " in row " + rowNumber);
+        }
+    }
+
+    /**
+     * This method records the end of a field of the current row.
+     *
+     * @param start the start offset of the field in rowBuffer
+     * @param end   the end offset of the field in rowBuffer
+     */
+    private void endField(int start, int end) {
+        if (fieldCount == fieldStarts.length) {
+            fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+            fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+        }
+        fieldStarts[fieldCount] = start;
+        fieldEnds[fieldCount] = end;
+        fieldCount++;
+    }
+
+    /**
+     * This method adds a byte to the row buffer, growing it when needed.
+     *
+     * @param length the current length of the row
+     * @param b      the byte to add
+     * @return the new length of the row
+     */
+    private int append(int length, byte b) {
+        if (length == rowBuffer.length) {
+            rowBuffer = Arrays.copyOf(rowBuffer, length * 2);
+        }
+        rowBuffer[length] = b;
+        return length + 1;
+    }
+}
@@ -0,0 +1,103 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class MappedCsvReaderTest {
+
+    // The first customer has a quoted address with an escaped quote, a comma and a line break
+    private static final String CSV = "Id,Name,Address,Balance\r\n"
+            + "198,Daniela,\"500 W \"\"University\"\" Ave,\nEl Paso\",1000.50\r\n"
+            + "\n"
+            + "199,Aylin,Ca\u00f1ada,1500";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testQuotedFields() throws IOException {
+        Path file = write(CSV);
+        try (MappedCsvReader reader = new MappedCsvReader(file)) {
+            assertRows(reader);
+        }
+    }
+
+    @Test
+    public void testQuotedNewlineAcrossWindows() throws IOException {
+        Path file = write(CSV);
+        int newline = CSV.indexOf("\nEl Paso");
+
+        // A window that ends right before the quoted line break, and one that ends right after it
+        for (long windowSize : new long[]{newline, newline + 1}) {
+            try (MappedCsvReader reader = new MappedCsvReader(file, 0, -1, windowSize)) {
+                assertRows(reader);
+            }
+        }
+        // Every window size, so every quote and escaped quote also falls on a window edge
+        for (long windowSize = 1; windowSize <= Files.size(file); windowSize++) {
+            try (MappedCsvReader reader = new MappedCsvReader(file, 0, -1, windowSize)) {
+                assertRows(reader);
+            }
+        }
+    }
+
+    @Test
+    public void testResumeFromRowOffset() throws IOException {
+        Path file = write(CSV);
+        long secondRow;
+        long thirdRow;
+        try (MappedCsvReader reader = new MappedCsvReader(file, 0, -1, 7)) {
+            reader.nextRow();
+            reader.nextRow();
+            secondRow = reader.getRowStartOffset();
+            reader.nextRow();
+            thirdRow = reader.getRowStartOffset();
+        }
+        // The blank line is not part of the third row
+        assertEquals(CSV.indexOf("199"), thirdRow);
+
+        // Reading from the offset of a row starts with that row, even in the middle of the quoted address
+        try (MappedCsvReader reader = new MappedCsvReader(file, secondRow, thirdRow, 7)) {
+            assertTrue(reader.nextRow());
+            assertEquals("500 W \"University\" Ave,\nEl Paso", reader.getString(2));
+            assertFalse(reader.nextRow());
+        }
+        try (MappedCsvReader reader = new MappedCsvReader(file, thirdRow, -1)) {
+            assertTrue(reader.nextRow());
+            assertEquals(199, reader.getInt(0));
+            assertFalse(reader.nextRow());
+        }
+    }
+
+    private Path write(String text) throws IOException {
+        Path file = directory.resolve("rows.csv");
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static void assertRows(MappedCsvReader reader) throws IOException {
+        assertTrue(reader.nextRow());
+        assertEquals(4, reader.getFieldCount());
+        assertEquals("Balance", reader.getString(3));
+
+        assertTrue(reader.nextRow());
+        assertEquals(4, reader.getFieldCount());
+        assertEquals(198, reader.getInt(0));
+        assertEquals("500 W \"University\" Ave,\nEl Paso", reader.getString(2));
+        assertEquals(100050, reader.getCents(3));
+
+        // The blank line is skipped and the UTF-8 name is decoded
+        assertTrue(reader.nextRow());
+        assertEquals(199, reader.getInt(0));
+        assertEquals("Ca\u00f1ada", reader.getString(2));
+        assertEquals(1500.0, reader.getDouble(3));
+
+        assertFalse(reader.nextRow());
+        assertEquals(3, reader.getRowNumber());
+    }
+}
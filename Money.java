@@ -0,0 +1,260 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The Money class keeps amounts of money exact by handling them as a whole number of cents in a
+ * long. Unlike a double, adding up money never drifts, 0.10 is exactly ten cents, and two amounts
+ * that print the same are equal.
+ *
+ * <p>The AccountStore columns, the CSV readers, the transactions and the BalanceJournal all carry
+ * primitive cents and use the static methods of this class to parse, convert and format them, so
+ * no object is allocated per amount.</p>
+ *
+ * <p>Amounts are parsed straight from characters or bytes: plain decimals such as "1845.56" or
+ * "-786.93" take the fast path, more than two decimals are rounded half up to the cent, and
+ * anything unusual (exponents, very long numbers) falls back to BigDecimal. Amounts are always
+ * formatted with two decimals, like {@code String.format("%.2f")}, without its cost.</p>
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public final class Money {
+
+    /** The most digits before the point that always fit in a long of cents. */
+    private static final int MAX_FAST_WHOLE_DIGITS = 16;
+
+    /** This class only has static members. */
+    private Money() {
+    }
+
+    /**
+     * This method converts an amount in dollars to a whole number of cents, rounding to the nearest cent.
+     *
+     * @param amount the amount in dollars
+     * @return the amount in cents
+     */
+    public static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    /**
+     * This method converts a number of cents to dollars.
+     *
+     * @param cents the amount in cents
+     * @return the amount in dollars
+     */
+    public static double toDollars(long cents) {
+        return cents / 100.0;
+    }
+
+    /**
+     * This method formats a number of cents with two decimals, such as "-786.93".
+     *
+     * @param cents the amount in cents
+     * @return the formatted amount
+     */
+    public static String format(long cents) {
+        return appendTo(new StringBuilder(24), cents).toString();
+    }
+
+    /**
+     * This method appends a number of cents with two decimals, without building a String first.
+     *
+     * @param out   the builder to append to
+     * @param cents the amount in cents
+     * @return the builder
+     */
+    public static StringBuilder appendTo(StringBuilder out, long cents) {
+        long whole = cents / 100;
+        int fraction = (int) Math.abs(cents % 100);
+        if (cents < 0 && whole == 0) {
+            out.append('-'); // -0.50 has no minus sign in its whole part
+        }
+        out.append(whole).append('.');
+        if (fraction < 10) {
+            out.append('0');
+        }
+        return out.append(fraction);
+    }
+
+    /**
+     * This method parses an amount to cents.
+     *
+     * @param text the amount
+     * @return the amount in cents
+     * @throws NumberFormatException if the text is not a number
+     */
+    public static long parseCents(CharSequence text) {
+        int length = text.length();
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = text.charAt(i);
+        }
+        return parseCents(chars, 0, length);
+    }
+
+    /**
+     * This method parses an amount to cents from a range of characters, ignoring surrounding spaces.
+     *
+     * @param chars the buffer holding the amount
+     * @param start the start offset of the amount
+     * @param end   the end offset (exclusive) of the amount
+     * @return the amount in cents
+     * @throws NumberFormatException if the range is not a number
+     */
+    public static long parseCents(char[] chars, int start, int end) {
+        while (start < end && chars[start] == ' ') {
+            start++;
+        }
+        while (end > start && chars[end - 1] == ' ') {
+            end--;
+        }
+
+        boolean negative = false;
+        int i = start;
+        if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+            negative = chars[i] == '-';
+            i++;
+        }
+
+        long cents = 0;
+        int wholeDigits = 0;
+        int fractionDigits = 0;
+        boolean seenPoint = false;
+        boolean roundUp = false;
+        for (; i < end; i++) {
+            char c = chars[i];
+            if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else if (c >= '0' && c <= '9') {
+                if (!seenPoint) {
+                    if (++wholeDigits > MAX_FAST_WHOLE_DIGITS) {
+                        return slowParse(new String(chars, start, end - start));
+                    }
+                    cents = cents * 10 + (c - '0');
+                } else if (fractionDigits < 2) {
+                    cents = cents * 10 + (c - '0');
+                    fractionDigits++;
+                } else if (fractionDigits++ == 2) {
+                    roundUp = c >= '5';
+                }
+            } else {
+                // exponents, NaN, Infinity and anything invalid
+                return slowParse(new String(chars, start, end - start));
+            }
+        }
+        if (wholeDigits + fractionDigits == 0) {
+            throw new NumberFormatException("Invalid amount: \"" + new String(chars, start, end - start) + "\"");
+        }
+        return scale(cents, fractionDigits, roundUp, negative);
+    }
+
+    /**
+     * This method parses an amount to cents from a range of ASCII bytes, ignoring surrounding spaces.
+     *
+     * @param bytes the buffer holding the amount
+     * @param start the start offset of the amount
+     * @param end   the end offset (exclusive) of the amount
+     * @return the amount in cents
+     * @throws NumberFormatException if the range is not a number
+     */
+    public static long parseCents(byte[] bytes, int start, int end) {
+        while (start < end && bytes[start] == ' ') {
+            start++;
+        }
+        while (end > start && bytes[end - 1] == ' ') {
+            end--;
+        }
+
+        boolean negative = false;
+        int i = start;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+
+        long cents = 0;
+        int wholeDigits = 0;
+        int fractionDigits = 0;
+        boolean seenPoint = false;
+        boolean roundUp = false;
+        for (; i < end; i++) {
+            byte c = bytes[i];
+            if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else if (c >= '0' && c <= '9') {
+                if (!seenPoint) {
+                    if (++wholeDigits > MAX_FAST_WHOLE_DIGITS) {
+                        return slowParse(asciiString(bytes, start, end));
+                    }
+                    cents = cents * 10 + (c - '0');
+                } else if (fractionDigits < 2) {
+                    cents = cents * 10 + (c - '0');
+                    fractionDigits++;
+                } else if (fractionDigits++ == 2) {
+                    roundUp = c >= '5';
+                }
+            } else {
+                // exponents, NaN, Infinity and anything invalid
+                return slowParse(asciiString(bytes, start, end));
+            }
+        }
+        if (wholeDigits + fractionDigits == 0) {
+            throw new NumberFormatException("Invalid amount: \"" + asciiString(bytes, start, end) + "\"");
+        }
+        return scale(cents, fractionDigits, roundUp, negative);
+    }
+
+    /**
+     * This method turns the digits read into cents: it pads a missing decimal, rounds and applies the sign.
+     *
+     * @param cents          the digits read, up to two of them decimals
+     * @param fractionDigits the number of digits after the point
+     * @param roundUp        true if the third decimal rounds the cents up
+     * @param negative       true if the amount had a minus sign
+     * @return the amount in cents
+     */
+    private static long scale(long cents, int fractionDigits, boolean roundUp, boolean negative) {
+        if (fractionDigits == 0) {
+            cents *= 100;
+        } else if (fractionDigits == 1) {
+            cents *= 10;
+        }
+        if (roundUp) {
+            cents++; // half up, away from zero once the sign is applied
+        }
+        return negative ? -cents : cents;
+    }
+
+    /**
+     * This method parses an amount that the fast path does not handle.
+     *
+     * @param text the amount
+     * @return the amount in cents
+     * @throws NumberFormatException if the text is not a number or does not fit in a long of cents
+     */
+    private static long slowParse(String text) {
+        try {
+            return new BigDecimal(text).setScale(2, RoundingMode.HALF_UP).movePointRight(2).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount out of range: \"" + text + "\"");
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException("Invalid amount: \"" + text + "\"");
+        }
+    }
+
+    /**
+     * This method copies a range of ASCII bytes to a String, for the slow path and error messages.
+     *
+     * @param bytes the buffer
+     * @param start the start offset
+     * @param end   the end offset (exclusive)
+     * @return the String
+     */
+    private static String asciiString(byte[] bytes, int start, int end) {
+        return new String(bytes, start, end - start, StandardCharsets.US_ASCII);
+    }
+}
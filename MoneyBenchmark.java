@@ -0,0 +1,149 @@
+import java.util.Random;
+
+/**
+ * The MoneyBenchmark class compares the old way of handling amounts, a double parsed with
+ * Double.parseDouble, added up as a double and printed with String.format("%.2f"), with the cents
+ * of Money: parsed straight from the characters, added up as a long and appended with two
+ * decimals. It also reports how far the double total drifted from the exact one.
+ *
+ * <p>Usage: {@code java MoneyBenchmark [amounts] [rounds]}, 5,000,000 amounts and 5 rounds by
+ * default. Each step reports the best time of its rounds.</p>
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class MoneyBenchmark {
+
+    /** Rounds run before timing, so the JIT has compiled the loops. */
+    private static final int WARMUP_ROUNDS = 2;
+
+    /** Keeps the results alive so the JIT cannot drop a step. */
+    private static long sink;
+
+    /**
+     * The main method builds random amounts as text and times every step on them both ways.
+     *
+     * @param args the number of amounts and the number of timed rounds
+     */
+    public static void main(String[] args) {
+        int amounts = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        // the amounts as one buffer, like the columns of a CSV file in CsvRowParser
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder(amounts * 9);
+        int[] starts = new int[amounts + 1];
+        for (int i = 0; i < amounts; i++) {
+            starts[i] = text.length();
+            Money.appendTo(text, random.nextInt(2_000_000) - 500_000L);
+        }
+        starts[amounts] = text.length();
+        char[] chars = new char[text.length()];
+        text.getChars(0, text.length(), chars, 0);
+
+        double[] doubles = new double[amounts];
+        long[] cents = new long[amounts];
+
+        time("parse, Double.parseDouble", rounds, () -> {
+            for (int i = 0; i < amounts; i++) {
+                doubles[i] = Double.parseDouble(new String(chars, starts[i], starts[i + 1] - starts[i]));
+            }
+            return (long) doubles[amounts - 1];
+        });
+        time("parse, Money.parseCents", rounds, () -> {
+            for (int i = 0; i < amounts; i++) {
+                cents[i] = Money.parseCents(chars, starts[i], starts[i + 1]);
+            }
+            return cents[amounts - 1];
+        });
+
+        time("sum, double", rounds, () -> (long) sumDoubles(doubles));
+        time("sum, long cents", rounds, () -> sumCents(cents));
+
+        time("format, String.format(\"%.2f\")", rounds, () -> {
+            long length = 0;
+            for (int i = 0; i < amounts; i++) {
+                length += String.format("%.2f", doubles[i]).length();
+            }
+            return length;
+        });
+        StringBuilder out = new StringBuilder(32);
+        time("format, Money.appendTo", rounds, () -> {
+            long length = 0;
+            for (int i = 0; i < amounts; i++) {
+                out.setLength(0);
+                length += Money.appendTo(out, cents[i]).length();
+            }
+            return length;
+        });
+
+        long exact = sumCents(cents);
+        double drifted = sumDoubles(doubles);
+        System.out.println("Exact total:  " + Money.format(exact));
+        System.out.println("Double total: " + drifted + " (off by " + Math.abs(drifted * 100 - exact) + " cents)");
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    /**
+     * This method runs a step a few times untimed and then reports the best of the timed rounds.
+     *
+     * @param name   the name of the step
+     * @param rounds the number of timed rounds
+     * @param step   the step to run
+     */
+    private static void time(String name, int rounds, Step step) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink += step.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            sink += step.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-35s %10.2f ms%n", name, best / 1_000_000.0);
+    }
+
+    /**
+     * This method adds up amounts as doubles, the way the bank did before Money.
+     *
+     * @param amounts the amounts
+     * @return the total
+     */
+    private static double sumDoubles(double[] amounts) {
+        double sum = 0;
+        for (double amount : amounts) {
+            sum += amount;
+        }
+        return sum;
+    }
+
+    /**
+     * This method adds up amounts in cents.
+     *
+     * @param amounts the amounts in cents
+     * @return the exact total in cents
+     */
+    private static long sumCents(long[] amounts) {
+        long sum = 0;
+        for (long amount : amounts) {
+            sum += amount;
+        }
+        return sum;
+    }
+
+    /**
+     * The Step interface is one timed step that returns a value to keep.
+     */
+    private interface Step {
+
+        /**
+         * This method runs the step once.
+         *
+         * @return a value computed by the step
+         */
+        long run();
+    }
+}
@@ -0,0 +1,81 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+public class MoneyTest {
+
+    @Test
+    public void testParseCents() {
+        assertEquals(184556, Money.parseCents("1845.56"));
+        assertEquals(-78693, Money.parseCents("-786.93"));
+        assertEquals(250, Money.parseCents("2.5"));
+        assertEquals(500, Money.parseCents("+5."));
+        assertEquals(50, Money.parseCents(".5"));
+        assertEquals(1000, Money.parseCents("  10  "));
+        assertEquals(0, Money.parseCents("-0.00"));
+    }
+
+    @Test
+    public void testParseCentsRoundsHalfUp() {
+        // Only the third decimal decides, and a half rounds away from zero
+        assertEquals(101, Money.parseCents("1.005"));
+        assertEquals(100, Money.parseCents("1.004"));
+        assertEquals(100, Money.parseCents("1.00499"));
+        assertEquals(-101, Money.parseCents("-1.005"));
+        assertEquals(-100, Money.parseCents("-1.0049"));
+        assertEquals(100, Money.parseCents("0.995"));
+        assertEquals(1, Money.parseCents("0.005"));
+        assertEquals(0, Money.parseCents("0.0049"));
+    }
+
+    @Test
+    public void testParseCentsSlowPath() {
+        assertEquals(12345, Money.parseCents("1.2345e2"));
+        assertEquals(100, Money.parseCents("1E0"));
+        assertEquals(1234567890123456768L, Money.parseCents("12345678901234567.675"));
+        assertThrows(NumberFormatException.class, () -> Money.parseCents("99999999999999999999"));
+        assertThrows(NumberFormatException.class, () -> Money.parseCents(""));
+        assertThrows(NumberFormatException.class, () -> Money.parseCents("-"));
+        assertThrows(NumberFormatException.class, () -> Money.parseCents("."));
+        assertThrows(NumberFormatException.class, () -> Money.parseCents("1.2.3"));
+        assertThrows(NumberFormatException.class, () -> Money.parseCents("ten"));
+    }
+
+    @Test
+    public void testParseCentsMatchesBigDecimal() {
+        // The characters and the bytes of random amounts with up to five decimals parse like BigDecimal rounds them
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            BigDecimal amount = BigDecimal.valueOf(random.nextLong() % 10000000000L, random.nextInt(6));
+            String text = amount.toPlainString();
+            long expected = amount.setScale(2, RoundingMode.HALF_UP).movePointRight(2).longValueExact();
+            byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+
+            assertEquals(expected, Money.parseCents(text), text);
+            assertEquals(expected, Money.parseCents(bytes, 0, bytes.length), text);
+        }
+    }
+
+    @Test
+    public void testFormat() {
+        assertEquals("1845.56", Money.format(184556));
+        assertEquals("-786.93", Money.format(-78693));
+        assertEquals("-0.50", Money.format(-50));
+        assertEquals("0.05", Money.format(5));
+        assertEquals("0.00", Money.format(0));
+        assertEquals("x=12.00", Money.appendTo(new StringBuilder("x="), 1200).toString());
+    }
+
+    @Test
+    public void testConversions() {
+        assertEquals(10, Money.toCents(0.1));
+        assertEquals(30, Money.toCents(0.1 + 0.2));
+        assertEquals(-78693, Money.toCents(-786.93));
+        assertEquals(1000.5, Money.toDollars(100050));
+    }
+}
@@ -0,0 +1,271 @@
+/**
+ * The NumberParser class parses ints and doubles straight out of a character buffer,
+ * without building an intermediate String for every column. Plain decimals such as
+ * "1845.56" or "-786.93" take the fast path; anything unusual (exponents, very long
+ * numbers) falls back to Double.parseDouble so the result is always the same.
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public final class NumberParser {
+
+    /** Largest mantissa that a double can hold exactly (2^53). */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    /** Powers of ten that are exact as doubles. */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /** This class only has static helpers. */
+    private NumberParser() {
+    }
+
+    /**
+     * This method parses an int from a range of characters, ignoring surrounding spaces.
+     *
+     * @param chars the buffer holding the number
+     * @param start the start offset of the number
+     * @param end   the end offset (exclusive) of the number
+     * @return the int value
+     * @throws NumberFormatException if the range is not a valid int
+     */
+    public static int parseInt(char[] chars, int start, int end) {
+        while (start < end && chars[start] == ' ') {
+            start++;
+        }
+        while (end > start && chars[end - 1] == ' ') {
+            end--;
+        }
+        if (start == end) {
+            throw new NumberFormatException("Empty number");
+        }
+
+        boolean negative = false;
+        int i = start;
+        if (chars[i] == '-' || chars[i] == '+') {
+            negative = chars[i] == '-';
+            i++;
+        }
+        if (i == end) {
+            throw invalid(chars, start, end);
+        }
+
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = chars[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw invalid(chars, start, end);
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw invalid(chars, start, end);
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw invalid(chars, start, end);
+        }
+        return (int) value;
+    }
+
+    /**
+     * This method parses a double from a range of characters, ignoring surrounding spaces.
+     *
+     * @param chars the buffer holding the number
+     * @param start the start offset of the number
+     * @param end   the end offset (exclusive) of the number
+     * @return the double value
+     * @throws NumberFormatException if the range is not a valid number
+     */
+    public static double parseDouble(char[] chars, int start, int end) {
+        while (start < end && chars[start] == ' ') {
+            start++;
+        }
+        while (end > start && chars[end - 1] == ' ') {
+            end--;
+        }
+
+        boolean negative = false;
+        int i = start;
+        if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+            negative = chars[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenPoint = false;
+        for (; i < end; i++) {
+            char c = chars[i];
+            if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (seenPoint) {
+                    fractionDigits++;
+                }
+                if (mantissa >= MAX_EXACT_MANTISSA) {
+                    return slowParse(chars, start, end);
+                }
+            } else {
+                // exponents, NaN, Infinity and anything invalid
+                return slowParse(chars, start, end);
+            }
+        }
+        if (digits == 0) {
+            throw invalid(chars, start, end);
+        }
+        if (fractionDigits >= POWERS_OF_TEN.length) {
+            return slowParse(chars, start, end);
+        }
+
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    /**
+     * This method parses an int from a range of ASCII bytes, ignoring surrounding spaces.
+     *
+     * @param bytes the buffer holding the number
+     * @param start the start offset of the number
+     * @param end   the end offset (exclusive) of the number
+     * @return the int value
+     * @throws NumberFormatException if the range is not a valid int
+     */
+    public static int parseInt(byte[] bytes, int start, int end) {
+        int from = start;
+        int to = end;
+        while (from < to && bytes[from] == ' ') {
+            from++;
+        }
+        while (to > from && bytes[to - 1] == ' ') {
+            to--;
+        }
+
+        boolean negative = false;
+        int i = from;
+        if (i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        if (i == to) {
+            return parseInt(toChars(bytes, start, end), 0, end - start);
+        }
+
+        long value = 0;
+        for (; i < to; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9 || value > Integer.MAX_VALUE) {
+                // let the character version build the usual error
+                return parseInt(toChars(bytes, start, end), 0, end - start);
+            }
+            value = value * 10 + digit;
+        }
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            return parseInt(toChars(bytes, start, end), 0, end - start);
+        }
+        return (int) value;
+    }
+
+    /**
+     * This method parses a double from a range of ASCII bytes, ignoring surrounding spaces.
+     * Numbers short enough for the fast path are parsed without allocating.
+     *
+     * @param bytes the buffer holding the number
+     * @param start the start offset of the number
+     * @param end   the end offset (exclusive) of the number
+     * @return the double value
+     * @throws NumberFormatException if the range is not a valid number
+     */
+    public static double parseDouble(byte[] bytes, int start, int end) {
+        while (start < end && bytes[start] == ' ') {
+            start++;
+        }
+        while (end > start && bytes[end - 1] == ' ') {
+            end--;
+        }
+
+        boolean negative = false;
+        int i = start;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenPoint = false;
+        for (; i < end; i++) {
+            byte b = bytes[i];
+            if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (seenPoint) {
+                    fractionDigits++;
+                }
+                if (mantissa >= MAX_EXACT_MANTISSA) {
+                    return parseDouble(toChars(bytes, start, end), 0, end - start);
+                }
+            } else {
+                return parseDouble(toChars(bytes, start, end), 0, end - start);
+            }
+        }
+        if (digits == 0 || fractionDigits >= POWERS_OF_TEN.length) {
+            return parseDouble(toChars(bytes, start, end), 0, end - start);
+        }
+
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    /**
+     * This method widens a range of ASCII bytes to characters for the slower paths.
+     *
+     * @param bytes the buffer holding the number
+     * @param start the start offset of the number
+     * @param end   the end offset (exclusive) of the number
+     * @return the characters of the range
+     */
+    private static char[] toChars(byte[] bytes, int start, int end) {
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = (char) (bytes[i] & 0xFF);
+        }
+        return chars;
+    }
+
+    /**
+     * This method parses a number with the standard library when the fast path cannot.
+     *
+     * @param chars the buffer holding the number
+     * @param start the start offset of the number
+     * @param end   the end offset (exclusive) of the number
+     * @return the double value
+     * @throws NumberFormatException if the range is not a valid number
+     */
+    private static double slowParse(char[] chars, int start, int end) {
+        return Double.parseDouble(new String(chars, start, end - start));
+    }
+
+    /**
+     * This method builds the exception thrown for an invalid number.
+     *
+     * @param chars the buffer holding the number
+     * @param start the start offset of the number
+     * @param end   the end offset (exclusive) of the number
+     * @return the exception to throw
+     */
+    private static NumberFormatException invalid(char[] chars, int start, int end) {
+        return new NumberFormatException("For input string: \"" + new String(chars, start, end - start) + "\"");
+    }
+}
@@ -0,0 +1,267 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The ParallelCustomerLoader class loads the customer file on several threads.
+ * The file is cut into byte ranges that always end on a line break outside of quotes,
+ * every range is parsed from a memory mapped buffer on a ForkJoinPool worker into a partial result, and the partial
+ * results are merged in file order. Merging in file order means a customer that appears
+ * twice ends up exactly like it does with the sequential loader (the last row wins).
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class ParallelCustomerLoader {
+
+    /** Smallest range worth handing to a worker, smaller files are split less. */
+    private static final long MIN_RANGE_SIZE = 1024 * 1024;
+
+    /** Largest range handed to a single worker. */
+    private static final long MAX_RANGE_SIZE = 64L * 1024 * 1024;
+
+    /** The pool the ranges are parsed on. */
+    private final ForkJoinPool pool;
+
+    /**
+     * This constructor creates a loader that uses the common ForkJoinPool, which has one
+     * worker per available core.
+     */
+    public ParallelCustomerLoader() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * This constructor creates a loader that parses on the given pool.
+     *
+     * @param pool the pool used to parse the ranges
+     */
+    public ParallelCustomerLoader(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * This method loads the customer file and returns the same maps as PopulationHashmap.readFile.
+     * The account numbers found are added to the shared account number set.
+     *
+     * @param fileName the customer CSV file
+     * @return an array of HashMaps, the first keyed by identification number and the second by full name
+     * @throws IOException if the file cannot be read
+     */
+    public HashMap<String, Customer>[] load(String fileName) throws IOException {
+        Path path = Paths.get(fileName);
+        long fileSize = Files.size(path);
+
+        List<long[]> ranges = new ArrayList<>();
+        PopulationHashmap.CustomerColumns columns = splitRanges(path, fileSize, ranges);
+
+        PartialLoad result;
+        if (columns == null || ranges.isEmpty()) {
+            result = new PartialLoad();
+        } else {
+            result = pool.invoke(new RangeTask(fileName, columns, ranges, 0, ranges.size()));
+        }
+
+        for (int i = 0; i < result.accountCount; i++) {
+            Account.addIdToAccountSet(result.accountNumbers[i]);
+        }
+        return new HashMap[]{result.idMap, result.nameMap};
+    }
+
+    /**
+     * This method reads the header and walks the file once to find where each range ends.
+     * Only line breaks outside of quotes can end a range, so a quoted address that spans
+     * several lines is never cut in half.
+     *
+     * @param path     the customer file
+     * @param fileSize the size of the file in bytes
+     * @param ranges   the list that receives the {start, end} offsets of every range
+     * @return the columns described by the header, or null if the file is empty
+     * @throws IOException if the file cannot be read
+     */
+    private PopulationHashmap.CustomerColumns splitRanges(Path path, long fileSize, List<long[]> ranges) throws IOException {
+        int parallelism = pool.getParallelism();
+        long rangeSize = Math.max(MIN_RANGE_SIZE, fileSize / (parallelism * 4L));
+        rangeSize = Math.min(rangeSize, MAX_RANGE_SIZE);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        long headerEnd = -1;
+        long rangeStart = -1;
+        long nextCut = 0;
+        boolean inQuotes = false;
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path), 256 * 1024)) {
+            byte[] block = new byte[256 * 1024];
+            long offset = 0;
+            int read;
+            while ((read = in.read(block)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    byte b = block[i];
+                    if (b == '"') {
+                        inQuotes = !inQuotes;
+                    }
+                    if (headerEnd < 0) {
+                        header.write(b);
+                    }
+                    if (b != '\n' || inQuotes) {
+                        continue;
+                    }
+
+                    long lineEnd = offset + i + 1;
+                    if (headerEnd < 0 && header.size() > 0 && header.toByteArray()[0] == '#') {
+                        header.reset(); // the generation marker of a checkpoint, the header comes next
+                    } else if (headerEnd < 0) {
+                        headerEnd = lineEnd;
+                        rangeStart = lineEnd;
+                        nextCut = lineEnd + rangeSize;
+                    } else if (lineEnd >= nextCut) {
+                        ranges.add(new long[]{rangeStart, lineEnd});
+                        rangeStart = lineEnd;
+                        nextCut = lineEnd + rangeSize;
+                    }
+                }
+                offset += read;
+            }
+        }
+
+        if (headerEnd < 0) {
+            // the file is only a header without a line break, or empty
+            if (header.size() == 0) {
+                return null;
+            }
+            rangeStart = fileSize;
+        }
+        if (rangeStart < fileSize) {
+            ranges.add(new long[]{rangeStart, fileSize});
+        }
+
+        try (CsvRowParser parser = new CsvRowParser(new InputStreamReader(
+                new ByteArrayInputStream(header.toByteArray()), StandardCharsets.UTF_8))) {
+            if (!parser.nextRow()) {
+                return null;
+            }
+            return new PopulationHashmap.CustomerColumns(parser.getStrings());
+        }
+    }
+
+    /**
+     * This method parses the rows of one range into a partial result.
+     *
+     * @param fileName the customer file
+     * @param columns  the columns described by the header
+     * @param range    the {start, end} offsets of the range
+     * @return the customers and account numbers found in the range
+     * @throws IOException if the range cannot be read
+     */
+    private static PartialLoad parseRange(String fileName, PopulationHashmap.CustomerColumns columns, long[] range) throws IOException {
+        PartialLoad partial = new PartialLoad();
+        try (MappedCsvReader parser = new MappedCsvReader(Paths.get(fileName), range[0], range[1])) {
+            while (PopulationHashmap.nextDataRow(parser)) {
+                try {
+                    partial.add(columns.toCustomer(parser));
+                } catch (NumberFormatException e) {
+                    System.out.println("Skipping malformed customer row at byte " + parser.getRowStartOffset() + ": " + e.getMessage());
+                }
+            }
+        }
+        return partial;
+    }
+
+    /**
+     * The RangeTask class splits a list of ranges in halves until a single range is left,
+     * parses it, and merges the results of both halves on the way back up.
+     */
+    private static class RangeTask extends RecursiveTask<PartialLoad> {
+        private static final long serialVersionUID = 1L;
+
+        private final String fileName;
+        private final PopulationHashmap.CustomerColumns columns;
+        private final List<long[]> ranges;
+        private final int from;
+        private final int to;
+
+        RangeTask(String fileName, PopulationHashmap.CustomerColumns columns, List<long[]> ranges, int from, int to) {
+            this.fileName = fileName;
+            this.columns = columns;
+            this.ranges = ranges;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected PartialLoad compute() {
+            if (to - from == 1) {
+                try {
+                    return parseRange(fileName, columns, ranges.get(from));
+                } catch (IOException e) {
+                    throw new IllegalStateException("Error reading customer file: " + e.getMessage(), e);
+                }
+            }
+            int middle = (from + to) >>> 1;
+            RangeTask left = new RangeTask(fileName, columns, ranges, from, middle);
+            RangeTask right = new RangeTask(fileName, columns, ranges, middle, to);
+            right.fork();
+            PartialLoad result = left.compute();
+            result.merge(right.join());
+            return result;
+        }
+    }
+
+    /**
+     * The PartialLoad class holds the customers and account numbers parsed from some ranges.
+     */
+    private static class PartialLoad {
+        private final HashMap<String, Customer> idMap = new HashMap<>();
+        private final HashMap<String, Customer> nameMap = new HashMap<>();
+        private int[] accountNumbers = new int[48];
+        private int accountCount;
+
+        /**
+         * This method adds a customer exactly like the sequential loader does.
+         *
+         * @param customer the customer parsed from a row
+         */
+        void add(Customer customer) {
+            idMap.put(customer.getIdNumber(), customer);
+            nameMap.put(customer.getFirstName() + " " + customer.getLastName(), customer);
+            addAccountNumber(customer.getSavingAccount().getAccountNum());
+            addAccountNumber(customer.getCheckingAccount().getAccountNum());
+            addAccountNumber(customer.getCreditAccount().getAccountNum());
+        }
+
+        /**
+         * This method appends the result of the ranges that come right after this one.
+         *
+         * @param later the partial result of the following ranges
+         */
+        void merge(PartialLoad later) {
+            idMap.putAll(later.idMap);
+            nameMap.putAll(later.nameMap);
+            for (int i = 0; i < later.accountCount; i++) {
+                addAccountNumber(later.accountNumbers[i]);
+            }
+        }
+
+        private void addAccountNumber(int accountNumber) {
+            if (accountCount == accountNumbers.length) {
+                accountNumbers = Arrays.copyOf(accountNumbers, accountCount * 2);
+            }
+            accountNumbers[accountCount++] = accountNumber;
+        }
+    }
+}
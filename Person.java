@@ -104,6 +104,7 @@ public class Person {
          */
         public void setFirstName(String firstName) {
             this.firstName = firstName;
+            DeltaCheckpoint.markCustomerDirty(idNumber);
         }
     
         /**
@@ -113,6 +114,7 @@ public class Person {
          */
         public void setLastName(String lastName) {
             this.lastName = lastName;
+            DeltaCheckpoint.markCustomerDirty(idNumber);
         }
     
         /**
@@ -122,6 +124,7 @@ public class Person {
          */
         public void setDateOfBirth(String dateOfBirth) {
             this.dateOfBirth = dateOfBirth;
+            DeltaCheckpoint.markCustomerDirty(idNumber);
         }
         
         /**
@@ -131,6 +134,7 @@ public class Person {
          */
         public void setAddress(String address) {
             this.address = address;
+            DeltaCheckpoint.markCustomerDirty(idNumber);
         } 
 
         /**
@@ -167,6 +171,7 @@ public class Person {
          */
         public void setPhoneNumber(String phoneNumber) {
             this.phoneNumber = phoneNumber;
+            DeltaCheckpoint.markCustomerDirty(idNumber);
         }
     
         /**
@@ -175,10 +180,13 @@ public class Person {
         * @param incomingMaxID the incoming ID to compare and set as the new maximum if it's greater
         */
         public void setMaxID(String incomingMaxID){
-            int parsedMaxID = Integer.parseInt(this.maxID);
-            int currentMaxID = Integer.parseInt(incomingMaxID);
-            if (parsedMaxID < currentMaxID){
-                maxID = incomingMaxID;
+            // customers can be created on several loader threads at once
+            synchronized (Person.class) {
+                int parsedMaxID = Integer.parseInt(this.maxID);
+                int currentMaxID = Integer.parseInt(incomingMaxID);
+                if (parsedMaxID < currentMaxID){
+                    maxID = incomingMaxID;
+                }
             }
         }
     
@@ -243,4 +251,4 @@ public class Person {
     public String getPhoneNumber() {
         return this.phoneNumber;
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -1,10 +1,12 @@
-import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
+import java.io.FileReader;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Scanner;
 import java.util.Set;
 
 /**
@@ -20,6 +22,32 @@ import java.util.Set;
  */
 public class PopulationHashmap {
 
+    /**
+     * The CSV file that holds the customer base.
+     */
+    public static final String CUSTOMER_FILE = "BankUsers.csv";
+
+    /**
+     * The header row written to customer CSV files.
+     */
+    public static final String CSV_HEADER =
+            "Identification Number,First Name,Last Name,Date of Birth,Address,Phone Number," +
+            "Checking Account Number,Checking Starting Balance," +
+            "Savings Account Number,Savings Starting Balance," +
+            "Credit Account Number,Credit Max,Credit Starting Balance";
+
+    /**
+     * Whether readFile loads the customer file on several threads. It is turned on by
+     * starting the program with -Dbank.parallelLoad=true.
+     */
+    public static final boolean PARALLEL_LOAD = Boolean.getBoolean("bank.parallelLoad");
+
+    /**
+     * Whether the customer and transaction files are read through memory mapped buffers
+     * instead of a Reader. It is turned on with -Dbank.mappedIO=true.
+     */
+    public static final boolean MAPPED_IO = Boolean.getBoolean("bank.mappedIO");
+
     /**
      * This mathod reads customer information from a specified CSV file and populates two HashMaps:
      * one keyed by identification number and the other by full nam (of the person).
@@ -28,64 +56,111 @@ public class PopulationHashmap {
      *         and the second HashMap uses full names as keys.
      */
     public static HashMap<String, Customer>[] readFile() {
+        return readFile(PARALLEL_LOAD);
+    }
+
+    /**
+     * This method loads the customer base. The binary snapshot is used when it is at least as
+     * new as the CSV file, otherwise the CSV file is read either on the current thread or split
+     * into ranges that are parsed in parallel. All paths return the same maps. The account
+     * index is rebuilt from the loaded customers, and the changes saved in the delta file since
+     * the customers were last written out are applied on top. With the BalanceJournal on, the
+     * journal records after the snapshot are then replayed by JournalRecovery, which brings back
+     * the balances a crash did not let the program save.
+     *
+     * @param parallel true to parse the CSV file on a ForkJoinPool, false to parse it sequentially
+     * @return an array of HashMaps where the first HashMap uses identification numbers as keys
+     *         and the second HashMap uses full names as keys.
+     */
+    public static HashMap<String, Customer>[] readFile(boolean parallel) {
+        HashMap<String, Customer>[] maps = CustomerSnapshot.readIfFresh(CustomerSnapshot.SNAPSHOT_FILE, CUSTOMER_FILE);
+        if (maps == null && !CheckpointWriter.isComplete(CUSTOMER_FILE)) {
+            // a customer file cut short would lose customers, the last snapshot is the better copy
+            maps = readSnapshot();
+        }
+        if (maps == null) {
+            maps = readCsv(CUSTOMER_FILE, parallel);
+        }
+        AccountIndex.rebuild(maps[0]);
+        DeltaCheckpoint.replay(maps[0], maps[1]);
+        JournalRecovery.recoverAfterSnapshot();
+        return maps;
+    }
+
+    /**
+     * This method reads the binary snapshot even if it is older than the customer file.
+     *
+     * @return the customer maps, or null if there is no usable snapshot
+     */
+    private static HashMap<String, Customer>[] readSnapshot() {
+        if (!Files.exists(Paths.get(CustomerSnapshot.SNAPSHOT_FILE))) {
+            return null;
+        }
+        try {
+            return CustomerSnapshot.read(CustomerSnapshot.SNAPSHOT_FILE);
+        } catch (IOException e) {
+            System.out.println("Could not read " + CustomerSnapshot.SNAPSHOT_FILE + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * This method reads a customer CSV file, skipping the binary snapshot.
+     *
+     * @param fileName the customer CSV file
+     * @param parallel true to parse the file on a ForkJoinPool, false to parse it sequentially
+     * @return an array of HashMaps keyed by identification number and by full name
+     */
+    public static HashMap<String, Customer>[] readCsv(String fileName, boolean parallel) {
+        if (!parallel) {
+            return readFileSequential(fileName);
+        }
+
+        HashMap<String, Customer>[] maps;
+        try {
+            maps = new ParallelCustomerLoader().load(fileName);
+        } catch (IOException e) {
+            System.out.println("Error reading customer file: " + e.getMessage());
+            maps = new HashMap[]{new HashMap<>(), new HashMap<>()};
+        }
+        printSet(Account.getSetAccountsNumbers());
+        return maps;
+    }
+
+    /**
+     * This method reads the customer file on the current thread, one row after another.
+     *
+     * @param fileName the customer CSV file
+     * @return an array of HashMaps keyed by identification number and by full name
+     */
+    private static HashMap<String, Customer>[] readFileSequential(String fileName) {
         HashMap<String, Customer> idMap = new HashMap<>();
         HashMap<String, Customer> nameMap = new HashMap<>();
 
-        try {
-            Scanner informationIndeces = new Scanner(new File("BankUsers.csv"));
-
-            String headers = informationIndeces.nextLine();
-            String[] titles = headers.split(",(?=(?:[^\\\"]*\\\"[^\\\"]*\\\")*[^\\\"]*$)");
-
-            // Retrieve the index of each relevant column header
-            int idNumberIdx = findIndex(titles, "Identification Number");
-            int firstNameIdx = findIndex(titles, "First Name");
-            int lastNameIdx = findIndex(titles, "Last Name");
-            int dateOfBirthIdx = findIndex(titles, "Date of Birth");
-            int addressIdx = findIndex(titles, "Address");
-            int phoneNumberIdx = findIndex(titles, "Phone Number");
-            int savingsAccountNumberIdx = findIndex(titles, "Savings Account Number");
-            int savingsStartingBalanceIdx = findIndex(titles, "Savings Starting Balance");
-            int checkingAccountNumberIdx = findIndex(titles, "Checking Account Number");
-            int checkingStartingBalanceIdx = findIndex(titles, "Checking Starting Balance");
-            int creditAccountNumberIdx = findIndex(titles, "Credit Account Number");
-            int creditStartingBalanceIdx = findIndex(titles, "Credit Starting Balance");
-            int creditMaxIdx = findIndex(titles, "Credit Max");
-
-           
-            while (informationIndeces.hasNextLine()) {
-                String[] userInformation = informationIndeces.nextLine().split(",(?=(?:[^\\\"]*\\\"[^\\\"]*\\\")*[^\\\"]*$)");
-
-                String idNumber = userInformation[idNumberIdx];
-                String firstName = userInformation[firstNameIdx];
-                String lastName = userInformation[lastNameIdx];
-                String fullName = firstName + " " + lastName; 
-                String dateOfBirth = userInformation[dateOfBirthIdx];
-                String address = userInformation[addressIdx];
-                String phoneNumber = userInformation[phoneNumberIdx];
-                int savingsAccountNumber = Integer.parseInt(userInformation[savingsAccountNumberIdx]);
-                double savingsStartingBalance = Double.parseDouble(userInformation[savingsStartingBalanceIdx]);
-                int checkingAccountNumber = Integer.parseInt(userInformation[checkingAccountNumberIdx]);
-                double checkingStartingBalance = Double.parseDouble(userInformation[checkingStartingBalanceIdx]);
-                int creditAccountNumber = Integer.parseInt(userInformation[creditAccountNumberIdx]);
-                double creditStartingBalance = Double.parseDouble(userInformation[creditStartingBalanceIdx]);
-                double creditMax = Double.parseDouble(userInformation[creditMaxIdx]);
-
-                Person basicInformationUser = new Person(idNumber, firstName, lastName, dateOfBirth, address, phoneNumber);
-                Checking checkingAccount = new Checking(checkingAccountNumber, checkingStartingBalance, basicInformationUser);
-                Saving savingAccount = new Saving(savingsAccountNumber, savingsStartingBalance, basicInformationUser);
-                Credit creditAccount = new Credit(creditAccountNumber, creditStartingBalance, creditMax, basicInformationUser);
-                Account[] userAccounts = {checkingAccount, savingAccount, creditAccount};
-                Customer bankCustomer = new Customer(idNumber, firstName, lastName, dateOfBirth, address, phoneNumber, userAccounts);
-
-                
-                idMap.put(idNumber, bankCustomer);      
-                nameMap.put(fullName, bankCustomer);     
-                Account.addToAccountNumbers(savingAccount.getAccountNum(), checkingAccount.getAccountNum(), creditAccount.getAccountNum());
+        try (CsvRowSource parser = openCsv(fileName)) {
+            if (!nextDataRow(parser)) {
+                return new HashMap[]{idMap, nameMap};
             }
+            CustomerColumns columns = new CustomerColumns(parser.getStrings());
 
-        } catch (FileNotFoundException e) {
+            while (nextDataRow(parser)) {
+                try {
+                    Customer bankCustomer = columns.toCustomer(parser);
+
+                    idMap.put(bankCustomer.getIdNumber(), bankCustomer);
+                    nameMap.put(bankCustomer.getFirstName() + " " + bankCustomer.getLastName(), bankCustomer);
+                    Account.addToAccountNumbers(bankCustomer.getSavingAccount().getAccountNum(),
+                            bankCustomer.getCheckingAccount().getAccountNum(), bankCustomer.getCreditAccount().getAccountNum());
+                } catch (NumberFormatException e) {
+                    // A row in another column layout should not stop the whole bank from loading
+                    System.out.println("Skipping malformed customer row " + parser.getRowNumber() + ": " + e.getMessage());
+                }
+            }
+
+        } catch (FileNotFoundException | NoSuchFileException e) {
             System.out.println(e);
+        } catch (IOException e) {
+            System.out.println("Error reading customer file: " + e.getMessage());
         }
 
         //Print the populated HashMaps
@@ -98,46 +173,108 @@ public class PopulationHashmap {
     }
 
     /**
-     * This method writes the updated customer data to a CSV file.
+     * This method moves to the next row that is not a comment, skipping the generation marker
+     * and trailer rows written by CheckpointWriter.
+     *
+     * @param rows the rows being read
+     * @return true if a row was read, false at the end of the input
+     * @throws IOException if the input cannot be read
+     */
+    public static boolean nextDataRow(CsvRowSource rows) throws IOException {
+        while (rows.nextRow()) {
+            if (!rows.isComment()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This method opens a CSV file for reading, through a memory mapped buffer when MAPPED_IO
+     * is on, or through a Reader otherwise.
+     *
+     * @param fileName the CSV file to open
+     * @return a row source positioned before the header row
+     * @throws IOException if the file cannot be opened
+     */
+    public static CsvRowSource openCsv(String fileName) throws IOException {
+        if (MAPPED_IO) {
+            return new MappedCsvReader(Paths.get(fileName));
+        }
+        return new CsvRowParser(new FileReader(fileName, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * This method writes the updated customer data to a CSV file. The file is replaced in one
+     * step once it is completely written, see CheckpointWriter.
      *
      * @param fileName    the name of the CSV file to write to
      * @param customerMap the HashMap containing customer data
      */
     public static void writeToCSV(String fileName, HashMap<String, Customer> customerMap) {
-        try (FileWriter writer = new FileWriter(fileName)) {
-            writer.write(
-                    "Identification Number,First Name,Last Name,Date of Birth,Address,Phone Number," +
-                            "Checking Account Number,Checking Starting Balance," +
-                            "Savings Account Number,Savings Starting Balance," +
-                            "Credit Account Number,Credit Max,Credit Starting Balance\n"
-            );
-
-            
-            for (Customer customer : customerMap.values()) {
-                Checking checking = customer.getCheckingAccount();
-                Saving savings = customer.getSavingAccount();
-                Credit credit = customer.getCreditAccount();
-
-                String row =
-                        customer.getIdNumber() + "," +
-                                customer.getFirstName() + "," +
-                                customer.getLastName() + "," +
-                                customer.getDateOfBirth() + "," +
-                                customer.getAddress() + "," +
-                                customer.getPhoneNumber() + "," +
-                                checking.getAccountNum() + "," + checking.getBalance() + "," +
-                                savings.getAccountNum() + "," + savings.getBalance() + "," +
-                                credit.getAccountNum() + "," + credit.getCreditMax() + "," + credit.getBalance() + "\n";
-
-                writer.write(row);
-            }
-
+        try {
+            CheckpointWriter.write(fileName, customerMap);
             System.out.println("CSV file saved successfully: " + fileName);
         } catch (IOException e) {
             System.out.println("Error writing to CSV file: " + e.getMessage());
         }
     }
 
+    /**
+     * This method builds the CSV row of a customer, in the same column order as CSV_HEADER.
+     *
+     * @param customer the customer to write
+     * @return the row, without a line break at the end
+     */
+    public static String formatRow(Customer customer) {
+        return appendRow(new StringBuilder(160), customer).toString();
+    }
+
+    /**
+     * This method appends the CSV row of a customer, in the same column order as CSV_HEADER.
+     * Amounts are written from their cents with two decimals, see Money.
+     *
+     * @param out      the builder to append to
+     * @param customer the customer to write
+     * @return the builder, without a line break at the end of the row
+     */
+    public static StringBuilder appendRow(StringBuilder out, Customer customer) {
+        Checking checking = customer.getCheckingAccount();
+        Saving savings = customer.getSavingAccount();
+        Credit credit = customer.getCreditAccount();
+
+        out.append(csvField(customer.getIdNumber())).append(',')
+                .append(csvField(customer.getFirstName())).append(',')
+                .append(csvField(customer.getLastName())).append(',')
+                .append(csvField(customer.getDateOfBirth())).append(',')
+                .append(csvField(customer.getAddress())).append(',')
+                .append(csvField(customer.getPhoneNumber())).append(',');
+        out.append(checking.getAccountNum()).append(',');
+        Money.appendTo(out, checking.getBalanceCents()).append(',');
+        out.append(savings.getAccountNum()).append(',');
+        Money.appendTo(out, savings.getBalanceCents()).append(',');
+        out.append(credit.getAccountNum()).append(',');
+        Money.appendTo(out, credit.getCreditMaxCents()).append(',');
+        return Money.appendTo(out, credit.getBalanceCents());
+    }
+
+    /**
+     * This method quotes a value for a CSV row when it contains a comma, a quote or a line break,
+     * so fields like the address can be read back as a single column.
+     *
+     * @param value the value of the field
+     * @return the value ready to be written in a CSV row
+     */
+    public static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
     /**
      * This method will find the index of a specific header title in an array of header titles.
      *
@@ -196,6 +333,155 @@ public class PopulationHashmap {
             System.out.println(id);
         }
     }
+    /**
+     * The CustomerColumns class remembers where each column of BankUsers.csv is, based on
+     * the header row, and builds a Customer (with its three accounts) out of a parsed row.
+     */
+    static class CustomerColumns {
+        private final int idNumberIdx;
+        private final int firstNameIdx;
+        private final int lastNameIdx;
+        private final int dateOfBirthIdx;
+        private final int addressIdx;
+        private final int phoneNumberIdx;
+        private final int savingsAccountNumberIdx;
+        private final int savingsStartingBalanceIdx;
+        private final int checkingAccountNumberIdx;
+        private final int checkingStartingBalanceIdx;
+        private final int creditAccountNumberIdx;
+        private final int creditStartingBalanceIdx;
+        private final int creditMaxIdx;
+
+        /**
+         * This constructor retrieves the index of each relevant column header.
+         *
+         * @param titles the header row of the customer file
+         */
+        CustomerColumns(String[] titles) {
+            idNumberIdx = findIndex(titles, "Identification Number");
+            firstNameIdx = findIndex(titles, "First Name");
+            lastNameIdx = findIndex(titles, "Last Name");
+            dateOfBirthIdx = findIndex(titles, "Date of Birth");
+            addressIdx = findIndex(titles, "Address");
+            phoneNumberIdx = findIndex(titles, "Phone Number");
+            savingsAccountNumberIdx = findIndex(titles, "Savings Account Number");
+            savingsStartingBalanceIdx = findIndex(titles, "Savings Starting Balance");
+            checkingAccountNumberIdx = findIndex(titles, "Checking Account Number");
+            checkingStartingBalanceIdx = findIndex(titles, "Checking Starting Balance");
+            creditAccountNumberIdx = findIndex(titles, "Credit Account Number");
+            creditStartingBalanceIdx = findIndex(titles, "Credit Starting Balance");
+            creditMaxIdx = findIndex(titles, "Credit Max");
+        }
+
+        /**
+         * This method builds a customer and its accounts from the current row of the parser.
+         *
+         * @param row the parser positioned on a customer row
+         * @return the customer described by the row
+         * @throws NumberFormatException if an account number or balance is not a number
+         */
+        Customer toCustomer(CsvRowSource row) {
+            String idNumber = row.getString(idNumberIdx);
+            String firstName = row.getString(firstNameIdx);
+            String lastName = row.getString(lastNameIdx);
+            String dateOfBirth = row.getString(dateOfBirthIdx);
+            String address = row.getString(addressIdx);
+            String phoneNumber = row.getString(phoneNumberIdx);
+            int savingsAccountNumber = row.getInt(savingsAccountNumberIdx);
+            double savingsStartingBalance = Money.toDollars(row.getCents(savingsStartingBalanceIdx));
+            int checkingAccountNumber = row.getInt(checkingAccountNumberIdx);
+            double checkingStartingBalance = Money.toDollars(row.getCents(checkingStartingBalanceIdx));
+            int creditAccountNumber = row.getInt(creditAccountNumberIdx);
+            double creditStartingBalance = Money.toDollars(row.getCents(creditStartingBalanceIdx));
+            double creditMax = Money.toDollars(row.getCents(creditMaxIdx));
+
+            Person basicInformationUser = new Person(idNumber, firstName, lastName, dateOfBirth, address, phoneNumber);
+            Checking checkingAccount = new Checking(checkingAccountNumber, checkingStartingBalance, basicInformationUser);
+            Saving savingAccount = new Saving(savingsAccountNumber, savingsStartingBalance, basicInformationUser);
+            Credit creditAccount = new Credit(creditAccountNumber, creditStartingBalance, creditMax, basicInformationUser);
+            Account[] userAccounts = {checkingAccount, savingAccount, creditAccount};
+            return new Customer(idNumber, firstName, lastName, dateOfBirth, address, phoneNumber, userAccounts);
+        }
+
+        /**
+         * This method reads the identification number of the current row of the parser.
+         *
+         * @param row the parser positioned on a customer row
+         * @return the identification number of the customer of the row
+         */
+        String getIdNumber(CsvRowSource row) {
+            return row.getString(idNumberIdx);
+        }
+
+        /**
+         * This method copies the current row of the parser into a customer that is already loaded,
+         * instead of building a new one, so its accounts keep their slots in the AccountStore and no
+         * second account with the same number is left behind. The whole row is parsed before
+         * anything is changed.
+         *
+         * @param row      the parser positioned on a row of the same customer
+         * @param customer the loaded customer
+         * @return true if the customer was updated, false if it does not have the three accounts of a row
+         * @throws NumberFormatException if an account number or balance is not a number
+         */
+        boolean updateCustomer(CsvRowSource row, Customer customer) {
+            Account[] accounts = customer.getAccounts();
+            if (accounts == null || accounts.length < 3 || !(accounts[0] instanceof Checking)
+                    || !(accounts[1] instanceof Saving) || !(accounts[2] instanceof Credit)) {
+                return false;
+            }
+            String firstName = row.getString(firstNameIdx);
+            String lastName = row.getString(lastNameIdx);
+            String dateOfBirth = row.getString(dateOfBirthIdx);
+            String address = row.getString(addressIdx);
+            String phoneNumber = row.getString(phoneNumberIdx);
+            int savingsAccountNumber = row.getInt(savingsAccountNumberIdx);
+            double savingsBalance = Money.toDollars(row.getCents(savingsStartingBalanceIdx));
+            int checkingAccountNumber = row.getInt(checkingAccountNumberIdx);
+            double checkingBalance = Money.toDollars(row.getCents(checkingStartingBalanceIdx));
+            int creditAccountNumber = row.getInt(creditAccountNumberIdx);
+            double creditBalance = Money.toDollars(row.getCents(creditStartingBalanceIdx));
+            double creditMax = Money.toDollars(row.getCents(creditMaxIdx));
+
+            updatePerson(customer, firstName, lastName, dateOfBirth, address, phoneNumber);
+            for (Account account : accounts) {
+                Person holder = account.getAccountHolder();
+                if (holder != null && holder != customer) {
+                    updatePerson(holder, firstName, lastName, dateOfBirth, address, phoneNumber);
+                }
+            }
+            updateAccount(accounts[0], checkingAccountNumber, checkingBalance);
+            updateAccount(accounts[1], savingsAccountNumber, savingsBalance);
+            updateAccount(accounts[2], creditAccountNumber, creditBalance);
+            ((Credit) accounts[2]).setCreditMax(creditMax);
+            return true;
+        }
+
+        /**
+         * This method copies the personal columns of a row into a person.
+         */
+        private static void updatePerson(Person person, String firstName, String lastName, String dateOfBirth,
+                                         String address, String phoneNumber) {
+            person.setFirstName(firstName);
+            person.setLastName(lastName);
+            person.setDateOfBirth(dateOfBirth);
+            person.setAddress(address);
+            person.setPhoneNumber(phoneNumber);
+        }
+
+        /**
+         * This method gives an account the number and balance of a row, the balance also becoming
+         * its starting balance as it does for an account built from a row.
+         */
+        private static void updateAccount(Account account, int accountNumber, double balance) {
+            if (account.getAccountNum() != accountNumber) {
+                account.setAccountNum(accountNumber);
+            }
+            account.setStartingBalance(balance);
+            account.setBalance(balance);
+        }
+    }
+
     /**
      * The main method to run the PopulationHashmap program.
      *
@@ -0,0 +1,413 @@
+import java.util.Map;
+
+/**
+ * The PreparedTransaction class is a transaction whose users and accounts have already been
+ * looked up and whose amount has been checked, ready to be applied. Preparing does not touch any
+ * balance, so it can run ahead of (or on another thread than) the transactions before it; only
+ * the checks that depend on a balance, like having enough funds, wait until the transaction is
+ * applied.
+ *
+ * <p>Both the transactions file and the Customer transaction methods go through this class, so a
+ * row of the file and a call to, say, Customer.withdrawTransaction always do the same thing and
+ * log the same message.</p>
+ *
+ * <p>The balance check and the change happen as one step even when several threads apply
+ * transactions: deposits and withdrawals use the compare-and-set of Account (under the lock of the
+ * account while changes are journaled), transfers and payments take the AccountLocks of both
+ * accounts, and inquiries read the balance without a lock.
+ * Every change is appended to the BalanceJournal; the caller flushes it before showing or logging
+ * the message of the transaction.</p>
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class PreparedTransaction {
+
+    /**
+     * The Action enum lists what a transaction can do, with the name used in the transactions file.
+     */
+    public enum Action {
+        /** Shows the balance of an account. */
+        INQUIRES("inquires"),
+        /** Adds money to an account. */
+        DEPOSITS("deposits"),
+        /** Takes money out of an account. */
+        WITHDRAWS("withdraws"),
+        /** Moves money between two accounts of different types. */
+        TRANSFERS("transfers"),
+        /** Sends money from one user to another. */
+        PAYS("pays");
+
+        /** The name of the action in the transactions file. */
+        private final String fileName;
+
+        Action(String fileName) {
+            this.fileName = fileName;
+        }
+
+        /**
+         * This method finds the action with the given name in the transactions file.
+         *
+         * @param name the action column of a row
+         * @return the action, or null if the name is not an action
+         */
+        public static Action fromName(String name) {
+            for (Action action : values()) {
+                if (action.fileName.equals(name)) {
+                    return action;
+                }
+            }
+            return null;
+        }
+    }
+
+    /** What the transaction does. */
+    private final Action action;
+
+    /** The full name of the user sending money or making the inquiry. */
+    private final String fromUser;
+
+    /** The full name of the user receiving money. */
+    private final String toUser;
+
+    /** The account type named for the sender. */
+    private final String fromType;
+
+    /** The account type named for the receiver. */
+    private final String toType;
+
+    /**
+     * The Failure enum lists why a transaction can be rejected, as written in a dry run report.
+     */
+    public enum Failure {
+        /** A transfer between two accounts of the same type. */
+        SAME_ACCOUNT_TYPE,
+        /** A user that is not in the customer base. */
+        UNKNOWN_USER,
+        /** An empty account type column. */
+        MISSING_ACCOUNT_TYPE,
+        /** An account type other than Checking, Savings or Credit. */
+        UNKNOWN_ACCOUNT_TYPE,
+        /** An amount that is not more than 0. */
+        INVALID_AMOUNT,
+        /** An amount more than the balance of the account the money comes from. */
+        INSUFFICIENT_FUNDS
+    }
+
+    /** The amount of the transaction, in cents. */
+    private final long amountCents;
+
+    /** The account the money comes from, or the account of an inquiry. */
+    private Account fromAccount;
+
+    /** The account the money goes to. */
+    private Account toAccount;
+
+    /** Why the transaction cannot be applied, or null if it passed the checks. */
+    private String failure;
+
+    /** The kind of failure, or null if the transaction passed the checks (or went through). */
+    private Failure failureCode;
+
+    /** Whether apply moved the money (or showed the balance). */
+    private boolean successful;
+
+    /**
+     * This constructor keeps the columns of the transaction, the lookups are done by prepare.
+     *
+     * @param action      what the transaction does
+     * @param fromUser    the full name of the sender
+     * @param fromType    the account type of the sender
+     * @param toUser      the full name of the receiver
+     * @param toType      the account type of the receiver
+     * @param amountCents the amount of the transaction, in cents
+     */
+    private PreparedTransaction(Action action, String fromUser, String fromType, String toUser, String toType, long amountCents) {
+        this.action = action;
+        this.fromUser = fromUser;
+        this.fromType = fromType;
+        this.toUser = toUser;
+        this.toType = toType;
+        this.amountCents = amountCents;
+    }
+
+    /**
+     * This method prepares a row of the transactions file.
+     *
+     * @param record  the row to prepare
+     * @param nameMap the customers keyed by full name
+     * @return the prepared transaction, or null if the row has no known action
+     */
+    public static PreparedTransaction prepare(TransactionRecord record, Map<String, Customer> nameMap) {
+        Action action = Action.fromName(record.getAction());
+        if (action == null) {
+            return null;
+        }
+        return prepare(action, record.getFromFullName(), record.getFromWhere(),
+                record.getToFullName(), record.getToWhere(), record.getAmountCents(), nameMap);
+    }
+
+    /**
+     * This method looks up the users and accounts of a transaction and checks everything that
+     * does not depend on a balance. A transaction that fails a check is still returned, applying
+     * it only returns the reason it failed.
+     *
+     * @param action      what the transaction does
+     * @param fromUser    the full name of the sender, unused by deposits
+     * @param fromType    the account type of the sender, unused by deposits
+     * @param toUser      the full name of the receiver, unused by inquiries and withdrawals
+     * @param toType      the account type of the receiver, unused by inquiries and withdrawals
+     * @param amountCents the amount of the transaction in cents, unused by inquiries
+     * @param nameMap     the customers keyed by full name
+     * @return the prepared transaction
+     */
+    public static PreparedTransaction prepare(Action action, String fromUser, String fromType, String toUser, String toType,
+                                              long amountCents, Map<String, Customer> nameMap) {
+        PreparedTransaction transaction = new PreparedTransaction(action, fromUser, fromType, toUser, toType, amountCents);
+        transaction.resolve(nameMap);
+        return transaction;
+    }
+
+    /**
+     * This method finds the accounts of the transaction and records the first check that fails.
+     *
+     * @param nameMap the customers keyed by full name
+     */
+    private void resolve(Map<String, Customer> nameMap) {
+        if (action == Action.TRANSFERS && fromType != null && fromType.equals(toType)) {
+            fail(Failure.SAME_ACCOUNT_TYPE, "Transaction failed: user cannot transfer within the same account type.");
+            return;
+        }
+        if (action != Action.DEPOSITS) {
+            fromAccount = findAccount(nameMap, fromUser, fromType);
+            if (failure != null) {
+                return;
+            }
+        }
+        if (action == Action.DEPOSITS || action == Action.TRANSFERS || action == Action.PAYS) {
+            toAccount = findAccount(nameMap, toUser, toType);
+            if (failure != null) {
+                return;
+            }
+        }
+        if (action != Action.INQUIRES && amountCents <= 0) {
+            fail(Failure.INVALID_AMOUNT, "Failed transaction: amount must be more than 0 (" + Money.toDollars(amountCents) + ").");
+        }
+    }
+
+    /**
+     * This method finds the account of the given type of a user, recording a failure if there is none.
+     *
+     * @param nameMap     the customers keyed by full name
+     * @param user        the full name of the user
+     * @param accountType "Checking", "Savings" or "Credit"
+     * @return the account, or null if the user or the account type does not exist
+     */
+    private Account findAccount(Map<String, Customer> nameMap, String user, String accountType) {
+        Customer customer = nameMap.get(user);
+        if (customer == null) {
+            fail(Failure.UNKNOWN_USER, "Failed transaction: user " + user + " does not exist.");
+            return null;
+        }
+        if (accountType == null) {
+            fail(Failure.MISSING_ACCOUNT_TYPE, "Failed transaction: no account type given for " + user + ".");
+            return null;
+        }
+        switch (accountType) {
+            case "Checking":
+                return customer.getCheckingAccount();
+            case "Savings":
+                return customer.getSavingAccount();
+            case "Credit":
+                return customer.getCreditAccount();
+            default:
+                fail(Failure.UNKNOWN_ACCOUNT_TYPE, "Failed transaction: " + accountType + " is not an account type.");
+                return null;
+        }
+    }
+
+    /**
+     * This method records why the transaction cannot be applied.
+     *
+     * @param code    the kind of failure
+     * @param message the message to log
+     */
+    private void fail(Failure code, String message) {
+        failureCode = code;
+        failure = message;
+    }
+
+    /**
+     * This method applies the transaction: it checks the balance if money leaves an account,
+     * moves the money, and describes what happened. Transactions must be applied in the order of
+     * the file, since each one can change the balances the next one checks. A transaction that
+     * does not go through is recorded to the EventLog as a failure.
+     *
+     * @return the message to log, describing either the change or why the transaction failed
+     */
+    public String apply() {
+        String message = move();
+        if (!successful) {
+            EventLog.recordFailure(failureCode, fromAccount, toAccount, amountCents);
+        }
+        return message;
+    }
+
+    /**
+     * This method checks and moves the money for apply.
+     *
+     * @return the message to log, describing either the change or why the transaction failed
+     */
+    private String move() {
+        if (failure != null) {
+            return failure;
+        }
+
+        double amount = Money.toDollars(amountCents); // only for the messages
+        switch (action) {
+            case INQUIRES -> {
+                successful = true;
+                EventLog.recordInquiry(fromAccount);
+                return "Successful transaction! " + fromUser + " has inquired about " + fromType + " 's balance: " + fromAccount.getBalance();
+            }
+            case DEPOSITS -> {
+                AccountLocks.depositCents(toAccount, amountCents);
+                successful = true;
+                return "Successful Transaction! $" + amount + " has been deposited into " + toUser + " 's " + toType;
+            }
+            case WITHDRAWS -> {
+                if (AccountLocks.withdrawCents(fromAccount, amountCents) == AccountStore.NO_BALANCE) {
+                    failureCode = Failure.INSUFFICIENT_FUNDS;
+                    return "Failed transaction: amount is more than the account balance (" + fromAccount.getBalance() + ") ";
+                }
+                successful = true;
+                return "Successful Transaction! $" + amount + " has been withdrawn from " + fromUser + " 's " + fromType;
+            }
+            case TRANSFERS -> {
+                if (!AccountLocks.transferCents(fromAccount, toAccount, amountCents, BalanceJournal.Op.TRANSFER)) {
+                    failureCode = Failure.INSUFFICIENT_FUNDS;
+                    return "Failed transaction: amount is more than the payer's account balance (" + fromAccount.getBalance() + ") ";
+                }
+                successful = true;
+                return "Successful Transaction! " + fromUser + " transferred: $" + amount + " from " + fromType + " account to " + toType + " account";
+            }
+            case PAYS -> {
+                if (!AccountLocks.transferCents(fromAccount, toAccount, amountCents, BalanceJournal.Op.PAY)) {
+                    failureCode = Failure.INSUFFICIENT_FUNDS;
+                    return "Failed transaction: amount is more than the payer's account balance (" + fromAccount.getBalance() + ") ";
+                }
+                successful = true;
+                return "Successful transaction! " + fromUser + " paid $" + amount + " to " + toUser + " from " + fromType + " account to " + toType + " account.";
+            }
+            default -> throw new AssertionError(action);
+        }
+    }
+
+    /**
+     * This method simulates the transaction on a BalanceOverlay instead of the real balances: it
+     * makes the same checks as apply and changes the simulated balances the same way, but touches
+     * neither the accounts, the BalanceJournal nor the log. Simulated transactions must follow the
+     * same order as apply, at least for each account.
+     *
+     * @param balances the simulated balances
+     * @return null if the transaction would go through, or the message apply would log for its failure
+     */
+    public String simulate(BalanceOverlay balances) {
+        if (failure != null) {
+            return failure;
+        }
+        long cents = amountCents;
+        switch (action) {
+            case INQUIRES -> {
+                return null;
+            }
+            case DEPOSITS -> {
+                balances.add(toAccount, cents);
+                return null;
+            }
+            case WITHDRAWS -> {
+                if (!balances.tryDebit(fromAccount, cents)) {
+                    failureCode = Failure.INSUFFICIENT_FUNDS;
+                    return "Failed transaction: amount is more than the account balance ("
+                            + Money.toDollars(balances.getBalanceCents(fromAccount)) + ") ";
+                }
+                return null;
+            }
+            case TRANSFERS, PAYS -> {
+                if (!balances.tryDebit(fromAccount, cents)) {
+                    failureCode = Failure.INSUFFICIENT_FUNDS;
+                    return "Failed transaction: amount is more than the payer's account balance ("
+                            + Money.toDollars(balances.getBalanceCents(fromAccount)) + ") ";
+                }
+                balances.add(toAccount, cents);
+                return null;
+            }
+            default -> throw new AssertionError(action);
+        }
+    }
+
+    /**
+     * This method retrieves why the transaction failed its checks, apply or simulate.
+     *
+     * @return the kind of failure, or null if the transaction did not fail
+     */
+    public Failure getFailure() {
+        return failureCode;
+    }
+
+    /**
+     * This method checks if the transaction passed the checks that do not depend on a balance.
+     *
+     * @return true if the transaction can be applied, false if it already failed
+     */
+    public boolean isValid() {
+        return failure == null;
+    }
+
+    /**
+     * This method checks if apply went through.
+     *
+     * @return true if the transaction was applied successfully, false otherwise or before apply
+     */
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    /**
+     * This method retrieves what the transaction does.
+     *
+     * @return the action of the transaction
+     */
+    public Action getAction() {
+        return action;
+    }
+
+    /**
+     * This method retrieves the account the money comes from, or the account of an inquiry.
+     *
+     * @return the source account, or null for deposits and failed lookups
+     */
+    public Account getFromAccount() {
+        return fromAccount;
+    }
+
+    /**
+     * This method retrieves the account the money goes to.
+     *
+     * @return the target account, or null for inquiries, withdrawals and failed lookups
+     */
+    public Account getToAccount() {
+        return toAccount;
+    }
+
+    /**
+     * This method retrieves the amount of the transaction.
+     *
+     * @return the amount, in cents
+     */
+    public long getAmountCents() {
+        return amountCents;
+    }
+}
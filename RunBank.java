@@ -1,8 +1,9 @@
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.InputMismatchException;
@@ -10,6 +11,7 @@ import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.Scanner;
+import java.util.stream.Stream;
 
 /**
  * The RunBank class serves as the entry point for the El Paso Miners Bank application.
@@ -22,6 +24,12 @@ import java.util.Scanner;
  * //Random intellij comment
   */
 public class RunBank {
+
+    /**
+     * The CSV file with the transactions processed by the transaction reader.
+     */
+    public static final String TRANSACTIONS_FILE = "Transactions.csv";
+
     /**
      * This method is the starting point for the El Paso Miners Bank application.
      *
@@ -36,14 +44,14 @@ public class RunBank {
      * Users can log in as either individuals or bank managers. A customer database
      * is loaded from a CSV file, and the program manages user input and provides
      * responses for each operation. The program allows the user to exit at any time.
-     * Once the user exits, the program creates a new CSV file with the updated information.
+     * Once the user exits, the program creates a new CSV file with the updated information,
+     * and a binary snapshot of all customers that is loaded instead of the CSV on the next start.
      *
      * @param args command-line arguments (not used)
      */
 
-    
-    public static HashMap<String, Customer>[] customersMap = PopulationHashmap.readFile(); 
     public static void main(String[] args) {
+        HashMap<String, Customer>[] customersMap = CustomerRegistry.getMaps();
         try (Scanner scanner = new Scanner(System.in)) {
             System.out.println("WELCOME TO EL PASO MINERS BANK");
 
@@ -102,12 +110,42 @@ public class RunBank {
                     System.out.println("An unexpected error occurred: " + e.getMessage());
                 }
             }
+
+            // Clean shutdown: save the customer base so the next start skips the CSV parsing
+            saveSnapshot();
         } catch (Exception e) {
             // Error handling for scanner closure
             System.out.println("Error closing the scanner: " + e.getMessage());
         }
     }
 
+    /**
+     * Saves a binary snapshot of every customer and their account balances.
+     * A failure is reported but does not stop the shutdown, the CSV file is still there.
+     */
+    private static void saveSnapshot() {
+        try {
+            CustomerSnapshot.write(CustomerSnapshot.SNAPSHOT_FILE, CustomerRegistry.getIdMap());
+            // the snapshot holds every change, the delta would only replay them again
+            DeltaCheckpoint.discard();
+        } catch (IOException e) {
+            System.out.println("Could not save the customer snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Appends the accounts and customers changed since the last checkpoint to the delta file,
+     * so they survive a crash without rewriting the whole customer file.
+     * A failure is reported, the changes stay pending for the next checkpoint.
+     */
+    private static void saveCheckpoint() {
+        try {
+            DeltaCheckpoint.checkpoint();
+        } catch (IOException e) {
+            System.out.println("Could not save the changes to " + DeltaCheckpoint.DELTA_FILE + ": " + e.getMessage());
+        }
+    }
+
     /**
      * Displays a menu for individual customer options in the banking system.
      * This method allows the user to check their balance, make deposits,
@@ -163,10 +201,10 @@ public class RunBank {
                 if (userChoice == 6) {
                     //
                     PopulationHashmap.writeToCSV("id_map.csv", customersMap[1]);
+                    saveCheckpoint();
                     List<Account> userAccounts = Arrays.asList(customer.getAccounts());
-                    List<String> listOfTransactions = Log.getTransactions();
                     String name = customer.getFirstName() + " " + customer.getLastName();
-                    Log.createUserTransactionFile(name, userAccounts, listOfTransactions);
+                    Log.createUserTransactionFile(name, userAccounts);
                     //PopulationHashmap.writebllabal
                     System.out.println("Thank you for visiting us!");
 
@@ -308,6 +346,7 @@ public class RunBank {
                 addNewUser(scanner, customersMaps);
             }else if(userInput.equalsIgnoreCase("D")){
                 transactionReader();
+                saveCheckpoint();
                 break;
             }else if(userInput.equalsIgnoreCase("E")) {
                 generateBankStatement();
@@ -396,7 +435,7 @@ public class RunBank {
     
             try {
                 int id = Integer.parseInt(accountNumber);
-                Account foundAccount = findAccountByTypeAndId(customersMaps[0], accountType, id);
+                Account foundAccount = findAccountByTypeAndId(accountType, id);
     
                 if (foundAccount != null) {
                     System.out.println(foundAccount.toString());
@@ -428,33 +467,23 @@ public class RunBank {
     }
 
     /**
-     * Finds an account by its type and account number from the provided customer map.
+     * Finds an account by its type and account number.
      *
      * <p>
-     * This method searches through a map of customers to locate an account
-     * that matches the specified account type and account number. It iterates
-     * over all customers and their associated accounts to find the first
-     * matching account.
+     * This method looks the account number up in the account index, which is
+     * kept up to date as customers are loaded and added, so the lookup takes
+     * the same time no matter how many customers the bank has. The account
+     * type is compared without caring about upper or lower case.
      * </p>
      *
-     * @param idMap      A customer hashmap mapping customer identifiers to
-     *                   customer objects, representing the customer
-     *                   database.
      * @param accountType The type of account to search for (e.g., "Checking",
      *                    "Savings", "Credit").
      * @param idAccount   The account number of the account to find.
      * @return The account that matches the specified type and number,
      *         or null if no matching account is found.
      */
-    public static Account findAccountByTypeAndId(HashMap<String, Customer> idMap, String accountType, int idAccount){
-        for (Customer customer: idMap.values()){
-            for (Account account: customer.getAccounts()){
-                if((account.getAccountNum()) == idAccount && account.getAccountType().equals(accountType)){
-                    return account;
-                }
-            }
-        }
-        return null;
+    public static Account findAccountByTypeAndId(String accountType, int idAccount){
+        return AccountIndex.find(idAccount, accountType);
     }
 
     /**
@@ -567,40 +596,22 @@ public class RunBank {
 
         customersMaps[0].put(idNumber, newCustomer);
         customersMaps[1].put(firstName + " " + lastName, newCustomer);
+        AccountIndex.add(newCustomer);
+        DeltaCheckpoint.markCustomerDirty(idNumber);
         appendCustomerToCSV(newCustomer);
 
     }
     
+    /**
+     * Saves a new customer to the customer file. Appending a row would leave the file without
+     * its checkpoint trailer, so the whole file is rewritten on the background thread instead;
+     * several customers added in a row share a single rewrite.
+     *
+     * @param customer the customer that was just added to the customer maps
+     */
     public static void appendCustomerToCSV(Customer customer) {
-        try (FileWriter fw = new FileWriter("BankUsers.csv", true);
-             PrintWriter writer = new PrintWriter(fw)) {
-    
-            // start the row with customer basic details
-            StringBuilder csvRow = new StringBuilder(String.join(",",
-                customer.getIdNumber(),
-                customer.getFirstName(),
-                customer.getLastName(),
-                customer.getDateOfBirth(),
-                customer.getAddress(),
-                customer.getPhoneNumber()
-            ));
-    
-            // loop through each account and append its details to the row, separated by commas
-            for (Account account : customer.getAccounts()) {
-                csvRow.append(","); // Separate accounts with commas
-                csvRow.append(account.getAccountNum()).append(",")
-                       .append(account.getAccountType()).append(",")
-                       .append(account.getBalance());
-            }
-    
-            // this would be writing the code all in one line like in the csv file
-            writer.println(csvRow.toString());
-    
-            System.out.println("Customer with all accounts added to CSV file successfully.");
-    
-        } catch (IOException e) {
-            System.err.println("Error writing to CSV file: " + e.getMessage());
-        }
+        CheckpointWriter.requestCheckpoint();
+        System.out.println("Customer " + customer.getIdNumber() + " will be saved to " + PopulationHashmap.CUSTOMER_FILE + ".");
     }
 
     private static int generateRandomCreditScore() {
@@ -635,11 +646,11 @@ public class RunBank {
         int number = random.nextInt(9000); 
         
     
-        while(Account.getSetAccountsNumbers().contains(random)){
+        // reserving the number checks and claims it in one step, so two new users never share it
+        while(!Account.reserveAccountNumber(number)){
             System.out.println(number);
             number = random.nextInt(9000); 
         }
-        Account.addIdToAccountSet(number);
         return number;
     }
 
@@ -660,69 +671,26 @@ public class RunBank {
     *     <li><b>pays</b>: Pays a specified amount from one account to another.</li>
     * </ul>
     *
-    * <p>If the file cannot be found, a message is printed, and if any amount cannot be parsed as a number, that transaction is skipped.</p>
+    * <p>If the file cannot be found, a message is printed, and if any amount cannot be parsed as a number, that transaction is skipped.
+    * The file is read through a memory mapped buffer when the bank.mappedIO property is on.</p>
+    *
+    * <p>The rows go through a TransactionPipeline, which parses, validates, applies and logs them
+    * in batches on separate threads, and the counters of every stage are printed at the end. When
+    * the JVM is started with {@code -Dbank.dedup=true}, the rows an earlier run already applied are
+    * skipped, and how many were skipped is printed with the counters.</p>
     *
     * @throws FileNotFoundException If the "Transactions.csv" file is not found.
     * @throws Exception If an unexpected error occurs while processing the transactions.
     */
     private static void transactionReader() {
+        TransactionPipeline pipeline = new TransactionPipeline();
         try {
-            Scanner user = new Scanner(System.in);
-            Scanner scanner = new Scanner(new File("Transactions.csv"));
-            String infoHeaders = scanner.nextLine();
-            String[] headers = infoHeaders.split(",");
-            System.out.println(headers.length);
-
-            while (scanner.hasNextLine()){
-
-                String[] informationLine = scanner.nextLine().split(",");
-                for (int i = 0; i < informationLine.length; i++) {
-                    if (informationLine[i].trim().isEmpty()) {
-                        informationLine[i] = null; // Replace with null or any default value
-                    }
-                }
-                String fromFirstName = (informationLine.length > 0) ? informationLine[0] : null;
-                String fromLastName = (informationLine.length > 1) ? informationLine[1] : null;
-                String fromWhere = (informationLine.length > 2) ? informationLine[2] : null;
-                String action = (informationLine.length > 3) ? informationLine[3] : null;
-                String toFirstName = (informationLine.length > 4) ? informationLine[4] : null;
-                String toLastName = (informationLine.length > 5) ? informationLine[5] : null;
-                String toWhere = (informationLine.length > 6) ? informationLine[6] : null;
-                double amount = (informationLine.length > 7 && informationLine[7] != null) ? Double.parseDouble(informationLine[7]) : 0.0; 
-
-                String fromFullName = fromFirstName + " " + fromLastName;
-                String toFullName = toFirstName + " " + toLastName;
-                
-                switch (action){
-                    case "inquires" ->{
-                        Customer.inquireBalancaTransaction(fromFullName, fromWhere);
-                        break;
-                    }
-                    case "deposits" ->{
-                        Customer.depositsTransaction(toFullName, toWhere, amount); 
-                        break;
-                    }
-                    case "withdraws" ->{
-                        Customer.withdrawTransaction(fromFullName, fromWhere, amount);
-                        break;
-                    }
-                    case "transfers" ->{
-                        Customer.makeTransferTransaction(fromFullName, toFullName, fromWhere, toWhere, amount);
-                        break;
-                    }
-
-                    case "pays" ->{
-                        Customer.paySomeoneTransaction(fromFullName, toFullName, fromWhere, toWhere, amount);
-                        break;
-                    }
-                    default ->{
-                        break;
-                    }
-                }
-            }
-            return;
-        } catch (FileNotFoundException e) {
+            pipeline.run(TRANSACTIONS_FILE);
+            pipeline.printCounters();
+        } catch (FileNotFoundException | NoSuchFileException e) {
             System.out.println("Transactions file not found.");
+        } catch (IOException e) {
+            System.out.println("Error reading transactions file: " + e.getMessage());
         }
     }
 
@@ -746,7 +714,7 @@ public class RunBank {
                 System.out.print("Please enter the user's name to generate a bank statement: ");
                 String name = scanner.nextLine().trim();
 
-                Customer customer = customersMap[1].get(name);
+                Customer customer = CustomerRegistry.getNameMap().get(name);
 
                 if (customer == null) {
                     System.out.println("Customer not found. Please enter a valid customer.");
@@ -762,16 +730,24 @@ public class RunBank {
                         writer.println("\n--- Transaction History ---");
                         
                         File file = new File(customer.getFirstName() + " " + customer.getLastName() + "_TransactionReport.txt");
-                        Scanner fileScanner = new Scanner(file);
-                        fileScanner.nextLine();
-                        while(fileScanner.hasNextLine()){
-                            String line = fileScanner.nextLine();
-                            writer.println(line);
+                        if (file.exists()) {
+                            Scanner fileScanner = new Scanner(file);
+                            fileScanner.nextLine();
+                            while(fileScanner.hasNextLine()){
+                                String line = fileScanner.nextLine();
+                                writer.println(line);
+                            }
+                        } else {
+                            // no report for this session yet: take the customer's entries from every log segment
+                            String fullName = customer.getFirstName() + " " + customer.getLastName();
+                            try (Stream<String> lines = Log.lines()) {
+                                lines.filter(line -> line.contains(fullName)).forEach(writer::println);
+                            }
                         }
                         
 
                         System.out.println("Bank statement generated successfully for " + customer.getFirstName() + " " + customer.getLastName());
-                    } catch (FileNotFoundException e) {
+                    } catch (IOException | UncheckedIOException e) {
                         System.out.println("Error generating bank statement file: " + e.getMessage());
                     }
 
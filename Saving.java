@@ -31,8 +31,7 @@ public class Saving extends Account implements Withdrawable {
      */
     @Override
     public boolean withdraw(double amount) {
-        if (allowedToWithdraw(amount)) {
-            setBalance(getBalance() - amount);
+        if (tryDebit(amount)) {
             return true;
         }
         System.out.println("Insufficient funds. Savings account balance: $" + getBalance());
@@ -0,0 +1,326 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The TransactionDryRun class checks a transactions file without running it: it reports which
+ * rows would fail and why, and leaves the balances, the BalanceJournal and log.txt untouched.
+ *
+ * <p>Every row goes through the same steps as in the TransactionPipeline. The amount is parsed,
+ * the users and account types are looked up by PreparedTransaction, and the transaction is then
+ * simulated on a BalanceOverlay, a copy-on-write view of the balances. Since the overlay carries
+ * the simulated balances from one row to the next, a withdrawal that only fails because of an
+ * earlier payment in the same file is reported too. The rows of a batch are simulated on several
+ * threads with TransactionPipeline.runByAccount, so rows on different accounts are checked at the
+ * same time while rows on the same account keep the order of the file.</p>
+ *
+ * <p>The rejected rows are written to a CSV report with one row per rejection:</p>
+ * <pre>
+ * row,reason,action,from,from_type,to,to_type,amount,message
+ * 12,INSUFFICIENT_FUNDS,withdraws,Mickey Mouse,Checking,,,900.00,Failed transaction: ...
+ * </pre>
+ * The reason is one of the PreparedTransaction.Failure names, or UNPARSABLE_AMOUNT and
+ * UNKNOWN_ACTION for rows that never become a transaction.
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class TransactionDryRun {
+
+    /** The header of the report. */
+    public static final String REPORT_HEADER = "row,reason,action,from,from_type,to,to_type,amount,message";
+
+    /** The reason of a row whose amount is not a number. */
+    public static final String UNPARSABLE_AMOUNT = "UNPARSABLE_AMOUNT";
+
+    /** The reason of a row whose action is not a known action. */
+    public static final String UNKNOWN_ACTION = "UNKNOWN_ACTION";
+
+    /** The number of rows simulated together. */
+    private static final int BATCH_SIZE = 4096;
+
+    /** The number of threads that simulate the rows. */
+    private final int parallelism;
+
+    /** The number of rows checked. */
+    private long rows;
+
+    /** The number of rejected rows, by reason. */
+    private final Map<String, Long> rejections = new HashMap<>();
+
+    /** The number of accounts whose balance the simulation changed. */
+    private int accountsTouched;
+
+    /** The time the dry run took, in nanoseconds. */
+    private long elapsedNanos;
+
+    /**
+     * This constructor creates a dry run that simulates the rows on every core.
+     */
+    public TransactionDryRun() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * This constructor creates a dry run that simulates the rows on the given number of threads.
+     *
+     * @param parallelism the number of threads, 1 to simulate one row after another
+     */
+    public TransactionDryRun(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * This method checks every row of a transactions file against the shared customer base and
+     * writes the rejected rows to a report.
+     *
+     * @param fileName   the transactions file, with a header row
+     * @param reportFile the CSV report to write
+     * @throws IOException if the file cannot be read or the report cannot be written
+     */
+    public void run(String fileName, String reportFile) throws IOException {
+        long start = System.nanoTime();
+        HashMap<String, Customer> nameMap = CustomerRegistry.getNameMap();
+        BalanceOverlay balances = new BalanceOverlay();
+        ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        rows = 0;
+        rejections.clear();
+
+        try (MappedCsvReader source = new MappedCsvReader(Paths.get(fileName));
+             BufferedWriter report = Files.newBufferedWriter(Paths.get(reportFile), StandardCharsets.UTF_8)) {
+            report.write(REPORT_HEADER);
+            report.newLine();
+            if (source.nextRow()) { // the header
+                List<TransactionRecord> records = new ArrayList<>(BATCH_SIZE);
+                while (source.nextRow()) {
+                    rows++;
+                    TransactionRecord record;
+                    try {
+                        record = TransactionRecord.fromRow(source);
+                    } catch (NumberFormatException e) {
+                        record = new TransactionRecord(column(source, 0), column(source, 1), column(source, 2),
+                                column(source, 3), column(source, 4), column(source, 5), column(source, 6),
+                                0, source.getRowNumber());
+                        reject(report, record, UNPARSABLE_AMOUNT, "Invalid amount: " + column(source, 7),
+                                column(source, 7));
+                        continue;
+                    }
+                    records.add(record);
+                    if (records.size() == BATCH_SIZE) {
+                        check(records, nameMap, balances, pool, report);
+                        records.clear();
+                    }
+                }
+                check(records, nameMap, balances, pool, report);
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+        accountsTouched = balances.size();
+        elapsedNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * This method prepares and simulates a batch of rows, then writes its rejections in the order
+     * of the file.
+     *
+     * @param records  the rows of the batch
+     * @param nameMap  the customers keyed by full name
+     * @param balances the simulated balances
+     * @param pool     the threads that simulate the rows, or null
+     * @param report   the report
+     * @throws IOException if the report cannot be written
+     */
+    private void check(List<TransactionRecord> records, HashMap<String, Customer> nameMap, BalanceOverlay balances,
+                       ForkJoinPool pool, BufferedWriter report) throws IOException {
+        List<PreparedTransaction> transactions = new ArrayList<>(records.size());
+        List<TransactionRecord> prepared = new ArrayList<>(records.size());
+        for (TransactionRecord record : records) {
+            PreparedTransaction transaction = PreparedTransaction.prepare(record, nameMap);
+            if (transaction == null) {
+                reject(report, record, UNKNOWN_ACTION, "Unknown action: " + record.getAction(), null);
+            } else {
+                transactions.add(transaction);
+                prepared.add(record);
+            }
+        }
+
+        String[] messages = new String[transactions.size()];
+        if (pool == null) {
+            for (int i = 0; i < messages.length; i++) {
+                messages[i] = transactions.get(i).simulate(balances);
+            }
+        } else {
+            TransactionPipeline.runByAccount(transactions, index ->
+                    messages[index] = transactions.get(index).simulate(balances), pool);
+        }
+
+        for (int i = 0; i < messages.length; i++) {
+            if (messages[i] != null) {
+                reject(report, prepared.get(i), transactions.get(i).getFailure().name(), messages[i], null);
+            }
+        }
+    }
+
+    /**
+     * This method writes a rejected row to the report and counts it.
+     *
+     * @param report the report
+     * @param record the rejected row
+     * @param reason the reason of the rejection
+     * @param message the message describing the rejection
+     * @param amount  the amount column as written in the file, or null to use the parsed amount
+     * @throws IOException if the report cannot be written
+     */
+    private void reject(BufferedWriter report, TransactionRecord record, String reason, String message, String amount)
+            throws IOException {
+        rejections.merge(reason, 1L, Long::sum);
+        StringBuilder line = new StringBuilder(128);
+        line.append(record.getRowNumber()).append(',').append(reason).append(',');
+        appendField(line, record.getAction()).append(',');
+        appendField(line, join(record.getFromFirstName(), record.getFromLastName())).append(',');
+        appendField(line, record.getFromWhere()).append(',');
+        appendField(line, join(record.getToFirstName(), record.getToLastName())).append(',');
+        appendField(line, record.getToWhere()).append(',');
+        if (amount != null) {
+            appendField(line, amount);
+        } else {
+            Money.appendTo(line, record.getAmountCents());
+        }
+        appendField(line.append(','), message.trim());
+        report.write(line.toString());
+        report.newLine();
+    }
+
+    /**
+     * This method reads a column of the current row, treating an empty column as null.
+     *
+     * @param row   the row source
+     * @param index the column
+     * @return the column, or null if it is empty or missing
+     */
+    private static String column(CsvRowSource row, int index) {
+        return row.isBlank(index) ? null : row.getString(index);
+    }
+
+    /**
+     * This method joins a first and a last name.
+     *
+     * @param first the first name, or null
+     * @param last  the last name, or null
+     * @return the full name, or null if both are null
+     */
+    private static String join(String first, String last) {
+        if (first == null && last == null) {
+            return null;
+        }
+        return (first == null ? "" : first) + " " + (last == null ? "" : last);
+    }
+
+    /**
+     * This method appends a field to a CSV row, in quotes if it holds a comma, a quote or a line break.
+     *
+     * @param line  the row
+     * @param value the field, or null for an empty field
+     * @return the row
+     */
+    private static StringBuilder appendField(StringBuilder line, String value) {
+        if (value == null) {
+            return line;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return line.append(value);
+        }
+        return line.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    /**
+     * This method returns how many rows the last run checked.
+     *
+     * @return the number of rows
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * This method returns how many rows the last run rejected.
+     *
+     * @return the number of rejected rows
+     */
+    public long getRejected() {
+        long total = 0;
+        for (long count : rejections.values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * This method returns how many rows the last run rejected for each reason.
+     *
+     * @return the number of rejected rows keyed by reason
+     */
+    public Map<String, Long> getRejections() {
+        return rejections;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("Dry run of %,d rows in %d ms on %d threads: %,d would go through, %,d rejected",
+                rows, elapsedNanos / 1_000_000, parallelism, rows - getRejected(), getRejected()));
+        Map<PreparedTransaction.Failure, Long> byFailure = new EnumMap<>(PreparedTransaction.Failure.class);
+        for (PreparedTransaction.Failure failure : PreparedTransaction.Failure.values()) {
+            Long count = rejections.get(failure.name());
+            if (count != null) {
+                byFailure.put(failure, count);
+            }
+        }
+        for (Map.Entry<PreparedTransaction.Failure, Long> entry : byFailure.entrySet()) {
+            text.append(String.format("%n  %-21s %,d", entry.getKey(), entry.getValue()));
+        }
+        for (String reason : new String[]{UNPARSABLE_AMOUNT, UNKNOWN_ACTION}) {
+            Long count = rejections.get(reason);
+            if (count != null) {
+                text.append(String.format("%n  %-21s %,d", reason, count));
+            }
+        }
+        text.append(String.format("%n%,d balances simulated, none changed.", accountsTouched));
+        return text.toString();
+    }
+
+    /**
+     * The main method checks a transactions file against the customer base and writes the report.
+     * <ul>
+     *   <li>{@code java TransactionDryRun [transactionsFile] [reportFile]}</li>
+     * </ul>
+     * The report defaults to the transactions file followed by ".rejections.csv".
+     *
+     * @param args the transactions file and the report file
+     */
+    public static void main(String[] args) {
+        String fileName = args.length > 0 ? args[0] : RunBank.TRANSACTIONS_FILE;
+        String reportFile = args.length > 1 ? args[1] : fileName + ".rejections.csv";
+        TransactionDryRun dryRun = new TransactionDryRun();
+        try {
+            dryRun.run(fileName, reportFile);
+            System.out.println(dryRun);
+            System.out.println("Rejected rows written to " + reportFile);
+        } catch (IOException e) {
+            System.out.println("Dry run of " + fileName + " failed: " + e.getMessage());
+        }
+    }
+}
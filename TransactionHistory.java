@@ -0,0 +1,302 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * The TransactionHistory class keeps the messages logged for every user, and the list of general
+ * transactions, without letting them take more and more memory as the program runs.
+ *
+ * <p>Only the most recent messages of each user, up to the window, are kept in memory. When a
+ * user's window is full, its older half is appended to the user's file in the history directory
+ * (spilled). The memory of all the windows together is also capped in bytes: when it goes over the
+ * cap, the users that were used least recently lose their whole window to their files, until the
+ * memory fits again. Reading a history streams the user's file and then its window, so even a long
+ * history is never held in memory at once.</p>
+ *
+ * <p>The files only hold the messages of the running program, like the lists they replace: the
+ * history directory is emptied the first time something is spilled. Every user who ever spilled
+ * keeps a small entry naming its file for the life of the run, even after its window is evicted,
+ * so that its history can still be read; only {@link #clear()} forgets them. Each file gets a new
+ * number, so a file name is never used twice in a run.</p>
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class TransactionHistory {
+
+    /** The memory of a message besides its characters: the String, its array and its slot in the window. */
+    private static final int ENTRY_OVERHEAD = 56;
+
+    /** The directory the spilled messages are written to. */
+    private final Path directory;
+
+    /** The number of messages of a user kept in memory. */
+    private final int window;
+
+    /** The memory all the windows may take together, in bytes. */
+    private final long maxBytes;
+
+    /** The window of every user in memory, least recently used first. */
+    private final LinkedHashMap<String, ArrayDeque<String>> recent = new LinkedHashMap<>(64, 0.75f, true);
+
+    /** The file of every user with spilled messages, kept for the life of the run. */
+    private final Map<String, Spill> spilled = new HashMap<>();
+
+    /** The number given to the next file, never reset so that no file name is used twice. */
+    private long nextFileNumber;
+
+    /** The memory taken by the windows, in bytes. */
+    private long memoryBytes;
+
+    /** The number of messages spilled. */
+    private long spilledMessages;
+
+    /** The number of windows evicted from memory. */
+    private long evictions;
+
+    /** Whether the history directory was emptied already. */
+    private boolean directoryReady;
+
+    /**
+     * This constructor creates an empty history.
+     *
+     * @param directory the directory the spilled messages are written to
+     * @param window    the number of messages of a user kept in memory, at least 2
+     * @param maxBytes  the memory all the windows may take together, in bytes
+     */
+    public TransactionHistory(String directory, int window, long maxBytes) {
+        this.directory = Paths.get(directory);
+        this.window = Math.max(2, window);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * This method adds a message to the history of a user, spilling older messages if the user's
+     * window or the memory cap is full.
+     *
+     * @param user    the name of the user, or any key naming a history
+     * @param message the message
+     */
+    public synchronized void add(String user, String message) {
+        ArrayDeque<String> messages = recent.computeIfAbsent(user, key -> new ArrayDeque<>());
+        messages.addLast(message);
+        memoryBytes += cost(message);
+
+        if (messages.size() > window) {
+            spill(user, messages, messages.size() - window / 2);
+        }
+        while (memoryBytes > maxBytes && !recent.isEmpty()) {
+            Iterator<Map.Entry<String, ArrayDeque<String>>> eldest = recent.entrySet().iterator();
+            Map.Entry<String, ArrayDeque<String>> entry = eldest.next();
+            if (!spill(entry.getKey(), entry.getValue(), entry.getValue().size())) {
+                break; // the file cannot be written, keep the messages in memory
+            }
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * This method streams the whole history of a user, oldest first: the messages spilled to its
+     * file, then those in memory, as they are when the method is called. The stream must be closed.
+     *
+     * @param user the name of the user
+     * @return the messages of the user, empty if there are none
+     */
+    public Stream<String> stream(String user) {
+        List<String> inMemory;
+        Spill spill;
+        long spilledLines;
+        synchronized (this) {
+            ArrayDeque<String> messages = recent.get(user);
+            inMemory = messages == null ? List.of() : new ArrayList<>(messages);
+            spill = spilled.get(user);
+            spilledLines = spill == null ? 0 : spill.lines;
+        }
+        if (spill == null) {
+            return inMemory.stream();
+        }
+
+        BufferedReader reader;
+        try {
+            reader = Files.newBufferedReader(spill.file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // the file only grows, so its first lines are the ones spilled when the window was copied
+        return Stream.concat(reader.lines().limit(spilledLines), inMemory.stream()).onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * This method checks if a user has no message at all.
+     *
+     * @param user the name of the user
+     * @return true if nothing was added for the user
+     */
+    public synchronized boolean isEmpty(String user) {
+        ArrayDeque<String> messages = recent.get(user);
+        return (messages == null || messages.isEmpty()) && !spilled.containsKey(user);
+    }
+
+    /**
+     * This method forgets every history and deletes the spilled files.
+     */
+    public synchronized void clear() {
+        for (Spill spill : spilled.values()) {
+            try {
+                Files.deleteIfExists(spill.file);
+            } catch (IOException e) {
+                System.out.println("Could not delete " + spill.file + ": " + e.getMessage());
+            }
+        }
+        recent.clear();
+        spilled.clear();
+        memoryBytes = 0;
+    }
+
+    /**
+     * This method returns the memory taken by the windows.
+     *
+     * @return the estimated size of the messages in memory, in bytes
+     */
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * This method returns how many users have messages in memory.
+     *
+     * @return the number of windows in memory
+     */
+    public synchronized int getUsersInMemory() {
+        return recent.size();
+    }
+
+    /**
+     * This method returns how many messages were spilled to disk.
+     *
+     * @return the number of spilled messages
+     */
+    public synchronized long getSpilledMessages() {
+        return spilledMessages;
+    }
+
+    /**
+     * This method returns how many windows were evicted from memory by the memory cap.
+     *
+     * @return the number of evictions
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * This method appends the oldest messages of a window to the user's file and removes them
+     * from memory, while the history is locked.
+     *
+     * @param user     the name of the user
+     * @param messages the window of the user
+     * @param count    the number of messages to spill
+     * @return true if the messages were spilled, false if the file could not be written
+     */
+    private boolean spill(String user, ArrayDeque<String> messages, int count) {
+        Spill spill = spilled.get(user);
+        try {
+            if (spill == null) {
+                spill = new Spill(newFile(user));
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(spill.file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                Iterator<String> oldest = messages.iterator();
+                for (int i = 0; i < count; i++) {
+                    writer.write(oldest.next().replace('\n', ' '));
+                    writer.newLine();
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Could not spill the history of " + user + ": " + e.getMessage());
+            return false;
+        }
+        spilled.putIfAbsent(user, spill);
+        for (int i = 0; i < count; i++) {
+            memoryBytes -= cost(messages.pollFirst());
+        }
+        spill.lines += count;
+        spilledMessages += count;
+        return true;
+    }
+
+    /**
+     * This method picks the file of a user, emptying the history directory the first time.
+     *
+     * @param user the name of the user
+     * @return a file no other user has
+     * @throws IOException if the directory cannot be created or emptied
+     */
+    private Path newFile(String user) throws IOException {
+        if (!directoryReady) {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.history")) {
+                for (Path file : files) {
+                    Files.delete(file); // left by an earlier run
+                }
+            }
+            directoryReady = true;
+        }
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < user.length() && name.length() < 40; i++) {
+            char c = user.charAt(i);
+            name.append(Character.isLetterOrDigit(c) ? c : '_');
+        }
+        return directory.resolve(name + "-" + nextFileNumber++ + ".history");
+    }
+
+    /**
+     * This method estimates the memory a message takes in a window.
+     *
+     * @param message the message
+     * @return the estimated size in bytes
+     */
+    private static long cost(String message) {
+        return ENTRY_OVERHEAD + message.length();
+    }
+
+    /**
+     * The Spill class is the file of a user and how many messages it holds.
+     */
+    private static final class Spill {
+
+        /** The file. */
+        final Path file;
+
+        /** The number of messages in the file. */
+        long lines;
+
+        Spill(Path file) {
+            this.file = file;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class TransactionHistoryTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testWindowSpillsItsOlderHalf() throws IOException {
+        TransactionHistory history = new TransactionHistory(directory.toString(), 4, Long.MAX_VALUE);
+        for (int i = 1; i <= 5; i++) {
+            history.add("Mickey Mouse", "message " + i);
+        }
+
+        // The fifth message overflowed the window: the three oldest went to the file, two stayed
+        assertEquals(3, history.getSpilledMessages());
+        assertEquals(0, history.getEvictions());
+        assertEquals(messages(1, 5), read(history, "Mickey Mouse"));
+        assertEquals(1, listFiles().size());
+    }
+
+    @Test
+    public void testMemoryCapEvictsLeastRecentlyUsed() throws IOException {
+        // Room for about three short messages
+        TransactionHistory history = new TransactionHistory(directory.toString(), 100, 200);
+        history.add("Mickey Mouse", "m1");
+        history.add("Donald Duck", "d1");
+        history.add("Mickey Mouse", "m2");
+        history.add("Goofy", "g1");
+
+        // Donald Duck was used least recently, so that window went to disk first
+        assertEquals(1, history.getEvictions());
+        assertEquals(2, history.getUsersInMemory());
+        assertTrue(history.getMemoryBytes() <= 200);
+        assertEquals(List.of("d1"), read(history, "Donald Duck"));
+        assertEquals(List.of("m1", "m2"), read(history, "Mickey Mouse"));
+
+        // An evicted user gets a new window after the spilled messages
+        history.add("Donald Duck", "d2");
+        assertEquals(List.of("d1", "d2"), read(history, "Donald Duck"));
+    }
+
+    @Test
+    public void testStreamIsASnapshot() throws IOException {
+        TransactionHistory history = new TransactionHistory(directory.toString(), 2, Long.MAX_VALUE);
+        for (int i = 1; i <= 7; i++) {
+            history.add("Mickey Mouse", "message " + i);
+        }
+        try (Stream<String> stream = history.stream("Mickey Mouse")) {
+            // Messages added while the stream is open are not part of it
+            for (int i = 8; i <= 12; i++) {
+                history.add("Mickey Mouse", "message " + i);
+            }
+            assertEquals(messages(1, 7), stream.collect(Collectors.toList()));
+        }
+        assertEquals(messages(1, 12), read(history, "Mickey Mouse"));
+    }
+
+    @Test
+    public void testLineBreaksInSpilledMessages() throws IOException {
+        TransactionHistory history = new TransactionHistory(directory.toString(), 2, Long.MAX_VALUE);
+        history.add("Mickey Mouse", "first\nline");
+        history.add("Mickey Mouse", "second");
+        history.add("Mickey Mouse", "third");
+
+        // A spilled message is one line of the file, so its line breaks become spaces
+        assertEquals(List.of("first line", "second", "third"), read(history, "Mickey Mouse"));
+    }
+
+    @Test
+    public void testEmptyAndClear() throws IOException {
+        TransactionHistory history = new TransactionHistory(directory.toString(), 2, Long.MAX_VALUE);
+        assertTrue(history.isEmpty("Mickey Mouse"));
+        assertEquals(List.of(), read(history, "Mickey Mouse"));
+
+        for (int i = 1; i <= 3; i++) {
+            history.add("Mickey Mouse", "old " + i);
+        }
+        assertFalse(history.isEmpty("Mickey Mouse"));
+        List<Path> oldFiles = listFiles();
+        history.clear();
+        assertTrue(history.isEmpty("Mickey Mouse"));
+        assertEquals(0, history.getMemoryBytes());
+        assertEquals(List.of(), listFiles());
+
+        // The files spilled after a clear never reuse a name
+        for (int i = 1; i <= 3; i++) {
+            history.add("Mickey Mouse", "new " + i);
+        }
+        List<Path> newFiles = listFiles();
+        assertEquals(1, newFiles.size());
+        assertFalse(oldFiles.contains(newFiles.get(0)));
+        assertEquals(List.of("new 1", "new 2", "new 3"), read(history, "Mickey Mouse"));
+    }
+
+    @Test
+    public void testFilesOfAnEarlierRunAreDeleted() throws IOException {
+        Files.writeString(directory.resolve("Mickey_Mouse-0.history"), "from an earlier run\n");
+        Files.writeString(directory.resolve("notes.txt"), "not a history\n");
+
+        TransactionHistory history = new TransactionHistory(directory.toString(), 2, Long.MAX_VALUE);
+        for (int i = 1; i <= 3; i++) {
+            history.add("Mickey Mouse", "message " + i);
+        }
+        assertEquals(messages(1, 3), read(history, "Mickey Mouse"));
+        assertTrue(Files.exists(directory.resolve("notes.txt")));
+    }
+
+    private static List<String> read(TransactionHistory history, String user) {
+        try (Stream<String> stream = history.stream(user)) {
+            return stream.collect(Collectors.toList());
+        }
+    }
+
+    private static List<String> messages(int first, int last) {
+        List<String> messages = new ArrayList<>();
+        for (int i = first; i <= last; i++) {
+            messages.add("message " + i);
+        }
+        return messages;
+    }
+
+    private List<Path> listFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".history")).collect(Collectors.toList());
+        }
+    }
+}
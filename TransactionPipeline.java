@@ -0,0 +1,801 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+/**
+ * The TransactionPipeline class processes a transactions file in four stages, each on its own
+ * thread and connected to the next one by a bounded queue of batches:
+ * <ol>
+ *   <li><b>parse</b> reads the rows of the file into TransactionRecords,</li>
+ *   <li><b>validate</b> looks up the users and accounts and checks the amounts (PreparedTransaction),</li>
+ *   <li><b>apply</b> changes the balances, one transaction after another in the order of the file,</li>
+ *   <li><b>log</b> writes the messages of a whole batch to the console and the log file at once.</li>
+ * </ol>
+ * Reading the file, looking customers up and writing the log overlap instead of waiting for each
+ * other, and the bounded queues keep a fast stage from running too far ahead of a slow one.
+ * Every stage counts the records and batches it handled and the time it spent working.
+ *
+ * <p>With a parallelism above 1 the apply stage runs the transactions of a batch on several
+ * threads. Each transaction waits only for the earlier transactions of the batch that touch one of
+ * its accounts, so rows on disjoint accounts run at the same time while rows sharing an account
+ * keep the order of the file. The waits always point to earlier rows, so a transfer between two
+ * accounts can never deadlock, and the final balances are the same as a sequential run. The
+ * messages are still logged in the order of the file.</p>
+ *
+ * <p>The file is read as a stream through a MappedCsvReader, so it is never held in memory past
+ * the queued batches, and every batch remembers the byte offset and row number where the row
+ * after it starts. Every checkpoint interval the run records an IngestCheckpoint of that offset
+ * together with the balances at that point. If the run dies, the next run of the same file
+ * restores those balances and resumes at the offset, so at most one interval of rows is applied
+ * again. Messages logged after the last checkpoint are logged again by the resumed run.</p>
+ *
+ * <p>When deduplication is turned on ({@code -Dbank.dedup=true}), every row also gets a key in the
+ * DedupIndex (its identifier column, or a hash of its columns and row number), and the validate
+ * stage skips the rows whose key was already applied by an earlier run, so submitting the same
+ * file twice, or a file repeating rows of an earlier one, does not move the money twice. The keys
+ * are written together with the checkpoints, and a run that went through its whole file saves the
+ * balances before it is marked as done in the index.</p>
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class TransactionPipeline {
+
+    /** The number of records a batch holds. */
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    /** The number of batches a queue can hold before the stage writing to it waits. */
+    public static final int DEFAULT_QUEUE_CAPACITY = 8;
+
+    /**
+     * Whether the default pipeline applies transactions on several threads. It is turned on by
+     * starting the JVM with {@code -Dbank.parallelApply=true}.
+     */
+    public static final boolean PARALLEL_APPLY = Boolean.getBoolean("bank.parallelApply");
+
+    /**
+     * The number of rows between two checkpoints of the default pipeline, 100,000 unless the JVM
+     * is started with {@code -Dbank.checkpointRows=N}. 0 turns checkpoints off.
+     */
+    public static final long CHECKPOINT_INTERVAL = Long.getLong("bank.checkpointRows", 100_000);
+
+    /**
+     * Whether the default pipeline skips rows already applied by an earlier run. It is turned on by
+     * starting the JVM with {@code -Dbank.dedup=true}; without it running a file again applies
+     * every row again, as it always did.
+     */
+    public static final boolean DEDUP = Boolean.getBoolean("bank.dedup");
+
+    /** Sent down every queue after the last batch. */
+    private static final Batch<Object> END = new Batch<>(Collections.emptyList(), 0, 0);
+
+    /** The number of records a batch holds. */
+    private final int batchSize;
+
+    /** The number of batches a queue can hold. */
+    private final int queueCapacity;
+
+    /** The number of threads the apply stage uses, 1 to apply on the stage thread itself. */
+    private final int parallelism;
+
+    /** The number of rows between two checkpoints, 0 for no checkpoints. */
+    private final long checkpointInterval;
+
+    /** The size of the file being processed, recorded in its checkpoints. */
+    private long sourceSize;
+
+    /** The modification time of the file being processed, recorded in its checkpoints. */
+    private long sourceModified;
+
+    /** The checkpoint file of the file being processed. */
+    private String checkpointFile;
+
+    /** The number of checkpoints the current run has written. */
+    private long checkpointsWritten;
+
+    /** The index of the rows already applied, or null to apply every row. */
+    private final String dedupFile;
+
+    /** The index of the current run, or null. */
+    private DedupIndex dedupIndex;
+
+    /** The number of rows the current run skipped because an earlier run applied them. */
+    private long duplicatesSkipped;
+
+    /** The counter of the parse stage. */
+    private final StageCounter parseCounter = new StageCounter("parse");
+
+    /** The counter of the validate stage. */
+    private final StageCounter validateCounter = new StageCounter("validate");
+
+    /** The counter of the apply stage. */
+    private final StageCounter applyCounter = new StageCounter("apply");
+
+    /** The counter of the log stage. */
+    private final StageCounter logCounter = new StageCounter("log");
+
+    /** The first error of any stage, the run fails with it once every stage has stopped. */
+    private volatile Throwable failure;
+
+    /**
+     * This constructor creates a pipeline with the default batch size and queue capacity. The
+     * transactions are applied on every core when the bank.parallelApply property is on.
+     */
+    public TransactionPipeline() {
+        this(DEFAULT_BATCH_SIZE, DEFAULT_QUEUE_CAPACITY,
+                PARALLEL_APPLY ? Runtime.getRuntime().availableProcessors() : 1);
+    }
+
+    /**
+     * This constructor creates a pipeline with the given batch size and queue capacity that
+     * applies the transactions one after another.
+     *
+     * @param batchSize     the number of records per batch
+     * @param queueCapacity the number of batches each queue can hold
+     */
+    public TransactionPipeline(int batchSize, int queueCapacity) {
+        this(batchSize, queueCapacity, 1);
+    }
+
+    /**
+     * This constructor creates a pipeline with the given batch size, queue capacity and number of
+     * threads for the apply stage.
+     *
+     * @param batchSize     the number of records per batch
+     * @param queueCapacity the number of batches each queue can hold
+     * @param parallelism   the number of threads that apply transactions, 1 for one after another
+     */
+    public TransactionPipeline(int batchSize, int queueCapacity, int parallelism) {
+        this(batchSize, queueCapacity, parallelism, CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * This constructor creates a pipeline with the given batch size, queue capacity, number of
+     * threads for the apply stage and checkpoint interval. Checkpoints are taken between batches,
+     * so the interval is rounded up to a whole number of batches.
+     *
+     * @param batchSize          the number of records per batch
+     * @param queueCapacity      the number of batches each queue can hold
+     * @param parallelism        the number of threads that apply transactions, 1 for one after another
+     * @param checkpointInterval the number of rows between two checkpoints, 0 for no checkpoints
+     */
+    public TransactionPipeline(int batchSize, int queueCapacity, int parallelism, long checkpointInterval) {
+        this(batchSize, queueCapacity, parallelism, checkpointInterval, DEDUP ? DedupIndex.INDEX_FILE : null);
+    }
+
+    /**
+     * This constructor creates a pipeline with the given batch size, queue capacity, number of
+     * threads for the apply stage, checkpoint interval and dedup index.
+     *
+     * @param batchSize          the number of records per batch
+     * @param queueCapacity      the number of batches each queue can hold
+     * @param parallelism        the number of threads that apply transactions, 1 for one after another
+     * @param checkpointInterval the number of rows between two checkpoints, 0 for no checkpoints
+     * @param dedupFile          the DedupIndex file, or null to apply every row
+     */
+    public TransactionPipeline(int batchSize, int queueCapacity, int parallelism, long checkpointInterval,
+                               String dedupFile) {
+        this.batchSize = Math.max(1, batchSize);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.parallelism = Math.max(1, parallelism);
+        this.checkpointInterval = Math.max(0, checkpointInterval);
+        this.dedupFile = dedupFile;
+    }
+
+    /**
+     * This method processes every row of a transactions file and waits until the last message
+     * is logged. If an earlier run of the same file left a checkpoint, the balances are restored
+     * from it and reading starts at the first row the earlier run had not applied. While the run
+     * goes on a new checkpoint is written every checkpoint interval, and the checkpoint is deleted
+     * once the whole file was processed. Rows the DedupIndex already holds are skipped; at the end
+     * the balances are saved with DeltaCheckpoint and the run is marked as done in the index.
+     *
+     * @param fileName the transactions file, with a header row
+     * @throws IOException if the file cannot be read or the log cannot be written
+     */
+    public void run(String fileName) throws IOException {
+        HashMap<String, Customer> nameMap = CustomerRegistry.getNameMap();
+        Path path = Paths.get(fileName);
+        sourceSize = Files.size(path);
+        sourceModified = Files.getLastModifiedTime(path).toMillis();
+        checkpointFile = IngestCheckpoint.fileFor(fileName);
+        checkpointsWritten = 0;
+        duplicatesSkipped = 0;
+        dedupIndex = dedupFile == null ? null : DedupIndex.open(dedupFile);
+        try {
+            process(fileName, path, nameMap);
+        } finally {
+            if (dedupIndex != null) {
+                dedupIndex.close();
+                dedupIndex = null;
+            }
+        }
+    }
+
+    /**
+     * This method runs the four stages over a transactions file, resuming from its checkpoint.
+     *
+     * @param fileName the transactions file, with a header row
+     * @param path     the path of the file
+     * @param nameMap  the customers keyed by full name
+     * @throws IOException if the file cannot be read or the log cannot be written
+     */
+    private void process(String fileName, Path path, HashMap<String, Customer> nameMap) throws IOException {
+        long runId = DedupIndex.runKey(path.toAbsolutePath().toString(), sourceSize, sourceModified);
+        boolean done = dedupIndex != null && dedupIndex.isCommitted(runId);
+        if (done) {
+            IngestCheckpoint.delete(checkpointFile); // left by a run that stopped right after it finished
+        }
+
+        long startOffset = 0;
+        long startRow = 0;
+        IngestCheckpoint resume = checkpointInterval > 0 && !done
+                ? IngestCheckpoint.readIfMatching(checkpointFile, sourceSize, sourceModified) : null;
+        if (resume != null) {
+            int restored = resume.restoreBalances();
+            startOffset = resume.getOffset();
+            startRow = resume.getRowNumber();
+            System.out.println("Resuming " + fileName + " after row " + startRow + ", " + restored + " balances restored.");
+        }
+        if (dedupIndex != null) {
+            dedupIndex.beginRun(runId, startRow);
+        }
+        MappedCsvReader rows = new MappedCsvReader(path, startOffset, -1);
+        boolean skipHeader = startRow == 0;
+        long firstRow = startRow;
+
+        BlockingQueue<Batch<TransactionRecord>> parsed = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Batch<PreparedTransaction>> prepared = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Batch<Outcome>> applied = new ArrayBlockingQueue<>(queueCapacity);
+
+        Thread[] stages = {
+                new Thread(() -> parse(rows, skipHeader, firstRow, parsed), "pipeline-parse"),
+                new Thread(() -> validate(parsed, prepared, nameMap), "pipeline-validate"),
+                new Thread(() -> apply(prepared, applied, firstRow), "pipeline-apply"),
+                new Thread(() -> log(applied), "pipeline-log")
+        };
+        for (Thread stage : stages) {
+            stage.start();
+        }
+        try {
+            for (Thread stage : stages) {
+                stage.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing " + fileName, e);
+        } finally {
+            try {
+                rows.close();
+            } catch (Exception e) {
+                // the rows were read already, a failure to close them changes nothing
+            }
+        }
+
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure != null) {
+            throw new IOException("Processing " + fileName + " failed: " + failure, failure);
+        }
+        if (dedupIndex != null) {
+            // the balances must be on disk before the rows are marked as applied for good
+            DeltaCheckpoint.checkpoint();
+            dedupIndex.commitRun();
+        }
+        IngestCheckpoint.delete(checkpointFile);
+    }
+
+    /**
+     * The parse stage: reads the rows into batches of records, each batch remembering where the
+     * row after it starts. Rows with an invalid amount are reported and skipped.
+     *
+     * @param rows       the rows of the transactions file
+     * @param skipHeader true if reading starts at the header row
+     * @param firstRow   the number of rows before the first one read
+     * @param out        the queue of parsed batches
+     */
+    private void parse(MappedCsvReader rows, boolean skipHeader, long firstRow, BlockingQueue<Batch<TransactionRecord>> out) {
+        try {
+            if (!skipHeader || rows.nextRow()) {
+                List<TransactionRecord> batch = new ArrayList<>(batchSize);
+                long start = System.nanoTime();
+                while (failure == null && rows.nextRow()) {
+                    try {
+                        batch.add(TransactionRecord.fromRow(rows, firstRow + rows.getRowNumber()));
+                    } catch (NumberFormatException e) {
+                        System.out.println("Skipping transaction row " + (firstRow + rows.getRowNumber()) + ": invalid amount.");
+                        parseCounter.skipped.incrementAndGet();
+                        continue;
+                    }
+                    if (batch.size() == batchSize) {
+                        parseCounter.batchDone(batch.size(), System.nanoTime() - start);
+                        out.put(new Batch<>(batch, rows.getPosition(), firstRow + rows.getRowNumber()));
+                        batch = new ArrayList<>(batchSize);
+                        start = System.nanoTime();
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    parseCounter.batchDone(batch.size(), System.nanoTime() - start);
+                    out.put(new Batch<>(batch, rows.getPosition(), firstRow + rows.getRowNumber()));
+                }
+            }
+        } catch (Throwable e) {
+            fail(e);
+        } finally {
+            sendEnd(out);
+        }
+    }
+
+    /**
+     * The validate stage: prepares every record of a batch. Rows without a known action are skipped,
+     * and so are the rows the DedupIndex already holds.
+     *
+     * @param in      the queue of parsed batches
+     * @param out     the queue of prepared batches
+     * @param nameMap the customers keyed by full name
+     */
+    private void validate(BlockingQueue<Batch<TransactionRecord>> in, BlockingQueue<Batch<PreparedTransaction>> out,
+                          HashMap<String, Customer> nameMap) {
+        try {
+            for (Batch<TransactionRecord> batch = take(in); batch != null; batch = take(in)) {
+                if (failure != null) {
+                    continue; // keep draining so the parse stage is never stuck on a full queue
+                }
+                long start = System.nanoTime();
+                boolean[] duplicate = null;
+                if (dedupIndex != null) {
+                    long[] keys = new long[batch.items.size()];
+                    for (int i = 0; i < keys.length; i++) {
+                        keys[i] = DedupIndex.rowKey(batch.items.get(i));
+                    }
+                    duplicate = dedupIndex.claim(keys, batch.endRow);
+                }
+                List<PreparedTransaction> preparedBatch = new ArrayList<>(batch.items.size());
+                for (int i = 0; i < batch.items.size(); i++) {
+                    if (duplicate != null && duplicate[i]) {
+                        duplicatesSkipped++;
+                        continue;
+                    }
+                    TransactionRecord record = batch.items.get(i);
+                    PreparedTransaction transaction = PreparedTransaction.prepare(record, nameMap);
+                    if (transaction == null) {
+                        validateCounter.skipped.incrementAndGet();
+                    } else {
+                        preparedBatch.add(transaction);
+                    }
+                }
+                validateCounter.batchDone(batch.items.size(), System.nanoTime() - start);
+                out.put(new Batch<>(preparedBatch, batch.endOffset, batch.endRow));
+            }
+        } catch (Throwable e) {
+            fail(e);
+            drain(in);
+        } finally {
+            sendEnd(out);
+        }
+    }
+
+    /**
+     * The apply stage: applies the transactions of a batch in order and keeps their messages.
+     * Between two batches no transaction is being applied, so that is where the balances are
+     * copied for a checkpoint; the log stage writes it once the messages before it are logged.
+     *
+     * @param in       the queue of prepared batches
+     * @param out      the queue of messages to log
+     * @param firstRow the number of rows before the first one read
+     */
+    private void apply(BlockingQueue<Batch<PreparedTransaction>> in, BlockingQueue<Batch<Outcome>> out, long firstRow) {
+        ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        long lastCheckpointRow = firstRow;
+        try {
+            for (Batch<PreparedTransaction> batch = take(in); batch != null; batch = take(in)) {
+                if (failure != null) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                List<Outcome> outcomes = pool == null ? applyInOrder(batch.items) : applyByAccount(batch.items, pool);
+                for (Outcome outcome : outcomes) {
+                    if (!outcome.successful) {
+                        applyCounter.skipped.incrementAndGet();
+                    }
+                }
+                Batch<Outcome> appliedBatch = new Batch<>(outcomes, batch.endOffset, batch.endRow);
+                if (checkpointInterval > 0 && batch.endRow - lastCheckpointRow >= checkpointInterval) {
+                    appliedBatch.checkpoint = IngestCheckpoint.capture(sourceSize, sourceModified,
+                            batch.endOffset, batch.endRow, AccountStore.getShared());
+                    lastCheckpointRow = batch.endRow;
+                }
+                applyCounter.batchDone(batch.items.size(), System.nanoTime() - start);
+                out.put(appliedBatch);
+            }
+        } catch (Throwable e) {
+            fail(e);
+            drain(in);
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+            sendEnd(out);
+        }
+    }
+
+    /**
+     * This method applies the transactions of a batch one after another.
+     *
+     * @param batch the transactions, in the order of the file
+     * @return the outcome of every transaction, in the same order
+     */
+    private static List<Outcome> applyInOrder(List<PreparedTransaction> batch) {
+        List<Outcome> outcomes = new ArrayList<>(batch.size());
+        for (PreparedTransaction transaction : batch) {
+            String message = transaction.apply();
+            outcomes.add(new Outcome(message, transaction.isSuccessful()));
+        }
+        return outcomes;
+    }
+
+    /**
+     * This method applies the transactions of a batch on a pool, partitioned by the accounts they
+     * touch. Every transaction starts after the last earlier transaction of each of its accounts,
+     * so the transactions of one account run in the order of the file and transactions on other
+     * accounts run alongside them. The method returns once the whole batch is applied.
+     *
+     * @param batch the transactions, in the order of the file
+     * @param pool  the threads that apply the transactions
+     * @return the outcome of every transaction, in the order of the file
+     */
+    private static List<Outcome> applyByAccount(List<PreparedTransaction> batch, ForkJoinPool pool) {
+        Outcome[] outcomes = new Outcome[batch.size()];
+        runByAccount(batch, index -> {
+            PreparedTransaction transaction = batch.get(index);
+            String message = transaction.apply();
+            outcomes[index] = new Outcome(message, transaction.isSuccessful());
+        }, pool);
+        return List.of(outcomes);
+    }
+
+    /**
+     * This method runs a task for every transaction of a batch on a pool, partitioned by the
+     * accounts they touch: the task of a transaction starts after the tasks of the earlier
+     * transactions on its accounts, and tasks on other accounts run alongside it. The method
+     * returns once every task has run. The apply stage and TransactionDryRun both use it.
+     *
+     * @param batch the transactions, in the order of the file
+     * @param task  the task, given the index of a transaction in the batch
+     * @param pool  the threads that run the tasks
+     */
+    static void runByAccount(List<PreparedTransaction> batch, IntConsumer task, ForkJoinPool pool) {
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[batch.size()];
+        Map<Account, CompletableFuture<Void>> lastOfAccount = new IdentityHashMap<>();
+
+        for (int i = 0; i < tasks.length; i++) {
+            PreparedTransaction transaction = batch.get(i);
+            int index = i;
+            Runnable work = () -> task.accept(index);
+
+            Account from = transaction.getFromAccount();
+            Account to = transaction.getToAccount();
+            CompletableFuture<Void> afterFrom = from == null ? null : lastOfAccount.get(from);
+            CompletableFuture<Void> afterTo = to == null || to == from ? null : lastOfAccount.get(to);
+
+            CompletableFuture<Void> step;
+            if (afterFrom == null && afterTo == null) {
+                step = CompletableFuture.runAsync(work, pool);
+            } else if (afterFrom == null || afterTo == null || afterFrom == afterTo) {
+                step = (afterFrom != null ? afterFrom : afterTo).thenRunAsync(work, pool);
+            } else {
+                step = afterFrom.runAfterBothAsync(afterTo, work, pool);
+            }
+
+            if (from != null) {
+                lastOfAccount.put(from, step);
+            }
+            if (to != null) {
+                lastOfAccount.put(to, step);
+            }
+            tasks[i] = step;
+        }
+
+        CompletableFuture.allOf(tasks).join();
+    }
+
+    /**
+     * The log stage: writes the messages of a batch to the console and the log file in one go, and
+     * adds the successful ones to the list of transactions of the log, once the BalanceJournal
+     * records of the batch are on disk. A checkpoint taken after
+     * the batch is written once its messages are logged, right after the DedupIndex keys up to it.
+     *
+     * @param in the queue of messages to log
+     */
+    private void log(BlockingQueue<Batch<Outcome>> in) {
+        try {
+            for (Batch<Outcome> batch = take(in); batch != null; batch = take(in)) {
+                if (failure != null) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                BalanceJournal.flush(); // one group commit for the whole batch before it is logged
+                List<String> messages = new ArrayList<>(batch.items.size());
+                for (Outcome outcome : batch.items) {
+                    messages.add(outcome.message);
+                    if (outcome.successful) {
+                        Log.addTransaction(outcome.message);
+                    }
+                }
+                Log.logEntries(messages);
+                if (batch.checkpoint != null) {
+                    Log.sync(); // the checkpoint must not get ahead of the log
+                    EventLog.flush();
+                    if (dedupIndex != null) {
+                        dedupIndex.persistUpTo(batch.endRow);
+                    }
+                    batch.checkpoint.write(checkpointFile);
+                    checkpointsWritten++;
+                }
+                logCounter.batchDone(batch.items.size(), System.nanoTime() - start);
+            }
+            Log.sync();
+            EventLog.flush();
+        } catch (Throwable e) {
+            fail(e);
+            drain(in);
+        }
+    }
+
+    /**
+     * This method takes the next batch of a queue.
+     *
+     * @param queue the queue to read
+     * @param <T>   the type of the records in the batches
+     * @return the next batch, or null once the stage before has finished
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private static <T> Batch<T> take(BlockingQueue<Batch<T>> queue) throws InterruptedException {
+        Batch<T> batch = queue.take();
+        return batch == (Object) END ? null : batch;
+    }
+
+    /**
+     * This method empties a queue until the stage before has finished, so that stage never waits
+     * forever on a full queue after this stage failed.
+     *
+     * @param queue the queue to empty
+     * @param <T>   the type of the records in the batches
+     */
+    private static <T> void drain(BlockingQueue<Batch<T>> queue) {
+        try {
+            while (take(queue) != null) {
+                // discard
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * This method tells the next stage that there are no more batches.
+     *
+     * @param queue the queue of the next stage
+     * @param <T>   the type of the records in the batches
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> void sendEnd(BlockingQueue<Batch<T>> queue) {
+        try {
+            queue.put((Batch<T>) (Batch<?>) END);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * This method records the first error of any stage.
+     *
+     * @param error the error of a stage
+     */
+    private synchronized void fail(Throwable error) {
+        if (failure == null) {
+            failure = error;
+        }
+    }
+
+    /**
+     * This method returns the counters of the four stages, in pipeline order.
+     *
+     * @return the parse, validate, apply and log counters
+     */
+    public List<StageCounter> getCounters() {
+        return List.of(parseCounter, validateCounter, applyCounter, logCounter);
+    }
+
+    /**
+     * This method returns how many checkpoints the last run wrote.
+     *
+     * @return the number of checkpoints written
+     */
+    public long getCheckpointsWritten() {
+        return checkpointsWritten;
+    }
+
+    /**
+     * This method returns how many rows the last run skipped because an earlier run applied them.
+     *
+     * @return the number of duplicate rows skipped
+     */
+    public long getDuplicatesSkipped() {
+        return duplicatesSkipped;
+    }
+
+    /**
+     * This method prints the counters of every stage.
+     */
+    public void printCounters() {
+        for (StageCounter counter : getCounters()) {
+            System.out.println(counter);
+        }
+        if (checkpointsWritten > 0) {
+            System.out.println("checkpoints written: " + checkpointsWritten);
+        }
+        if (duplicatesSkipped > 0) {
+            System.out.println("duplicates skipped: " + duplicatesSkipped);
+        }
+    }
+
+    /**
+     * The Batch class is a batch of records passed between two stages, with the position in the
+     * file right after its last row.
+     *
+     * @param <T> the type of the records
+     */
+    private static final class Batch<T> {
+
+        /** The records of the batch, in the order of the file. */
+        final List<T> items;
+
+        /** The byte offset where the row after the batch starts. */
+        final long endOffset;
+
+        /** The number of rows read up to the end of the batch, the header included. */
+        final long endRow;
+
+        /** The checkpoint to write once the batch is logged, or null. */
+        IngestCheckpoint checkpoint;
+
+        Batch(List<T> items, long endOffset, long endRow) {
+            this.items = items;
+            this.endOffset = endOffset;
+            this.endRow = endRow;
+        }
+    }
+
+    /**
+     * The Outcome class is the message of an applied transaction and whether it went through.
+     */
+    private static final class Outcome {
+
+        /** The message to log. */
+        final String message;
+
+        /** Whether the transaction was applied successfully. */
+        final boolean successful;
+
+        Outcome(String message, boolean successful) {
+            this.message = message;
+            this.successful = successful;
+        }
+    }
+
+    /**
+     * The StageCounter class counts what a stage of the pipeline did.
+     */
+    public static final class StageCounter {
+
+        /** The name of the stage. */
+        private final String name;
+
+        /** The records the stage handled. */
+        private final AtomicLong records = new AtomicLong();
+
+        /** The batches the stage handled. */
+        private final AtomicLong batches = new AtomicLong();
+
+        /** The records the stage skipped or that failed in it. */
+        private final AtomicLong skipped = new AtomicLong();
+
+        /** The time the stage spent working, not counting the time waiting on its queues. */
+        private final AtomicLong busyNanos = new AtomicLong();
+
+        /**
+         * This constructor creates the counter of a stage.
+         *
+         * @param name the name of the stage
+         */
+        StageCounter(String name) {
+            this.name = name;
+        }
+
+        /**
+         * This method counts a finished batch.
+         *
+         * @param size  the number of records of the batch
+         * @param nanos the time spent on the batch
+         */
+        void batchDone(int size, long nanos) {
+            records.addAndGet(size);
+            batches.incrementAndGet();
+            busyNanos.addAndGet(nanos);
+        }
+
+        /**
+         * This method retrieves the name of the stage.
+         *
+         * @return the name of the stage
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * This method retrieves how many records the stage handled.
+         *
+         * @return the number of records
+         */
+        public long getRecords() {
+            return records.get();
+        }
+
+        /**
+         * This method retrieves how many records the stage skipped or saw fail.
+         *
+         * @return the number of skipped or failed records
+         */
+        public long getSkipped() {
+            return skipped.get();
+        }
+
+        /**
+         * This method retrieves the time the stage spent working.
+         *
+         * @return the busy time in nanoseconds
+         */
+        public long getBusyNanos() {
+            return busyNanos.get();
+        }
+
+        /**
+         * This method computes how many records the stage handles per second of work.
+         *
+         * @return the throughput of the stage, in records per second
+         */
+        public double getThroughput() {
+            long nanos = busyNanos.get();
+            return nanos == 0 ? 0 : records.get() * 1_000_000_000.0 / nanos;
+        }
+
+        /**
+         * This method describes the counters of the stage.
+         *
+         * @return a line with the records, batches, skipped records, busy time and throughput
+         */
+        @Override
+        public String toString() {
+            return String.format("%-8s %,d records in %,d batches, %,d skipped, %.1f ms busy, %,.0f records/s",
+                    name, records.get(), batches.get(), skipped.get(), busyNanos.get() / 1_000_000.0, getThroughput());
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/**
+ * The TransactionRecord class holds one row of the transactions file: who sends, who receives,
+ * from and to which account type, the action, and the amount. Empty columns are kept as null,
+ * the same way the transaction reader has always treated them. A file can add a ninth column
+ * with an identifier for every transaction, which DedupIndex uses to recognize a row that was
+ * already applied.
+ *
+ * @author Daniela Castro Enriquez
+ * @author Carlos Gonzalez
+ * @author Aylin Rodriguez
+ *
+ */
+public class TransactionRecord {
+
+    /** The first name of the user sending money or making the inquiry. */
+    private final String fromFirstName;
+
+    /** The last name of the user sending money or making the inquiry. */
+    private final String fromLastName;
+
+    /** The account type the money comes from. */
+    private final String fromWhere;
+
+    /** The action of the row (inquires, deposits, withdraws, transfers or pays). */
+    private final String action;
+
+    /** The first name of the user receiving money. */
+    private final String toFirstName;
+
+    /** The last name of the user receiving money. */
+    private final String toLastName;
+
+    /** The account type the money goes to. */
+    private final String toWhere;
+
+    /** The amount of the action in cents, 0 when the column is empty. */
+    private final long amountCents;
+
+    /** The row number of the record in its file, the header being row 1. */
+    private final long rowNumber;
+
+    /** The identifier of the transaction from the optional ninth column, or null. */
+    private final String transactionId;
+
+    /**
+     * This constructor creates a transaction record with all of its columns.
+     *
+     * @param fromFirstName the first name of the sender
+     * @param fromLastName  the last name of the sender
+     * @param fromWhere     the account type the money comes from
+     * @param action        the action of the row
+     * @param toFirstName   the first name of the receiver
+     * @param toLastName    the last name of the receiver
+     * @param toWhere       the account type the money goes to
+     * @param amountCents   the amount of the action, in cents
+     * @param rowNumber     the row number of the record in its file
+     */
+    public TransactionRecord(String fromFirstName, String fromLastName, String fromWhere, String action,
+                             String toFirstName, String toLastName, String toWhere, long amountCents, long rowNumber) {
+        this(fromFirstName, fromLastName, fromWhere, action, toFirstName, toLastName, toWhere, amountCents, rowNumber, null);
+    }
+
+    /**
+     * This constructor creates a transaction record with all of its columns and an identifier.
+     *
+     * @param fromFirstName the first name of the sender
+     * @param fromLastName  the last name of the sender
+     * @param fromWhere     the account type the money comes from
+     * @param action        the action of the row
+     * @param toFirstName   the first name of the receiver
+     * @param toLastName    the last name of the receiver
+     * @param toWhere       the account type the money goes to
+     * @param amountCents   the amount of the action, in cents
+     * @param rowNumber     the row number of the record in its file
+     * @param transactionId the identifier of the transaction, or null if the file has none
+     */
+    public TransactionRecord(String fromFirstName, String fromLastName, String fromWhere, String action,
+                             String toFirstName, String toLastName, String toWhere, long amountCents, long rowNumber,
+                             String transactionId) {
+        this.fromFirstName = fromFirstName;
+        this.fromLastName = fromLastName;
+        this.fromWhere = fromWhere;
+        this.action = action;
+        this.toFirstName = toFirstName;
+        this.toLastName = toLastName;
+        this.toWhere = toWhere;
+        this.amountCents = amountCents;
+        this.rowNumber = rowNumber;
+        this.transactionId = transactionId;
+    }
+
+    /**
+     * This method builds a record from the current row of a transactions file.
+     *
+     * @param row the row source positioned on a transaction row
+     * @return the record of the row
+     * @throws NumberFormatException if the amount column is not a number
+     */
+    public static TransactionRecord fromRow(CsvRowSource row) {
+        return fromRow(row, row.getRowNumber());
+    }
+
+    /**
+     * This method builds a record from the current row of a transactions file that was not read
+     * from its start, for example when a run resumes from an IngestCheckpoint.
+     *
+     * @param row       the row source positioned on a transaction row
+     * @param rowNumber the row number of the row in the whole file
+     * @return the record of the row
+     * @throws NumberFormatException if the amount column is not a number
+     */
+    public static TransactionRecord fromRow(CsvRowSource row, long rowNumber) {
+        long amountCents = row.isBlank(7) ? 0 : row.getCents(7);
+        String transactionId = column(row, 8); // null when the file has no identifier column
+        return new TransactionRecord(column(row, 0), column(row, 1), column(row, 2), column(row, 3),
+                column(row, 4), column(row, 5), column(row, 6), amountCents, rowNumber, transactionId);
+    }
+
+    /**
+     * This method reads a column of the row, replacing empty columns with null.
+     *
+     * @param row   the row source positioned on a transaction row
+     * @param index the index of the column
+     * @return the value of the column, or null if it is empty
+     */
+    private static String column(CsvRowSource row, int index) {
+        return row.isBlank(index) ? null : row.getString(index);
+    }
+
+    /**
+     * This method returns the full name of the sender, as used in the name map.
+     *
+     * @return the first and last name of the sender separated by a space
+     */
+    public String getFromFullName() {
+        return fromFirstName + " " + fromLastName;
+    }
+
+    /**
+     * This method returns the full name of the receiver, as used in the name map.
+     *
+     * @return the first and last name of the receiver separated by a space
+     */
+    public String getToFullName() {
+        return toFirstName + " " + toLastName;
+    }
+
+    /**
+     * This method retrieves the first name of the sender.
+     *
+     * @return the first name of the sender, or null
+     */
+    public String getFromFirstName() {
+        return fromFirstName;
+    }
+
+    /**
+     * This method retrieves the last name of the sender.
+     *
+     * @return the last name of the sender, or null
+     */
+    public String getFromLastName() {
+        return fromLastName;
+    }
+
+    /**
+     * This method retrieves the account type the money comes from.
+     *
+     * @return the account type the money comes from, or null
+     */
+    public String getFromWhere() {
+        return fromWhere;
+    }
+
+    /**
+     * This method retrieves the action of the row.
+     *
+     * @return the action of the row, or null
+     */
+    public String getAction() {
+        return action;
+    }
+
+    /**
+     * This method retrieves the first name of the receiver.
+     *
+     * @return the first name of the receiver, or null
+     */
+    public String getToFirstName() {
+        return toFirstName;
+    }
+
+    /**
+     * This method retrieves the last name of the receiver.
+     *
+     * @return the last name of the receiver, or null
+     */
+    public String getToLastName() {
+        return toLastName;
+    }
+
+    /**
+     * This method retrieves the account type the money goes to.
+     *
+     * @return the account type the money goes to, or null
+     */
+    public String getToWhere() {
+        return toWhere;
+    }
+
+    /**
+     * This method retrieves the amount of the action, parsed exactly to the cent.
+     *
+     * @return the amount of the action, in cents
+     */
+    public long getAmountCents() {
+        return amountCents;
+    }
+
+    /**
+     * This method retrieves the row number of the record in its file.
+     *
+     * @return the row number of the record in its file
+     */
+    public long getRowNumber() {
+        return rowNumber;
+    }
+
+    /**
+     * This method retrieves the identifier of the transaction.
+     *
+     * @return the identifier from the optional ninth column, or null if the row has none
+     */
+    public String getTransactionId() {
+        return transactionId;
+    }
+}